@@ -12,6 +12,7 @@ plugins {
 
     id("io.spring.dependency-management") version "1.1.6"
     id("org.jetbrains.gradle.plugin.idea-ext") version "1.1.8"
+    id("me.champeau.jmh") version "0.7.2"
 
     antlr
     war
@@ -107,6 +108,12 @@ configurations {
     }
 }
 
+jmh {
+    jmhVersion.set("1.37")
+    includeTests.set(true)
+    resultFormat.set("JSON")
+}
+
 internal val forcedAntlrPackageName = "$group.module.model.base.lang"
 internal val antlrGenFilesLocation = file(
     "$projectRootLocation/src/main/java/" +
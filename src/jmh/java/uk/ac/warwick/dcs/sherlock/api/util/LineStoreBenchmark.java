@@ -0,0 +1,104 @@
+package uk.ac.warwick.dcs.sherlock.api.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares holding the preprocessed lines of a file as a {@link LinkedList} of {@link IndexedString}s against a {@link LineStore}.
+ * <p>
+ * The build benchmarks create each form from the same lines, run them with the GC profiler ({@code -prof gc}) to see the bytes allocated for each form, most of which the form keeps. The read
+ * benchmarks visit every character of every line, as the detectors do, the list is copied into an {@link ArrayList} first as the string based N-gram engine did.
+ * </p>
+ * Run with {@code ./gradlew jmh}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LineStoreBenchmark {
+
+    private static final String[] STATEMENTS =
+            {"int i = 0;", "i++;", "for (int j = 0; j < n; j++) {", "}", "return result;", "result = a + b * c;", "if (x == y) {", "System.out.println(value);", "list.add(item);",
+                    "String name = person.getName();", "while (it.hasNext()) {", "} else {", "total += values[index];", "throw new IllegalStateException();"};
+
+    @Param({"200", "1000", "5000"})
+    public int lines;
+
+    private String[] text;
+    private List<IndexedString> list;
+    private LineStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1234);
+
+        this.text = new String[this.lines];
+        for (int i = 0; i < this.lines; i++) {
+            this.text[i] = STATEMENTS[random.nextInt(STATEMENTS.length)];
+        }
+
+        this.list = this.buildList();
+        this.store = this.buildStore();
+    }
+
+    @Benchmark
+    public List<IndexedString> buildList() {
+        List<IndexedString> res = new LinkedList<>();
+        for (int i = 0; i < this.text.length; i++) {
+            // the stringifiers build each line in a StringBuilder, so each line is a new string
+            res.add(IndexedString.of(i + 1, new StringBuilder(this.text[i]).toString()));
+        }
+        return res;
+    }
+
+    @Benchmark
+    public LineStore buildStore() {
+        LineStore.Builder res = new LineStore.Builder(this.text.length, 0);
+        for (int i = 0; i < this.text.length; i++) {
+            res.add(i + 1, this.text[i]);
+        }
+        return res.build();
+    }
+
+    @Benchmark
+    public long readList() {
+        long sum = 0;
+        for (IndexedString line : new ArrayList<>(this.list)) {
+            String value = line.getValue();
+            for (int i = 0; i < value.length(); i++) {
+                sum += value.charAt(i) * line.getKey();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long readStore() {
+        long sum = 0;
+        for (int l = 0; l < this.store.size(); l++) {
+            CharSequence value = this.store.getText(l);
+            for (int i = 0; i < value.length(); i++) {
+                sum += value.charAt(i) * this.store.getLine(l);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,124 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.detection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSourceFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of a single pair comparison for the {@link NGramDetector} (both engines) and the {@link WinnowingDetector}, with default parameters.
+ * <p>
+ * The second file is a copy of the first with a fraction of the lines replaced, so both detectors have blocks to find. Each invocation uses a new detector instance, and the process wide N-gram index cache is cleared, so
+ * per file indexes are rebuilt as they would be for the first pair using a file in a task.
+ * </p>
+ * Run with {@code ./gradlew jmh}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PairwiseDetectorBenchmark {
+
+    private static final String[] STATEMENTS =
+            {"int i = 0;", "i++;", "for (int j = 0; j < n; j++) {", "}", "return result;", "result = a + b * c;", "if (x == y) {", "System.out.println(value);", "list.add(item);",
+                    "String name = person.getName();", "while (it.hasNext()) {", "} else {", "total += values[index];", "throw new IllegalStateException();"};
+
+    @Param({"200", "1000", "5000"})
+    public int lines;
+
+    private ModelDataItem file1;
+    private ModelDataItem file2;
+
+    private static String randomLine(Random random) {
+        StringBuilder line = new StringBuilder();
+        int parts = 1 + random.nextInt(2);
+        for (int i = 0; i < parts; i++) {
+            line.append(STATEMENTS[random.nextInt(STATEMENTS.length)]);
+        }
+        return line.toString();
+    }
+
+    private static ModelDataItem item(long id, List<String> lines) {
+        List<IndexedString> indexed = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            indexed.add(IndexedString.of(i + 1, lines.get(i)));
+        }
+
+        ModelDataItem item = new ModelDataItem(new TestSourceFile(id, String.join("\n", lines)));
+        item.addPreProcessedLines("no_whitespace", indexed);
+        return item;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1234);
+
+        List<String> lines1 = new ArrayList<>();
+        for (int i = 0; i < this.lines; i++) {
+            lines1.add(randomLine(random));
+        }
+
+        List<String> lines2 = new ArrayList<>();
+        for (String line : lines1) {
+            lines2.add(random.nextInt(10) < 3 ? randomLine(random) : line);
+        }
+
+        this.file1 = item(1, lines1);
+        this.file2 = item(2, lines2);
+    }
+
+    @Benchmark
+    public Object ngramStringEngine() {
+        return this.runNGram(0);
+    }
+
+    @Benchmark
+    public Object ngramFingerprintEngine() {
+        return this.runNGram(1);
+    }
+
+    @Benchmark
+    public Object winnowing() {
+        WinnowingDetector detector = new WinnowingDetector();
+        detector.k = 12;
+        detector.window = 8;
+        detector.minimum_matches = 3;
+
+        WinnowingDetector.WinnowingDetectorWorker worker = detector.getAbstractPairwiseDetectorWorker(this.file1, this.file2);
+        worker.execute();
+        return worker.getRawResult();
+    }
+
+    private Object runNGram(int engine) {
+        // the fingerprint indexes would otherwise be served from the process wide cache after the first invocation
+        NGramDetector.getFingerprintCache().clear();
+
+        NGramDetector detector = new NGramDetector();
+        detector.ngram_size = 4;
+        detector.minimum_window = 5;
+        detector.threshold = 0.8f;
+        detector.fingerprint_engine = engine;
+
+        NGramDetector.NGramDetectorWorker worker = detector.getAbstractPairwiseDetectorWorker(this.file1, this.file2);
+        worker.execute();
+        return worker.getRawResult();
+    }
+}
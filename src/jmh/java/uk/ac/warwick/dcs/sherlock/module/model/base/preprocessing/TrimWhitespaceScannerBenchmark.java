@@ -0,0 +1,74 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Lexer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenPipeline;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenView;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.module.model.base.lang.JavaLexer;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares preprocessing a Java source file with a strategy containing only {@link TrimWhitespaceOnly}, through the {@link JavaLexer}, the preprocessor and the {@link StandardStringifier}, against
+ * the {@link TrimWhitespaceScanner}.
+ * <p>
+ * The source is generated from indented statements with comments, string and character literals and text blocks, so each kind of token the scanner recognises is present.
+ * </p>
+ * Run with {@code ./gradlew jmh}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrimWhitespaceScannerBenchmark {
+
+    private static final String[] STATEMENTS =
+            {"int i = 0;", "i++;", "for (int j = 0; j < n; j++) {", "}", "return result;", "result = a + b * c;   // sum", "if (x == y) {", "System.out.println(\"value: \" + value);",
+                    "list.add('\\n');", "String name = person.getName();\t", "while (it.hasNext()) {", "} else {", "/* total of\n     * the values */", "total += values[index];",
+                    "String text = \"\"\"\n        block of text\n        \"\"\";", "throw new IllegalStateException(\"unexpected \\\"state\\\"\");"};
+
+    @Param({"1000", "10000", "50000"})
+    public int lines;
+
+    private String source;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1234);
+
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < this.lines; i++) {
+            source.append("    ".repeat(1 + random.nextInt(4))).append(STATEMENTS[random.nextInt(STATEMENTS.length)]).append('\n');
+        }
+        this.source = source.toString();
+    }
+
+    @Benchmark
+    public List<IndexedString> lexer() {
+        Lexer lexer = new JavaLexer(CharStreams.fromString(this.source));
+        TokenView tokens = TokenPipeline.run(TokenView.of(lexer.getAllTokens()), List.of(new TrimWhitespaceOnly()), lexer.getVocabulary(), "Java");
+        return new StandardStringifier().processTokens(tokens, lexer.getVocabulary());
+    }
+
+    @Benchmark
+    public List<IndexedString> scanner() {
+        return TrimWhitespaceScanner.process(this.source);
+    }
+}
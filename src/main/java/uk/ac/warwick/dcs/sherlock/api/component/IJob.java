@@ -81,6 +81,20 @@ public interface IJob {
      */
     IWorkspace getWorkspace();
 
+    /**
+     * Is the job waiting in, or being run by, the executor? This is stored, so jobs left queued or running when Sherlock stopped can be resumed when it next starts
+     *
+     * @return is queued
+     */
+    boolean isQueued();
+
+    /**
+     * Sets whether the job is waiting in, or being run by, the executor
+     *
+     * @param queued is queued
+     */
+    void setQueued(boolean queued);
+
     /**
      * Has the prepare() method been called?
      *
@@ -24,6 +24,14 @@ public interface IResultFile {
      */
     IResultTask addTaskResult(ITask task);
 
+    /**
+     * Adds several tasks to the file results at once. The task results are not written to storage until {@link IResultJob#store()} is called on the parent
+     *
+     * @param tasks task instances to add
+     * @return task results instances, in the same order, null for any task which could not be added
+     */
+    List<IResultTask> addTaskResults(List<ITask> tasks);
+
     /**
      * Get the file this instance represents
      *
@@ -1,6 +1,9 @@
 package uk.ac.warwick.dcs.sherlock.api.component;
 
+import uk.ac.warwick.dcs.sherlock.api.util.SparseScoreMatrix;
+
 import java.util.List;
+import java.util.Map;
 
 /**
  * Object which stores the set of results from a job execution, organised by file.
@@ -15,6 +18,25 @@ public interface IResultJob {
      */
     IResultFile addFile(ISourceFile file);
 
+    /**
+     * Adds several files to the result set at once. Unlike {@link #addFile(ISourceFile)} the results are not written to storage until {@link #store()} is called, so a whole batch is written
+     * together
+     *
+     * @param files Files to add to results
+     * @return results instances for the files passed, in the same order, null for any file which could not be added
+     */
+    List<IResultFile> addFiles(List<ISourceFile> files);
+
+    /**
+     * Sets the file vs file scores of every file in the result set at once, overall and for each task. These are read back through {@link IResultFile#getFileScore(ISourceFile)} and
+     * {@link IResultTask#getFileScore(ISourceFile)}, scores added individually with addFileScore take precedence
+     *
+     * @param files      the files, the rows and columns of the matrices are indexes into this list
+     * @param overall    aggregate scores from all tasks
+     * @param taskScores scores for each task
+     */
+    void setFileScores(List<ISourceFile> files, SparseScoreMatrix overall, Map<ITask, SparseScoreMatrix> taskScores);
+
     /**
      * Returns the list of {@link IResultFile} stored for this job
      *
@@ -31,6 +31,13 @@ public interface ISourceFile {
      */
     List<String> getFileContentsAsStringList();
 
+    /**
+     * @return hex SHA-512 hash of the content of the file, null if it is not known
+     */
+    default String getHash() {
+        return null;
+    }
+
     /**
      * @return a web path safe file identifier
      */
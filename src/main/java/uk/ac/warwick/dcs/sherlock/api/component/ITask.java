@@ -12,6 +12,43 @@ import java.util.Map;
  */
 public interface ITask {
 
+    /**
+     * Stores the raw results of some of the task's detector workers as they finish, so they do not need to be rerun if the job is interrupted before the task completes. May be called from several
+     * threads at once
+     *
+     * @param checkpointKey key identifying the workers of the run, see {@link #getCheckpoint(String)}. Results added under a different key replace the stored checkpoint
+     * @param workerIndexes indexes of the finished workers
+     * @param rawResults    raw result of each finished worker, in the same order as the indexes, null if a worker produced no result
+     */
+    void addCheckpoint(String checkpointKey, int[] workerIndexes, List<AbstractModelTaskRawResult> rawResults);
+
+    /**
+     * Removes all the checkpointed worker results of the task
+     */
+    void clearCheckpoint();
+
+    /**
+     * Fetches the worker results checkpointed by an earlier, interrupted, run of the task
+     *
+     * @param checkpointKey key identifying the workers of the run, which must be the same only if the run builds the same workers in the same order as the run which stored the checkpoint
+     * @return map of worker index to raw result (which may be null) for every checkpointed worker, empty if there are none or they were stored under a different key
+     */
+    Map<Integer, AbstractModelTaskRawResult> getCheckpoint(String checkpointKey);
+
+    /**
+     * Fetches the candidate pruning floor the task's stored results were detected with
+     *
+     * @return minimum number of shared fingerprints a pair needed to be compared, 0 if every pair was compared, -1 if it is not known
+     */
+    int getCandidateFloor();
+
+    /**
+     * Sets the candidate pruning floor the task's results were detected with, this is stored with the task when it is set complete
+     *
+     * @param candidateFloor minimum number of shared fingerprints a pair needed to be compared, 0 if every pair was compared
+     */
+    void setCandidateFloor(int candidateFloor);
+
     /**
      * Fetches the detector for this task
      *
@@ -77,7 +114,7 @@ public interface ITask {
     boolean resetParameter(AdjustableParameterObj paramObj);
 
     /**
-     * Used to set task complete if no results are found
+     * Used to set task complete if no results are found, this also removes any checkpointed worker results
      */
     void setComplete();
 
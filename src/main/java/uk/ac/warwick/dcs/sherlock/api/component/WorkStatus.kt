@@ -1,5 +1,5 @@
 package uk.ac.warwick.dcs.sherlock.api.component
 
 enum class WorkStatus {
-    NOT_PREPARED, PREPARED, ACTIVE, REGEN_RESULTS, COMPLETE, INTERRUPTED, OUTDATED, MISSING_FILES
+    NOT_PREPARED, PREPARED, ACTIVE, REGEN_RESULTS, COMPLETE, INTERRUPTED, OUTDATED, MISSING_FILES, CANCELLED
 }
@@ -0,0 +1,3 @@
+package uk.ac.warwick.dcs.sherlock.api.exception
+
+class JobCancelledException(errorMessage: String?) : RuntimeException(errorMessage)
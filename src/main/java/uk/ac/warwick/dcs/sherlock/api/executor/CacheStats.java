@@ -0,0 +1,86 @@
+package uk.ac.warwick.dcs.sherlock.api.executor;
+
+/**
+ * Snapshot of one of the on disk caches an executor shares between jobs, for monitoring
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long stores;
+    private final long evictions;
+    private final int entryCount;
+    private final long size;
+    private final long capacity;
+
+    public CacheStats(long hits, long misses, long stores, long evictions, int entryCount, long size, long capacity) {
+        this.hits = hits;
+        this.misses = misses;
+        this.stores = stores;
+        this.evictions = evictions;
+        this.entryCount = entryCount;
+        this.size = size;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return number of lookups which found an entry in the cache since Sherlock started
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups which did not find an entry in the cache since Sherlock started
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of entries added to the cache since Sherlock started
+     */
+    public long getStores() {
+        return stores;
+    }
+
+    /**
+     * @return number of entries removed to keep the cache within its capacity since Sherlock started
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of entries in the cache
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return size of the cache on disk in bytes, including an allowance for each entry's file
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return maximum size of the cache on disk in bytes
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return share of lookups which were hits as a percentage between 0 and 100, 0 if there have been none
+     */
+    public int getHitRatePercent() {
+        return hits + misses > 0 ? (int) Math.round(hits * 100.0 / (hits + misses)) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, stores=%d, evictions=%d, entries=%d, size=%d, capacity=%d", hits, misses, stores, evictions, entryCount, size, capacity);
+    }
+}
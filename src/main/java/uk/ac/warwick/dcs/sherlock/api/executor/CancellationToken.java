@@ -0,0 +1,42 @@
+package uk.ac.warwick.dcs.sherlock.api.executor;
+
+import uk.ac.warwick.dcs.sherlock.api.exception.JobCancelledException;
+
+/**
+ * Cooperative cancellation flag for a job, checked by the executor and by long running workers at safe points.
+ * <br><br>
+ * Once cancelled a token cannot be reset.
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this.cancelled = false;
+    }
+
+    /**
+     * Requests cancellation, work checking this token will stop at its next safe point
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * @return whether cancellation has been requested
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Unwinds the calling work if cancellation has been requested
+     *
+     * @throws JobCancelledException if the token has been cancelled
+     */
+    public void throwIfCancelled() throws JobCancelledException {
+        if (this.cancelled) {
+            throw new JobCancelledException("Job has been cancelled");
+        }
+    }
+}
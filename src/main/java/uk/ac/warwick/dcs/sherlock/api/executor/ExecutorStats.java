@@ -0,0 +1,111 @@
+package uk.ac.warwick.dcs.sherlock.api.executor;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Snapshot of the state of the thread pools an executor runs preprocessing and detection work on. Each priority level has its own pool, the thread and task counts are summed over them
+ */
+public class ExecutorStats {
+
+    private final int parallelism;
+    private final int poolSize;
+    private final Map<String, Integer> levelPoolSizes;
+    private final int activeThreadCount;
+    private final int runningThreadCount;
+    private final long stealCount;
+    private final long queuedTaskCount;
+    private final int queuedSubmissionCount;
+    private final Map<String, Duration> meanQueueLatency;
+    private final Map<String, Duration> maxQueueLatency;
+
+    public ExecutorStats(int parallelism, int poolSize, Map<String, Integer> levelPoolSizes, int activeThreadCount, int runningThreadCount, long stealCount, long queuedTaskCount, int queuedSubmissionCount,
+            Map<String, Duration> meanQueueLatency, Map<String, Duration> maxQueueLatency) {
+        this.parallelism = parallelism;
+        this.poolSize = poolSize;
+        this.levelPoolSizes = levelPoolSizes;
+        this.activeThreadCount = activeThreadCount;
+        this.runningThreadCount = runningThreadCount;
+        this.stealCount = stealCount;
+        this.queuedTaskCount = queuedTaskCount;
+        this.queuedSubmissionCount = queuedSubmissionCount;
+        this.meanQueueLatency = meanQueueLatency;
+        this.maxQueueLatency = maxQueueLatency;
+    }
+
+    /**
+     * @return the number of leaf tasks which may run at once across all the pools, also the maximum number of threads in each priority level's pool
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the number of worker threads which have been started and not yet terminated, summed over the pools of the priority levels
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return for each priority level, the number of worker threads in its pool which have been started and not yet terminated
+     */
+    public Map<String, Integer> getLevelPoolSizes() {
+        return levelPoolSizes;
+    }
+
+    /**
+     * @return estimate of the number of threads currently running or stealing tasks
+     */
+    public int getActiveThreadCount() {
+        return activeThreadCount;
+    }
+
+    /**
+     * @return estimate of the number of threads which are not blocked waiting to join tasks
+     */
+    public int getRunningThreadCount() {
+        return runningThreadCount;
+    }
+
+    /**
+     * @return estimate of the total number of tasks stolen from one thread's queue by another
+     */
+    public long getStealCount() {
+        return stealCount;
+    }
+
+    /**
+     * @return estimate of the number of forked tasks waiting in worker queues
+     */
+    public long getQueuedTaskCount() {
+        return queuedTaskCount;
+    }
+
+    /**
+     * @return estimate of the number of top level work submissions which have not started
+     */
+    public int getQueuedSubmissionCount() {
+        return queuedSubmissionCount;
+    }
+
+    /**
+     * @return for each priority level, the mean time work waited before it started running
+     */
+    public Map<String, Duration> getMeanQueueLatency() {
+        return meanQueueLatency;
+    }
+
+    /**
+     * @return for each priority level, the longest time work waited before it started running
+     */
+    public Map<String, Duration> getMaxQueueLatency() {
+        return maxQueueLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("parallelism=%d, poolSize=%d, levelPoolSizes=%s, active=%d, running=%d, steals=%d, queuedTasks=%d, queuedSubmissions=%d, meanQueueLatency=%s", parallelism, poolSize, levelPoolSizes, activeThreadCount, runningThreadCount, stealCount,
+                queuedTaskCount, queuedSubmissionCount, meanQueueLatency);
+    }
+}
@@ -39,6 +39,32 @@ public interface IExecutor {
      */
     IJob getJob(IJobStatus jobStatus);
 
+    /**
+     * Fetches a snapshot of the executor's worker thread pools, one for each priority level, for monitoring
+     *
+     * @return pool statistics
+     */
+    ExecutorStats getPoolStats();
+
+    /**
+     * Fetches a snapshot of the cache of pair results shared between jobs, for monitoring
+     *
+     * @return cache statistics, null if pair results are not cached
+     */
+    CacheStats getPairCacheStats();
+
+    /**
+     * Fetches a snapshot of the cache of preprocessed files shared between jobs, for monitoring
+     *
+     * @return cache statistics, null if preprocessed files are not cached
+     */
+    CacheStats getPreProcessingCacheStats();
+
+    /**
+     * Resubmits the jobs which were queued or running when Sherlock last stopped, they carry on from the last checkpoint of each task rather than starting again
+     */
+    void resumeQueuedJobs();
+
     /**
      * shutsdown the executor
      */
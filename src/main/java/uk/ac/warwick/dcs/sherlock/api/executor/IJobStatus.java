@@ -4,6 +4,7 @@ import jakarta.validation.constraints.NotNull;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 
 /**
  * Interface defining the status information available for a job
@@ -58,6 +59,42 @@ public interface IJobStatus extends Comparable<IJobStatus> {
      */
     int getProgressInt();
 
+    /**
+     * returns the time the job spent waiting in the queue before it started, if the job is still queued the current wait
+     *
+     * @return queue wait duration
+     */
+    Duration getQueueDuration();
+
+    /**
+     * returns the time the job has spent running, zero if it has not started
+     *
+     * @return run duration
+     */
+    Duration getRunDuration();
+
+    /**
+     * returns the estimated peak memory use of the job, used by the executor to decide when the job can start
+     *
+     * @return estimate in bytes, 0 if not estimated
+     */
+    long getMemoryEstimate();
+
+    /**
+     * returns the best scoring pairs of submissions from the detector results available so far, these are only produced while the job is running if provisional results are enabled
+     *
+     * @param limit maximum number of pairs to return
+     * @return pairs in descending score order, empty if there are none
+     */
+    List<ProvisionalMatch> getProvisionalMatches(int limit);
+
+    /**
+     * returns the number of file pairs which were not compared as candidate pruning found too few shared fingerprints
+     *
+     * @return pruned pair count, summed over all tasks
+     */
+    int getPrunedPairs();
+
     /**
      * returns the start time of the job
      *
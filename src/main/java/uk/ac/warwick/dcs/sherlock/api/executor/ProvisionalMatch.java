@@ -0,0 +1,63 @@
+package uk.ac.warwick.dcs.sherlock.api.executor;
+
+/**
+ * A pair of submissions scored from the detector results available so far while a job is still running, the score may change once the job's final results are produced
+ */
+public class ProvisionalMatch {
+
+    private final long submission1Id;
+    private final String submission1Name;
+    private final long submission2Id;
+    private final String submission2Name;
+    private final float score;
+
+    public ProvisionalMatch(long submission1Id, String submission1Name, long submission2Id, String submission2Name, float score) {
+        this.submission1Id = submission1Id;
+        this.submission1Name = submission1Name;
+        this.submission2Id = submission2Id;
+        this.submission2Name = submission2Name;
+        this.score = score;
+    }
+
+    /**
+     * @return id of the first submission
+     */
+    public long getSubmission1Id() {
+        return submission1Id;
+    }
+
+    /**
+     * @return name of the first submission
+     */
+    public String getSubmission1Name() {
+        return submission1Name;
+    }
+
+    /**
+     * @return id of the second submission
+     */
+    public long getSubmission2Id() {
+        return submission2Id;
+    }
+
+    /**
+     * @return name of the second submission
+     */
+    public String getSubmission2Name() {
+        return submission2Name;
+    }
+
+    /**
+     * @return provisional score between 0 and 1
+     */
+    public float getScore() {
+        return score;
+    }
+
+    /**
+     * @return provisional score as a percentage between 0 and 100
+     */
+    public int getScorePercent() {
+        return Math.round(score * 100);
+    }
+}
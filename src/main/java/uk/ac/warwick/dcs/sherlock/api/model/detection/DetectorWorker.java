@@ -1,5 +1,7 @@
 package uk.ac.warwick.dcs.sherlock.api.model.detection;
 
+import uk.ac.warwick.dcs.sherlock.api.exception.JobCancelledException;
+import uk.ac.warwick.dcs.sherlock.api.executor.CancellationToken;
 import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
 
 /**
@@ -12,6 +14,11 @@ public abstract class DetectorWorker<K extends AbstractModelTaskRawResult> {
      */
     protected IDetector parent;
 
+    /**
+     * Cancellation token of the job running this worker, null if the worker is not run by the executor
+     */
+    private CancellationToken cancellationToken;
+
     /**
      * Constructor for workers
      *
@@ -21,11 +28,43 @@ public abstract class DetectorWorker<K extends AbstractModelTaskRawResult> {
         this.parent = parent;
     }
 
+    /**
+     * Checks for cancellation of the job running this worker, long running {@link #execute()} implementations should call this at safe points in their loops
+     *
+     * @throws JobCancelledException if the job has been cancelled, this should be allowed to propagate out of {@link #execute()}
+     */
+    protected void checkCancelled() throws JobCancelledException {
+        if (this.cancellationToken != null) {
+            this.cancellationToken.throwIfCancelled();
+        }
+    }
+
     /**
      * Do work and create the results
      */
     public abstract void execute();
 
+    /**
+     * Estimates the relative cost of running this worker, used by the executor to start the most expensive workers first and to balance workers between threads. Only the ratio between the
+     * estimates of workers from the same detector matters.
+     * <br><br>
+     * Defaults to the same cost for every worker, override this if some workers do much more work than others
+     *
+     * @return cost estimate, at least 1
+     */
+    public long getCostEstimate() {
+        return 1;
+    }
+
+    /**
+     * Sets the cancellation token of the job running this worker, called by the executor
+     *
+     * @param cancellationToken the job's token
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
     /**
      * Gets the results of the worker execution, only minimal processing should be performed in this method
      *
@@ -19,6 +19,18 @@ public interface IDetector<T extends DetectorWorker> {
      */
     List<T> buildWorkers(List<ModelDataItem> data);
 
+    /**
+     * Builds a source which creates the workers for a passed dataset on demand, this is what the executor runs.
+     * <br><br>
+     * Defaults to wrapping {@link #buildWorkers(List)}, detectors which build many workers should override this so the workers are not all held in memory at once
+     *
+     * @param data preprocessed dataset
+     * @return source of configured workers ready to be executed
+     */
+    default IWorkerSource<T> buildWorkerSource(List<ModelDataItem> data) {
+        return IWorkerSource.of(this.buildWorkers(data));
+    }
+
     /**
      * Fetches the description string for the detector
      *
@@ -0,0 +1,22 @@
+package uk.ac.warwick.dcs.sherlock.api.model.detection;
+
+/**
+ * {@link IWorkerSource} whose workers each compare a pair of files, as built by {@link PairwiseDetector}. Exposing the pair of each worker lets the executor build the workers somewhere other than
+ * the source, such as in a separate worker process
+ *
+ * @param <T> {@link DetectorWorker} implementation created by this source
+ */
+public interface IPairWorkerSource<T extends DetectorWorker> extends IWorkerSource<T> {
+
+    /**
+     * @param index index of the worker
+     * @return preprocessed data of the first file compared by the worker
+     */
+    ModelDataItem getFile1Data(int index);
+
+    /**
+     * @param index index of the worker
+     * @return preprocessed data of the second file compared by the worker
+     */
+    ModelDataItem getFile2Data(int index);
+}
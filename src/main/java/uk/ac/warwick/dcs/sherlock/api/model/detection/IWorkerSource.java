@@ -0,0 +1,63 @@
+package uk.ac.warwick.dcs.sherlock.api.model.detection;
+
+import java.util.List;
+
+/**
+ * Pull based source of the workers for a detector. The number of workers is known up front, but each worker is only created when the executor is ready to run it, so it can be collected as soon as
+ * its result has been taken rather than every worker being held for the whole task.
+ * <br><br>
+ * Workers are identified by an index from 0 to {@link #size()} (exclusive), {@link #create(int)} and {@link #getCostEstimate(int)} may be called from several threads at once.
+ *
+ * @param <T> {@link DetectorWorker} implementation created by this source
+ */
+public interface IWorkerSource<T extends DetectorWorker> {
+
+    /**
+     * Wraps a list of already built workers
+     *
+     * @param workers the workers
+     * @param <T>     worker type
+     * @return source returning the workers in list order
+     */
+    static <T extends DetectorWorker> IWorkerSource<T> of(List<T> workers) {
+        return new IWorkerSource<>() {
+            @Override
+            public int size() {
+                return workers.size();
+            }
+
+            @Override
+            public T create(int index) {
+                return workers.get(index);
+            }
+
+            @Override
+            public long getCostEstimate(int index) {
+                return workers.get(index).getCostEstimate();
+            }
+        };
+    }
+
+    /**
+     * @return the total number of workers
+     */
+    int size();
+
+    /**
+     * Creates a worker
+     *
+     * @param index index of the worker
+     * @return the new worker, or null if it could not be built
+     */
+    T create(int index);
+
+    /**
+     * Estimates the relative cost of a worker without creating it, see {@link DetectorWorker#getCostEstimate()}
+     *
+     * @param index index of the worker
+     * @return cost estimate, at least 1
+     */
+    default long getCostEstimate(int index) {
+        return 1;
+    }
+}
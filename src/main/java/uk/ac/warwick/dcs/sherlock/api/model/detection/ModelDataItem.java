@@ -2,6 +2,7 @@ package uk.ac.warwick.dcs.sherlock.api.model.detection;
 
 import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
 import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
 
 import java.util.HashMap;
 import java.util.List;
@@ -9,11 +10,19 @@ import java.util.Map;
 
 /**
  * Object to store the preprocessed data passed to the detector
+ * <br><br>
+ * The lines of each strategy are held in a {@link LineStore}, detectors can read them from the store with {@link #getLineStore(String)}, or as a list of {@link IndexedString}s with
+ * {@link #getPreProcessedLines(String)}.
  */
 public class ModelDataItem {
 
     private final ISourceFile file;
-    private final Map<String, List<IndexedString>> mapping;
+    private final Map<String, LineStore> mapping;
+
+    /**
+     * Cached result of {@link #getPreProcessedSize()}, -1 if not yet calculated
+     */
+    private volatile long preProcessedSize;
 
     /**
      * Build data item for file
@@ -23,6 +32,7 @@ public class ModelDataItem {
     public ModelDataItem(ISourceFile file) {
         this.file = file;
         this.mapping = new HashMap<>();
+        this.preProcessedSize = -1;
     }
 
     /**
@@ -33,7 +43,9 @@ public class ModelDataItem {
      */
     public ModelDataItem(ISourceFile file, Map<String, List<IndexedString>> map) {
         this.file = file;
-        this.mapping = new HashMap<>(map);
+        this.mapping = new HashMap<>();
+        map.forEach((name, lines) -> this.mapping.put(name, lines != null ? LineStore.of(lines) : null));
+        this.preProcessedSize = -1;
     }
 
     /**
@@ -43,7 +55,18 @@ public class ModelDataItem {
      * @param lines        index lines
      */
     public void addPreProcessedLines(String strategyName, List<IndexedString> lines) {
+        this.addLineStore(strategyName, lines != null ? LineStore.of(lines) : null);
+    }
+
+    /**
+     * Adds a mapping for a preprocessing strategy, the store may be shared with other data items
+     *
+     * @param strategyName tag for strategy
+     * @param lines        store of the indexed lines
+     */
+    public void addLineStore(String strategyName, LineStore lines) {
         this.mapping.put(strategyName, lines);
+        this.preProcessedSize = -1;
     }
 
     /**
@@ -55,6 +78,26 @@ public class ModelDataItem {
         return this.file;
     }
 
+    /**
+     * Gets the total number of characters in the preprocessed lines of every strategy, used as a measure of how much work the file is for a detector
+     *
+     * @return total size
+     */
+    public long getPreProcessedSize() {
+        long size = this.preProcessedSize;
+        if (size < 0) {
+            size = 0;
+            for (LineStore lines : this.mapping.values()) {
+                if (lines != null) {
+                    size += lines.getTextLength();
+                }
+            }
+            this.preProcessedSize = size;
+        }
+
+        return size;
+    }
+
     /**
      * get the preprocessed lines for a strategy, returns null if strategy does not exist
      *
@@ -62,6 +105,17 @@ public class ModelDataItem {
      * @return lines, null if strategy does not exist
      */
     public List<IndexedString> getPreProcessedLines(String strategyName) {
+        LineStore lines = this.mapping.get(strategyName);
+        return lines != null ? lines.asList() : null;
+    }
+
+    /**
+     * get the store of the preprocessed lines for a strategy, returns null if strategy does not exist
+     *
+     * @param strategyName strategy tag
+     * @return store of the lines, null if strategy does not exist
+     */
+    public LineStore getLineStore(String strategyName) {
         return this.mapping.get(strategyName);
     }
 }
@@ -1,16 +1,15 @@
 package uk.ac.warwick.dcs.sherlock.api.model.detection;
 
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.PreProcessingStrategy;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
+import uk.ac.warwick.dcs.sherlock.api.util.LongIntHashMap;
+import uk.ac.warwick.dcs.sherlock.api.util.Winnowing;
 import uk.ac.warwick.dcs.sherlock.engine.executor.common.ExecutorUtils;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 /**
  * An abstract IDetector implementation which constructs an individual, parallel worker for each combination of files in the dataset. This can be used as a base for pairwise matching algorithms.
@@ -19,11 +18,23 @@ import java.util.stream.Stream;
  */
 public class PairwiseDetector<T extends PairwiseDetectorWorker> extends Detector<T> {
 
+    /**
+     * Length of the substrings hashed when fingerprinting files for candidate pruning
+     */
+    private static final int CANDIDATE_K = 5;
+    /**
+     * Winnowing window used when fingerprinting files for candidate pruning
+     */
+    private static final int CANDIDATE_WINDOW = 4;
+
     /**
      * Class object for the generic type of this detector's worker
      */
     private final Class<T> typeArgumentClass;
 
+    private int candidateFloor;
+    private int prunedPairCount;
+
     /**
      * {@link IDetector} implementation which automatically builds a worker for each possible combination of the source files passed
      *
@@ -50,34 +61,91 @@ public class PairwiseDetector<T extends PairwiseDetectorWorker> extends Detector
     }
 
     /**
-     * Recursively creates a list of all the possible combinations (unordered) of a specific size of an input list
-     *
-     * @param list list of items to find combinations of
-     * @param size size of the combinations, 2 returns pairs etc...
-     * @param <E>  list typing
-     * @return list of all possible combinations
+     * {@inheritDoc}
+     * <br><br>
+     * Builds a worker for every pair from {@link #buildWorkerSource(List)}, this holds every worker in memory at once so is best avoided for large datasets
      */
-    private static <E> Stream<List<E>> combinations(List<E> list, int size) {
-        if (size == 0) {
-            return Stream.of(Collections.emptyList());
-        } else {
-            return IntStream.range(0, list.size()).boxed().flatMap(i -> combinations(list.subList(i + 1, list.size()), size - 1).map(t -> pipe(list.get(i), t)));
+    @Override
+    public final List<T> buildWorkers(List<ModelDataItem> data) {
+        IWorkerSource<T> source = this.buildWorkerSource(data);
+        List<T> workers = new ArrayList<>(source.size());
+        for (int i = 0; i < source.size(); i++) {
+            T worker = source.create(i);
+            if (worker != null) {
+                workers.add(worker);
+            }
         }
-    }
 
-    private static <E> List<E> pipe(E head, List<E> tail) {
-        List<E> newList = new ArrayList<>(tail);
-        newList.addFirst(head);
-        return newList;
+        return workers;
     }
 
     /**
      * {@inheritDoc}
+     * <br><br>
+     * Each combination (unordered) of files from different submissions is a worker, only the indexes of the pairs are held and the workers are created when they are run. If candidate pruning is
+     * enabled, see {@link #setCandidateFloor(int)}, only pairs sharing enough winnowed fingerprints are included
      */
     @Override
-    public final List<T> buildWorkers(List<ModelDataItem> data) {
-        return combinations(data, 2).filter(x -> !x.getFirst().getFile().getSubmission().equals(x.get(1).getFile().getSubmission())).map(x -> this.getAbstractPairwiseDetectorWorker(x.getFirst(), x.get(1)))
-                .filter(Objects::nonNull).collect(Collectors.toList());
+    public final IWorkerSource<T> buildWorkerSource(List<ModelDataItem> data) {
+        this.prunedPairCount = 0;
+        ModelDataItem[] items = data.toArray(new ModelDataItem[0]);
+        int[] shared = new int[items.length];
+        CandidateIndex candidates = this.candidateFloor > 0 ? new CandidateIndex(items, this.getPreProcessors().getFirst().getName()) : null;
+
+        // pairs are held in compressed rows, the partners of file i are columns[rowOffsets[i]] to columns[rowOffsets[i + 1]]
+        int[] rowOffsets = new int[items.length + 1];
+        int[] columns = new int[Math.max(items.length, 16)];
+        int count = 0;
+        for (int i = 0; i < items.length; i++) {
+            if (candidates != null) {
+                candidates.countShared(i, shared);
+            }
+
+            for (int j = i + 1; j < items.length; j++) {
+                if (items[i].getFile().getSubmission().equals(items[j].getFile().getSubmission())) {
+                    continue;
+                }
+
+                if (candidates != null && shared[j] < this.candidateFloor) {
+                    this.prunedPairCount++;
+                    continue;
+                }
+
+                if (count == columns.length) {
+                    columns = Arrays.copyOf(columns, columns.length * 2);
+                }
+                columns[count++] = j;
+            }
+            rowOffsets[i + 1] = count;
+        }
+
+        return new PairwiseWorkerSource(items, rowOffsets, Arrays.copyOf(columns, count));
+    }
+
+    /**
+     * @return the minimum number of shared winnowed fingerprints a pair needs to be given a worker, 0 if candidate pruning is disabled
+     */
+    public int getCandidateFloor() {
+        return this.candidateFloor;
+    }
+
+    /**
+     * Enables candidate pruning for {@link #buildWorkers(List)}.
+     * <br><br>
+     * Each file is fingerprinted by winnowing the lines of the first preprocessing strategy, and an inverted index from fingerprint to files is used to count the fingerprints each pair shares. Pairs
+     * sharing fewer than the floor are skipped without building a worker. This is intended for large cohorts where most pairs share nothing.
+     *
+     * @param candidateFloor minimum number of shared fingerprints, 0 or less disables pruning
+     */
+    public void setCandidateFloor(int candidateFloor) {
+        this.candidateFloor = Math.max(candidateFloor, 0);
+    }
+
+    /**
+     * @return the number of cross submission pairs skipped by candidate pruning in the last call to {@link #buildWorkers(List)}
+     */
+    public int getPrunedPairCount() {
+        return this.prunedPairCount;
     }
 
     /**
@@ -104,4 +172,124 @@ public class PairwiseDetector<T extends PairwiseDetectorWorker> extends Detector
 
         return null;
     }
+
+    /**
+     * Inverted index of the winnowed fingerprints of each file, used to count the fingerprints each pair of files shares for candidate pruning
+     */
+    private static class CandidateIndex {
+
+        private final long[][] fingerprints;
+        private final LongIntHashMap ids;
+        private final int[] offsets;
+        private final int[] postings;
+
+        CandidateIndex(ModelDataItem[] items, String strategy) {
+            // assign a dense id to each distinct fingerprint, then build CSR posting lists of the files containing each id
+            this.fingerprints = new long[items.length][];
+            this.ids = new LongIntHashMap();
+            int total = 0;
+            for (int i = 0; i < items.length; i++) {
+                LineStore lines = items[i].getLineStore(strategy);
+                this.fingerprints[i] = lines == null ? new long[0] : Winnowing.of(lines, CANDIDATE_K, CANDIDATE_WINDOW).getDistinctFingerprints();
+                for (long fingerprint : this.fingerprints[i]) {
+                    this.ids.putIfAbsent(fingerprint, this.ids.size());
+                }
+                total += this.fingerprints[i].length;
+            }
+
+            this.offsets = new int[this.ids.size() + 1];
+            for (long[] file : this.fingerprints) {
+                for (long fingerprint : file) {
+                    this.offsets[this.ids.get(fingerprint) + 1]++;
+                }
+            }
+            for (int i = 0; i < this.ids.size(); i++) {
+                this.offsets[i + 1] += this.offsets[i];
+            }
+
+            int[] fill = Arrays.copyOf(this.offsets, this.ids.size());
+            this.postings = new int[total];
+            for (int i = 0; i < items.length; i++) {
+                for (long fingerprint : this.fingerprints[i]) {
+                    this.postings[fill[this.ids.get(fingerprint)]++] = i;
+                }
+            }
+        }
+
+        /**
+         * Counts the fingerprints file i shares with each later file
+         *
+         * @param i      index of the file
+         * @param shared array to fill with the count for each file, only entries after i are set
+         */
+        void countShared(int i, int[] shared) {
+            Arrays.fill(shared, 0);
+            for (long fingerprint : this.fingerprints[i]) {
+                int id = this.ids.get(fingerprint);
+                for (int p = this.offsets[id]; p < this.offsets[id + 1]; p++) {
+                    if (this.postings[p] > i) {
+                        shared[this.postings[p]]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the worker for a pair of files when it is requested, pairs are held as compressed rows of file indexes
+     */
+    private class PairwiseWorkerSource implements IPairWorkerSource<T> {
+
+        private final ModelDataItem[] items;
+        private final int[] rowOffsets;
+        private final int[] columns;
+
+        PairwiseWorkerSource(ModelDataItem[] items, int[] rowOffsets, int[] columns) {
+            this.items = items;
+            this.rowOffsets = rowOffsets;
+            this.columns = columns;
+        }
+
+        @Override
+        public int size() {
+            return this.columns.length;
+        }
+
+        @Override
+        public T create(int index) {
+            return getAbstractPairwiseDetectorWorker(this.getFile1Data(index), this.getFile2Data(index));
+        }
+
+        @Override
+        public ModelDataItem getFile1Data(int index) {
+            return this.items[this.rowOf(index)];
+        }
+
+        @Override
+        public ModelDataItem getFile2Data(int index) {
+            return this.items[this.columns[index]];
+        }
+
+        @Override
+        public long getCostEstimate(int index) {
+            return 1 + this.getFile1Data(index).getPreProcessedSize() + this.getFile2Data(index).getPreProcessedSize();
+        }
+
+        /**
+         * Finds the last row starting at or before a pair index, skipping rows with no pairs
+         */
+        private int rowOf(int index) {
+            int low = 0;
+            int high = this.items.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (this.rowOffsets[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+    }
 }
@@ -25,6 +25,16 @@ public abstract class PairwiseDetectorWorker<K extends AbstractModelTaskRawResul
         this.file2 = file2Data;
     }
 
+    /**
+     * Estimates the cost from the combined size of the preprocessed data of both files
+     *
+     * @return cost estimate
+     */
+    @Override
+    public long getCostEstimate() {
+        return 1 + this.file1.getPreProcessedSize() + this.file2.getPreProcessedSize();
+    }
+
     /**
      * Gets the results of the worker execution, only minimal processing should be performed in this method
      *
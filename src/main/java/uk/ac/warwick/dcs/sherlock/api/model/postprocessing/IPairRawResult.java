@@ -0,0 +1,30 @@
+package uk.ac.warwick.dcs.sherlock.api.model.postprocessing;
+
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+
+/**
+ * Optional interface for raw results which hold everything a detector found for a single pair of files.
+ * <br><br>
+ * Implementing it lets the engine reuse the result in a later job, for the same files or for other files with the same contents, rather than comparing the pair again
+ */
+public interface IPairRawResult {
+
+    /**
+     * @return the persistent id of the first file of the pair
+     */
+    long getFile1Id();
+
+    /**
+     * @return the persistent id of the second file of the pair
+     */
+    long getFile2Id();
+
+    /**
+     * Copies the result for another pair of files with the same contents as this pair, in the same order
+     *
+     * @param file1 file with the same contents as the first file
+     * @param file2 file with the same contents as the second file
+     * @return the copy
+     */
+    AbstractModelTaskRawResult withFiles(ISourceFile file1, ISourceFile file2);
+}
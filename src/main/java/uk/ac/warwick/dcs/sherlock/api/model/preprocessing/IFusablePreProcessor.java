@@ -0,0 +1,40 @@
+package uk.ac.warwick.dcs.sherlock.api.model.preprocessing;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.Vocabulary;
+
+import java.util.List;
+
+/**
+ * General preprocessor which decides the fate of each token on its own, dropping it, keeping it or replacing its text, without looking at the tokens around it.
+ * <br><br>
+ * Consecutive fusable preprocessors in a strategy are fused by {@link TokenPipeline} into a single pass over a {@link TokenView}, which allocates nothing for each token. Preprocessors which only
+ * implement {@link IGeneralPreProcessor} still work in a strategy alongside fusable ones, they are passed a list of tokens as before.
+ */
+public interface IFusablePreProcessor extends IGeneralPreProcessor {
+
+    /**
+     * Method to perform preprocessing filtering on a single token.
+     *
+     * @param tokens view holding the token
+     * @param index  index of the token in the view
+     * @param text   text of the token, which differs from the view's if an earlier preprocessor in the pass replaced it
+     * @param vocab  Lexer vocabulary
+     * @param lang   language of source file being processed
+     * @return the text passed to keep the token unchanged, a new text to replace it, or null to drop the token
+     */
+    String processToken(TokenView tokens, int index, String text, Vocabulary vocab, String lang);
+
+    /**
+     * Runs {@link #processToken(TokenView, int, String, Vocabulary, String)} over a list of tokens
+     *
+     * @param tokens List of tokens to process
+     * @param vocab  Lexer vocabulary
+     * @param lang   language of source file being processed
+     * @return output list of filtered tokens
+     */
+    @Override
+    default List<? extends Token> process(List<? extends Token> tokens, Vocabulary vocab, String lang) {
+        return TokenPipeline.run(TokenView.of(tokens), List.of(this), vocab, lang).toTokens();
+    }
+}
@@ -7,6 +7,8 @@ import java.util.List;
 
 /**
  * General preprocessor interface, used to filer a set of tokens from a lexer which conforms to the provided spec
+ * <br><br>
+ * Preprocessors which decide on each token without looking at the others should implement {@link IFusablePreProcessor}, so they can be fused with the rest of the strategy
  */
 public interface IGeneralPreProcessor extends IPreProcessor {
 
@@ -28,6 +30,8 @@ public interface IGeneralPreProcessor extends IPreProcessor {
 
     /**
      * Method to perform preprocessing filtering on a source file.
+     * <br><br>
+     * The tokens from a lexer are shared by every strategy using it, so the list passed must not be modified, return a new list instead
      *
      * @param tokens List of tokens to process
      * @param vocab  Lexer vocabulary
@@ -22,4 +22,16 @@ public interface ITokenStringifier {
      */
     List<IndexedString> processTokens(List<? extends Token> tokens, Vocabulary vocab);
 
+    /**
+     * Transform a view of tokens into a list of indexed strings, as {@link #processTokens(List, Vocabulary)} does. Stringifiers should override this to read the view directly, by default the
+     * view is copied into a list of tokens
+     *
+     * @param tokens view of the preprocessed tokens
+     * @param vocab  lexer vocabulary (for tokenising)
+     * @return list of line number indexed strings
+     */
+    default List<IndexedString> processTokens(TokenView tokens, Vocabulary vocab) {
+        return this.processTokens(tokens.toTokens(), vocab);
+    }
+
 }
@@ -0,0 +1,72 @@
+package uk.ac.warwick.dcs.sherlock.api.model.preprocessing;
+
+import org.antlr.v4.runtime.Vocabulary;
+
+import java.util.List;
+
+/**
+ * Runs the general preprocessors of a strategy over a {@link TokenView}.
+ * <br><br>
+ * Each run of consecutive {@link IFusablePreProcessor}s is fused into one pass over the view, which asks every preprocessor of the run about a token before moving on to the next and copies the
+ * kept tokens into a new view at the end. Any other {@link IGeneralPreProcessor} is adapted by passing it the view as a list of tokens and building a view of the list it returns.
+ */
+public final class TokenPipeline {
+
+    private TokenPipeline() {
+    }
+
+    /**
+     * Runs preprocessors over the tokens of a file, in order
+     *
+     * @param tokens     view of the file's tokens, not modified
+     * @param processors the strategy's preprocessors
+     * @param vocab      Lexer vocabulary
+     * @param lang       language of source file being processed
+     * @return view of the preprocessed tokens, the view passed if they are unchanged
+     */
+    public static TokenView run(TokenView tokens, List<? extends IGeneralPreProcessor> processors, Vocabulary vocab, String lang) {
+        TokenView result = tokens;
+
+        int i = 0;
+        while (i < processors.size()) {
+            int end = i;
+            while (end < processors.size() && processors.get(end) instanceof IFusablePreProcessor) {
+                end++;
+            }
+
+            if (end > i) {
+                IFusablePreProcessor[] fused = processors.subList(i, end).toArray(new IFusablePreProcessor[0]);
+                result = fuse(result, fused, vocab, lang);
+                i = end;
+            } else {
+                result = TokenView.of(processors.get(i).process(result.toTokens(), vocab, lang));
+                i++;
+            }
+        }
+
+        return result;
+    }
+
+    private static TokenView fuse(TokenView tokens, IFusablePreProcessor[] processors, Vocabulary vocab, String lang) {
+        int[] indexes = new int[tokens.size()];
+        String[] texts = new String[tokens.size()];
+        int count = 0;
+
+        next:
+        for (int i = 0; i < tokens.size(); i++) {
+            String text = tokens.getText(i);
+            for (IFusablePreProcessor processor : processors) {
+                text = processor.processToken(tokens, i, text, vocab, lang);
+                if (text == null) {
+                    continue next;
+                }
+            }
+
+            indexes[count] = i;
+            texts[count] = text;
+            count++;
+        }
+
+        return tokens.select(indexes, texts, count);
+    }
+}
@@ -0,0 +1,165 @@
+package uk.ac.warwick.dcs.sherlock.api.model.preprocessing;
+
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable, array backed view of a list of tokens, holding the type, channel, start index, stop index, line and text of each token in parallel arrays, so preprocessing and stringifying can walk
+ * the tokens without touching, or allocating, a token object for each one.
+ * <br><br>
+ * A view is built once for each lexed file and shared by every strategy using its lexer, see {@link TokenPipeline}
+ */
+public final class TokenView {
+
+    private final int size;
+    private final int[] types;
+    private final int[] channels;
+    private final int[] starts;
+    private final int[] stops;
+    private final int[] lines;
+    private final String[] texts;
+
+    private TokenView(int size, int[] types, int[] channels, int[] starts, int[] stops, int[] lines, String[] texts) {
+        this.size = size;
+        this.types = types;
+        this.channels = channels;
+        this.starts = starts;
+        this.stops = stops;
+        this.lines = lines;
+        this.texts = texts;
+    }
+
+    /**
+     * Builds a view of a list of tokens, reading the text of each token once
+     *
+     * @param tokens the tokens
+     * @return the view
+     */
+    public static TokenView of(List<? extends Token> tokens) {
+        int size = tokens.size();
+        TokenView view = new TokenView(size, new int[size], new int[size], new int[size], new int[size], new int[size], new String[size]);
+
+        int i = 0;
+        for (Token t : tokens) {
+            view.types[i] = t.getType();
+            view.channels[i] = t.getChannel();
+            view.starts[i] = t.getStartIndex();
+            view.stops[i] = t.getStopIndex();
+            view.lines[i] = t.getLine();
+            view.texts[i] = t.getText();
+            i++;
+        }
+
+        return view;
+    }
+
+    /**
+     * Builds a view of some of the tokens of this view, in the order given
+     *
+     * @param indexes indexes of the tokens to keep, only the first count are used
+     * @param texts   text of each kept token, in the same order as the indexes
+     * @param count   number of tokens kept
+     * @return the new view, or this view if every token is kept unchanged
+     */
+    TokenView select(int[] indexes, String[] texts, int count) {
+        if (count == this.size) {
+            boolean unchanged = true;
+            for (int i = 0; i < count && unchanged; i++) {
+                unchanged = indexes[i] == i && texts[i] == this.texts[i];
+            }
+            if (unchanged) {
+                return this;
+            }
+        }
+
+        TokenView view = new TokenView(count, new int[count], new int[count], new int[count], new int[count], new int[count], new String[count]);
+        for (int i = 0; i < count; i++) {
+            int index = indexes[i];
+            view.types[i] = this.types[index];
+            view.channels[i] = this.channels[index];
+            view.starts[i] = this.starts[index];
+            view.stops[i] = this.stops[index];
+            view.lines[i] = this.lines[index];
+            view.texts[i] = texts[i];
+        }
+
+        return view;
+    }
+
+    /**
+     * @return number of tokens in the view
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param index index of the token in the view
+     * @return the token's type, as in {@link Token#getType()}
+     */
+    public int getType(int index) {
+        return this.types[index];
+    }
+
+    /**
+     * @param index index of the token in the view
+     * @return the token's channel, as in {@link Token#getChannel()}
+     */
+    public int getChannel(int index) {
+        return this.channels[index];
+    }
+
+    /**
+     * @param index index of the token in the view
+     * @return the token's start index in the source, as in {@link Token#getStartIndex()}
+     */
+    public int getStartIndex(int index) {
+        return this.starts[index];
+    }
+
+    /**
+     * @param index index of the token in the view
+     * @return the token's stop index in the source, as in {@link Token#getStopIndex()}
+     */
+    public int getStopIndex(int index) {
+        return this.stops[index];
+    }
+
+    /**
+     * @param index index of the token in the view
+     * @return the token's line, as in {@link Token#getLine()}
+     */
+    public int getLine(int index) {
+        return this.lines[index];
+    }
+
+    /**
+     * @param index index of the token in the view
+     * @return the token's text, as in {@link Token#getText()}
+     */
+    public String getText(int index) {
+        return this.texts[index];
+    }
+
+    /**
+     * Copies the view into a list of tokens, for preprocessors and stringifiers which only work on lists
+     *
+     * @return new list of new tokens
+     */
+    public List<Token> toTokens() {
+        List<Token> tokens = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            CommonToken t = new CommonToken(this.types[i], this.texts[i]);
+            t.setChannel(this.channels[i]);
+            t.setStartIndex(this.starts[i]);
+            t.setStopIndex(this.stops[i]);
+            t.setLine(this.lines[i]);
+            tokens.add(t);
+        }
+
+        return tokens;
+    }
+}
@@ -70,6 +70,13 @@ public interface IStorageWrapper extends ISourceFileHelper {
      */
     List<IWorkspace> getWorkspaces(List<Long> ids);
 
+    /**
+     * Get all the jobs which were queued or running in the executor when Sherlock last stopped, see {@link IJob#isQueued()}
+     *
+     * @return queued jobs, in the order they were created
+     */
+    List<IJob> getQueuedJobs();
+
     /**
      * Get all stored workspaces
      *
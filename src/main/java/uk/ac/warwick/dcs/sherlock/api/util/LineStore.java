@@ -0,0 +1,280 @@
+package uk.ac.warwick.dcs.sherlock.api.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, columnar store of the indexed lines of a preprocessed file.
+ * <br><br>
+ * The text of every line is held in one buffer, one byte per character if every character is Latin-1 and one char per character otherwise, with an array of the offset each line starts at and
+ * an array of the line numbers. This replaces a list of {@link IndexedString}s, which keeps a tuple, a boxed line number and a string for each line. Lines are read through {@link CharSequence}
+ * views of the buffer, which are not copied, or through {@link #asList()} for code which expects a list of {@link IndexedString}s. Can be shared between threads once built.
+ */
+public final class LineStore {
+
+    private static final LineStore EMPTY = new LineStore(new byte[0], null, new int[1], new int[0]);
+
+    private final byte[] bytes;
+    private final char[] chars;
+    private final int[] offsets;
+    private final int[] lines;
+
+    private LineStore(byte[] bytes, char[] chars, int[] offsets, int[] lines) {
+        this.bytes = bytes;
+        this.chars = chars;
+        this.offsets = offsets;
+        this.lines = lines;
+    }
+
+    /**
+     * @return a store with no lines
+     */
+    public static LineStore empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a store holding a list of lines
+     *
+     * @param lines the indexed lines, in order
+     * @return the store
+     */
+    public static LineStore of(List<IndexedString> lines) {
+        Builder builder = new Builder(lines.size(), 0);
+        for (IndexedString line : lines) {
+            builder.add(line.getKey(), line.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the number of lines
+     */
+    public int size() {
+        return this.lines.length;
+    }
+
+    /**
+     * @return whether the store has no lines
+     */
+    public boolean isEmpty() {
+        return this.lines.length == 0;
+    }
+
+    /**
+     * @param index index of the line in the store
+     * @return the line number of the line in the source file
+     */
+    public int getLine(int index) {
+        return this.lines[index];
+    }
+
+    /**
+     * @param index index of the line in the store
+     * @return the number of characters in the line
+     */
+    public int getLength(int index) {
+        return this.offsets[index + 1] - this.offsets[index];
+    }
+
+    /**
+     * @return the total number of characters in every line
+     */
+    public int getTextLength() {
+        return this.offsets[this.lines.length];
+    }
+
+    /**
+     * Reads a character of a line, without creating a view
+     *
+     * @param index    index of the line in the store
+     * @param position position of the character in the line
+     * @return the character
+     */
+    public char charAt(int index, int position) {
+        int offset = this.offsets[index] + position;
+        return this.bytes != null ? (char) (this.bytes[offset] & 0xFF) : this.chars[offset];
+    }
+
+    /**
+     * Gets a view of the text of a line, the view is backed by the store's buffer
+     *
+     * @param index index of the line in the store
+     * @return view of the line, compare views by their content with {@link CharSequence#compare(CharSequence, CharSequence)} or {@link #toString()}
+     */
+    public CharSequence getText(int index) {
+        return new Text(this.offsets[index], this.offsets[index + 1]);
+    }
+
+    /**
+     * Copies the text of a line into a new string
+     *
+     * @param index index of the line in the store
+     * @return the line
+     */
+    public String getString(int index) {
+        return this.substring(this.offsets[index], this.offsets[index + 1]);
+    }
+
+    /**
+     * Gets the lines as a list, for code which reads {@link IndexedString}s. The list is read only and creates a new {@link IndexedString} each time a line is read
+     *
+     * @return list view of the store
+     */
+    public List<IndexedString> asList() {
+        return new IndexedStrings();
+    }
+
+    /**
+     * Estimates the heap used by the store, including its buffer and arrays
+     *
+     * @return approximate size in bytes
+     */
+    public long getMemoryFootprint() {
+        long buffer = this.bytes != null ? this.bytes.length : 2L * this.chars.length;
+        return 32L + (16L + buffer) + (16L + 4L * this.offsets.length) + (16L + 4L * this.lines.length);
+    }
+
+    private String substring(int start, int end) {
+        return this.bytes != null ? new String(this.bytes, start, end - start, StandardCharsets.ISO_8859_1) : new String(this.chars, start, end - start);
+    }
+
+    /**
+     * Builder for a {@link LineStore}, lines are added in order
+     */
+    public static class Builder {
+
+        private final StringBuilder text;
+        private int[] offsets;
+        private int[] lines;
+        private int size;
+
+        /**
+         * Creates an empty builder
+         */
+        public Builder() {
+            this(16, 256);
+        }
+
+        /**
+         * Creates an empty builder
+         *
+         * @param expectedLines      number of lines expected
+         * @param expectedCharacters number of characters expected over every line
+         */
+        public Builder(int expectedLines, int expectedCharacters) {
+            this.text = new StringBuilder(Math.max(expectedCharacters, 16));
+            this.offsets = new int[Math.max(expectedLines, 1) + 1];
+            this.lines = new int[Math.max(expectedLines, 1)];
+            this.size = 0;
+        }
+
+        /**
+         * Adds a line after the lines already added
+         *
+         * @param line number of the line in the source file
+         * @param text text of the line
+         * @return this builder
+         */
+        public Builder add(int line, CharSequence text) {
+            if (this.size == this.lines.length) {
+                this.lines = Arrays.copyOf(this.lines, this.lines.length * 2);
+                this.offsets = Arrays.copyOf(this.offsets, this.lines.length + 1);
+            }
+
+            this.text.append(text);
+            this.lines[this.size] = line;
+            this.size++;
+            this.offsets[this.size] = this.text.length();
+            return this;
+        }
+
+        /**
+         * @return a store holding the lines added so far
+         */
+        public LineStore build() {
+            if (this.size == 0) {
+                return EMPTY;
+            }
+
+            int length = this.text.length();
+            boolean latin1 = true;
+            for (int i = 0; i < length && latin1; i++) {
+                latin1 = this.text.charAt(i) <= 0xFF;
+            }
+
+            byte[] bytes = null;
+            char[] chars = null;
+            if (latin1) {
+                bytes = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = (byte) this.text.charAt(i);
+                }
+            } else {
+                chars = new char[length];
+                this.text.getChars(0, length, chars, 0);
+            }
+
+            return new LineStore(bytes, chars, Arrays.copyOf(this.offsets, this.size + 1), Arrays.copyOf(this.lines, this.size));
+        }
+    }
+
+    /**
+     * View of a range of the buffer
+     */
+    private final class Text implements CharSequence {
+
+        private final int start;
+        private final int end;
+
+        private Text(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return this.end - this.start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= this.end - this.start) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return bytes != null ? (char) (bytes[this.start + index] & 0xFF) : chars[this.start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > this.end - this.start || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + this.length());
+            }
+            return new Text(this.start + start, this.start + end);
+        }
+
+        @Override
+        public String toString() {
+            return substring(this.start, this.end);
+        }
+    }
+
+    /**
+     * List view of the store
+     */
+    private final class IndexedStrings extends AbstractList<IndexedString> implements RandomAccess {
+
+        @Override
+        public IndexedString get(int index) {
+            return IndexedString.of(lines[index], getString(index));
+        }
+
+        @Override
+        public int size() {
+            return lines.length;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package uk.ac.warwick.dcs.sherlock.api.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing (linear probing) hash map of primitive long keys to primitive int values.
+ * <br><br>
+ * Avoids the boxed keys, boxed values and per entry objects of a {@link java.util.HashMap}, intended for fingerprint lookups in detectors. Not thread safe for writes, can be shared
+ * between threads for reads once fully built.
+ */
+public class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int noEntryValue;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    // 0 is used to mark empty slots, so the zero key is stored separately
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * Creates an empty map, missing keys return -1
+     */
+    public LongIntHashMap() {
+        this(16, -1);
+    }
+
+    /**
+     * Creates an empty map
+     *
+     * @param expectedSize number of entries expected, used to size the table so that it does not need to grow
+     * @param noEntryValue value returned when a key is not present
+     */
+    public LongIntHashMap(int expectedSize, int noEntryValue) {
+        this.noEntryValue = noEntryValue;
+        this.allocate(tableSizeFor(expectedSize));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR);
+        int cap = Integer.highestOneBit((int) Math.min(needed, 1 << 30));
+        return cap < needed ? cap << 1 : cap;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Adds delta to the value stored against the key, a missing key is treated as having the value 0
+     *
+     * @param key   key to update
+     * @param delta amount to add
+     * @return the new value
+     */
+    public int addTo(long key, int delta) {
+        if (key == 0) {
+            this.zeroValue = (this.hasZeroKey ? this.zeroValue : 0) + delta;
+            if (!this.hasZeroKey) {
+                this.hasZeroKey = true;
+                this.size++;
+            }
+            return this.zeroValue;
+        }
+
+        int slot = this.findSlot(key);
+        if (this.keys[slot] == key) {
+            return this.values[slot] += delta;
+        }
+
+        this.insertAt(slot, key, delta);
+        return delta;
+    }
+
+    /**
+     * Removes all entries, the table keeps its current capacity
+     */
+    public void clear() {
+        Arrays.fill(this.keys, 0L);
+        this.hasZeroKey = false;
+        this.size = 0;
+    }
+
+    /**
+     * @param key key to test
+     * @return whether the key is present in the map
+     */
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return this.hasZeroKey;
+        }
+        return this.keys[this.findSlot(key)] == key;
+    }
+
+    /**
+     * @param key key to look up
+     * @return the value for the key, or the no entry value if the key is not present
+     */
+    public int get(long key) {
+        if (key == 0) {
+            return this.hasZeroKey ? this.zeroValue : this.noEntryValue;
+        }
+
+        int slot = this.findSlot(key);
+        return this.keys[slot] == key ? this.values[slot] : this.noEntryValue;
+    }
+
+    /**
+     * Estimate of the heap used by this map in bytes
+     *
+     * @return size in bytes
+     */
+    public long getMemoryFootprint() {
+        return 48L + 16L + (8L * this.keys.length) + 16L + (4L * this.values.length);
+    }
+
+    /**
+     * @return the value returned when a key is not present
+     */
+    public int getNoEntryValue() {
+        return this.noEntryValue;
+    }
+
+    /**
+     * Stores a value against a key, replacing any existing value
+     *
+     * @param key   key to store against
+     * @param value value to store
+     * @return the previous value, or the no entry value if the key was not present
+     */
+    public int put(long key, int value) {
+        if (key == 0) {
+            int prev = this.hasZeroKey ? this.zeroValue : this.noEntryValue;
+            if (!this.hasZeroKey) {
+                this.hasZeroKey = true;
+                this.size++;
+            }
+            this.zeroValue = value;
+            return prev;
+        }
+
+        int slot = this.findSlot(key);
+        if (this.keys[slot] == key) {
+            int prev = this.values[slot];
+            this.values[slot] = value;
+            return prev;
+        }
+
+        this.insertAt(slot, key, value);
+        return this.noEntryValue;
+    }
+
+    /**
+     * Stores a value against a key only if the key is not already present
+     *
+     * @param key   key to store against
+     * @param value value to store
+     * @return the existing value if the key was present, otherwise the no entry value
+     */
+    public int putIfAbsent(long key, int value) {
+        if (key == 0) {
+            if (this.hasZeroKey) {
+                return this.zeroValue;
+            }
+            this.hasZeroKey = true;
+            this.zeroValue = value;
+            this.size++;
+            return this.noEntryValue;
+        }
+
+        int slot = this.findSlot(key);
+        if (this.keys[slot] == key) {
+            return this.values[slot];
+        }
+
+        this.insertAt(slot, key, value);
+        return this.noEntryValue;
+    }
+
+    /**
+     * @return the number of entries in the map
+     */
+    public int size() {
+        return this.size;
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Finds the slot holding the key, or the empty slot where it would be inserted. Key must not be 0
+     */
+    private int findSlot(long key) {
+        int slot = mix(key) & this.mask;
+        while (this.keys[slot] != 0 && this.keys[slot] != key) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    private void insertAt(int slot, long key, int value) {
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.size++;
+
+        if (this.size > this.keys.length * LOAD_FACTOR) {
+            this.rehash(this.keys.length << 1);
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.allocate(newCapacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = this.findSlot(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package uk.ac.warwick.dcs.sherlock.api.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Immutable sparse square matrix of float scores between items, such as the files of a job, stored in compressed sparse row form.
+ * <br><br>
+ * Only non-zero scores are stored, as primitive arrays, so the size grows with the number of scores rather than with the square of the number of items. Rows and columns are item indexes, the
+ * columns of each row are kept sorted so single scores are found with a binary search. Can be shared between threads once built.
+ */
+public class SparseScoreMatrix {
+
+    private final int size;
+
+    /**
+     * Entries of row r are at rowOffsets[r] (inclusive) to rowOffsets[r + 1] (exclusive)
+     */
+    private final int[] rowOffsets;
+    private final int[] columns;
+    private final float[] scores;
+
+    private SparseScoreMatrix(int size, int[] rowOffsets, int[] columns, float[] scores) {
+        this.size = size;
+        this.rowOffsets = rowOffsets;
+        this.columns = columns;
+        this.scores = scores;
+    }
+
+    /**
+     * Creates a builder for a matrix
+     *
+     * @param size number of rows and columns
+     * @return the builder
+     */
+    public static Builder builder(int size) {
+        return new Builder(size);
+    }
+
+    /**
+     * Reads a matrix written by {@link #write(DataOutput)}
+     *
+     * @param in input to read from
+     * @return the matrix
+     * @throws IOException if the input could not be read
+     */
+    public static SparseScoreMatrix read(DataInput in) throws IOException {
+        int size = in.readInt();
+        int count = in.readInt();
+
+        int[] rowOffsets = new int[size + 1];
+        for (int i = 0; i <= size; i++) {
+            rowOffsets[i] = in.readInt();
+        }
+
+        int[] columns = new int[count];
+        float[] scores = new float[count];
+        for (int i = 0; i < count; i++) {
+            columns[i] = in.readInt();
+            scores[i] = in.readFloat();
+        }
+
+        return new SparseScoreMatrix(size, rowOffsets, columns, scores);
+    }
+
+    /**
+     * Writes the matrix in a compact binary form
+     *
+     * @param out output to write to
+     * @throws IOException if the output could not be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(this.size);
+        out.writeInt(this.columns.length);
+        for (int offset : this.rowOffsets) {
+            out.writeInt(offset);
+        }
+        for (int i = 0; i < this.columns.length; i++) {
+            out.writeInt(this.columns[i]);
+            out.writeFloat(this.scores[i]);
+        }
+    }
+
+    /**
+     * Fetches a single score
+     *
+     * @param row    row item index
+     * @param column column item index
+     * @return the score, 0 if none was set
+     */
+    public float get(int row, int column) {
+        if (row < 0 || row >= this.size) {
+            return 0;
+        }
+
+        int i = Arrays.binarySearch(this.columns, this.rowOffsets[row], this.rowOffsets[row + 1], column);
+        return i >= 0 ? this.scores[i] : 0;
+    }
+
+    /**
+     * Passes each non-zero score in a row to the consumer, in column order
+     *
+     * @param row      row item index
+     * @param consumer consumer for the column and score of each entry
+     */
+    public void forEachInRow(int row, EntryConsumer consumer) {
+        if (row < 0 || row >= this.size) {
+            return;
+        }
+
+        for (int i = this.rowOffsets[row]; i < this.rowOffsets[row + 1]; i++) {
+            consumer.accept(this.columns[i], this.scores[i]);
+        }
+    }
+
+    /**
+     * @return number of non-zero scores stored
+     */
+    public int getNonZeroCount() {
+        return this.columns.length;
+    }
+
+    /**
+     * @return number of rows and columns
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Consumer for the entries of a row
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+
+        void accept(int column, float score);
+    }
+
+    /**
+     * Builds a matrix one row at a time. Different rows may be set from different threads, as long as the rows are all set before {@link #build()} is called, eg. from the leaves of a joined fork
+     * join task
+     */
+    public static class Builder {
+
+        private final int size;
+        private final int[][] rowColumns;
+        private final float[][] rowScores;
+
+        private Builder(int size) {
+            this.size = size;
+            this.rowColumns = new int[size][];
+            this.rowScores = new float[size][];
+        }
+
+        /**
+         * Sets the scores of a row, replacing any set before. Zero scores are dropped
+         *
+         * @param row     row item index
+         * @param columns column item indexes, in ascending order
+         * @param scores  score for each column
+         * @param count   number of entries to take from the arrays
+         * @return this builder
+         */
+        public Builder setRow(int row, int[] columns, float[] scores, int count) {
+            int[] c = new int[count];
+            float[] s = new float[count];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (scores[i] != 0) {
+                    if (n > 0 && columns[i] <= c[n - 1]) {
+                        throw new IllegalArgumentException("Columns must be in ascending order");
+                    }
+                    c[n] = columns[i];
+                    s[n++] = scores[i];
+                }
+            }
+
+            this.rowColumns[row] = n == count ? c : Arrays.copyOf(c, n);
+            this.rowScores[row] = n == count ? s : Arrays.copyOf(s, n);
+            return this;
+        }
+
+        /**
+         * @return the matrix, rows which were not set are empty
+         */
+        public SparseScoreMatrix build() {
+            int[] rowOffsets = new int[this.size + 1];
+            for (int r = 0; r < this.size; r++) {
+                rowOffsets[r + 1] = rowOffsets[r] + (this.rowColumns[r] != null ? this.rowColumns[r].length : 0);
+            }
+
+            int[] columns = new int[rowOffsets[this.size]];
+            float[] scores = new float[rowOffsets[this.size]];
+            for (int r = 0; r < this.size; r++) {
+                if (this.rowColumns[r] != null) {
+                    System.arraycopy(this.rowColumns[r], 0, columns, rowOffsets[r], this.rowColumns[r].length);
+                    System.arraycopy(this.rowScores[r], 0, scores, rowOffsets[r], this.rowScores[r].length);
+                }
+            }
+
+            return new SparseScoreMatrix(this.size, rowOffsets, columns, scores);
+        }
+    }
+}
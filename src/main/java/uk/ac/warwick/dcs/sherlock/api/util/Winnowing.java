@@ -0,0 +1,205 @@
+package uk.ac.warwick.dcs.sherlock.api.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Winnowed document fingerprints, as described in "Winnowing: Local Algorithms for Document Fingerprinting" (Schleimer, Wilkerson and Aiken) and used by MOSS.
+ * <br><br>
+ * Whitespace is ignored, every k character substring of the remaining text is hashed, and from each window of consecutive hashes the minimum (rightmost on ties) is selected. Any shared substring
+ * at least window + k - 1 characters long is guaranteed to produce at least one shared fingerprint, while only a fraction of the hashes are kept.
+ * <br><br>
+ * Selected fingerprints are held in primitive arrays in file order, along with the lines the hashed substring starts and ends on.
+ */
+public class Winnowing {
+
+    private static final long BASE = 0x100000001B3L;
+
+    private final int k;
+    private final int window;
+    private final long[] fingerprints;
+    private final int[] startLines;
+    private final int[] endLines;
+
+    private Winnowing(int k, int window, long[] fingerprints, int[] startLines, int[] endLines) {
+        this.k = k;
+        this.window = window;
+        this.fingerprints = fingerprints;
+        this.startLines = startLines;
+        this.endLines = endLines;
+    }
+
+    /**
+     * Fingerprints a file
+     *
+     * @param lines  lines of the file
+     * @param k      length of the hashed substrings, in non whitespace characters
+     * @param window number of consecutive hashes each fingerprint is selected from
+     * @return the selected fingerprints
+     */
+    public static Winnowing of(List<IndexedString> lines, int k, int window) {
+        return of(LineStore.of(lines), k, window);
+    }
+
+    /**
+     * Fingerprints a file
+     *
+     * @param lines  store of the lines of the file
+     * @param k      length of the hashed substrings, in non whitespace characters
+     * @param window number of consecutive hashes each fingerprint is selected from
+     * @return the selected fingerprints
+     */
+    public static Winnowing of(LineStore lines, int k, int window) {
+        if (k < 1 || window < 1) {
+            throw new IllegalArgumentException("k and window must both be at least 1");
+        }
+
+        int length = lines.getTextLength();
+        char[] text = new char[length];
+        int[] lineOf = new int[length];
+        length = 0;
+        for (int l = 0; l < lines.size(); l++) {
+            for (int i = 0; i < lines.getLength(l); i++) {
+                char c = lines.charAt(l, i);
+                if (!Character.isWhitespace(c)) {
+                    text[length] = c;
+                    lineOf[length] = lines.getLine(l);
+                    length++;
+                }
+            }
+        }
+
+        int count = length - k + 1;
+        if (count < 1) {
+            return new Winnowing(k, window, new long[0], new int[0], new int[0]);
+        }
+
+        long outWeight = 1;
+        for (int i = 1; i < k; i++) {
+            outWeight *= BASE;
+        }
+
+        long[] hashes = new long[count];
+        long hash = 0;
+        for (int i = 0; i < length; i++) {
+            if (i >= k) {
+                hash -= text[i - k] * outWeight;
+            }
+            hash = hash * BASE + text[i];
+            if (i >= k - 1) {
+                hashes[i - k + 1] = mix(hash);
+            }
+        }
+
+        // monotonic deque of hash indexes, the front is always the rightmost minimum of the current window
+        int w = Math.min(window, count);
+        int[] deque = new int[count];
+        int head = 0;
+        int tail = 0;
+
+        long[] selected = new long[count / w + count / 2 + 1];
+        int[] starts = new int[selected.length];
+        int[] ends = new int[selected.length];
+        int size = 0;
+        int last = -1;
+
+        for (int i = 0; i < count; i++) {
+            while (tail > head && hashes[deque[tail - 1]] >= hashes[i]) {
+                tail--;
+            }
+            deque[tail++] = i;
+            if (deque[head] <= i - w) {
+                head++;
+            }
+
+            if (i >= w - 1 && deque[head] != last) {
+                last = deque[head];
+                if (size == selected.length) {
+                    selected = Arrays.copyOf(selected, size * 2);
+                    starts = Arrays.copyOf(starts, size * 2);
+                    ends = Arrays.copyOf(ends, size * 2);
+                }
+                selected[size] = hashes[last];
+                starts[size] = lineOf[last];
+                ends[size] = lineOf[last + k - 1];
+                size++;
+            }
+        }
+
+        return new Winnowing(k, window, Arrays.copyOf(selected, size), Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+    }
+
+    /**
+     * Finalising mix so that the minimum of a window is not biased by the character values of the substring
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return the distinct fingerprints of the file in ascending order
+     */
+    public long[] getDistinctFingerprints() {
+        long[] sorted = this.fingerprints.clone();
+        Arrays.sort(sorted);
+
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+
+        return Arrays.copyOf(sorted, size);
+    }
+
+    /**
+     * @param i index of the selected fingerprint, in file order
+     * @return the line the hashed substring ends on
+     */
+    public int getEndLine(int i) {
+        return this.endLines[i];
+    }
+
+    /**
+     * @param i index of the selected fingerprint, in file order
+     * @return the fingerprint
+     */
+    public long getFingerprint(int i) {
+        return this.fingerprints[i];
+    }
+
+    /**
+     * @return length of the hashed substrings
+     */
+    public int getK() {
+        return this.k;
+    }
+
+    /**
+     * @param i index of the selected fingerprint, in file order
+     * @return the line the hashed substring starts on
+     */
+    public int getStartLine(int i) {
+        return this.startLines[i];
+    }
+
+    /**
+     * @return number of hashes each fingerprint is selected from
+     */
+    public int getWindow() {
+        return this.window;
+    }
+
+    /**
+     * @return the number of selected fingerprints
+     */
+    public int size() {
+        return this.fingerprints.length;
+    }
+}
@@ -14,12 +14,46 @@ public class Configuration {
 
     private Boolean encryptFiles;
     private int jobCompleteDismissalTime;
+    private int candidatePruningFloor;
+    private int maxConcurrentJobs;
+    private int cpuBudget;
+    private int fastLaneFileLimit;
+    private int workerPoolSize;
+    private Boolean workerPoolAsyncMode;
+    private String workerThreadName;
+    private int workerActionsPerPriority;
+    private int checkpointInterval;
+    private Boolean reusePairResults;
+    private int pairResultCacheSize;
+    private int preProcessingCacheSize;
+    private int memoryBudget;
+    private int provisionalResultBatchSize;
+    private int remoteWorkers;
+    private int remoteWorkerHeap;
+    private String remoteWorkerClasspath;
 
     public Configuration() {
         this.setDataPath(SystemUtils.IS_OS_WINDOWS ? System.getenv("APPDATA") + File.separator + "Sherlock" : System.getProperty("user.home") + File.separator + ".Sherlock");
         this.setEnableExternalModules(true);
         this.setEncryptFiles(true);
         this.setJobCompleteDismissalTime(3);
+        this.setCandidatePruningFloor(0);
+        this.setMaxConcurrentJobs(2);
+        this.setCpuBudget(0);
+        this.setFastLaneFileLimit(20);
+        this.setWorkerPoolSize(0);
+        this.setWorkerPoolAsyncMode(false);
+        this.setWorkerThreadName("Sherlock-Worker");
+        this.setWorkerActionsPerPriority(0);
+        this.setCheckpointInterval(5000);
+        this.setReusePairResults(true);
+        this.setPairResultCacheSize(0);
+        this.setPreProcessingCacheSize(256);
+        this.setMemoryBudget(0);
+        this.setProvisionalResultBatchSize(0);
+        this.setRemoteWorkers(0);
+        this.setRemoteWorkerHeap(0);
+        this.setRemoteWorkerClasspath("");
     }
 
     public String getDataPath() {
@@ -53,4 +87,140 @@ public class Configuration {
     public void setJobCompleteDismissalTime(int jobCompleteDismissalTime) {
         this.jobCompleteDismissalTime = jobCompleteDismissalTime;
     }
+
+    public int getCandidatePruningFloor() {
+        return candidatePruningFloor;
+    }
+
+    public void setCandidatePruningFloor(int candidatePruningFloor) {
+        this.candidatePruningFloor = candidatePruningFloor;
+    }
+
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    public int getCpuBudget() {
+        return cpuBudget;
+    }
+
+    public void setCpuBudget(int cpuBudget) {
+        this.cpuBudget = cpuBudget;
+    }
+
+    public int getFastLaneFileLimit() {
+        return fastLaneFileLimit;
+    }
+
+    public void setFastLaneFileLimit(int fastLaneFileLimit) {
+        this.fastLaneFileLimit = fastLaneFileLimit;
+    }
+
+    public int getWorkerPoolSize() {
+        return workerPoolSize;
+    }
+
+    public void setWorkerPoolSize(int workerPoolSize) {
+        this.workerPoolSize = workerPoolSize;
+    }
+
+    public Boolean getWorkerPoolAsyncMode() {
+        return workerPoolAsyncMode;
+    }
+
+    public void setWorkerPoolAsyncMode(Boolean workerPoolAsyncMode) {
+        this.workerPoolAsyncMode = workerPoolAsyncMode;
+    }
+
+    public String getWorkerThreadName() {
+        return workerThreadName;
+    }
+
+    public void setWorkerThreadName(String workerThreadName) {
+        this.workerThreadName = workerThreadName;
+    }
+
+    public int getWorkerActionsPerPriority() {
+        return workerActionsPerPriority;
+    }
+
+    public void setWorkerActionsPerPriority(int workerActionsPerPriority) {
+        this.workerActionsPerPriority = workerActionsPerPriority;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public Boolean getReusePairResults() {
+        return reusePairResults;
+    }
+
+    public void setReusePairResults(Boolean reusePairResults) {
+        this.reusePairResults = reusePairResults;
+    }
+
+    public int getPairResultCacheSize() {
+        return pairResultCacheSize;
+    }
+
+    public void setPairResultCacheSize(int pairResultCacheSize) {
+        this.pairResultCacheSize = pairResultCacheSize;
+    }
+
+    public int getPreProcessingCacheSize() {
+        return preProcessingCacheSize;
+    }
+
+    public void setPreProcessingCacheSize(int preProcessingCacheSize) {
+        this.preProcessingCacheSize = preProcessingCacheSize;
+    }
+
+    public int getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(int memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int getProvisionalResultBatchSize() {
+        return provisionalResultBatchSize;
+    }
+
+    public void setProvisionalResultBatchSize(int provisionalResultBatchSize) {
+        this.provisionalResultBatchSize = provisionalResultBatchSize;
+    }
+
+    public int getRemoteWorkers() {
+        return remoteWorkers;
+    }
+
+    public void setRemoteWorkers(int remoteWorkers) {
+        this.remoteWorkers = remoteWorkers;
+    }
+
+    public int getRemoteWorkerHeap() {
+        return remoteWorkerHeap;
+    }
+
+    public void setRemoteWorkerHeap(int remoteWorkerHeap) {
+        this.remoteWorkerHeap = remoteWorkerHeap;
+    }
+
+    public String getRemoteWorkerClasspath() {
+        return remoteWorkerClasspath;
+    }
+
+    public void setRemoteWorkerClasspath(String remoteWorkerClasspath) {
+        this.remoteWorkerClasspath = remoteWorkerClasspath;
+    }
 }
@@ -223,6 +223,9 @@ public class SherlockEngine {
         SherlockEngine.eventBus.removeInvocationsOfEvent(EventInitialisation.class);
         SherlockEngine.eventBus.removeInvocationsOfEvent(EventPostInitialisation.class);
 
+        // modules are loaded, so jobs left over from the last run can be picked up again
+        SherlockEngine.executor.resumeQueuedJobs();
+
         this.initialised = true;
     }
 
@@ -250,12 +253,13 @@ public class SherlockEngine {
     private void shutdown() {
         logger.info("Stopping SherlockEngine");
         try {
-            if (SherlockEngine.storage != null) {
-                SherlockEngine.storage.close();
-            }
+            // stop the executor first, so running jobs are not left writing to a closed database
             if (SherlockEngine.executor != null) {
                 SherlockEngine.executor.shutdown();
             }
+            if (SherlockEngine.storage != null) {
+                SherlockEngine.storage.close();
+            }
 
             if (this.lock != null) {
                 this.lock.close();
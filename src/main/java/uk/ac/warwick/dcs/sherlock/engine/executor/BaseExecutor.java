@@ -1,73 +1,297 @@
 package uk.ac.warwick.dcs.sherlock.engine.executor;
 
+import org.apache.commons.lang3.time.DurationFormatUtils;
 import uk.ac.warwick.dcs.sherlock.api.component.IJob;
 import uk.ac.warwick.dcs.sherlock.api.component.WorkStatus;
+import uk.ac.warwick.dcs.sherlock.api.exception.JobCancelledException;
+import uk.ac.warwick.dcs.sherlock.api.executor.ExecutorStats;
 import uk.ac.warwick.dcs.sherlock.api.executor.IExecutor;
 import uk.ac.warwick.dcs.sherlock.api.executor.IJobStatus;
+import uk.ac.warwick.dcs.sherlock.api.executor.CacheStats;
 import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
 import uk.ac.warwick.dcs.sherlock.engine.executor.common.*;
 import uk.ac.warwick.dcs.sherlock.engine.executor.pool.PoolExecutorJob;
+import uk.ac.warwick.dcs.sherlock.engine.executor.remote.RemoteWorkerPool;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Basic executor implementation
+ * <br><br>
+ * Runs up to the configured number of jobs at once, each job holds a weight, based on its workspace size, against a shared CPU budget. Jobs with small workspaces are queued in a separate fast
+ * lane which always has a slot of its own, so they are not held up behind large jobs.
+ * <br><br>
+ * Each job also holds its estimated peak memory use, see {@link JobMemoryEstimator}, against a memory budget. A job which does not fit waits until running jobs free enough, and a job estimated to
+ * need more than the whole budget only runs on its own. The reason a job is waiting is shown in its status message.
  */
 public class BaseExecutor implements IExecutor, IPriorityWorkSchedulerWrapper {
 
     final Map<IJob, JobStatus> jobMap;
 
     private final PriorityBlockingQueue<PoolExecutorJob> queue;
+    private final PriorityBlockingQueue<PoolExecutorJob> fastQueue;
     private final PriorityWorkScheduler scheduler;
     private final ExecutorService exec;
     private final ExecutorService execScheduler;
+    private final ScheduledExecutorService dismissalTimer;
+    private final RemoteWorkerPool remoteWorkerPool;
+    private final PairResultCache pairResultCache;
+    private final PreProcessingCache preProcessingCache;
+
+    private final int maxConcurrentJobs;
+    private final int cpuBudget;
+    private final int fastLaneFileLimit;
+    private final int poolSize;
+    private final long memoryBudget;
+
+    /**
+     * Admission state, guarded by the queue
+     */
+    private int runningJobs;
+    private int usedBudget;
+    private boolean fastLaneBusy;
+    private long usedMemory;
 
     private int curID;
+    private volatile boolean shuttingDown;
 
     public BaseExecutor() {
-        this.scheduler = new PriorityWorkScheduler();
-
-        this.exec = Executors.newSingleThreadExecutor();
+        this.maxConcurrentJobs = Math.max(SherlockEngine.configuration.getMaxConcurrentJobs(), 1);
+        this.cpuBudget = SherlockEngine.configuration.getCpuBudget() > 0 ? SherlockEngine.configuration.getCpuBudget() : Runtime.getRuntime().availableProcessors();
+
+        this.poolSize = SherlockEngine.configuration.getWorkerPoolSize() > 0 ? SherlockEngine.configuration.getWorkerPoolSize() : this.cpuBudget;
+        this.memoryBudget = SherlockEngine.configuration.getMemoryBudget() > 0 ? SherlockEngine.configuration.getMemoryBudget() * 1024L * 1024L : (long) (Runtime.getRuntime().maxMemory() * 0.6);
+        this.scheduler = new PriorityWorkScheduler(this.poolSize, SherlockEngine.configuration.getWorkerPoolAsyncMode(), SherlockEngine.configuration.getWorkerThreadName(),
+                SherlockEngine.configuration.getWorkerActionsPerPriority());
+        this.fastLaneFileLimit = SherlockEngine.configuration.getFastLaneFileLimit();
+        this.remoteWorkerPool = this.createRemoteWorkerPool();
+        this.pairResultCache = this.createPairResultCache();
+        this.preProcessingCache = this.createPreProcessingCache();
+
+        this.exec = Executors.newFixedThreadPool(this.maxConcurrentJobs + (this.fastLaneFileLimit > 0 ? 1 : 0));
         this.execScheduler = Executors.newSingleThreadExecutor();
+        this.dismissalTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Sherlock-JobDismissal");
+            thread.setDaemon(true);
+            return thread;
+        });
         this.queue = new PriorityBlockingQueue<>(5, Comparator.comparing(PoolExecutorJob::getPriority));
+        this.fastQueue = new PriorityBlockingQueue<>(5, Comparator.comparing(PoolExecutorJob::getPriority));
         this.jobMap = new HashMap<>();
 
+        this.runningJobs = 0;
+        this.usedBudget = 0;
+        this.fastLaneBusy = false;
+        this.usedMemory = 0;
+
         this.curID = 0; //counter for jobstatus ids
+        this.shuttingDown = false;
 
         this.execScheduler.execute(() -> {
             while (true) {
                 try {
-                    PoolExecutorJob job;
-                    job = this.queue.take();
+                    PoolExecutorJob job = this.takeNextJob();
 
-                    synchronized (ExecutorUtils.logger) {
-                        ExecutorUtils.logger.info("Job {} starting", job.getId());
-                    }
+                    ExecutorUtils.logger.info("Job {} starting, waited {} in the queue{}", job.getId(), DurationFormatUtils.formatDuration(job.getStatus().getQueueDuration().toMillis(), "H:mm:ss.SSSS", true),
+                            job.getStatus().isFastLane() ? " (fast lane)" : "");
 
-                    job.getStatus().startJob();
+                    this.exec.execute(() -> this.runJob(job));
+                } catch (InterruptedException | RejectedExecutionException e) {
+                    break;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the pool of worker processes, if enabled in the configuration
+     */
+    private RemoteWorkerPool createRemoteWorkerPool() {
+        if (SherlockEngine.configuration.getRemoteWorkers() <= 0) {
+            return null;
+        }
 
-                    Future<?> f = this.exec.submit(job);
-                    f.get();
+        try {
+            return new RemoteWorkerPool(SherlockEngine.configuration.getRemoteWorkers(), SherlockEngine.configuration.getRemoteWorkerHeap(),
+                    SherlockEngine.configuration.getRemoteWorkerClasspath());
+        } catch (IOException e) {
+            ExecutorUtils.logger.error("Could not create the worker process pool, detection will only run in this process", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the cache of pair results, if enabled in the configuration
+     */
+    private PairResultCache createPairResultCache() {
+        if (SherlockEngine.configuration.getPairResultCacheSize() <= 0) {
+            return null;
+        }
 
-                    job.getStatus().finishJob();
+        try {
+            return new PairResultCache(Path.of(SherlockEngine.configuration.getDataPath(), "PairCache"), SherlockEngine.configuration.getPairResultCacheSize() * 1024L * 1024L,
+                    SherlockEngine.configuration.getEncryptFiles());
+        } catch (IOException e) {
+            ExecutorUtils.logger.error("Could not open the pair result cache, pair results will not be cached", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the cache of preprocessed files, if enabled in the configuration
+     */
+    private PreProcessingCache createPreProcessingCache() {
+        if (SherlockEngine.configuration.getPreProcessingCacheSize() <= 0) {
+            return null;
+        }
+
+        try {
+            return new PreProcessingCache(Path.of(SherlockEngine.configuration.getDataPath(), "PreProcessingCache"), SherlockEngine.configuration.getPreProcessingCacheSize() * 1024L * 1024L,
+                    SherlockEngine.configuration.getEncryptFiles());
+        } catch (IOException e) {
+            ExecutorUtils.logger.error("Could not open the preprocessing cache, preprocessed files will not be cached", e);
+            return null;
+        }
+    }
+
+    /**
+     * Weight of a job against the CPU budget, one unit per 25 files, capped at the full budget
+     *
+     * @param job job to weigh
+     * @return weight
+     */
+    private int calculateWeight(IJob job) {
+        return Math.min(this.cpuBudget, Math.max(1, (int) Math.ceil(job.getFiles().length / 25.0)));
+    }
+
+    /**
+     * Runs a job on an executor thread, then releases its share of the budget
+     *
+     * @param job job to run
+     */
+    private void runJob(PoolExecutorJob job) {
+        try {
+            job.run();
+        } catch (JobCancelledException e) {
+            job.getJob().setStatus(WorkStatus.CANCELLED);
+        } catch (Exception e) {
+            ExecutorUtils.logger.error("Job {} failed", job.getId(), e);
+        } finally {
+            job.getStatus().finishJob();
+
+            // a job stopped by shutdown stays queued, so it is resumed on the next start
+            if (!this.shuttingDown) {
+                job.getJob().setQueued(false);
+            }
+
+            synchronized (this.queue) {
+                if (job.getStatus().isFastLane()) {
+                    this.fastLaneBusy = false;
+                } else {
+                    this.runningJobs--;
+                    this.usedBudget -= job.getStatus().getWeight();
+                }
+                this.usedMemory -= job.getStatus().getMemoryEstimate();
+                this.queue.notifyAll();
+            }
+        }
 
-                    //Remove after some configured time
-                    if (job.getJob().getStatus().equals(WorkStatus.COMPLETE) && SherlockEngine.configuration.getJobCompleteDismissalTime() > 0) {
-                        Thread thread = new Thread(new JobDismisser(this, job));
-                        thread.start();
+        //Remove after some configured time, all jobs share the one timer thread
+        if (job.getJob().getStatus().equals(WorkStatus.COMPLETE) && SherlockEngine.configuration.getJobCompleteDismissalTime() > 0) {
+            try {
+                this.dismissalTimer.schedule(() -> {
+                    synchronized (this.jobMap) {
+                        this.jobMap.remove(job.getJob());
                     }
+                }, SherlockEngine.configuration.getJobCompleteDismissalTime(), TimeUnit.MINUTES);
+            } catch (RejectedExecutionException e) {
+                // executor is shutting down, nothing left to dismiss from
+            }
+        }
 
-                    synchronized (ExecutorUtils.logger) {
-                        ExecutorUtils.logger.info("Job {} finished, took: {}", job.getId(), job.getStatus().getFormattedDuration());
+        ExecutorUtils.logger.info("Job {} finished, took: {}", job.getId(), job.getStatus().getFormattedDuration());
+    }
+
+    /**
+     * Blocks until a job can be admitted, then claims its share of the budget and marks the job as started.
+     * <br><br>
+     * The fast lane runs one small job at a time alongside the normal jobs, a small job uses a normal slot if the fast lane is busy. Normal jobs are admitted in priority order while there is a free
+     * slot and enough of the CPU budget left for their weight, the head of the queue is never skipped so large jobs are not starved. Both lanes also need enough of the memory budget left for the
+     * job's estimate. A job is always admitted if nothing else is running.
+     *
+     * @return the job to start
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private PoolExecutorJob takeNextJob() throws InterruptedException {
+        synchronized (this.queue) {
+            while (true) {
+                if (!this.fastLaneBusy && !this.fastQueue.isEmpty() && this.checkMemory(this.fastQueue.peek())) {
+                    PoolExecutorJob job = this.fastQueue.poll();
+                    this.fastLaneBusy = true;
+                    this.admit(job);
+                    return job;
+                }
+
+                PoolExecutorJob next = this.selectNormalJob();
+                if (next != null && this.runningJobs < this.maxConcurrentJobs && (this.runningJobs == 0 || this.usedBudget + next.getStatus().getWeight() <= this.cpuBudget) && this.checkMemory(next)) {
+                    if (next == this.fastQueue.peek()) {
+                        this.fastQueue.poll();
+                        next.getStatus().setFastLane(false);
+                    } else {
+                        this.queue.poll();
                     }
-                } catch (InterruptedException | ExecutionException e) {
-                    break;
+
+                    this.runningJobs++;
+                    this.usedBudget += next.getStatus().getWeight();
+                    this.admit(next);
+                    return next;
                 }
+
+                this.queue.wait();
             }
-        });
+        }
+    }
+
+    /**
+     * Checks whether a job fits in the memory budget left, if not the job's status message says why it is waiting. Must hold the queue
+     *
+     * @param job job to check
+     * @return whether the job can start
+     */
+    private boolean checkMemory(PoolExecutorJob job) {
+        long estimate = job.getStatus().getMemoryEstimate();
+        if (this.usedMemory == 0 || this.usedMemory + estimate <= this.memoryBudget) {
+            return true;
+        }
+
+        job.getStatus().setMessage(estimate > this.memoryBudget ? String.format("Queued, needs ~%d MB so will run once nothing else is running", estimate >> 20) :
+                String.format("Queued, waiting for memory: needs ~%d MB, %d MB free", estimate >> 20, Math.max(this.memoryBudget - this.usedMemory, 0) >> 20));
+        return false;
+    }
+
+    /**
+     * Claims a job's share of the memory budget and marks it as started. Must hold the queue
+     *
+     * @param job job to start
+     */
+    private void admit(PoolExecutorJob job) {
+        this.usedMemory += job.getStatus().getMemoryEstimate();
+        job.getStatus().setMessage("");
+        job.getStatus().startJob();
+    }
+
+    /**
+     * @return the next job to take a normal slot, the normal queue head or, if the normal queue is empty, a waiting small job
+     */
+    private PoolExecutorJob selectNormalJob() {
+        PoolExecutorJob next = this.queue.peek();
+        return next != null ? next : this.fastQueue.peek();
     }
 
     @Override
@@ -105,9 +329,26 @@ public class BaseExecutor implements IExecutor, IPriorityWorkSchedulerWrapper {
         }
     }
 
+    @Override
+    public ExecutorStats getPoolStats() {
+        return this.scheduler.getStats();
+    }
+
+    @Override
+    public CacheStats getPairCacheStats() {
+        return this.pairResultCache != null ? this.pairResultCache.getStats() : null;
+    }
+
+    @Override
+    public CacheStats getPreProcessingCacheStats() {
+        return this.preProcessingCache != null ? this.preProcessingCache.getStats() : null;
+    }
+
     @Override
     public List<IJob> getWaitingJobs() {
-        return this.queue.stream().map(PoolExecutorJob::getJob).collect(Collectors.toList());
+        synchronized (this.queue) {
+            return Stream.concat(this.fastQueue.stream(), this.queue.stream()).map(PoolExecutorJob::getJob).collect(Collectors.toList());
+        }
     }
 
     @Override
@@ -118,62 +359,105 @@ public class BaseExecutor implements IExecutor, IPriorityWorkSchedulerWrapper {
             this.submitWork(task);
 
             try {
-                task.wait();
+                while (!task.isDone()) {
+                    task.wait();
+                }
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
         }
     }
 
+    @Override
+    public PairResultCache getPairResultCache() {
+        return this.pairResultCache;
+    }
+
+    @Override
+    public PreProcessingCache getPreProcessingCache() {
+        return this.preProcessingCache;
+    }
+
+    @Override
+    public RemoteWorkerPool getRemoteWorkerPool() {
+        return this.remoteWorkerPool;
+    }
+
+    @Override
+    public void resumeQueuedJobs() {
+        for (IJob job : SherlockEngine.storage.getQueuedJobs()) {
+            if (job.getStatus() == WorkStatus.MISSING_FILES || job.getStatus() == WorkStatus.CANCELLED) {
+                job.setQueued(false);
+                continue;
+            }
+
+            ExecutorUtils.logger.info("Resuming job {} from the previous session", job.getPersistentId());
+            if (!this.submitJob(job)) {
+                job.setQueued(false);
+            }
+        }
+    }
+
     @Override
     public void shutdown() {
+        this.shuttingDown = true;
         this.scheduler.shutdown();
         this.exec.shutdownNow();
         this.execScheduler.shutdownNow();
+        this.dismissalTimer.shutdownNow();
+        if (this.remoteWorkerPool != null) {
+            this.remoteWorkerPool.close();
+        }
     }
 
     @Override
     public boolean submitJob(IJob job) {
         if (job == null) {
-            synchronized (ExecutorUtils.logger) {
-                ExecutorUtils.logger.error("Job is null");
-            }
+            ExecutorUtils.logger.error("Job is null");
             return false;
         }
 
         if (!job.isPrepared() || job.getStatus().equals(WorkStatus.NOT_PREPARED)) {
-            synchronized (ExecutorUtils.logger) {
-                ExecutorUtils.logger.error("Job {} has not been prepared", job.getPersistentId());
-            }
+            ExecutorUtils.logger.error("Job {} has not been prepared", job.getPersistentId());
             return false;
         }
 
         if (job.getTasks().isEmpty()) {
-            synchronized (ExecutorUtils.logger) {
-                ExecutorUtils.logger.error("Job {} does not have any tasks", job.getPersistentId());
-            }
+            ExecutorUtils.logger.error("Job {} does not have any tasks", job.getPersistentId());
             return false;
         }
 
         if (job.getFiles() == null || job.getFiles().length == 0) {
-            synchronized (ExecutorUtils.logger) {
-                ExecutorUtils.logger.error("Job {} workspace has no files", job.getPersistentId());
-            }
+            ExecutorUtils.logger.error("Job {} workspace has no files", job.getPersistentId());
             return false;
         }
 
-        JobStatus s = new JobStatus(curID++, Priority.DEFAULT);
+        // small jobs run their work at a higher priority, so they are not held up behind the work of large jobs
+        boolean fastLane = this.fastLaneFileLimit > 0 && job.getFiles().length <= this.fastLaneFileLimit;
+        JobStatus s = new JobStatus(curID++, fastLane ? Priority.MEDIUM : Priority.DEFAULT);
         synchronized (this.jobMap) {
             this.jobMap.put(job, s);
         }
 
-        PoolExecutorJob j = new PoolExecutorJob(this, job, s);
-        this.queue.add(j);
+        s.setWeight(this.calculateWeight(job));
+        s.setFastLane(fastLane);
+        s.setMemoryEstimate(JobMemoryEstimator.estimate(job, this.poolSize));
+
+        if (s.getMemoryEstimate() > this.memoryBudget) {
+            ExecutorUtils.logger.warn("Job {} is estimated to need ~{} MB, above the memory budget of {} MB, it will only run on its own", job.getPersistentId(), s.getMemoryEstimate() >> 20,
+                    this.memoryBudget >> 20);
+        }
 
-        synchronized (ExecutorUtils.logger) {
-            ExecutorUtils.logger.info("Job {} added to queue", job.getPersistentId());
+        job.setQueued(true);
+
+        PoolExecutorJob j = new PoolExecutorJob(this, job, s);
+        synchronized (this.queue) {
+            (s.isFastLane() ? this.fastQueue : this.queue).add(j);
+            this.queue.notifyAll();
         }
 
+        ExecutorUtils.logger.info("Job {} added to queue", job.getPersistentId());
+
         return true;
     }
 
@@ -200,41 +484,46 @@ public class BaseExecutor implements IExecutor, IPriorityWorkSchedulerWrapper {
 
     @Override
     public boolean cancelJob(IJobStatus jobStatus) {
-        return false;
+        return this.cancelJob(this.getJob(jobStatus));
     }
 
+    /**
+     * Cancels a job. A queued job is removed from the queue and finished straight away, a running job is signalled to stop at its next safe point and is finished once it has unwound
+     *
+     * @param job job to cancel
+     * @return whether the job was waiting or running, and so has been cancelled
+     */
     @Override
     public boolean cancelJob(IJob job) {
-        return false;
-    }
-
-    @Override
-    public void submitWork(PriorityWorkTask work) {
-        this.scheduler.scheduleJob(work);
-    }
-
-    private static class JobDismisser implements Runnable {
+        JobStatus status;
+        synchronized (this.jobMap) {
+            status = this.jobMap.get(job);
+        }
 
-        private final BaseExecutor executor;
-        private final PoolExecutorJob job;
-        private final long time;
+        if (status == null || status.isFinished() || status.isCancelled()) {
+            return false;
+        }
 
-        JobDismisser(BaseExecutor executor, PoolExecutorJob job) {
-            this.executor = executor;
-            this.job = job;
-            this.time = 60000L * SherlockEngine.configuration.getJobCompleteDismissalTime();
+        boolean queued;
+        synchronized (this.queue) {
+            // the queue lock is held while a job is taken from the queue, so the job cannot start while it is being cancelled
+            queued = this.queue.removeIf(x -> x.getJob() == job) | this.fastQueue.removeIf(x -> x.getJob() == job);
+            status.cancelJob();
+            this.queue.notifyAll();
         }
 
-        @Override
-        public void run() {
-            try {
-                Thread.sleep(this.time);
-                synchronized (this.executor.jobMap) {
-                    this.executor.jobMap.remove(this.job.getJob());
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        if (queued) {
+            job.setStatus(WorkStatus.CANCELLED);
+            job.setQueued(false);
         }
+
+        ExecutorUtils.logger.info("Job {} cancelled{}", job.getPersistentId(), queued ? " before starting" : ", stopping");
+
+        return true;
+    }
+
+    @Override
+    public void submitWork(PriorityWorkTask work) {
+        this.scheduler.scheduleJob(work);
     }
 }
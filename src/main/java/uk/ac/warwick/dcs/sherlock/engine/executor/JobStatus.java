@@ -2,33 +2,55 @@ package uk.ac.warwick.dcs.sherlock.engine.executor;
 
 import jakarta.validation.constraints.NotNull;
 import org.apache.commons.lang3.time.DurationFormatUtils;
+import uk.ac.warwick.dcs.sherlock.api.executor.CancellationToken;
 import uk.ac.warwick.dcs.sherlock.api.executor.IJobStatus;
-import uk.ac.warwick.dcs.sherlock.engine.executor.common.AtomicFloat;
+import uk.ac.warwick.dcs.sherlock.api.executor.ProvisionalMatch;
 import uk.ac.warwick.dcs.sherlock.engine.executor.common.Priority;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.ProvisionalResults;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Basic job status implementation
+ * <br><br>
+ * Progress is counted in whole work units for each stage, on a striped counter so the many threads completing units do not contend on a single value, and is only converted to a fraction between
+ * the stage's start and its cap when read.
  */
 public class JobStatus implements IJobStatus {
 
-    private static final String[] stdMessages = {"Queued", "Initialising", "Pre-Processing", "Building Workers", "Detecting", "Post-Processing", "Analysing Results", "Finished", "Failed"};
-    private static final float[] stageProgCap = {0f, 0f, 0.06f, 0.12f, 0.7f, 0.8f, 1.0f, 1.0f, 0f};
-    private final AtomicFloat progress = new AtomicFloat();
-    private final AtomicFloat progressIncrement = new AtomicFloat();
+    private static final String[] stdMessages = {"Queued", "Initialising", "Pre-Processing", "Building Workers", "Detecting", "Post-Processing", "Analysing Results", "Finished", "Failed", "Cancelled"};
+    private static final float[] stageProgCap = {0f, 0f, 0.06f, 0.12f, 0.7f, 0.8f, 1.0f, 1.0f, 0f, 0f};
+    private volatile ProgressStage progressStage = new ProgressStage(0f, 0f, 0);
+    private final AtomicInteger prunedPairs = new AtomicInteger();
+    private final CancellationToken cancellationToken = new CancellationToken();
     private final int id;
     private final Priority priority;
+    private final Instant queuedTime;
+    private Duration queueDuration;
     private Instant startTime;
     private Duration duration;
+    private int weight;
+    private long memoryEstimate;
+    private volatile ProvisionalResults provisionalResults;
+    private boolean fastLane;
     private int step;
     private String message;
 
     public JobStatus(int id, Priority priority) {
         this.id = id;
+        this.queuedTime = Instant.now();
+        this.queueDuration = null;
         this.startTime = null;
         this.duration = null;
+        this.weight = 1;
+        this.memoryEstimate = 0;
+        this.provisionalResults = null;
+        this.fastLane = false;
 
         this.priority = priority;
 
@@ -36,13 +58,37 @@ public class JobStatus implements IJobStatus {
         this.message = "";
     }
 
+    /**
+     * Records pairs of files which were skipped by candidate pruning when building workers
+     *
+     * @param count number of pairs skipped
+     */
+    public void addPrunedPairs(int count) {
+        this.prunedPairs.addAndGet(count);
+    }
+
+    /**
+     * Cancels the job. A job which has not started is finished immediately, a running job stops at its next safe point and is finished by the executor
+     */
+    public void cancelJob() {
+        this.cancellationToken.cancel();
+
+        if (this.startTime == null && this.duration == null) {
+            this.queueDuration = Duration.between(this.queuedTime, Instant.now());
+            this.duration = Duration.ZERO;
+            this.step = 9;
+        }
+    }
+
+    /**
+     * Starts counting progress for the current step, from the current progress up to the step's cap
+     *
+     * @param nextStepTotalIncrements number of work units in the step, each reported with {@link #incrementProgress()}
+     */
     public void calculateProgressIncrement(int nextStepTotalIncrements) {
-        synchronized (this.progress) {
-            if (nextStepTotalIncrements > 0) {
-                this.progressIncrement.set((stageProgCap[this.step] - this.progress.get()) / nextStepTotalIncrements);
-            } else {
-                this.progressIncrement.set(0);
-            }
+        synchronized (this) {
+            float start = this.progressStage.get();
+            this.progressStage = new ProgressStage(start, Math.max(stageProgCap[this.step], start), nextStepTotalIncrements);
         }
     }
 
@@ -65,14 +111,28 @@ public class JobStatus implements IJobStatus {
     }
 
     public void finishJob() {
+        // the final results, if any, have been stored by now
+        this.provisionalResults = null;
+
         if (this.startTime != null && this.step < 7) {
             this.duration = Duration.between(this.startTime, Instant.now());
-            this.setStep(7);
-            this.progress.set(1f);
+            if (this.isCancelled()) {
+                this.step = 9;
+            } else {
+                this.setStep(7);
+                this.progressStage = new ProgressStage(1f, 1f, 0);
+            }
             this.startTime = null;
         }
     }
 
+    /**
+     * @return the cancellation token for the job
+     */
+    public CancellationToken getCancellationToken() {
+        return this.cancellationToken;
+    }
+
     @Override
     public Duration getDuration() {
         return this.isFinished() ? this.duration : Duration.between(this.startTime, Instant.now());
@@ -83,6 +143,19 @@ public class JobStatus implements IJobStatus {
         return DurationFormatUtils.formatDuration(this.getDuration().toMillis(), "H:mm:ss.SSSS", true);
     }
 
+    /**
+     * Whether the job was queued in the fast lane for small workspaces
+     *
+     * @return is fast lane job
+     */
+    public boolean isFastLane() {
+        return this.fastLane;
+    }
+
+    public void setFastLane(boolean fastLane) {
+        this.fastLane = fastLane;
+    }
+
     @Override
     public int getId() {
         return id;
@@ -113,9 +186,7 @@ public class JobStatus implements IJobStatus {
      */
     @Override
     public float getProgress() {
-        synchronized (this.progress) {
-            return progress.get();
-        }
+        return this.progressStage.get();
     }
 
     /**
@@ -125,9 +196,51 @@ public class JobStatus implements IJobStatus {
      */
     @Override
     public int getProgressInt() {
-        synchronized (this.progress) {
-            return Math.round(progress.get() * 100);
+        return Math.round(this.progressStage.get() * 100);
+    }
+
+    @Override
+    public Duration getQueueDuration() {
+        return this.queueDuration != null ? this.queueDuration : Duration.between(this.queuedTime, Instant.now());
+    }
+
+    @Override
+    public Duration getRunDuration() {
+        if (this.isFinished()) {
+            return this.duration;
         }
+        return this.startTime != null ? Duration.between(this.startTime, Instant.now()) : Duration.ZERO;
+    }
+
+    @Override
+    public long getMemoryEstimate() {
+        return this.memoryEstimate;
+    }
+
+    public void setMemoryEstimate(long memoryEstimate) {
+        this.memoryEstimate = memoryEstimate;
+    }
+
+    @Override
+    public List<ProvisionalMatch> getProvisionalMatches(int limit) {
+        ProvisionalResults results = this.provisionalResults;
+        return results != null ? results.getTopMatches(limit) : Collections.emptyList();
+    }
+
+    /**
+     * @return the provisional results being built for the job, null if they are disabled
+     */
+    public ProvisionalResults getProvisionalResults() {
+        return this.provisionalResults;
+    }
+
+    public void setProvisionalResults(ProvisionalResults provisionalResults) {
+        this.provisionalResults = provisionalResults;
+    }
+
+    @Override
+    public int getPrunedPairs() {
+        return this.prunedPairs.get();
     }
 
     @Override
@@ -140,22 +253,37 @@ public class JobStatus implements IJobStatus {
         return this.step;
     }
 
+    /**
+     * Share of the executor CPU budget held by the job while it runs
+     *
+     * @return job weight
+     */
+    public int getWeight() {
+        return this.weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
     public void setStep(int step) {
         if (step > -1 && step < 8) {
             this.step = step;
         }
     }
 
+    /**
+     * Records one work unit of the current step as done
+     */
     public void incrementProgress() {
-        synchronized (this.progress) {
-            this.progress.addTo(this.progressIncrement.get());
-
-            //System.out.println(this.progress.get());
+        this.progressStage.done.increment();
+    }
 
-            if (this.progress.get() > 1) {
-                this.progress.set(1);
-            }
-        }
+    /**
+     * @return whether the job has been cancelled
+     */
+    public boolean isCancelled() {
+        return this.cancellationToken.isCancelled();
     }
 
     @Override
@@ -171,6 +299,37 @@ public class JobStatus implements IJobStatus {
 
     public void startJob() {
         this.startTime = Instant.now();
+        this.queueDuration = Duration.between(this.queuedTime, this.startTime);
         this.step = 1;
     }
+
+    /**
+     * Progress counter for a single step, replaced as a whole when the next step starts so late increments from the previous step are not counted against it
+     */
+    private static class ProgressStage {
+
+        private final float start;
+        private final float cap;
+        private final int total;
+        private final LongAdder done;
+
+        ProgressStage(float start, float cap, int total) {
+            this.start = start;
+            this.cap = cap;
+            this.total = total;
+            this.done = new LongAdder();
+        }
+
+        /**
+         * @return progress between 0 and 1
+         */
+        float get() {
+            if (this.total <= 0) {
+                return Math.min(this.start, 1f);
+            }
+
+            float fraction = Math.min(this.done.sum(), this.total) / (float) this.total;
+            return Math.min(this.start + (this.cap - this.start) * fraction, 1f);
+        }
+    }
 }
@@ -0,0 +1,299 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import uk.ac.warwick.dcs.sherlock.api.executor.CacheStats;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Directory of cache entries with a size cap, the store behind {@link PairResultCache} and {@link PreProcessingCache}.
+ * <br><br>
+ * Each entry is stored in its own file, named by a hash of its key, and the least recently used entries are deleted once the cache is larger than its capacity. The last modified time of each
+ * file is updated when it is used, so the order survives a restart. If encryption is enabled each entry is encrypted with a secret which cannot be found from its name.
+ */
+class DiskCache {
+
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+
+    /**
+     * Bytes counted against the capacity for each entry on top of its content, for its file's metadata, as many entries are small
+     */
+    static final long ENTRY_OVERHEAD = 256;
+
+    /**
+     * Hash of the class file of each class hashed into a key
+     */
+    private static final Map<Class<?>, byte[]> classVersions = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final long capacity;
+    private final boolean encrypt;
+    private final SecureRandom random;
+
+    /**
+     * Size of each stored entry by name, least recently used first, guarded by itself
+     */
+    private final LinkedHashMap<String, Long> entries;
+    private long size;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder stores;
+    private final LongAdder evictions;
+
+    /**
+     * Opens the cache, picking up any entries stored by an earlier session
+     *
+     * @param directory directory holding the entries
+     * @param capacity  maximum size of the entries on disk in bytes
+     * @param encrypt   whether entries are encrypted
+     * @throws IOException if the directory cannot be created or read
+     */
+    DiskCache(Path directory, long capacity, boolean encrypt) throws IOException {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.encrypt = encrypt;
+        this.random = new SecureRandom();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.size = 0;
+
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.stores = new LongAdder();
+        this.evictions = new LongAdder();
+
+        Files.createDirectories(directory);
+        List<Path> stored;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            stored = walk.filter(Files::isRegularFile).filter(x -> !x.getFileName().toString().endsWith(".tmp")).sorted(Comparator.comparingLong(x -> x.toFile().lastModified())).toList();
+        }
+        for (Path path : stored) {
+            long length = path.toFile().length() + ENTRY_OVERHEAD;
+            this.entries.put(path.getFileName().toString(), length);
+            this.size += length;
+        }
+        this.evict();
+    }
+
+    /**
+     * Reads an entry, counting a hit if it is found and can be decrypted
+     *
+     * @param name   name of the entry
+     * @param secret secret the entry is encrypted with
+     * @return content of the entry, null if it is not cached
+     */
+    byte[] read(String name, byte[] secret) {
+        synchronized (this.entries) {
+            if (this.entries.get(name) == null) {
+                this.misses.increment();
+                return null;
+            }
+        }
+
+        File file = this.locate(name).toFile();
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            if (this.encrypt) {
+                content = this.cipher(Cipher.DECRYPT_MODE, secret, Arrays.copyOf(content, IV_LENGTH)).doFinal(content, IV_LENGTH, content.length - IV_LENGTH);
+            }
+
+            file.setLastModified(System.currentTimeMillis());
+            this.hits.increment();
+            return content;
+        } catch (IOException | IllegalArgumentException | GeneralSecurityException e) {
+            // evicted while being read, or stored with another secret, it is stored again once computed
+            ExecutorUtils.logger.debug("Could not read cache entry {}", name, e);
+            this.remove(name);
+            this.misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Removes an entry which was read but could not be used, counting the read as a miss
+     *
+     * @param name name of the entry
+     */
+    void discard(String name) {
+        this.remove(name);
+        this.hits.decrement();
+        this.misses.increment();
+    }
+
+    /**
+     * Stores an entry, replacing any entry already stored under the name, then removes the least recently used entries until the cache is within its capacity
+     *
+     * @param name    name of the entry
+     * @param secret  secret to encrypt the entry with
+     * @param content content of the entry
+     * @return whether the entry was stored
+     */
+    boolean write(String name, byte[] secret, byte[] content) {
+        Path path = this.locate(name);
+        Path tmp = path.resolveSibling(name + "." + Long.toHexString(this.random.nextLong()) + ".tmp");
+        try {
+            if (this.encrypt) {
+                byte[] iv = new byte[IV_LENGTH];
+                this.random.nextBytes(iv);
+                byte[] encrypted = this.cipher(Cipher.ENCRYPT_MODE, secret, iv).doFinal(content);
+                content = Arrays.copyOf(iv, IV_LENGTH + encrypted.length);
+                System.arraycopy(encrypted, 0, content, IV_LENGTH, encrypted.length);
+            }
+
+            Files.createDirectories(path.getParent());
+            Files.write(tmp, content);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized (this.entries) {
+                long length = content.length + ENTRY_OVERHEAD;
+                Long previous = this.entries.put(name, length);
+                this.size += length - (previous != null ? previous : 0);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            ExecutorUtils.logger.warn("Could not write cache entry {}", name, e);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ex) {
+                // left for the next session to skip
+            }
+            return false;
+        }
+
+        this.stores.increment();
+        this.evict();
+        return true;
+    }
+
+    /**
+     * @return snapshot of the cache's statistics
+     */
+    CacheStats getStats() {
+        synchronized (this.entries) {
+            return new CacheStats(this.hits.sum(), this.misses.sum(), this.stores.sum(), this.evictions.sum(), this.entries.size(), this.size, this.capacity);
+        }
+    }
+
+    private Cipher cipher(int mode, byte[] secret, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(mode, new SecretKeySpec(secret, "AES"), new GCMParameterSpec(128, iv));
+        return cipher;
+    }
+
+    private void evict() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this.entries) {
+            Iterator<Map.Entry<String, Long>> it = this.entries.entrySet().iterator();
+            while (this.size > this.capacity && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                this.size -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        }
+
+        for (String name : evicted) {
+            try {
+                Files.deleteIfExists(this.locate(name));
+                this.evictions.increment();
+            } catch (IOException e) {
+                ExecutorUtils.logger.warn("Could not remove cache entry {}", name, e);
+            }
+        }
+    }
+
+    private Path locate(String name) {
+        return this.directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private void remove(String name) {
+        synchronized (this.entries) {
+            Long length = this.entries.remove(name);
+            if (length != null) {
+                this.size -= length;
+            }
+        }
+
+        try {
+            Files.deleteIfExists(this.locate(name));
+        } catch (IOException e) {
+            // removed again by eviction once it is found
+        }
+    }
+
+    /**
+     * @return a new SHA-256 digest
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    /**
+     * Adds a length prefixed string to a digest, so consecutive strings cannot run into each other
+     *
+     * @param digest the digest
+     * @param value  the string
+     */
+    static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(new byte[] {(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length});
+        digest.update(bytes);
+    }
+
+    /**
+     * Adds a class to a digest, by its name and a hash of its class file, so entries built by an older version of the class are not used
+     *
+     * @param digest the digest
+     * @param clazz  the class
+     */
+    static void updateClass(MessageDigest digest, Class<?> clazz) {
+        update(digest, clazz.getName());
+        digest.update(classVersions.computeIfAbsent(clazz, DiskCache::hashClassFile));
+    }
+
+    /**
+     * Names an entry by a hash of its secret
+     *
+     * @param secret the entry's secret
+     * @return the name
+     */
+    static String name(byte[] secret) {
+        return HexFormat.of().formatHex(sha256().digest(secret));
+    }
+
+    /**
+     * Hashes the class file a class was loaded from
+     *
+     * @param clazz the class
+     * @return the hash, empty if the class file cannot be read
+     */
+    private static byte[] hashClassFile(Class<?> clazz) {
+        try (InputStream in = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class")) {
+            if (in == null) {
+                return new byte[0];
+            }
+            return sha256().digest(in.readAllBytes());
+        } catch (IOException e) {
+            ExecutorUtils.logger.debug("Could not read the class file of {}", clazz.getName(), e);
+            return new byte[0];
+        }
+    }
+}
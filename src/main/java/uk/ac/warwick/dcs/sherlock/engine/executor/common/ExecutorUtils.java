@@ -4,12 +4,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.warwick.dcs.sherlock.api.annotation.AdjustableParameter;
 import uk.ac.warwick.dcs.sherlock.api.executor.IExecutor;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IPairWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
 import uk.ac.warwick.dcs.sherlock.api.util.SherlockHelper;
 import uk.ac.warwick.dcs.sherlock.api.util.Tuple;
 
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -17,6 +25,9 @@ import java.util.Map;
  */
 public class ExecutorUtils {
 
+    /**
+     * Shared executor logger, loggers are thread safe so it can be used from any thread without locking
+     */
     public static final Logger logger = LoggerFactory.getLogger(IExecutor.class);
 
     /**
@@ -29,6 +40,38 @@ public class ExecutorUtils {
         return (float) scores.stream().mapToDouble(x -> x).average().orElse(-1);
     }
 
+    /**
+     * Builds the key which a task's checkpointed worker results are stored under, a checkpoint is only reused by a run with the same key.
+     * <br><br>
+     * Worker indexes only refer to the same workers in a run which builds the same workers from the same files, so the key hashes the detector and its parameters, the candidate pruning floor,
+     * and the ids of the files compared by each worker in order. For workers which are not pairs, the ids of every file are hashed instead.
+     *
+     * @param detector       the task's detector
+     * @param params         the task's parameter mapping
+     * @param candidateFloor candidate pruning floor the workers were built with
+     * @param workers        the workers built for the run
+     * @param files          the files the workers were built from, in the order they were given to the detector
+     * @return the key
+     */
+    public static String checkpointKey(Class<? extends IDetector> detector, Map<String, Float> params, int candidateFloor, IWorkerSource<?> workers, List<ModelDataItem> files) {
+        MessageDigest digest = DiskCache.sha256();
+        digest.update(PairResultCache.hashDetector(detector, params));
+
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        digest.update(buffer.putInt(candidateFloor).putInt(workers.size()).array(), 0, 8);
+        if (workers instanceof IPairWorkerSource<?> pairs) {
+            for (int i = 0; i < pairs.size(); i++) {
+                digest.update(buffer.clear().putLong(pairs.getFile1Data(i).getFile().getPersistentId()).putLong(pairs.getFile2Data(i).getFile().getPersistentId()).array());
+            }
+        } else {
+            for (ModelDataItem file : files) {
+                digest.update(buffer.clear().putLong(file.getFile().getPersistentId()).array(), 0, 8);
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
     /**
      * Populates the adjustables in an object
      *
@@ -46,16 +89,12 @@ public class ExecutorUtils {
                 val = params.get(ref);
 
                 if (isInt && val % 1 != 0) {
-                    synchronized (logger) {
-                        logger.error("Trying to assign a float value to integer adjustable parameter {}", ref);
-                    }
+                    logger.error("Trying to assign a float value to integer adjustable parameter {}", ref);
                     return;
                 }
 
                 if (val > x.getValue()[0].maximumBound() || val < x.getValue()[0].minimumBound()) {
-                    synchronized (logger) {
-                        logger.error("Trying to assign an out of bounds value to adjustable parameter {}", ref);
-                    }
+                    logger.error("Trying to assign an out of bounds value to adjustable parameter {}", ref);
                     return;
                 }
             } else {
@@ -72,9 +111,7 @@ public class ExecutorUtils {
                     f.set(instance, val);
                 }
             } catch (IllegalAccessException | IllegalArgumentException | NullPointerException e) {
-                synchronized (logger) {
-                    logger.error("Could not set adjustable parameter", e);
-                }
+                logger.error("Could not set adjustable parameter", e);
             }
         });
     }
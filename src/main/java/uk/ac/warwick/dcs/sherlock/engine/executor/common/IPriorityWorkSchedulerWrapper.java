@@ -1,5 +1,7 @@
 package uk.ac.warwick.dcs.sherlock.engine.executor.common;
 
+import uk.ac.warwick.dcs.sherlock.engine.executor.remote.RemoteWorkerPool;
+
 import java.util.concurrent.ForkJoinTask;
 
 /**
@@ -22,4 +24,31 @@ public interface IPriorityWorkSchedulerWrapper {
      */
     void submitWork(PriorityWorkTask task);
 
+    /**
+     * Fetches the pool of worker processes pairwise detection can be sent to
+     *
+     * @return the pool, null if detection only runs in this process
+     */
+    default RemoteWorkerPool getRemoteWorkerPool() {
+        return null;
+    }
+
+    /**
+     * Fetches the cache of pair results shared by every job
+     *
+     * @return the cache, null if pair results are not cached
+     */
+    default PairResultCache getPairResultCache() {
+        return null;
+    }
+
+    /**
+     * Fetches the cache of preprocessed lines shared by every job
+     *
+     * @return the cache, null if preprocessed lines are not cached
+     */
+    default PreProcessingCache getPreProcessingCache() {
+        return null;
+    }
+
 }
@@ -0,0 +1,96 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import uk.ac.warwick.dcs.sherlock.api.component.IJob;
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.component.ISubmission;
+import uk.ac.warwick.dcs.sherlock.api.component.ITask;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rough estimate of the peak heap used by a job, used by the executor to decide how many jobs it can run at once.
+ * <br><br>
+ * The estimate is made up of the preprocessed lines held for every file and strategy, a slot and small raw result for every pair of files compared by each task, and the working set of the
+ * detector workers running at once. The constants are deliberately generous, it is better to delay a job than to run out of memory.
+ */
+public class JobMemoryEstimator {
+
+    /**
+     * Fixed overhead for any job
+     */
+    static final long BASE_BYTES = 16L * 1024 * 1024;
+    /**
+     * Heap used by the preprocessed lines of one strategy for each byte of source, see {@link LineStore#getMemoryFootprint()}. Latin-1 text takes a byte a character and each line two ints, which
+     * at 30 bytes a line is about 1.3 bytes for each byte of source. Rounded up for text outside Latin-1, held as UTF-16, and tokenised strategies, whose text can be longer than the source
+     */
+    static final long PREPROCESSED_BYTES_PER_SOURCE_BYTE = 3;
+    /**
+     * Heap used for each pair compared by a task, the pair index, the result slot and a small raw result
+     */
+    static final long BYTES_PER_PAIR = 64;
+    /**
+     * Heap used by a running worker for each byte of the two files it compares
+     */
+    static final long WORKER_BYTES_PER_SOURCE_BYTE = 16;
+
+    /**
+     * Estimates the peak memory use of a job
+     *
+     * @param job         job to estimate
+     * @param parallelism number of workers which may run at once
+     * @return estimated peak use in bytes
+     */
+    public static long estimate(IJob job, int parallelism) {
+        List<ISourceFile> files = job.getWorkspace().getFiles();
+
+        long totalSize = 0;
+        Map<ISubmission, Integer> submissionSizes = new HashMap<>();
+        for (ISourceFile file : files) {
+            totalSize += Math.max(file.getFileSize(), 0);
+            submissionSizes.merge(file.getSubmission(), 1, Integer::sum);
+        }
+
+        int strategies = 0;
+        List<ITask> tasks = job.getTasks();
+        for (ITask task : tasks) {
+            strategies += countStrategies(task);
+        }
+
+        long pairs = (long) files.size() * (files.size() - 1) / 2;
+        for (int count : submissionSizes.values()) {
+            pairs -= (long) count * (count - 1) / 2;
+        }
+
+        long averageFile = files.isEmpty() ? 0 : totalSize / files.size();
+
+        return estimate(totalSize, strategies, pairs * tasks.size(), averageFile, parallelism);
+    }
+
+    /**
+     * Estimates the peak memory use of a job from its sizes
+     *
+     * @param totalSourceBytes total size of the job's source files
+     * @param strategies       number of preprocessing strategies, summed over the tasks
+     * @param pairs            number of pairs compared, summed over the tasks
+     * @param averageFileBytes average size of a source file
+     * @param parallelism      number of workers which may run at once
+     * @return estimated peak use in bytes
+     */
+    static long estimate(long totalSourceBytes, int strategies, long pairs, long averageFileBytes, int parallelism) {
+        return BASE_BYTES + totalSourceBytes * strategies * PREPROCESSED_BYTES_PER_SOURCE_BYTE + pairs * BYTES_PER_PAIR
+                + (long) Math.max(parallelism, 1) * averageFileBytes * 2 * WORKER_BYTES_PER_SOURCE_BYTE;
+    }
+
+    private static int countStrategies(ITask task) {
+        try {
+            Class<? extends IDetector> detector = task.getDetector();
+            return detector != null ? detector.getConstructor().newInstance().getPreProcessors().size() : 1;
+        } catch (Exception e) {
+            return 1;
+        }
+    }
+}
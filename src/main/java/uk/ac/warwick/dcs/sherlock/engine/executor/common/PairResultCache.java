@@ -0,0 +1,212 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import uk.ac.warwick.dcs.sherlock.api.annotation.AdjustableParameterObj;
+import uk.ac.warwick.dcs.sherlock.api.executor.CacheStats;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.Detector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectorWorker;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPairRawResult;
+import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
+
+import java.io.*;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content addressed cache of the raw results of single pairs of files, shared by every job the executor runs, so a pair compared again with the same detector and detector parameters is not
+ * detected again. This covers reruns, cloned workspaces and the same cohort in several workspaces, where the files have different ids but the same contents.
+ * <br><br>
+ * A pair is keyed by the detector, identified by its name and the class files of it and its worker, its parameters and a hash of the preprocessed lines of each file, the order of the files
+ * matters. Results are kept in a {@link DiskCache}, which deletes the
+ * least recently used once the cache is larger than its capacity.
+ * <br><br>
+ * Only empty results and results implementing {@link IPairRawResult} are cached, as a cached result is copied for the files it is used for. If file encryption is enabled each result is encrypted
+ * with a key derived from the same hashes as its name, which cannot be found from the name, so a result can only be read by someone holding both files.
+ */
+public class PairResultCache {
+
+    /**
+     * Bytes counted against the capacity for each result on top of its content, for its file's metadata, as most results are empty
+     */
+    static final long ENTRY_OVERHEAD = DiskCache.ENTRY_OVERHEAD;
+
+    private final DiskCache store;
+
+    /**
+     * Opens the cache, picking up any results stored by an earlier session
+     *
+     * @param directory directory holding the results
+     * @param capacity  maximum size of the results on disk in bytes
+     * @param encrypt   whether results are encrypted
+     * @throws IOException if the directory cannot be created or read
+     */
+    public PairResultCache(Path directory, long capacity, boolean encrypt) throws IOException {
+        this.store = new DiskCache(directory, capacity, encrypt);
+    }
+
+    /**
+     * Hashes the preprocessed lines of a file which a detector compares
+     *
+     * @param item       the preprocessed file
+     * @param strategies names of the detector's preprocessing strategies
+     * @return the hash
+     */
+    public static byte[] hashFile(ModelDataItem item, List<String> strategies) {
+        MessageDigest digest = DiskCache.sha256();
+        for (String strategy : strategies) {
+            DiskCache.update(digest, strategy);
+            LineStore lines = item.getLineStore(strategy);
+            if (lines != null) {
+                for (int i = 0; i < lines.size(); i++) {
+                    DiskCache.update(digest, lines.getLine(i) + ":" + lines.getText(i));
+                }
+            }
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Hashes the detector and detector parameters of a task, the post-processor's parameters do not change its raw results. The detector and its worker are hashed by their class files, so results
+     * of an older version of the detector are not used
+     *
+     * @param detector the task's detector
+     * @param params   the task's parameter mapping
+     * @return the hash
+     */
+    public static byte[] hashDetector(Class<? extends IDetector> detector, Map<String, Float> params) {
+        MessageDigest digest = DiskCache.sha256();
+        DiskCache.updateClass(digest, detector);
+        Class<?> worker = workerClass(detector);
+        if (worker != null) {
+            DiskCache.updateClass(digest, worker);
+        }
+
+        List<AdjustableParameterObj> adjustable = SherlockRegistry.getDetectorAdjustableParameters(detector);
+        if (adjustable != null && params != null) {
+            adjustable.stream().map(AdjustableParameterObj::getReference).sorted().forEach(x -> DiskCache.update(digest, x + "=" + params.get(x)));
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Builds the key of a pair of files
+     *
+     * @param detector hash of the task's detector, from {@link #hashDetector(Class, Map)}
+     * @param file1    hash of the first file, from {@link #hashFile(ModelDataItem, List)}
+     * @param file2    hash of the second file
+     * @return the key
+     */
+    public static Key key(byte[] detector, byte[] file1, byte[] file2) {
+        MessageDigest digest = DiskCache.sha256();
+        digest.update(detector);
+        digest.update(file1);
+        digest.update(file2);
+        byte[] secret = digest.digest();
+
+        return new Key(DiskCache.name(secret), secret);
+    }
+
+    /**
+     * Looks up the result of a pair
+     *
+     * @param key key of the pair
+     * @return the cached result, holding null if the pair found nothing. Null if the pair is not cached
+     */
+    public Hit get(Key key) {
+        byte[] content = this.store.read(key.name, key.secret);
+        if (content == null) {
+            return null;
+        }
+
+        if (content.length == 0) {
+            return new Hit(null);
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(content))) {
+            return new Hit((AbstractModelTaskRawResult) in.readObject());
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // stored by a version which can no longer be read, it is stored again once detected
+            ExecutorUtils.logger.debug("Could not read cached pair result {}", key.name, e);
+            this.store.discard(key.name);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the result of a pair, replacing any result already stored, then removes the least recently used results until the cache is within its capacity
+     *
+     * @param key    key of the pair
+     * @param result the result, null or empty if the pair found nothing
+     * @return whether the result was stored, results which are not empty and do not implement {@link IPairRawResult} are not
+     */
+    public boolean put(Key key, AbstractModelTaskRawResult result) {
+        boolean empty = result == null || result.isEmpty();
+        if (!empty && !(result instanceof IPairRawResult)) {
+            return false;
+        }
+
+        byte[] content = new byte[0];
+        if (!empty) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+                out.writeObject(result);
+            } catch (IOException e) {
+                ExecutorUtils.logger.warn("Could not cache pair result {}", key.name, e);
+                return false;
+            }
+            content = baos.toByteArray();
+        }
+
+        return this.store.write(key.name, key.secret, content);
+    }
+
+    /**
+     * @return snapshot of the cache's statistics
+     */
+    public CacheStats getStats() {
+        return this.store.getStats();
+    }
+
+    /**
+     * Finds the worker class a detector is declared with, from the type argument of its {@link Detector} superclass
+     *
+     * @param detector the detector
+     * @return the worker class, null if it is not declared
+     */
+    static Class<?> workerClass(Class<?> detector) {
+        for (Class<?> clazz = detector; clazz != null && clazz != Detector.class; clazz = clazz.getSuperclass()) {
+            if (clazz.getGenericSuperclass() instanceof ParameterizedType type) {
+                for (Type argument : type.getActualTypeArguments()) {
+                    if (argument instanceof Class<?> worker && DetectorWorker.class.isAssignableFrom(worker)) {
+                        return worker;
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Key of a pair of files, the name its result is stored under and the secret its result is encrypted with
+     */
+    public record Key(String name, byte[] secret) {
+    }
+
+    /**
+     * A result found in the cache
+     *
+     * @param result the result, null if the pair found nothing
+     */
+    public record Hit(AbstractModelTaskRawResult result) {
+    }
+}
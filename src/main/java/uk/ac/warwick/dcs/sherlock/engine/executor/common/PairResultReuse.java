@@ -0,0 +1,125 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import uk.ac.warwick.dcs.sherlock.api.annotation.AdjustableParameterObj;
+import uk.ac.warwick.dcs.sherlock.api.component.IJob;
+import uk.ac.warwick.dcs.sherlock.api.component.ITask;
+import uk.ac.warwick.dcs.sherlock.api.component.WorkStatus;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IPairWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPairRawResult;
+import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
+
+import java.util.*;
+
+/**
+ * Finds the raw results of an earlier job on the same workspace which can be reused by a task, so a job run after submissions are added only compares the pairs involving the new files.
+ * <br><br>
+ * A file's contents never change once stored, a changed file is removed and added again as a new file, so a pair of files compared by an earlier task with the same detector and detector parameters
+ * would give the same raw result again. Pairs of the earlier job with no stored result found nothing, as empty results are not stored, so are reused as empty too.
+ * <br><br>
+ * A pair skipped by candidate pruning has no stored result either, so an earlier task is only used if it compared every pair or ran with the same pruning floor, which skips the same pairs of its
+ * files as the task to be run.
+ */
+public class PairResultReuse {
+
+    /**
+     * Finds the most recent completed task, in another job on the same workspace, with the same detector and detector parameters as a task, whose pairs without a result found nothing
+     *
+     * @param task           the task to be run
+     * @param candidateFloor candidate pruning floor the task's workers were built with
+     * @return the earlier task, null if there is none
+     */
+    public static ITask findPrevious(ITask task, int candidateFloor) {
+        IJob job = task.getJob();
+        List<IJob> jobs = job.getWorkspace().getJobs();
+        if (jobs == null || task.getDetector() == null) {
+            return null;
+        }
+
+        ITask previous = null;
+        for (IJob other : jobs) {
+            if (other.getPersistentId() == job.getPersistentId() || other.getTasks() == null || (previous != null && !other.getTimestamp().isAfter(previous.getJob().getTimestamp()))) {
+                continue;
+            }
+
+            for (ITask otherTask : other.getTasks()) {
+                if (otherTask.getStatus() == WorkStatus.COMPLETE && task.getDetector().equals(otherTask.getDetector()) && sameDetectorParameters(task, otherTask) &&
+                        comparedSamePairs(otherTask.getCandidateFloor(), candidateFloor)) {
+                    previous = otherTask;
+                    break;
+                }
+            }
+        }
+
+        return previous;
+    }
+
+    /**
+     * Matches the workers of a task to the raw results of an earlier task found by {@link #findPrevious(ITask, int)}, so a pair of the earlier job with no result is known to have found nothing
+     *
+     * @param workers         the task's workers
+     * @param previousFiles   ids of the files in the earlier task's job
+     * @param previousResults the stored raw results of the earlier task, null if it found nothing
+     * @return map of worker index to reused raw result, null if the pair found nothing, for every worker whose files were both in the earlier job. Empty if the results do not identify their pairs
+     */
+    public static Map<Integer, AbstractModelTaskRawResult> match(IPairWorkerSource<?> workers, long[] previousFiles, List<AbstractModelTaskRawResult> previousResults) {
+        Map<FilePair, AbstractModelTaskRawResult> byPair = new HashMap<>();
+        if (previousResults != null) {
+            for (AbstractModelTaskRawResult result : previousResults) {
+                if (!(result instanceof IPairRawResult pair)) {
+                    // a result of unknown pair would be lost, so nothing is reused
+                    return new HashMap<>();
+                }
+                byPair.put(FilePair.of(pair.getFile1Id(), pair.getFile2Id()), result);
+            }
+        }
+
+        long[] files = previousFiles.clone();
+        Arrays.sort(files);
+
+        Map<Integer, AbstractModelTaskRawResult> res = new HashMap<>();
+        for (int i = 0; i < workers.size(); i++) {
+            long file1 = workers.getFile1Data(i).getFile().getPersistentId();
+            long file2 = workers.getFile2Data(i).getFile().getPersistentId();
+            if (Arrays.binarySearch(files, file1) >= 0 && Arrays.binarySearch(files, file2) >= 0) {
+                res.put(i, byPair.get(FilePair.of(file1, file2)));
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Whether every pair of an earlier task, which is also a worker of the task to be run, was compared by the earlier task
+     *
+     * @param previousFloor  candidate pruning floor of the earlier task, -1 if it is not known
+     * @param candidateFloor candidate pruning floor of the task to be run
+     */
+    static boolean comparedSamePairs(int previousFloor, int candidateFloor) {
+        return previousFloor == 0 || (previousFloor > 0 && previousFloor == candidateFloor);
+    }
+
+    /**
+     * Only the detector's parameters change its raw results, the post-processor's parameters may differ
+     */
+    private static boolean sameDetectorParameters(ITask task, ITask other) {
+        List<AdjustableParameterObj> params = SherlockRegistry.getDetectorAdjustableParameters(task.getDetector());
+        if (params == null) {
+            return true;
+        }
+
+        Map<String, Float> mapping = task.getParameterMapping() != null ? task.getParameterMapping() : Collections.emptyMap();
+        Map<String, Float> otherMapping = other.getParameterMapping() != null ? other.getParameterMapping() : Collections.emptyMap();
+        return params.stream().allMatch(x -> Objects.equals(mapping.get(x.getReference()), otherMapping.get(x.getReference())));
+    }
+
+    /**
+     * Unordered pair of file ids
+     */
+    private record FilePair(long low, long high) {
+
+        static FilePair of(long file1, long file2) {
+            return new FilePair(Math.min(file1, file2), Math.max(file1, file2));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import uk.ac.warwick.dcs.sherlock.api.executor.CacheStats;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content addressed cache of the preprocessed lines of single files, shared by every job the executor runs, so a file preprocessed again with the same strategy is not lexed and stringified
+ * again. Stored files never change once uploaded, so this covers reruns of a workspace and the same file in several workspaces.
+ * <br><br>
+ * The lines of a strategy are keyed by the stored hash of the file's contents, the language, and the version of the strategy's processor chain: its lexer, preprocessors and stringifier, each
+ * identified by its name and a hash of its class file, so a rebuilt module does not reuse lines from the old one. Lines are stored deflated in a compact binary form in a {@link DiskCache}, which
+ * deletes the least recently used once the cache is larger than its capacity. If file encryption is enabled each entry is encrypted with a key derived from the file's hash, as the stored files are.
+ */
+public class PreProcessingCache {
+
+    /**
+     * Version of the binary form, part of every key so a change to it does not read old entries
+     */
+    private static final int FORMAT = 1;
+
+    private final DiskCache store;
+
+    /**
+     * Opens the cache, picking up any lines stored by an earlier session
+     *
+     * @param directory directory holding the lines
+     * @param capacity  maximum size of the lines on disk in bytes
+     * @param encrypt   whether lines are encrypted
+     * @throws IOException if the directory cannot be created or read
+     */
+    public PreProcessingCache(Path directory, long capacity, boolean encrypt) throws IOException {
+        this.store = new DiskCache(directory, capacity, encrypt);
+    }
+
+    /**
+     * Hashes the processor chain of a strategy
+     *
+     * @param lexer         the lexer class
+     * @param preProcessors the preprocessor classes, in order
+     * @param stringifier   the stringifier class, null for the standard stringifiers
+     * @param tokenised     whether the standard tokeniser is used rather than the standard stringifier
+     * @return the hash
+     */
+    public static byte[] hashStrategy(Class<?> lexer, List<? extends Class<?>> preProcessors, Class<?> stringifier, boolean tokenised) {
+        MessageDigest digest = DiskCache.sha256();
+        DiskCache.update(digest, String.valueOf(FORMAT));
+        DiskCache.updateClass(digest, lexer);
+        for (Class<?> preProcessor : preProcessors) {
+            DiskCache.updateClass(digest, preProcessor);
+        }
+        DiskCache.update(digest, stringifier != null ? "" : String.valueOf(tokenised));
+        if (stringifier != null) {
+            DiskCache.updateClass(digest, stringifier);
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Builds the key of the lines of a file
+     *
+     * @param fileHash hash of the file's contents
+     * @param language language the file is preprocessed as
+     * @param strategy hash of the strategy, from {@link #hashStrategy(Class, List, Class, boolean)}
+     * @return the key
+     */
+    public static Key key(String fileHash, String language, byte[] strategy) {
+        MessageDigest digest = DiskCache.sha256();
+        DiskCache.update(digest, fileHash);
+        DiskCache.update(digest, String.valueOf(language));
+        digest.update(strategy);
+        byte[] secret = digest.digest();
+
+        return new Key(DiskCache.name(secret), secret);
+    }
+
+    /**
+     * Looks up the lines of a file
+     *
+     * @param key key of the file and strategy
+     * @return store of the cached lines, null if they are not cached
+     */
+    public LineStore get(Key key) {
+        byte[] content = this.store.read(key.name, key.secret);
+        if (content == null) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(content)))) {
+            int count = in.readInt();
+            LineStore.Builder lines = new LineStore.Builder(Math.min(count, 1024), content.length);
+            for (int i = 0; i < count; i++) {
+                int index = in.readInt();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                lines.add(index, new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            return lines.build();
+        } catch (IOException | NegativeArraySizeException e) {
+            ExecutorUtils.logger.debug("Could not read cached lines {}", key.name, e);
+            this.store.discard(key.name);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the lines of a file, replacing any lines already stored, then removes the least recently used lines until the cache is within its capacity
+     *
+     * @param key   key of the file and strategy
+     * @param lines the preprocessed lines
+     * @return whether the lines were stored
+     */
+    public boolean put(Key key, LineStore lines) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(baos))) {
+            out.writeInt(lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                byte[] bytes = lines.getString(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(lines.getLine(i));
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            ExecutorUtils.logger.warn("Could not cache lines {}", key.name, e);
+            return false;
+        }
+
+        return this.store.write(key.name, key.secret, baos.toByteArray());
+    }
+
+    /**
+     * @return snapshot of the cache's statistics
+     */
+    public CacheStats getStats() {
+        return this.store.getStats();
+    }
+
+    /**
+     * Key of the lines of a file, the name they are stored under and the secret they are encrypted with
+     */
+    public record Key(String name, byte[] secret) {
+    }
+}
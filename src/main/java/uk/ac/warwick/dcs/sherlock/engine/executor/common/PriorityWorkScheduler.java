@@ -1,55 +1,354 @@
 package uk.ac.warwick.dcs.sherlock.engine.executor.common;
 
-import java.util.Comparator;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import uk.ac.warwick.dcs.sherlock.api.executor.ExecutorStats;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Scheduler which does work in priority order
+ * <br><br>
+ * Each priority level has its own fork join pool, owned by the scheduler rather than using the common pool, and several top level actions run at once, up to a bound for each level. The pools share a
+ * fixed number of leaf permits, equal to the configured parallelism, which leaf tasks take with {@link #enterLeaf()} while they do their work. When permits are contended the waiting leaves of the
+ * highest priority are let in first, so a high priority action is not held up behind the remaining work of a large lower priority action, it only waits for the leaves already running to finish.
+ * <br><br>
+ * The parallelism bounds the work running at once across all the levels, but the size of each pool is per level: a level's pool starts up to the parallelism in threads, so it can take every permit
+ * when the other levels are idle, and has threads of its own to queue for permits when they are busy. A fork join pool cannot take new work while all its threads are busy, so a single pool could not
+ * start a higher priority action until the lower priority leaves drained. Threads are started on demand and retire once idle, so an unused level holds none. A thread waiting for a permit blocks
+ * through a {@link ForkJoinPool.ManagedBlocker}, and the pools never add threads beyond their size to make up for it.
  */
 public class PriorityWorkScheduler {
 
-    private final PriorityBlockingQueue<PriorityWorkTask> priorityQueue;
-    private final ForkJoinPool priorityWorkForkPool;
-    private final ExecutorService priorityWorkScheduler;
+    private static final Priority[] levels = Priority.values();
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final ForkJoinPool[] pools;
+    private final int parallelism;
+    private final int actionsPerLevel;
+
+    /**
+     * Dispatch state, guarded by the queues
+     */
+    private final ArrayDeque<PriorityWorkTask>[] queues;
+    private final int[] runningActions;
+    private final long[] dispatchedCount;
+    private final long[] totalLatency;
+    private final long[] maxLatency;
+
+    /**
+     * Leaf permit state, guarded by the waiting leaves
+     */
+    private final int[] waitingLeaves;
+    private int usedPermits;
 
     public PriorityWorkScheduler() {
-        this(10);
+        this(Runtime.getRuntime().availableProcessors(), false, "Sherlock-Worker", 0);
     }
 
-    public PriorityWorkScheduler(Integer queueSize) {
-        this.priorityWorkForkPool = ForkJoinPool.commonPool();
-        this.priorityWorkScheduler = Executors.newSingleThreadExecutor();
+    /**
+     * Creates a scheduler with its own pools
+     *
+     * @param parallelism     number of leaf tasks which may run at once, and the maximum number of threads in each level's pool
+     * @param asyncMode       use FIFO ordering for forked tasks which are never joined, rather than the default LIFO
+     * @param threadName      prefix for the names of the worker threads
+     * @param actionsPerLevel maximum number of top level actions running at once for each priority level, 0 uses the parallelism
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityWorkScheduler(int parallelism, boolean asyncMode, String threadName, int actionsPerLevel) {
+        this.parallelism = Math.max(parallelism, 1);
+        this.actionsPerLevel = actionsPerLevel > 0 ? actionsPerLevel : this.parallelism;
 
-        this.priorityQueue = new PriorityBlockingQueue<>(queueSize, Comparator.comparing(PriorityWorkTask::getPriority));
+        this.pools = new ForkJoinPool[levels.length];
+        this.queues = new ArrayDeque[levels.length];
+        for (Priority level : levels) {
+            this.pools[level.ordinal()] = new ForkJoinPool(this.parallelism, new PriorityWorkerThreadFactory(this, level, threadName + "-" + level.name()), (t, e) -> {
+                ExecutorUtils.logger.error("Uncaught exception in worker thread {}", t.getName(), e);
+            }, asyncMode, 0, this.parallelism, 1, pool -> true, IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            this.queues[level.ordinal()] = new ArrayDeque<>();
+        }
 
-        this.priorityWorkScheduler.execute(() -> {
-            while (true) {
-                try {
-                    PriorityWorkTask nextTask = this.priorityQueue.take();
+        this.runningActions = new int[levels.length];
+        this.dispatchedCount = new long[levels.length];
+        this.totalLatency = new long[levels.length];
+        this.maxLatency = new long[levels.length];
 
-                    synchronized (nextTask) {
-                        this.priorityWorkForkPool.execute(nextTask.getTopAction());
-                        nextTask.getTopAction().join();
-                        nextTask.notifyAll();
-                    }
+        this.waitingLeaves = new int[levels.length];
+        this.usedPermits = 0;
+    }
 
-                } catch (InterruptedException e) {
-                    break;
-                }
+    /**
+     * Waits for a leaf permit, called by leaf tasks before doing their work and closed once it is done.
+     * <br><br>
+     * Only work running on a scheduler's pools takes a permit, for other threads, or if the thread already holds a permit, the returned permit does nothing
+     *
+     * @return the permit, to be closed when the leaf work is finished
+     */
+    public static LeafPermit enterLeaf() {
+        if (Thread.currentThread() instanceof PriorityWorkerThread thread && !thread.holdingPermit) {
+            if (thread.scheduler.acquireLeafPermit(thread.priority)) {
+                thread.holdingPermit = true;
+                return new LeafPermit(thread);
+            }
+        }
+
+        return new LeafPermit(null);
+    }
+
+    private boolean acquireLeafPermit(Priority priority) {
+        synchronized (this.waitingLeaves) {
+            this.waitingLeaves[priority.ordinal()]++;
+        }
+
+        try {
+            ForkJoinPool.managedBlock(new LeafPermitBlocker(priority));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            synchronized (this.waitingLeaves) {
+                this.waitingLeaves[priority.ordinal()]--;
+                this.waitingLeaves.notifyAll(); // lower priority leaves may have been held back only by this one
+            }
+        }
+    }
+
+    /**
+     * Takes a permit if one is free and no higher priority leaves are waiting. Must hold the waiting leaves
+     */
+    private boolean tryAcquireLeafPermit(Priority priority) {
+        if (this.usedPermits >= this.parallelism || this.higherLeavesWaiting(priority)) {
+            return false;
+        }
+
+        this.usedPermits++;
+        return true;
+    }
+
+    private boolean higherLeavesWaiting(Priority priority) {
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (this.waitingLeaves[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void releaseLeafPermit() {
+        synchronized (this.waitingLeaves) {
+            this.usedPermits--;
+            this.waitingLeaves.notifyAll();
+        }
+    }
+
+    /**
+     * Starts queued actions, highest priority first, while their level is below its bound. Must hold the queues
+     */
+    private void dispatch() {
+        long now = System.nanoTime();
+        for (Priority level : levels) {
+            int l = level.ordinal();
+            while (this.runningActions[l] < this.actionsPerLevel && !this.queues[l].isEmpty()) {
+                PriorityWorkTask task = this.queues[l].poll();
+
+                long latency = now - task.getQueuedTime();
+                this.dispatchedCount[l]++;
+                this.totalLatency[l] += latency;
+                this.maxLatency[l] = Math.max(this.maxLatency[l], latency);
+
+                this.runningActions[l]++;
+                this.pools[l].execute(new TopActionRunner(task));
+            }
+        }
+    }
+
+    private void finished(PriorityWorkTask task) {
+        synchronized (this.queues) {
+            this.runningActions[task.getPriority().ordinal()]--;
+            this.dispatch();
+        }
+
+        synchronized (task) {
+            task.setDone();
+            task.notifyAll();
+        }
+    }
+
+    /**
+     * @return snapshot of the pool state, summed across the pools of the priority levels, with the size of each level's pool
+     */
+    public ExecutorStats getStats() {
+        int poolSize = 0;
+        int active = 0;
+        int running = 0;
+        long steals = 0;
+        long queuedTasks = 0;
+        int queuedSubmissions = 0;
+        Map<String, Integer> levelPoolSizes = new LinkedHashMap<>();
+        for (Priority level : levels) {
+            ForkJoinPool pool = this.pools[level.ordinal()];
+            levelPoolSizes.put(level.name(), pool.getPoolSize());
+            poolSize += pool.getPoolSize();
+            active += pool.getActiveThreadCount();
+            running += pool.getRunningThreadCount();
+            steals += pool.getStealCount();
+            queuedTasks += pool.getQueuedTaskCount();
+            queuedSubmissions += pool.getQueuedSubmissionCount();
+        }
+
+        Map<String, Duration> meanLatency = new LinkedHashMap<>();
+        Map<String, Duration> maxLatency = new LinkedHashMap<>();
+        synchronized (this.queues) {
+            for (Priority level : levels) {
+                int l = level.ordinal();
+                queuedSubmissions += this.queues[l].size();
+                meanLatency.put(level.name(), Duration.ofNanos(this.dispatchedCount[l] > 0 ? this.totalLatency[l] / this.dispatchedCount[l] : 0));
+                maxLatency.put(level.name(), Duration.ofNanos(this.maxLatency[l]));
             }
-        });
+        }
+
+        return new ExecutorStats(this.parallelism, poolSize, levelPoolSizes, active, running, steals, queuedTasks, queuedSubmissions, meanLatency, maxLatency);
     }
 
     public void scheduleJob(PriorityWorkTask work) {
-        priorityQueue.add(work);
+        synchronized (this.queues) {
+            work.setQueuedTime(System.nanoTime());
+            this.queues[work.getPriority().ordinal()].add(work);
+            this.dispatch();
+        }
     }
 
     public void shutdown() {
-        this.priorityWorkForkPool.shutdown();
-        this.priorityWorkScheduler.shutdownNow();
+        Arrays.stream(this.pools).forEach(ForkJoinPool::shutdownNow);
+    }
+
+    /**
+     * Permit held by a leaf task while it works, see {@link #enterLeaf()}
+     */
+    public static class LeafPermit implements AutoCloseable {
+
+        private PriorityWorkerThread holder;
+
+        private LeafPermit(PriorityWorkerThread holder) {
+            this.holder = holder;
+        }
+
+        @Override
+        public void close() {
+            if (this.holder != null) {
+                this.holder.holdingPermit = false;
+                this.holder.scheduler.releaseLeafPermit();
+                this.holder = null;
+            }
+        }
+    }
+
+    /**
+     * Waits for a leaf permit, letting the pool know the thread is blocked
+     */
+    private class LeafPermitBlocker implements ForkJoinPool.ManagedBlocker {
+
+        private final Priority priority;
+        private boolean acquired;
+
+        LeafPermitBlocker(Priority priority) {
+            this.priority = priority;
+            this.acquired = false;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            synchronized (waitingLeaves) {
+                while (!this.acquired) {
+                    this.acquired = tryAcquireLeafPermit(this.priority);
+                    if (!this.acquired) {
+                        waitingLeaves.wait();
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            synchronized (waitingLeaves) {
+                if (!this.acquired) {
+                    this.acquired = tryAcquireLeafPermit(this.priority);
+                }
+                return this.acquired;
+            }
+        }
+    }
+
+    /**
+     * Runs a top level action on its level's pool, then releases its slot and wakes anything waiting on the task
+     */
+    private class TopActionRunner extends RecursiveAction {
+
+        private final PriorityWorkTask task;
+
+        TopActionRunner(PriorityWorkTask task) {
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                this.task.getTopAction().invoke();
+            } catch (Exception e) {
+                ExecutorUtils.logger.error("Error running {} priority work", this.task.getPriority(), e);
+            } finally {
+                finished(this.task);
+            }
+        }
     }
 
+    /**
+     * Worker thread which knows the scheduler and priority level of the pool it belongs to
+     */
+    private static class PriorityWorkerThread extends ForkJoinWorkerThread {
+
+        private final PriorityWorkScheduler scheduler;
+        private final Priority priority;
+        private boolean holdingPermit;
+
+        PriorityWorkerThread(ForkJoinPool pool, PriorityWorkScheduler scheduler, Priority priority) {
+            super(pool);
+            this.scheduler = scheduler;
+            this.priority = priority;
+            this.holdingPermit = false;
+        }
+    }
+
+    /**
+     * Names worker threads with a prefix and a counter, so they can be told apart in thread dumps and logs
+     */
+    private static class PriorityWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final PriorityWorkScheduler scheduler;
+        private final Priority priority;
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        PriorityWorkerThreadFactory(PriorityWorkScheduler scheduler, Priority priority, String prefix) {
+            this.scheduler = scheduler;
+            this.priority = priority;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = new PriorityWorkerThread(pool, this.scheduler, this.priority);
+            thread.setName(this.prefix + "-" + this.count.incrementAndGet());
+            return thread;
+        }
+    }
 }
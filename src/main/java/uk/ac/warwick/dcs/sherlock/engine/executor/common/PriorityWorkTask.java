@@ -10,9 +10,13 @@ public class PriorityWorkTask {
     private final ForkJoinTask topAction;
     private final Priority priority;
 
+    private long queuedTime;
+    private volatile boolean done;
+
     public PriorityWorkTask(ForkJoinTask topAction, Priority priority) {
         this.topAction = topAction;
         this.priority = priority;
+        this.done = false;
     }
 
     Priority getPriority() {
@@ -22,4 +26,23 @@ public class PriorityWorkTask {
     ForkJoinTask getTopAction() {
         return topAction;
     }
+
+    long getQueuedTime() {
+        return queuedTime;
+    }
+
+    void setQueuedTime(long queuedTime) {
+        this.queuedTime = queuedTime;
+    }
+
+    /**
+     * @return whether the top action has finished, set before waiters on this object are notified
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    void setDone() {
+        this.done = true;
+    }
 }
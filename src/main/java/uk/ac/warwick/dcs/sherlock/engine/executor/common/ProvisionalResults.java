@@ -0,0 +1,151 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import uk.ac.warwick.dcs.sherlock.api.component.*;
+import uk.ac.warwick.dcs.sherlock.api.executor.ProvisionalMatch;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPostProcessor;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.ModelTaskProcessedResults;
+import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provisional scores for the pairs of submissions in a running job, built from the raw results of workers as they finish.
+ * <br><br>
+ * Raw results are buffered for each task, and each full batch is post-processed and scored on its own. Each raw result of a pairwise detector holds everything the detector found for one pair of
+ * files, so a batch gives the same groups for its pairs as the final post-processing, only the scoring is simplified: a pair of files scores the largest share of either file covered by the groups
+ * they share, in any task, and a pair of submissions takes the best score of its file pairs.
+ * <br><br>
+ * Nothing here is stored, the scores are only published through the job's status while it runs and are superseded by the job's final results.
+ */
+public class ProvisionalResults {
+
+    private final List<ISourceFile> files;
+    private final int batchSize;
+
+    /**
+     * Raw results waiting to be processed for each task, guarded by the map
+     */
+    private final Map<ITask, List<AbstractModelTaskRawResult>> buffers;
+
+    private final Map<SubmissionPair, Float> scores;
+    private final Map<Long, String> submissionNames;
+
+    /**
+     * @param files     the job's files
+     * @param batchSize number of raw results to process at once
+     */
+    public ProvisionalResults(List<ISourceFile> files, int batchSize) {
+        this.files = files;
+        this.batchSize = Math.max(batchSize, 1);
+        this.buffers = new HashMap<>();
+        this.scores = new ConcurrentHashMap<>();
+        this.submissionNames = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds the raw results of finished workers, processing a batch if enough are waiting. May be called from several threads at once
+     *
+     * @param task    task the workers belong to
+     * @param results raw results, null or empty results are ignored
+     */
+    public void addAll(ITask task, Collection<AbstractModelTaskRawResult> results) {
+        List<AbstractModelTaskRawResult> batch = null;
+        synchronized (this.buffers) {
+            List<AbstractModelTaskRawResult> buffer = this.buffers.computeIfAbsent(task, k -> new ArrayList<>());
+            for (AbstractModelTaskRawResult result : results) {
+                if (result != null && !result.isEmpty()) {
+                    buffer.add(result);
+                }
+            }
+
+            if (buffer.size() >= this.batchSize) {
+                batch = buffer;
+                this.buffers.remove(task);
+            }
+        }
+
+        if (batch != null) {
+            this.process(task, batch);
+        }
+    }
+
+    /**
+     * Processes any raw results still waiting for a task, called once the task has finished detecting
+     *
+     * @param task the task
+     */
+    public void flush(ITask task) {
+        List<AbstractModelTaskRawResult> batch;
+        synchronized (this.buffers) {
+            batch = this.buffers.remove(task);
+        }
+
+        if (batch != null && !batch.isEmpty()) {
+            this.process(task, batch);
+        }
+    }
+
+    /**
+     * @param limit maximum number of pairs to return
+     * @return the best scoring pairs of submissions so far, in descending score order
+     */
+    public List<ProvisionalMatch> getTopMatches(int limit) {
+        return this.scores.entrySet().stream().sorted(Map.Entry.<SubmissionPair, Float>comparingByValue().reversed()).limit(Math.max(limit, 0))
+                .map(x -> new ProvisionalMatch(x.getKey().id1, this.submissionNames.get(x.getKey().id1), x.getKey().id2, this.submissionNames.get(x.getKey().id2), x.getValue()))
+                .toList();
+    }
+
+    private void process(ITask task, List<AbstractModelTaskRawResult> batch) {
+        try {
+            IPostProcessor postProcessor = SherlockRegistry.getPostProcessorInstance(batch.getFirst().getClass());
+            if (postProcessor == null) {
+                return;
+            }
+
+            ExecutorUtils.processAdjustableParameters(postProcessor, task.getParameterMapping());
+            this.score(postProcessor.processResults(this.files, batch));
+        } catch (Exception e) {
+            // provisional results are best effort, the job's final results are unaffected
+            ExecutorUtils.logger.warn("Could not build provisional results for task {}", task.getPersistentId(), e);
+        }
+    }
+
+    private void score(ModelTaskProcessedResults results) {
+        // share of each file covered by the groups it shares with each other file, keyed first file then second file
+        Map<ISourceFile, Map<ISourceFile, Float>> coverage = new HashMap<>();
+        for (ICodeBlockGroup group : results.getGroups()) {
+            List<? extends ICodeBlock> blocks = group.getCodeBlocks();
+            for (ICodeBlock block : blocks) {
+                int total = results.getFileTotal(block.getFile());
+                if (total <= 0) {
+                    continue;
+                }
+
+                float size = block.getLineNumbers().stream().mapToInt(y -> y.getValue() - y.getKey() + 1).sum();
+                float covered = block.getBlockScore() * (size / total);
+                for (ICodeBlock other : blocks) {
+                    if (other.getFile() != block.getFile()) {
+                        coverage.computeIfAbsent(block.getFile(), k -> new HashMap<>()).merge(other.getFile(), covered, Float::sum);
+                    }
+                }
+            }
+        }
+
+        coverage.forEach((file, others) -> others.forEach((other, covered) -> {
+            ISubmission s1 = file.getSubmission();
+            ISubmission s2 = other.getSubmission();
+            if (s1 == null || s2 == null || s1.getId() == s2.getId()) {
+                return;
+            }
+
+            this.submissionNames.putIfAbsent(s1.getId(), s1.getName());
+            this.submissionNames.putIfAbsent(s2.getId(), s2.getName());
+            this.scores.merge(new SubmissionPair(Math.min(s1.getId(), s2.getId()), Math.max(s1.getId(), s2.getId())), Math.min(covered, 1), Math::max);
+        }));
+    }
+
+    private record SubmissionPair(long id1, long id2) {
+    }
+}
@@ -0,0 +1,58 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.pool;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the threads which run the task calls of each phase of a job (build, detect, post-process). The scope is opened when the job starts and closed when it ends, however it ends, so the threads
+ * never outlive the job.
+ * <br><br>
+ * Each phase is run with {@link #invokeAll(Collection)}, which only returns once every call of the phase has finished, so no call from one phase can overlap the next.
+ */
+class JobPhaseScope implements AutoCloseable {
+
+    private final ExecutorService exServ;
+
+    /**
+     * @param jobId   id of the job, used to name the threads
+     * @param threads number of calls which may run at once, one for each task of the job
+     */
+    JobPhaseScope(long jobId, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.exServ = Executors.newFixedThreadPool(Math.max(threads, 1), r -> {
+            Thread thread = new Thread(r, "Sherlock-Job-" + jobId + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a phase, blocking until all its calls have finished
+     *
+     * @param calls calls of the phase
+     * @param <T>   result type
+     * @return futures holding the result of each call, in the same order as the calls
+     * @throws InterruptedException if interrupted while waiting, unfinished calls are cancelled
+     */
+    <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> calls) throws InterruptedException {
+        return this.exServ.invokeAll(calls);
+    }
+
+    /**
+     * Stops the threads of the scope, waiting a short time for any call still running to finish before interrupting it
+     */
+    @Override
+    public void close() {
+        this.exServ.shutdown();
+        try {
+            if (!this.exServ.awaitTermination(1, TimeUnit.MINUTES)) {
+                this.exServ.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.exServ.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package uk.ac.warwick.dcs.sherlock.engine.executor.pool;
 
 import uk.ac.warwick.dcs.sherlock.api.component.*;
-import uk.ac.warwick.dcs.sherlock.api.exception.UnknownDetectionTypeException;
-import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectionType;
 import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.ModelTaskProcessedResults;
 import uk.ac.warwick.dcs.sherlock.api.util.ITuple;
 import uk.ac.warwick.dcs.sherlock.api.util.Tuple;
@@ -11,12 +9,12 @@ import uk.ac.warwick.dcs.sherlock.engine.executor.JobStatus;
 import uk.ac.warwick.dcs.sherlock.engine.executor.common.ExecutorUtils;
 import uk.ac.warwick.dcs.sherlock.engine.executor.common.IPriorityWorkSchedulerWrapper;
 import uk.ac.warwick.dcs.sherlock.engine.executor.common.Priority;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.ProvisionalResults;
 import uk.ac.warwick.dcs.sherlock.engine.executor.work.WorkPreProcessFiles;
+import uk.ac.warwick.dcs.sherlock.engine.executor.work.WorkScoreFiles;
 
-import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -53,8 +51,19 @@ public class PoolExecutorJob implements Runnable {
     @Override
     public void run() {
         List<PoolExecutorTask> tasks = job.getTasks().stream().map(x -> new PoolExecutorTask(this.status, scheduler, x, job.getWorkspace().getLanguage())).toList();
-        ExecutorService exServ = Executors.newFixedThreadPool(tasks.size());
 
+        try (JobPhaseScope scope = new JobPhaseScope(this.getId(), tasks.size())) {
+            this.runPhases(tasks, scope);
+        }
+    }
+
+    /**
+     * Runs the phases of the job in order, the task calls of each phase are run on the scope's threads
+     *
+     * @param tasks the job's tasks
+     * @param scope scope owning the threads for the task calls
+     */
+    private void runPhases(List<PoolExecutorTask> tasks, JobPhaseScope scope) {
         // is job not already run, if so skip and only postprocess
         if (!(job.getStatus() == WorkStatus.COMPLETE || job.getStatus() == WorkStatus.REGEN_RESULTS) && !tasks.isEmpty()) {
             job.setStatus(WorkStatus.ACTIVE);
@@ -63,28 +72,29 @@ public class PoolExecutorJob implements Runnable {
 
             List<PoolExecutorTask> detTasks = tasks.stream().filter(x -> x.getStatus() != WorkStatus.COMPLETE).collect(Collectors.toList());
 
+            // tasks completed by an earlier, interrupted, run of the job keep their stored raw results and only need post-processing
+            tasks.stream().filter(x -> x.getStatus() == WorkStatus.COMPLETE).forEach(x -> x.callType = 3);
+
             if (detTasks.isEmpty()) {
-                synchronized (ExecutorUtils.logger) {
-                    ExecutorUtils.logger.error("Could not generate tasks for job {}, exiting", this.job.getPersistentId());
-                }
+                ExecutorUtils.logger.error("Could not generate tasks for job {}, exiting", this.job.getPersistentId());
                 job.setStatus(WorkStatus.INTERRUPTED);
                 return;
             }
 
-            RecursiveAction preProcess = new WorkPreProcessFiles(new ArrayList<>(detTasks), this.job.getWorkspace().getFiles());
-            this.scheduler.invokeWork(preProcess, Priority.DEFAULT);
+            RecursiveAction preProcess = new WorkPreProcessFiles(new ArrayList<>(detTasks), this.job.getWorkspace().getFiles(), this.scheduler.getPreProcessingCache());
+            this.scheduler.invokeWork(preProcess, this.status.getPriority());
+
+            if (this.stopIfCancelled(tasks)) {
+                return;
+            }
 
             // Check that preprocessing went okay
             detTasks.stream().filter(x -> x.dataItems.isEmpty()).peek(x -> {
-                synchronized (ExecutorUtils.logger) {
-                    ExecutorUtils.logger.error("PreProcessing output for detector {} is empty, this detector will be ignored.", x.getDetector().getName());
-                }
+                ExecutorUtils.logger.error("PreProcessing output for detector {} is empty, this detector will be ignored.", x.getDetector().getName());
             }).forEach(detTasks::remove);
 
             if (detTasks.isEmpty()) {
-                synchronized (ExecutorUtils.logger) {
-                    ExecutorUtils.logger.error("No detectors with valid preprocessing outputs for job {}, exiting", this.job.getPersistentId());
-                }
+                ExecutorUtils.logger.error("No detectors with valid preprocessing outputs for job {}, exiting", this.job.getPersistentId());
                 job.setStatus(WorkStatus.INTERRUPTED);
                 return;
             }
@@ -93,22 +103,35 @@ public class PoolExecutorJob implements Runnable {
             this.status.calculateProgressIncrement(detTasks.size());
 
             try {
-                exServ.invokeAll(detTasks); // build tasks
+                scope.invokeAll(detTasks); // build tasks
             } catch (InterruptedException e) {
                 job.setStatus(WorkStatus.INTERRUPTED);
                 return;
             }
 
+            if (this.stopIfCancelled(tasks)) {
+                return;
+            }
+
             this.status.nextStep();
             this.status.calculateProgressIncrement(detTasks.stream().mapToInt(PoolExecutorTask::getWorkerSize).sum());
 
+            // markers can see the best matches found so far while detection runs, until the final results replace them
+            if (SherlockEngine.configuration.getProvisionalResultBatchSize() > 0) {
+                this.status.setProvisionalResults(new ProvisionalResults(this.job.getWorkspace().getFiles(), SherlockEngine.configuration.getProvisionalResultBatchSize()));
+            }
+
             try {
-                exServ.invokeAll(detTasks); // run tasks
+                scope.invokeAll(detTasks); // run tasks
             } catch (InterruptedException e) {
                 job.setStatus(WorkStatus.INTERRUPTED);
                 return;
             }
 
+            if (this.stopIfCancelled(tasks)) {
+                return;
+            }
+
             job.setStatus(WorkStatus.REGEN_RESULTS);
         } else {
             job.setStatus(WorkStatus.ACTIVE);
@@ -122,7 +145,7 @@ public class PoolExecutorJob implements Runnable {
         this.status.calculateProgressIncrement(postTasks.size());
 
         try {
-            List<Future<ModelTaskProcessedResults>> tmp = exServ.invokeAll(postTasks);
+            List<Future<ModelTaskProcessedResults>> tmp = scope.invokeAll(postTasks);
             for (int i = 0; i < postTasks.size(); i++) {
                 ModelTaskProcessedResults m = tmp.get(i).get();
                 if (m != null && !m.getGroups().isEmpty()) {
@@ -133,6 +156,10 @@ public class PoolExecutorJob implements Runnable {
             return;
         }
 
+        if (this.stopIfCancelled(tasks)) {
+            return;
+        }
+
         // score
         if (!results.isEmpty()) {
             this.status.nextStep();
@@ -141,104 +168,46 @@ public class PoolExecutorJob implements Runnable {
             List<ICodeBlockGroup> allGroups = results.stream().flatMap(f -> f.getValue().getGroups().stream()).collect(Collectors.toList());
             SherlockEngine.storage.storeCodeBlockGroups(allGroups);
 
-            // TODO: thread scoring loops
+            // create all the result objects up front, so the scorer does not touch storage and they can be written in one batch
             IResultJob jobRes = this.job.createNewResult();
-            for (ISourceFile file : this.job.getWorkspace().getFiles()) {
-                IResultFile fileRes = jobRes.addFile(file);
-                List<ITuple<ICodeBlockGroup, Float>> overallGroupScores = new LinkedList<>();
-
-                for (ITuple<ITask, ModelTaskProcessedResults> t : results) {
-                    try {
-                        List<ICodeBlockGroup> groupsContainingFile = t.getValue().getGroups(file);
-                        int fileTotal = t.getValue().getFileTotal(file);
-
-                        // Construct block scores weighted against the whole file, by default uses file line count, but can be set to custom totals (eg. variable counts)
-                        AtomicReference<Float> fullSize = new AtomicReference<>((float) 0);
-                        List<ITuple<ICodeBlockGroup, Float>> groupScores = groupsContainingFile.stream().map(x -> {
-                            ICodeBlock b = x.getCodeBlock(file);
-                            float size = b.getLineNumbers().stream().mapToInt(y -> y.getValue() - y.getKey() + 1).sum();
-                            fullSize.updateAndGet(v -> v + size);
-                            return new Tuple<>(x, b.getBlockScore() * (size / fileTotal));
-                        }).collect(Collectors.toList());
-
-                        // Normalise against full size to counteract overlaps
-                        if (fullSize.get() > fileTotal) {
-                            float factor = fullSize.get() / fileTotal;
-                            groupScores.forEach(x -> x.setValue(x.getValue() / factor));
-                        }
-                        this.status.incrementProgress();
-
-                        IResultTask taskRes = fileRes.addTaskResult(t.getKey());
-                        taskRes.addContainingBlock(groupsContainingFile);
-
-                        // calculate and store the scores from the group scores, uses weightings
-                        calculateScoreForBlockList(file, groupScores, taskRes, taskRes.getClass().getDeclaredMethod("setTaskScore", float.class), taskRes.getClass().getDeclaredMethod("addFileScore", ISourceFile.class, float.class));
-                        overallGroupScores.addAll(groupScores);
-
-                        this.status.incrementProgress();
-                    } catch (Exception e) {
-                        synchronized (ExecutorUtils.logger) {
-                            ExecutorUtils.logger.error("Scorer error: ", e);
-                        }
-                    }
-                }
+            List<IResultFile> fileResults = jobRes.addFiles(this.job.getWorkspace().getFiles());
 
-                try {
-                    calculateScoreForBlockList(file, overallGroupScores, fileRes, fileRes.getClass().getDeclaredMethod("setOverallScore", float.class), fileRes.getClass().getDeclaredMethod("addFileScore", ISourceFile.class, float.class));
-                } catch (NoSuchMethodException e) {
-                    e.printStackTrace();
-                }
+            int threshold = Math.max(fileResults.size() / (Runtime.getRuntime().availableProcessors() * 4), 1);
+            WorkScoreFiles score = new WorkScoreFiles(this.status, this.job.getWorkspace().getFiles(), results, fileResults, threshold);
+            this.scheduler.invokeWork(score, this.status.getPriority());
 
-                this.status.incrementProgress();
+            if (this.status.isCancelled()) {
+                jobRes.remove();
             }
-        } else {
-            synchronized (ExecutorUtils.logger) {
-                ExecutorUtils.logger.info("Job {} produced no results", job.getPersistentId());
+            if (this.stopIfCancelled(tasks)) {
+                return;
             }
+
+            jobRes.setFileScores(this.job.getWorkspace().getFiles(), score.getOverallScores(), score.getTaskScores());
+            jobRes.store();
+        } else {
+            ExecutorUtils.logger.info("Job {} produced no results", job.getPersistentId());
         }
 
         job.setStatus(WorkStatus.COMPLETE);
     }
 
-    @SuppressWarnings("Duplicates")
-    private void calculateScoreForBlockList(ISourceFile file, List<ITuple<ICodeBlockGroup, Float>> groupScores, Object obj, Method methodTotal, Method methodPerFile) {
-        try {
-            // Calculate types and their relative weightings within this task
-            Map<DetectionType, Double> typeWeights = new HashMap<>();
-            for (ITuple<ICodeBlockGroup, Float> g : groupScores) {
-                typeWeights.putIfAbsent(g.getKey().getDetectionType(), 0.0);
-            }
+    /**
+     * Stops the job if it has been cancelled. Tasks which finished detection before the cancellation keep their raw results, so are not rerun, the partial output of any other task is dropped
+     *
+     * @param tasks the job's tasks
+     * @return whether the job was cancelled
+     */
+    private boolean stopIfCancelled(List<PoolExecutorTask> tasks) {
+        if (!this.status.isCancelled()) {
+            return false;
+        }
 
-            double weightSum = typeWeights.keySet().stream().mapToDouble(DetectionType::getWeighting).sum();
-            typeWeights.keySet().forEach(z -> typeWeights.put(z, z.getWeighting() / weightSum));
+        tasks.forEach(PoolExecutorTask::discard);
+        this.job.setStatus(WorkStatus.CANCELLED);
 
-            // Score the task overall from relative weightings
-            float s = (float) groupScores.stream().mapToDouble(x -> {
-                try {
-                    return x.getValue() * typeWeights.get(x.getKey().getDetectionType());
-                } catch (UnknownDetectionTypeException e) {
-                    e.printStackTrace();
-                    return 0;
-                }
-            }).sum();
-            methodTotal.invoke(obj, s > 1 ? 1 : s); // cap to 100%
-
-            // Score each file for the task from relative weightings
-            for (ISourceFile fileComp : this.job.getWorkspace().getFiles()) {
-                if (!fileComp.equals(file)) {
-                    s = (float) groupScores.stream().filter(g -> g.getKey().filePresent(fileComp)).mapToDouble(x -> {
-                        try {
-                            return x.getValue() * typeWeights.get(x.getKey().getDetectionType());
-                        } catch (UnknownDetectionTypeException e) {
-                            e.printStackTrace();
-                            return 0;
-                        }
-                    }).sum();
-                    methodPerFile.invoke(obj, fileComp, s > 1 ? 1 : s);  // cap to 100%
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        ExecutorUtils.logger.info("Job {} cancelled during stage '{}'", this.job.getPersistentId(), this.status.getMessage());
+
+        return true;
     }
 }
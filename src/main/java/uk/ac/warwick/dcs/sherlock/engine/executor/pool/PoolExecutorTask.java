@@ -3,26 +3,30 @@ package uk.ac.warwick.dcs.sherlock.engine.executor.pool;
 import uk.ac.warwick.dcs.sherlock.api.component.ITask;
 import uk.ac.warwick.dcs.sherlock.api.component.WorkStatus;
 import uk.ac.warwick.dcs.sherlock.api.exception.UnknownDetectionTypeException;
-import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectorWorker;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IPairWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IWorkerSource;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetector;
 import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPairRawResult;
 import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPostProcessor;
 import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.ModelTaskProcessedResults;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.PreProcessingStrategy;
 import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
 import uk.ac.warwick.dcs.sherlock.engine.executor.JobStatus;
 import uk.ac.warwick.dcs.sherlock.engine.executor.common.ExecutorUtils;
 import uk.ac.warwick.dcs.sherlock.engine.executor.common.IPriorityWorkSchedulerWrapper;
-import uk.ac.warwick.dcs.sherlock.engine.executor.common.Priority;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.PairResultCache;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.PairResultReuse;
+import uk.ac.warwick.dcs.sherlock.engine.executor.remote.RemoteWorkerPool;
 import uk.ac.warwick.dcs.sherlock.engine.executor.work.IWorkTask;
 import uk.ac.warwick.dcs.sherlock.engine.executor.work.WorkDetect;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
@@ -39,7 +43,16 @@ public class PoolExecutorTask implements Callable<ModelTaskProcessedResults>, IW
     int callType;
     private List<PreProcessingStrategy> preProcessingStrategies;
 
-    private List<DetectorWorker> workers;
+    private IWorkerSource<?> workers;
+    private String checkpointKey;
+    private int candidateFloor;
+
+    /**
+     * Workers whose pair was not found in the pair result cache, their results are cached once detected. Null if the task does not use the cache
+     */
+    private BitSet cacheMisses;
+    private byte[] detectorHash;
+    private Map<ModelDataItem, byte[]> fileHashes;
 
     PoolExecutorTask(JobStatus jobStatus, IPriorityWorkSchedulerWrapper scheduler, ITask task, String language) {
         this.callType = 1;
@@ -107,6 +120,10 @@ public class PoolExecutorTask implements Callable<ModelTaskProcessedResults>, IW
     }
 
     void build() {
+        if (this.status.isCancelled()) {
+            return;
+        }
+
         IDetector detector;
         try {
             detector = this.task.getDetector().getConstructor().newInstance();
@@ -117,65 +134,224 @@ public class PoolExecutorTask implements Callable<ModelTaskProcessedResults>, IW
         }
 
         ExecutorUtils.processAdjustableParameters(detector, this.task.getParameterMapping());
+        this.candidateFloor = 0;
+        if (detector instanceof PairwiseDetector<?> pairwise) {
+            pairwise.setCandidateFloor(SherlockEngine.configuration.getCandidatePruningFloor());
+            this.candidateFloor = pairwise.getCandidateFloor();
+        }
+
+        // order the files so the workers are numbered the same on every run, their results can then be checkpointed by worker index
+        List<ModelDataItem> data = new ArrayList<>(this.dataItems);
+        data.sort(Comparator.comparingLong(x -> x.getFile().getPersistentId()));
 
         try {
-            this.workers = detector.buildWorkers(this.dataItems);
+            this.workers = detector.buildWorkerSource(data);
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        if (this.workers.isEmpty()) {
-            synchronized (ExecutorUtils.logger) {
-                ExecutorUtils.logger.error("Error building detector {}, no workers were built", this.getDetector().getName());
-            }
+        if (detector instanceof PairwiseDetector<?> pairwise && pairwise.getPrunedPairCount() > 0) {
+            this.status.addPrunedPairs(pairwise.getPrunedPairCount());
+            ExecutorUtils.logger.info("Candidate pruning skipped {} pairs for detector {}", pairwise.getPrunedPairCount(), this.getDetector().getName());
+        }
+
+        if (this.workers == null || this.workers.size() == 0) {
+            ExecutorUtils.logger.error("Error building detector {}, no workers were built", this.getDetector().getName());
+            this.workers = IWorkerSource.of(Collections.emptyList());
         }
+        this.checkpointKey = ExecutorUtils.checkpointKey(this.getDetector(), this.task.getParameterMapping(), this.candidateFloor, this.workers, data);
 
         this.status.incrementProgress();
         this.callType = 2;
     }
 
+    /**
+     * Drops the preprocessed files, workers and checkpointed results of a cancelled task, so any partial results can be collected
+     */
+    void discard() {
+        if (this.task.getStatus() != WorkStatus.COMPLETE) {
+            this.task.clearCheckpoint();
+        }
+        this.dataItems.clear();
+        this.workers = IWorkerSource.of(Collections.emptyList());
+    }
+
     int getWorkerSize() {
-        return this.workers.size();
+        return this.workers == null ? 0 : this.workers.size();
     }
 
     private void runDetector() {
+        if (this.status.isCancelled()) {
+            return;
+        }
+
         try {
+            Map<Integer, AbstractModelTaskRawResult> completed = this.findCompleted();
 
-            int threshold = Math.min(Math.max(this.workers.size() / Runtime.getRuntime().availableProcessors(), 1), 4); //set min and max num workers in a thread
+            List<AbstractModelTaskRawResult> rawResults = this.runRemote(completed);
+            if (rawResults == null) {
+                WorkDetect detect = new WorkDetect(this.status, this.workers, this.task, this.checkpointKey, completed);
+                this.scheduler.invokeWork(detect, this.status.getPriority());
+                rawResults = detect.getResults();
+            }
 
-            WorkDetect detect = new WorkDetect(this.status, this.workers, threshold);
-            this.scheduler.invokeWork(detect, Priority.DEFAULT);
-            List<AbstractModelTaskRawResult> rawResults = detect.getResults();
+            // the results of a cancelled job are incomplete, so are never saved
+            if (this.status.isCancelled()) {
+                this.discard();
+                return;
+            }
 
-            if (this.workers.size() != rawResults.size()) {
-                synchronized (ExecutorUtils.logger) {
-                    ExecutorUtils.logger.error("Error running workers, got {} results from {} workers", rawResults.size(), this.workers.size());
-                    return;
-                }
+            if (this.status.getProvisionalResults() != null) {
+                this.status.getProvisionalResults().flush(this.task);
             }
 
+            this.cacheResults(rawResults);
+
             rawResults = rawResults.stream().filter(Objects::nonNull).filter(x -> !x.isEmpty()).collect(Collectors.toList());
             if (!rawResults.isEmpty()) {
 
                 // validate the raw result types, are they all the same?
                 AbstractModelTaskRawResult base = rawResults.getFirst();
                 if (!rawResults.stream().allMatch(x -> x.testType(base))) {
-                    synchronized (ExecutorUtils.logger) {
-                        ExecutorUtils.logger.error("Work result types are not consistent, this is not allowed. A detector must return a single result type");
-                        return;
-                    }
+                    ExecutorUtils.logger.error("Work result types are not consistent, this is not allowed. A detector must return a single result type");
+                    return;
                 }
 
                 //Save the raw results
                 this.task.setRawResults(rawResults);
             }
 
+            this.task.setCandidateFloor(this.candidateFloor);
             this.task.setComplete();
             this.callType = 3;
         } catch (Exception e) {
-            synchronized (ExecutorUtils.logger) {
-                ExecutorUtils.logger.error("Error running task", e);
+            ExecutorUtils.logger.error("Error running task", e);
+        }
+    }
+
+    /**
+     * Finds the raw results of pairs which do not need detecting, these are passed to the local or remote run as already completed and are not checkpointed, as they are found again if the task is
+     * resumed. These are the pairs already compared by an earlier job on the workspace, then the pairs found in the pair result cache
+     *
+     * @return the results by worker index
+     */
+    private Map<Integer, AbstractModelTaskRawResult> findCompleted() {
+        if (!(this.workers instanceof IPairWorkerSource<?> pairs) || pairs.size() == 0) {
+            return Collections.emptyMap();
+        }
+
+        Map<Integer, AbstractModelTaskRawResult> done = new HashMap<>();
+        if (SherlockEngine.configuration.getReusePairResults()) {
+            done.putAll(this.reusePreviousResults(pairs));
+        }
+
+        PairResultCache cache = this.scheduler.getPairResultCache();
+        if (cache != null) {
+            done.putAll(this.useCachedResults(cache, pairs, done.keySet()));
+        }
+
+        return done;
+    }
+
+    /**
+     * @return the results of the pairs already compared by an earlier job on the workspace, by worker index
+     */
+    private Map<Integer, AbstractModelTaskRawResult> reusePreviousResults(IPairWorkerSource<?> pairs) {
+        ITask previous = PairResultReuse.findPrevious(this.task, this.candidateFloor);
+        if (previous == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<Integer, AbstractModelTaskRawResult> reused = PairResultReuse.match(pairs, previous.getJob().getFiles(), previous.hasResults() ? previous.getRawResults() : null);
+        if (!reused.isEmpty()) {
+            ExecutorUtils.logger.info("Reusing the results of {} of {} pairs for detector {} from job {}", reused.size(), pairs.size(), this.getDetector().getName(), previous.getJob().getPersistentId());
+        }
+
+        return reused;
+    }
+
+    /**
+     * Looks up every pair without a result in the pair result cache, noting the misses so their results are cached once detected
+     *
+     * @return the results of the pairs found in the cache, copied for this task's files, by worker index
+     */
+    private Map<Integer, AbstractModelTaskRawResult> useCachedResults(PairResultCache cache, IPairWorkerSource<?> pairs, Set<Integer> done) {
+        this.detectorHash = PairResultCache.hashDetector(this.getDetector(), this.task.getParameterMapping());
+        this.fileHashes = new IdentityHashMap<>();
+        this.cacheMisses = new BitSet(pairs.size());
+
+        Map<Integer, AbstractModelTaskRawResult> cached = new HashMap<>();
+        for (int i = 0; i < pairs.size(); i++) {
+            if (done.contains(i)) {
+                continue;
             }
+
+            PairResultCache.Hit hit = cache.get(this.cacheKey(pairs, i));
+            if (hit == null) {
+                this.cacheMisses.set(i);
+            } else {
+                cached.put(i, hit.result() != null ? ((IPairRawResult) hit.result()).withFiles(pairs.getFile1Data(i).getFile(), pairs.getFile2Data(i).getFile()) : null);
+            }
+        }
+
+        if (!cached.isEmpty()) {
+            ExecutorUtils.logger.info("Found the results of {} of {} pairs for detector {} in the pair result cache", cached.size(), pairs.size(), this.getDetector().getName());
+        }
+
+        return cached;
+    }
+
+    /**
+     * Adds the detected results of the pairs missing from the pair result cache to it
+     *
+     * @param rawResults raw result of each worker, in worker order
+     */
+    private void cacheResults(List<AbstractModelTaskRawResult> rawResults) {
+        PairResultCache cache = this.scheduler.getPairResultCache();
+        if (cache == null || this.cacheMisses == null || !(this.workers instanceof IPairWorkerSource<?> pairs)) {
+            return;
+        }
+
+        for (int i = this.cacheMisses.nextSetBit(0); i >= 0; i = this.cacheMisses.nextSetBit(i + 1)) {
+            // a worker with no result could not be built, so there is nothing to cache
+            if (rawResults.get(i) != null) {
+                cache.put(this.cacheKey(pairs, i), rawResults.get(i));
+            }
+        }
+
+        this.cacheMisses = null;
+        this.fileHashes = null;
+    }
+
+    private PairResultCache.Key cacheKey(IPairWorkerSource<?> pairs, int index) {
+        byte[] file1 = this.fileHashes.computeIfAbsent(pairs.getFile1Data(index), this::hashFile);
+        byte[] file2 = this.fileHashes.computeIfAbsent(pairs.getFile2Data(index), this::hashFile);
+        return PairResultCache.key(this.detectorHash, file1, file2);
+    }
+
+    private byte[] hashFile(ModelDataItem item) {
+        return PairResultCache.hashFile(item, this.preProcessingStrategies.stream().map(PreProcessingStrategy::getName).collect(Collectors.toList()));
+    }
+
+    /**
+     * Runs the workers in the worker processes, if there are any and the detector is pairwise
+     *
+     * @param completed results of the workers which do not need running, by worker index
+     * @return the raw results, null if the workers should be run locally instead
+     */
+    private List<AbstractModelTaskRawResult> runRemote(Map<Integer, AbstractModelTaskRawResult> completed) {
+        RemoteWorkerPool remote = this.scheduler.getRemoteWorkerPool();
+        if (remote == null || !(this.workers instanceof IPairWorkerSource<?> pairs) || pairs.size() == 0) {
+            return null;
+        }
+
+        try {
+            List<String> strategies = this.preProcessingStrategies.stream().map(PreProcessingStrategy::getName).collect(Collectors.toList());
+            return remote.run(this.status, this.task, this.checkpointKey, completed, pairs, this.getDetector(), strategies, this.task.getParameterMapping());
+        } catch (IOException e) {
+            // finished partitions were checkpointed, so the local run only does the rest
+            ExecutorUtils.logger.warn("Could not run detector {} in the worker processes, running it locally: {}", this.getDetector().getName(), e.getMessage());
+            return null;
         }
     }
 
@@ -186,27 +362,21 @@ public class PoolExecutorTask implements Callable<ModelTaskProcessedResults>, IW
                 try {
                     IPostProcessor postProcessor = SherlockRegistry.getPostProcessorInstance(rawResults.getFirst().getClass());
                     if (postProcessor == null) {
-                        synchronized (ExecutorUtils.logger) {
-                            ExecutorUtils.logger.error("Could not find a postprocessor for '{}', check that it is being correctly registered", rawResults.getFirst().getClass().getName());
-                            return null;
-                        }
+                        ExecutorUtils.logger.error("Could not find a postprocessor for '{}', check that it is being correctly registered", rawResults.getFirst().getClass().getName());
+                        return null;
                     }
 
                     ExecutorUtils.processAdjustableParameters(postProcessor, this.task.getParameterMapping());
                     ModelTaskProcessedResults processedResults = postProcessor.processResults(this.task.getJob().getWorkspace().getFiles(), rawResults);
                     try {
                         if (processedResults.cleanGroups()) {
-                            synchronized (ExecutorUtils.logger) {
-                                ExecutorUtils.logger.warn("At least one result group for job {} [task {}] does not have it's detection type set, results will be ignored", this.getTask().getJob().getPersistentId(),
-                                        this.getTask().getPersistentId());
-                            }
+                            ExecutorUtils.logger.warn("At least one result group for job {} [task {}] does not have it's detection type set, results will be ignored", this.getTask().getJob().getPersistentId(),
+                                    this.getTask().getPersistentId());
                             return null;
                         }
                     } catch (UnknownDetectionTypeException e) {
-                        synchronized (ExecutorUtils.logger) {
-                            ExecutorUtils.logger.warn("At least one result group for job {} [task {}] has an unknown detection type set", this.getTask().getJob().getPersistentId(),
-                                    this.getTask().getPersistentId());
-                        }
+                        ExecutorUtils.logger.warn("At least one result group for job {} [task {}] has an unknown detection type set", this.getTask().getJob().getPersistentId(),
+                                this.getTask().getPersistentId());
                         e.printStackTrace();
                         return null;
                     }
@@ -218,9 +388,7 @@ public class PoolExecutorTask implements Callable<ModelTaskProcessedResults>, IW
                 }
             }
         } else {
-            synchronized (ExecutorUtils.logger) {
-                ExecutorUtils.logger.error("Trying to post process incomplete task");
-            }
+            ExecutorUtils.logger.error("Trying to post process incomplete task");
         }
 
         return null;
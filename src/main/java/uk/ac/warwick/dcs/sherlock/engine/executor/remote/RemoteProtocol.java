@@ -0,0 +1,69 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.remote;
+
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Messages passed between the {@link RemoteWorkerPool} and its {@link RemoteWorkerMain} processes, as serialized objects over a loopback socket.
+ * <br><br>
+ * A worker process first sends the shared secret it was started with and its pid, then answers each {@link Partition} with a {@link PartitionResult}. The preprocessed data of a file is only sent
+ * to a process once for each task, the process keeps it until the task is released.
+ */
+final class RemoteProtocol {
+
+    /**
+     * Environment variable holding the secret a worker process must send when it connects
+     */
+    static final String SECRET_ENV = "SHERLOCK_WORKER_SECRET";
+
+    private RemoteProtocol() {
+    }
+
+    /**
+     * Preprocessed data of a file, sent the first time a process is given a pair containing it
+     *
+     * @param file  details of the file
+     * @param lines preprocessed lines of each strategy used by the task's detector
+     */
+    record RemoteFile(RemoteSourceFile file, Map<String, List<IndexedString>> lines) implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * A batch of pairs to run
+     *
+     * @param id       id of the partition within its run
+     * @param taskKey  key of the run the partition belongs to, the process keeps a detector and files for each key
+     * @param detector class name of the {@link uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetector}
+     * @param params   adjustable parameter values of the task
+     * @param files    files not yet sent to this process for the task
+     * @param file1Ids id of the first file of each pair
+     * @param file2Ids id of the second file of each pair
+     * @param release  keys of finished runs whose data the process can drop
+     */
+    record Partition(int id, long taskKey, String detector, Map<String, Float> params, List<RemoteFile> files, long[] file1Ids, long[] file2Ids, long[] release) implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Results of a partition
+     *
+     * @param id      id of the partition
+     * @param results raw result of each pair in the order they were sent, null where a worker produced no result
+     * @param error   description of the error if the partition could not be run, otherwise null
+     */
+    record PartitionResult(int id, AbstractModelTaskRawResult[] results, String error) implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+}
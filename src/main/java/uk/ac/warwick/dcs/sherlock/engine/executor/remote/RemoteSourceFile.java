@@ -0,0 +1,112 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.remote;
+
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.component.ISubmission;
+
+import java.io.InputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stand in for a source file inside a worker process, which has no access to storage. Only the identifying details of the file are held, its contents and submission are not available, detectors
+ * should work from the preprocessed lines instead.
+ * <br><br>
+ * Raw results returned to the coordinator have any reference to this replaced with the real file, see {@link RemoteWorkerConnection}.
+ */
+class RemoteSourceFile implements ISourceFile, Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final long id;
+    private final long archiveId;
+    private final String identifier;
+    private final String displayName;
+    private final String displayPath;
+    private final long filesize;
+
+    RemoteSourceFile(ISourceFile file) {
+        this.id = file.getPersistentId();
+        this.archiveId = file.getArchiveId();
+        this.identifier = file.getFileIdentifier();
+        this.displayName = file.getFileDisplayName();
+        this.displayPath = file.getFileDisplayPath();
+        this.filesize = file.getFileSize();
+    }
+
+    @Override
+    public boolean equals(ISourceFile file) {
+        return file.getPersistentId() == this.id;
+    }
+
+    @Override
+    public InputStream getFileContents() {
+        return null;
+    }
+
+    @Override
+    public String getFileContentsAsString() {
+        return null;
+    }
+
+    @Override
+    public List<String> getFileContentsAsStringList() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getFileIdentifier() {
+        return this.identifier;
+    }
+
+    @Override
+    public String getFileDisplayName() {
+        return this.displayName;
+    }
+
+    @Override
+    public String getFileDisplayPath() {
+        return this.displayPath;
+    }
+
+    @Override
+    public long getPersistentId() {
+        return this.id;
+    }
+
+    @Override
+    public long getArchiveId() {
+        return this.archiveId;
+    }
+
+    @Override
+    public ISubmission getSubmission() {
+        return null;
+    }
+
+    @Override
+    public void remove() {
+    }
+
+    @Override
+    public int getNonEmptyLineCount() {
+        return 0;
+    }
+
+    @Override
+    public int getTotalLineCount() {
+        return 0;
+    }
+
+    @Override
+    public long getFileSize() {
+        return this.filesize;
+    }
+
+    @Override
+    public String getDisplayFileSize(boolean si) {
+        return this.filesize + " B";
+    }
+}
@@ -0,0 +1,148 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.remote;
+
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Connection to one worker process, only one partition is sent over a connection at a time, by whichever thread has taken it from the pool's idle queue
+ */
+class RemoteWorkerConnection implements Closeable {
+
+    private final Process process;
+    private final Socket socket;
+    private final ObjectOutputStream out;
+    private final ResolvingInputStream in;
+
+    /**
+     * Ids of the files already sent to the process, for each task key it holds
+     */
+    private final Map<Long, Set<Long>> sentFiles;
+    private final Queue<Long> released;
+
+    RemoteWorkerConnection(Process process, Socket socket, ObjectOutputStream out, InputStream in) throws IOException {
+        this.process = process;
+        this.socket = socket;
+        this.out = out;
+        this.in = new ResolvingInputStream(in);
+        this.sentFiles = new HashMap<>();
+        this.released = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * @return pid of the worker process
+     */
+    long getPid() {
+        return this.process.pid();
+    }
+
+    /**
+     * @param taskKey key of the run
+     * @return ids of the files the process already holds for the run, which the caller may add to
+     */
+    Set<Long> getSentFiles(long taskKey) {
+        return this.sentFiles.computeIfAbsent(taskKey, k -> new HashSet<>());
+    }
+
+    /**
+     * Marks a run as finished, may be called while a partition is running
+     *
+     * @param taskKey key of the run
+     */
+    void addReleased(long taskKey) {
+        this.released.add(taskKey);
+    }
+
+    /**
+     * Takes the finished runs the process holds data for, and forgets them
+     *
+     * @return the keys the process should drop
+     */
+    long[] takeReleased() {
+        List<Long> res = new ArrayList<>();
+        for (Long key = this.released.poll(); key != null; key = this.released.poll()) {
+            if (this.sentFiles.remove(key) != null) {
+                res.add(key);
+            }
+        }
+        return res.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Sends a partition and waits for its result
+     *
+     * @param partition partition to run
+     * @param files     files of the partition's run, any file in the result is replaced by the matching one of these
+     * @return result of the partition
+     * @throws IOException if the process could not be reached or sent back something unexpected
+     */
+    RemoteProtocol.PartitionResult run(RemoteProtocol.Partition partition, Map<Long, ISourceFile> files) throws IOException {
+        this.out.writeObject(partition);
+        this.out.flush();
+        this.out.reset();
+
+        this.in.files = files;
+        try {
+            Object res = this.in.readObject();
+            if (!(res instanceof RemoteProtocol.PartitionResult result) || result.id() != partition.id()) {
+                throw new IOException("Unexpected reply from worker process " + this.getPid());
+            }
+            return result;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Worker process " + this.getPid() + " returned an unknown class", e);
+        } finally {
+            this.in.files = null;
+        }
+    }
+
+    /**
+     * Closes the connection and stops the process
+     */
+    @Override
+    public void close() {
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            // already gone
+        }
+        this.process.destroy();
+    }
+
+    /**
+     * Reads results, replacing each {@link RemoteSourceFile} with the real file it stands in for, so raw results from a worker process are the same as ones made locally
+     */
+    private static class ResolvingInputStream extends ObjectInputStream {
+
+        private Map<Long, ISourceFile> files;
+
+        ResolvingInputStream(InputStream in) throws IOException {
+            super(in);
+            this.enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            if (obj instanceof RemoteSourceFile remote && this.files != null) {
+                return this.files.getOrDefault(remote.getPersistentId(), remote);
+            }
+            return obj;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            // raw results may come from a module, which is only visible to the engine classloader
+            if (SherlockEngine.classloader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, SherlockEngine.classloader);
+                } catch (ClassNotFoundException e) {
+                    // fall back to the default lookup
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
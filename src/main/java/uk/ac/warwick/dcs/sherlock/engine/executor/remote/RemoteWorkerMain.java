@@ -0,0 +1,118 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.remote;
+
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetectorWorker;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.ExecutorUtils;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Entry point of a worker process started by {@link RemoteWorkerPool}. Connects back to the pool, then runs each partition of pairs it is sent until the connection is closed.
+ * <br><br>
+ * Arguments are the port of the pool and the number of threads to run workers on, the secret to connect with is read from the environment.
+ */
+public class RemoteWorkerMain {
+
+    /**
+     * Detector and files of each run the process holds data for, by task key
+     */
+    private final Map<Long, RunState> runs;
+    private final ForkJoinPool pool;
+
+    private RemoteWorkerMain(int threads) {
+        this.runs = new HashMap<>();
+        this.pool = new ForkJoinPool(Math.max(threads, 1));
+    }
+
+    public static void main(String[] args) {
+        String secret = System.getenv(RemoteProtocol.SECRET_ENV);
+        if (args.length < 2 || secret == null) {
+            System.err.println("Worker processes are started by the Sherlock engine");
+            System.exit(1);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            socket.setTcpNoDelay(true);
+            OutputStream raw = new BufferedOutputStream(socket.getOutputStream());
+            DataOutputStream hello = new DataOutputStream(raw);
+            hello.writeUTF(secret);
+            hello.writeLong(ProcessHandle.current().pid());
+
+            ObjectOutputStream out = new ObjectOutputStream(raw);
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            new RemoteWorkerMain(Integer.parseInt(args[1])).serve(in, out);
+        } catch (EOFException e) {
+            // the pool has closed the connection
+        } catch (Exception e) {
+            ExecutorUtils.logger.error("Worker process failed", e);
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+
+    private void serve(ObjectInputStream in, ObjectOutputStream out) throws IOException, ClassNotFoundException {
+        while (true) {
+            Object message = in.readObject();
+            if (!(message instanceof RemoteProtocol.Partition partition)) {
+                throw new IOException("Unexpected message " + message);
+            }
+
+            for (long key : partition.release()) {
+                this.runs.remove(key);
+            }
+
+            RemoteProtocol.PartitionResult result;
+            try {
+                result = new RemoteProtocol.PartitionResult(partition.id(), this.runPartition(partition), null);
+            } catch (Exception e) {
+                ExecutorUtils.logger.error("Error running partition", e);
+                result = new RemoteProtocol.PartitionResult(partition.id(), null, e.toString());
+            }
+
+            out.writeObject(result);
+            out.flush();
+            out.reset();
+        }
+    }
+
+    private AbstractModelTaskRawResult[] runPartition(RemoteProtocol.Partition partition) throws ReflectiveOperationException, ExecutionException, InterruptedException {
+        RunState run = this.runs.get(partition.taskKey());
+        if (run == null) {
+            PairwiseDetector<?> detector = (PairwiseDetector<?>) Class.forName(partition.detector()).getConstructor().newInstance();
+            ExecutorUtils.processAdjustableParameters(detector, partition.params());
+            run = new RunState(detector, new HashMap<>());
+            this.runs.put(partition.taskKey(), run);
+        }
+
+        for (RemoteProtocol.RemoteFile file : partition.files()) {
+            run.files.put(file.file().getPersistentId(), new ModelDataItem(file.file(), file.lines()));
+        }
+
+        RunState state = run;
+        AbstractModelTaskRawResult[] results = new AbstractModelTaskRawResult[partition.file1Ids().length];
+        this.pool.submit(() -> IntStream.range(0, results.length).parallel().forEach(i -> {
+            PairwiseDetectorWorker<?> worker = state.detector.getAbstractPairwiseDetectorWorker(state.files.get(partition.file1Ids()[i]), state.files.get(partition.file2Ids()[i]));
+            if (worker != null) {
+                worker.execute();
+                results[i] = worker.getRawResult();
+            }
+        })).get();
+
+        return results;
+    }
+
+    private record RunState(PairwiseDetector<?> detector, Map<Long, ModelDataItem> files) {
+    }
+}
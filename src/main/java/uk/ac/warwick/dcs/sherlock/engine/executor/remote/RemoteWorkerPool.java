@@ -0,0 +1,465 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.remote;
+
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.component.ITask;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IPairWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
+import uk.ac.warwick.dcs.sherlock.engine.executor.JobStatus;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.ExecutorUtils;
+import uk.ac.warwick.dcs.sherlock.engine.executor.work.WorkDetect;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the workers of pairwise detectors in separate worker processes on the same machine, so detection is not limited to the heap and cores of the engine's JVM.
+ * <br><br>
+ * The pool starts its {@link RemoteWorkerMain} processes when it is first used, each connects back over a loopback socket and proves it was started by the pool with a shared secret. The pairs of a
+ * task are split into cost balanced partitions, see {@link WorkDetect#planChunks(long[], int)}, which are handed to idle processes along with the preprocessed data of any of their files the process
+ * does not hold yet. The results are merged back in worker order.
+ * <br><br>
+ * If a process dies or its connection fails, the partition it was running is given to another process and a replacement process is started. A partition which fails too many times, or a run with
+ * no processes left, fails with an IOException so the caller can run the task locally instead. Each finished partition is checkpointed to the task, so the local run only does the rest.
+ */
+public class RemoteWorkerPool implements Closeable {
+
+    /**
+     * Number of partitions to create for each process, smaller partitions lose less work when a process fails and even out errors in the cost estimates
+     */
+    static final int partitionsPerProcess = 4;
+    /**
+     * Number of times a partition is tried before the run fails
+     */
+    static final int maxPartitionAttempts = 3;
+    /**
+     * Time in milliseconds to wait for started processes to connect
+     */
+    private static final int connectTimeout = 30000;
+
+    private final int processes;
+    private final List<String> command;
+    private final String secret;
+    private final ServerSocket server;
+    private final ExecutorService exec;
+    private final LinkedBlockingQueue<RemoteWorkerConnection> idle;
+    private final AtomicLong taskKeys;
+    private final AtomicInteger partitionIds;
+
+    /**
+     * Live connections, guarded by this
+     */
+    private final List<RemoteWorkerConnection> connections;
+    private boolean started;
+    private int restartsLeft;
+    private volatile boolean closed;
+
+    /**
+     * Creates the pool, no processes are started until it is first used
+     *
+     * @param processes number of worker processes
+     * @param heap      maximum heap of each process in MB, 0 to use the JVM default
+     * @param classpath classpath to start the processes with, empty to use the engine's classpath and modules
+     * @throws IOException if the socket for the processes to connect to could not be opened
+     */
+    public RemoteWorkerPool(int processes, int heap, String classpath) throws IOException {
+        this.processes = Math.max(processes, 1);
+
+        this.command = new ArrayList<>();
+        this.command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (heap > 0) {
+            this.command.add("-Xmx" + heap + "m");
+        }
+        this.command.add("-cp");
+        this.command.add(classpath != null && !classpath.isEmpty() ? classpath : buildClasspath());
+        this.command.add(RemoteWorkerMain.class.getName());
+
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.server.setSoTimeout(connectTimeout);
+        this.command.add(String.valueOf(this.server.getLocalPort()));
+        this.command.add(String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / this.processes)));
+
+        byte[] secretBytes = new byte[32];
+        new SecureRandom().nextBytes(secretBytes);
+        this.secret = Base64.getEncoder().encodeToString(secretBytes);
+
+        AtomicInteger count = new AtomicInteger();
+        this.exec = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Sherlock-Remote-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.idle = new LinkedBlockingQueue<>();
+        this.taskKeys = new AtomicLong();
+        this.partitionIds = new AtomicInteger();
+
+        this.connections = new ArrayList<>();
+        this.started = false;
+        this.restartsLeft = this.processes * 2;
+        this.closed = false;
+    }
+
+    /**
+     * @return the classpath of this JVM, with the engine's module locations appended
+     */
+    private static String buildClasspath() {
+        StringBuilder classpath = new StringBuilder(System.getProperty("java.class.path"));
+        if (SherlockEngine.classloader != null) {
+            for (URL url : SherlockEngine.classloader.getURLs()) {
+                try {
+                    classpath.append(File.pathSeparator).append(Path.of(url.toURI()));
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    ExecutorUtils.logger.warn("Module location {} can not be passed to worker processes", url);
+                }
+            }
+        }
+
+        return classpath.toString();
+    }
+
+    /**
+     * Runs the workers of a pairwise detector in the worker processes, blocking until they have all finished or the job is cancelled
+     *
+     * @param status         status of the job
+     * @param checkpointTask task to checkpoint worker results to, null to disable checkpointing
+     * @param checkpointKey  key identifying the workers, only a checkpoint stored under the same key is resumed
+     * @param completed      results of the workers which do not need running, by worker index, these are not checkpointed
+     * @param workers        source of the pairs to run
+     * @param detector       detector class, which must be a {@link uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetector} visible to the worker processes
+     * @param strategies     names of the preprocessing strategies the detector's workers use
+     * @param params         adjustable parameter values for the detector
+     * @return the raw result of each worker in worker order, null if a worker gave none. Incomplete if the job was cancelled
+     * @throws IOException if the workers could not all be run by the processes
+     */
+    public List<AbstractModelTaskRawResult> run(JobStatus status, ITask checkpointTask, String checkpointKey, Map<Integer, AbstractModelTaskRawResult> completed, IPairWorkerSource<?> workers, Class<? extends IDetector> detector, List<String> strategies,
+            Map<String, Float> params) throws IOException {
+        this.ensureStarted();
+
+        int size = workers.size();
+        AbstractModelTaskRawResult[] raw = new AbstractModelTaskRawResult[size];
+
+        // take the results of workers which were given or finished by an earlier run, only the rest are partitioned
+        Map<Integer, AbstractModelTaskRawResult> known = new HashMap<>(completed);
+        if (checkpointTask != null) {
+            known.putAll(checkpointTask.getCheckpoint(checkpointKey));
+        }
+        int[] remaining = new int[size - known.size()];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (known.containsKey(i)) {
+                raw[i] = known.get(i);
+                status.incrementProgress();
+            } else {
+                remaining[count++] = i;
+            }
+        }
+
+        long[] costs = new long[remaining.length];
+        Map<Long, ISourceFile> files = new HashMap<>();
+        for (int i = 0; i < remaining.length; i++) {
+            costs[i] = workers.getCostEstimate(remaining[i]);
+            files.putIfAbsent(workers.getFile1Data(remaining[i]).getFile().getPersistentId(), workers.getFile1Data(remaining[i]).getFile());
+            files.putIfAbsent(workers.getFile2Data(remaining[i]).getFile().getPersistentId(), workers.getFile2Data(remaining[i]).getFile());
+        }
+
+        Deque<PendingPartition> pending = new ArrayDeque<>();
+        for (int[] chunk : WorkDetect.planChunks(costs, this.processes * partitionsPerProcess)) {
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = remaining[chunk[i]];
+            }
+            pending.add(new PendingPartition(chunk));
+        }
+
+        long taskKey = this.taskKeys.incrementAndGet();
+        RunContext context = new RunContext(taskKey, workers, detector.getName(), strategies, params, files);
+        ExecutorCompletionService<PartitionOutcome> done = new ExecutorCompletionService<>(this.exec);
+        int inFlight = 0;
+
+        try {
+            while ((!pending.isEmpty() || inFlight > 0) && !status.isCancelled()) {
+                RemoteWorkerConnection connection = pending.isEmpty() ? null : this.idle.poll();
+                if (connection != null) {
+                    PendingPartition partition = pending.poll();
+                    done.submit(() -> this.runPartition(connection, context, partition));
+                    inFlight++;
+                    continue;
+                }
+
+                if (inFlight == 0 && this.getConnectionCount() == 0 && !this.replaceConnection()) {
+                    throw new IOException("No worker processes are available");
+                }
+
+                Future<PartitionOutcome> future = done.poll(100, TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    continue;
+                }
+                inFlight--;
+
+                PartitionOutcome outcome;
+                try {
+                    outcome = future.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Error sending partition to worker process", e.getCause());
+                }
+
+                if (outcome.result() == null) {
+                    if (++outcome.partition().attempts >= maxPartitionAttempts) {
+                        throw new IOException("Partition failed on " + maxPartitionAttempts + " worker processes");
+                    }
+                    pending.addFirst(outcome.partition());
+                    continue;
+                }
+
+                if (outcome.result().error() != null) {
+                    throw new IOException("Worker process failed to run partition: " + outcome.result().error());
+                }
+
+                int[] indexes = outcome.partition().indexes;
+                AbstractModelTaskRawResult[] results = outcome.result().results();
+                for (int i = 0; i < indexes.length; i++) {
+                    raw[indexes[i]] = results[i];
+                    status.incrementProgress();
+                }
+
+                if (checkpointTask != null) {
+                    checkpointTask.addCheckpoint(checkpointKey, indexes, Arrays.asList(results));
+                    if (status.getProvisionalResults() != null) {
+                        status.getProvisionalResults().addAll(checkpointTask, Arrays.asList(results));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for worker processes", e);
+        } finally {
+            this.release(taskKey);
+        }
+
+        // keep the results in worker order, whatever order they ran in
+        return new ArrayList<>(Arrays.asList(raw));
+    }
+
+    /**
+     * Stops every worker process
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        synchronized (this) {
+            this.connections.forEach(RemoteWorkerConnection::close);
+            this.connections.clear();
+        }
+        this.idle.clear();
+        this.exec.shutdownNow();
+
+        try {
+            this.server.close();
+        } catch (IOException e) {
+            // nothing left to connect to it
+        }
+    }
+
+    /**
+     * @return the number of live worker processes
+     */
+    public synchronized int getConnectionCount() {
+        return this.connections.size();
+    }
+
+    private synchronized void ensureStarted() throws IOException {
+        if (this.closed) {
+            throw new IOException("Worker pool is closed");
+        }
+
+        if (!this.started) {
+            this.started = true;
+            this.start(this.processes);
+        }
+    }
+
+    /**
+     * Starts worker processes and waits for them to connect, processes which do not connect in time are stopped
+     *
+     * @param count number of processes to start
+     */
+    private synchronized void start(int count) {
+        Map<Long, Process> waiting = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            ProcessBuilder builder = new ProcessBuilder(this.command);
+            builder.environment().put(RemoteProtocol.SECRET_ENV, this.secret);
+            builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            try {
+                Process process = builder.start();
+                waiting.put(process.pid(), process);
+            } catch (IOException e) {
+                ExecutorUtils.logger.error("Could not start worker process", e);
+            }
+        }
+
+        while (!waiting.isEmpty()) {
+            Socket socket;
+            try {
+                socket = this.server.accept();
+            } catch (IOException e) {
+                ExecutorUtils.logger.error("{} worker processes did not connect", waiting.size());
+                waiting.values().forEach(Process::destroy);
+                break;
+            }
+
+            try {
+                socket.setTcpNoDelay(true);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                DataInputStream hello = new DataInputStream(in);
+                byte[] given = hello.readUTF().getBytes(StandardCharsets.UTF_8);
+                Process process = waiting.remove(hello.readLong());
+                if (process == null || !MessageDigest.isEqual(given, this.secret.getBytes(StandardCharsets.UTF_8))) {
+                    ExecutorUtils.logger.warn("Rejected a worker process connection from an unknown process");
+                    if (process != null) {
+                        process.destroy();
+                    }
+                    socket.close();
+                    continue;
+                }
+
+                ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.flush();
+                RemoteWorkerConnection connection = new RemoteWorkerConnection(process, socket, out, in);
+                this.connections.add(connection);
+                this.idle.add(connection);
+                ExecutorUtils.logger.info("Worker process {} connected", connection.getPid());
+            } catch (IOException e) {
+                ExecutorUtils.logger.warn("Worker process failed while connecting", e);
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    // already gone
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a process to replace one which has failed, if the pool has not used up its restarts
+     *
+     * @return whether a process was started
+     */
+    private synchronized boolean replaceConnection() {
+        if (this.closed || this.restartsLeft <= 0) {
+            return false;
+        }
+
+        this.restartsLeft--;
+        int before = this.connections.size();
+        this.start(1);
+        return this.connections.size() > before;
+    }
+
+    /**
+     * Removes a failed connection and starts a replacement
+     */
+    private void lost(RemoteWorkerConnection connection, IOException e) {
+        ExecutorUtils.logger.warn("Lost worker process {}, its partition will be run again: {}", connection.getPid(), e.getMessage());
+        connection.close();
+        synchronized (this) {
+            this.connections.remove(connection);
+        }
+        this.replaceConnection();
+    }
+
+    /**
+     * Marks a run as finished, each process drops its data for the run with the next partition it is sent
+     */
+    private synchronized void release(long taskKey) {
+        this.connections.forEach(x -> x.addReleased(taskKey));
+    }
+
+    /**
+     * Sends a partition to a process and waits for the result, then returns the connection to the idle queue
+     *
+     * @return the outcome, with a null result if the connection failed
+     */
+    private PartitionOutcome runPartition(RemoteWorkerConnection connection, RunContext context, PendingPartition partition) {
+        int[] indexes = partition.indexes;
+        long[] file1Ids = new long[indexes.length];
+        long[] file2Ids = new long[indexes.length];
+        List<RemoteProtocol.RemoteFile> newFiles = new ArrayList<>();
+        Set<Long> sent = connection.getSentFiles(context.taskKey);
+
+        for (int i = 0; i < indexes.length; i++) {
+            ModelDataItem file1 = context.workers.getFile1Data(indexes[i]);
+            ModelDataItem file2 = context.workers.getFile2Data(indexes[i]);
+            file1Ids[i] = file1.getFile().getPersistentId();
+            file2Ids[i] = file2.getFile().getPersistentId();
+
+            if (sent.add(file1Ids[i])) {
+                newFiles.add(context.toRemoteFile(file1));
+            }
+            if (sent.add(file2Ids[i])) {
+                newFiles.add(context.toRemoteFile(file2));
+            }
+        }
+
+        RemoteProtocol.Partition message = new RemoteProtocol.Partition(this.partitionIds.incrementAndGet(), context.taskKey, context.detector, context.params, newFiles, file1Ids, file2Ids,
+                connection.takeReleased());
+
+        try {
+            RemoteProtocol.PartitionResult result = connection.run(message, context.files);
+            if (result.results() != null && result.results().length != indexes.length) {
+                throw new IOException("Worker process returned " + result.results().length + " results for " + indexes.length + " pairs");
+            }
+
+            this.idle.add(connection);
+            return new PartitionOutcome(partition, result);
+        } catch (IOException e) {
+            this.lost(connection, e);
+            return new PartitionOutcome(partition, null);
+        }
+    }
+
+    /**
+     * Pairs of a partition and the number of times they have been tried
+     */
+    private static class PendingPartition {
+
+        private final int[] indexes;
+        private int attempts;
+
+        PendingPartition(int[] indexes) {
+            this.indexes = indexes;
+            this.attempts = 0;
+        }
+    }
+
+    private record PartitionOutcome(PendingPartition partition, RemoteProtocol.PartitionResult result) {
+    }
+
+    /**
+     * Everything the partitions of a run share
+     */
+    private record RunContext(long taskKey, IPairWorkerSource<?> workers, String detector, List<String> strategies, Map<String, Float> params, Map<Long, ISourceFile> files) {
+
+        RemoteProtocol.RemoteFile toRemoteFile(ModelDataItem item) {
+            Map<String, List<IndexedString>> lines = new HashMap<>();
+            for (String strategy : this.strategies) {
+                List<IndexedString> strategyLines = item.getPreProcessedLines(strategy);
+                if (strategyLines != null) {
+                    lines.put(strategy, new ArrayList<>(strategyLines));
+                }
+            }
+
+            return new RemoteProtocol.RemoteFile(new RemoteSourceFile(item.getFile()), lines);
+        }
+    }
+}
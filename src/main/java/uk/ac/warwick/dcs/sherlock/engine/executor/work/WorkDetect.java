@@ -1,81 +1,249 @@
 package uk.ac.warwick.dcs.sherlock.engine.executor.work;
 
+import uk.ac.warwick.dcs.sherlock.api.component.ITask;
+import uk.ac.warwick.dcs.sherlock.api.exception.JobCancelledException;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectorWorker;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IWorkerSource;
 import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
 import uk.ac.warwick.dcs.sherlock.engine.executor.JobStatus;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.PriorityWorkScheduler;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.ProvisionalResults;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.RecursiveTask;
 
 /**
- * Recursive task to run detectors
+ * Recursive task to run detectors, stops starting workers once the job is cancelled
+ * <br><br>
+ * Workers are pulled from the detector's {@link IWorkerSource} by the leaf which runs them, and only their raw result is kept afterwards, so each worker can be collected once it has finished.
+ * <br><br>
+ * Workers are scheduled longest processing time first using their cost estimates: each worker, most expensive first, is given to the chunk with the least total cost so far, and each chunk runs its
+ * workers in that order. The chunks are then run in parallel, so an expensive pair starts early instead of being left for the end of the run, and cheap pairs are batched together rather than split
+ * into tasks which cost more to schedule than to run.
+ * <br><br>
+ * If a task is given, the results of finished workers are checkpointed to it in batches of the configured checkpoint interval, and workers checkpointed by an earlier, interrupted, run are not run
+ * again. If the job is building provisional results, each result is also passed to them as soon as its worker finishes.
+ * <br><br>
+ * Results the caller already has, such as those of pairs compared by an earlier job, are given as completed, those workers are not run and their results are not checkpointed.
  */
 public class WorkDetect extends RecursiveTask<List<AbstractModelTaskRawResult>> {
 
-    private final JobStatus status;
+    /**
+     * Number of chunks to create for each thread of the pool, more chunks let the pool even out errors in the cost estimates by stealing
+     */
+    static final int chunksPerThread = 4;
 
-    private final List<DetectorWorker> workers;
-    private final int threshold;
-    private final int begin;
-    private final int end;
+    private final JobStatus status;
+    private final IWorkerSource<?> workers;
+    private final ITask checkpointTask;
+    private final String checkpointKey;
+    private final Map<Integer, AbstractModelTaskRawResult> completed;
 
     private List<AbstractModelTaskRawResult> result;
 
-    public WorkDetect(JobStatus jobStatus, List<DetectorWorker> workers, int threshold) {
-        this(jobStatus, workers, threshold, 0, workers.size());
-        this.result = Collections.EMPTY_LIST;
+    public WorkDetect(JobStatus jobStatus, IWorkerSource<?> workers) {
+        this(jobStatus, workers, null, null, Collections.emptyMap());
     }
 
-    private WorkDetect(JobStatus jobStatus, List<DetectorWorker> workers, int threshold, int begin, int end) {
+    /**
+     * @param jobStatus      status of the job
+     * @param workers        source of the workers to run
+     * @param checkpointTask task to checkpoint worker results to, null to disable checkpointing and provisional results
+     * @param checkpointKey  key identifying the workers, from {@link uk.ac.warwick.dcs.sherlock.engine.executor.common.ExecutorUtils#checkpointKey}, only a checkpoint stored under the same key is
+     *                       resumed
+     * @param completed      results of the workers which do not need running, by worker index, these are not checkpointed
+     */
+    public WorkDetect(JobStatus jobStatus, IWorkerSource<?> workers, ITask checkpointTask, String checkpointKey, Map<Integer, AbstractModelTaskRawResult> completed) {
         this.status = jobStatus;
-
         this.workers = workers;
-        this.threshold = threshold;
-        this.begin = begin;
-        this.end = end;
-        this.result = null;
+        this.checkpointTask = checkpointTask;
+        this.checkpointKey = checkpointKey;
+        this.completed = completed;
+        this.result = Collections.emptyList();
     }
 
-    private static AbstractModelTaskRawResult runWorker(DetectorWorker worker) {
-        worker.execute();
-        return worker.getRawResult();
+    /**
+     * Splits workers into cost balanced chunks, longest processing time first
+     *
+     * @param costs     cost estimate of each worker
+     * @param numChunks maximum number of chunks to create
+     * @return the worker indexes of each chunk, each in the order they should run. Empty chunks are left out
+     */
+    public static int[][] planChunks(long[] costs, int numChunks) {
+        int n = costs.length;
+        int k = Math.max(Math.min(numChunks, n), 1);
+
+        // sort on primitive keys, as there can be millions of workers. The cost is in the high bits and the inverted index in the low bits, so walking the keys backwards gives the most expensive
+        // first, with equal costs in their original order
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (Math.min(Math.max(costs[i], 1), Integer.MAX_VALUE) << 32) | (0xFFFFFFFFL - i);
+        }
+        Arrays.sort(order);
+        for (int i = 0; i < n; i++) {
+            order[i] = 0xFFFFFFFFL - (order[i] & 0xFFFFFFFFL);
+        }
+
+        long[] load = new long[k];
+        int[] count = new int[k];
+        int[] assigned = new int[n];
+        PriorityQueue<Integer> lightest = new PriorityQueue<>(k, (a, b) -> load[a] != load[b] ? Long.compare(load[a], load[b]) : Integer.compare(a, b));
+        for (int c = 0; c < k; c++) {
+            lightest.add(c);
+        }
+
+        for (int o = n - 1; o >= 0; o--) {
+            int i = (int) order[o];
+            int c = lightest.poll();
+            assigned[i] = c;
+            load[c] += Math.max(costs[i], 1);
+            count[c]++;
+            lightest.add(c);
+        }
+
+        int[][] chunks = new int[k][];
+        for (int c = 0; c < k; c++) {
+            chunks[c] = new int[count[c]];
+            count[c] = 0;
+        }
+        for (int o = n - 1; o >= 0; o--) {
+            int i = (int) order[o];
+            int c = assigned[i];
+            chunks[c][count[c]++] = i;
+        }
+
+        return Arrays.stream(chunks).filter(x -> x.length > 0).toArray(int[][]::new);
     }
 
+    /**
+     * @return the raw result of each worker in worker order, null if a worker gave none
+     */
     public List<AbstractModelTaskRawResult> getResults() {
         return this.result;
     }
 
     @Override
     protected List<AbstractModelTaskRawResult> compute() {
-        List<AbstractModelTaskRawResult> res;
-        int size = this.end - this.begin;
-
-        if (size > this.threshold) {
-            int middle = this.begin + (size / 2);
-            WorkDetect t1 = new WorkDetect(this.status, this.workers, this.threshold, this.begin, middle);
-            t1.fork();
-            WorkDetect t2 = new WorkDetect(this.status, this.workers, this.threshold, middle, this.end);
-
-            res = t2.compute();
-            res.addAll(t1.join());
-        } else {
-            res = new LinkedList<>();
-
-            for (int i = this.begin; i < this.end; i++) {
-                AbstractModelTaskRawResult raw = runWorker(this.workers.get(i));
-                if (raw != null) {
-                    res.add(raw);
-                }
+        int size = this.workers.size();
+        AbstractModelTaskRawResult[] raw = new AbstractModelTaskRawResult[size];
+
+        // take the results of workers which were given or finished by an earlier run, only the rest are planned
+        Map<Integer, AbstractModelTaskRawResult> known = new HashMap<>(this.completed);
+        if (this.checkpointTask != null) {
+            known.putAll(this.checkpointTask.getCheckpoint(this.checkpointKey));
+        }
+        int[] remaining = new int[size - known.size()];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (known.containsKey(i)) {
+                raw[i] = known.get(i);
                 this.status.incrementProgress();
+            } else {
+                remaining[count++] = i;
             }
         }
 
-        if (this.result != null) {
-            this.result = res;
+        long[] costs = new long[remaining.length];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = this.workers.getCostEstimate(remaining[i]);
+        }
+
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        int parallelism = pool != null ? pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+        int[][] chunks = planChunks(costs, parallelism * chunksPerThread);
+
+        int checkpointInterval = this.checkpointTask != null ? SherlockEngine.configuration.getCheckpointInterval() : 0;
+        List<WorkDetectChunk> tasks = new LinkedList<>();
+        for (int[] chunk : chunks) {
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = remaining[chunk[i]];
+            }
+            tasks.add(new WorkDetectChunk(this.status, this.workers, chunk, raw, this.checkpointTask, this.checkpointKey, checkpointInterval));
         }
+        ForkJoinTask.invokeAll(tasks);
 
+        // keep the results in worker order, whatever order they ran in
+        List<AbstractModelTaskRawResult> res = new ArrayList<>(Arrays.asList(raw));
+
+        this.result = res;
         return res;
     }
+
+    /**
+     * Runs one chunk of workers in order, storing each result at the index of its worker and checkpointing them in batches
+     */
+    private static class WorkDetectChunk extends RecursiveAction {
+
+        private final JobStatus status;
+        private final IWorkerSource<?> workers;
+        private final int[] indexes;
+        private final AbstractModelTaskRawResult[] results;
+        private final ITask checkpointTask;
+        private final String checkpointKey;
+        private final int checkpointInterval;
+
+        WorkDetectChunk(JobStatus jobStatus, IWorkerSource<?> workers, int[] indexes, AbstractModelTaskRawResult[] results, ITask checkpointTask, String checkpointKey, int checkpointInterval) {
+            this.status = jobStatus;
+            this.workers = workers;
+            this.indexes = indexes;
+            this.results = results;
+            this.checkpointTask = checkpointTask;
+            this.checkpointKey = checkpointKey;
+            this.checkpointInterval = checkpointInterval;
+        }
+
+        @Override
+        protected void compute() {
+            int unsaved = 0;
+            for (int n = 0; n < this.indexes.length; n++) {
+                if (this.status.isCancelled()) {
+                    return;
+                }
+
+                int i = this.indexes[n];
+                try (PriorityWorkScheduler.LeafPermit permit = PriorityWorkScheduler.enterLeaf()) {
+                    DetectorWorker worker = this.workers.create(i);
+                    if (worker != null) {
+                        worker.setCancellationToken(this.status.getCancellationToken());
+                        worker.execute();
+                        this.results[i] = worker.getRawResult();
+
+                        ProvisionalResults provisional = this.status.getProvisionalResults();
+                        if (provisional != null && this.checkpointTask != null) {
+                            provisional.addAll(this.checkpointTask, Collections.singletonList(this.results[i]));
+                        }
+                    }
+                } catch (JobCancelledException e) {
+                    return;
+                }
+                this.status.incrementProgress();
+
+                if (this.checkpointInterval > 0 && ++unsaved >= this.checkpointInterval) {
+                    this.checkpoint(n + 1 - unsaved, n + 1);
+                    unsaved = 0;
+                }
+            }
+
+            if (unsaved > 0) {
+                this.checkpoint(this.indexes.length - unsaved, this.indexes.length);
+            }
+        }
+
+        /**
+         * Checkpoints the results of the workers at positions begin (inclusive) to end (exclusive) of the chunk
+         */
+        private void checkpoint(int begin, int end) {
+            int[] done = Arrays.copyOfRange(this.indexes, begin, end);
+            List<AbstractModelTaskRawResult> doneResults = new ArrayList<>(done.length);
+            for (int i : done) {
+                doneResults.add(this.results[i]);
+            }
+
+            this.checkpointTask.addCheckpoint(this.checkpointKey, done, doneResults);
+        }
+    }
 }
@@ -3,7 +3,8 @@ package uk.ac.warwick.dcs.sherlock.engine.executor.work;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.Lexer;
-import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.Vocabulary;
+import org.apache.commons.codec.digest.DigestUtils;
 import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.*;
@@ -11,127 +12,254 @@ import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.PreProcessingStrategy.
 import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
 import uk.ac.warwick.dcs.sherlock.api.util.ITuple;
 import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
 import uk.ac.warwick.dcs.sherlock.engine.executor.common.ExecutorUtils;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.PreProcessingCache;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.PriorityWorkScheduler;
 import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.StandardStringifier;
 import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.StandardTokeniser;
+import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.TrimWhitespaceScanner;
 
-import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.RecursiveAction;
 
 /**
- * Recursive task to preprocess a list of files for a single task
+ * Recursive task to preprocess a single file for every task of a job
+ * <br><br>
+ * The file is lexed once for each lexer class its strategies need, and strategies sharing a lexer run their preprocessors on the same immutable {@link TokenView}, see {@link TokenPipeline}.
+ * A strategy used by several tasks, with the same lexer, preprocessors and stringifier, is only run once and its {@link LineStore} is shared by the tasks' data items.
+ * <br><br>
+ * If a {@link PreProcessingCache} is passed the lines of each strategy are looked up in it first, and the file is only read and lexed if a strategy is not cached.
+ * A strategy which only trims whitespace from Java source is run by the {@link TrimWhitespaceScanner} instead of the lexer, which is only used if the scanner cannot handle the file.
  */
 public class WorkPreProcessFile extends RecursiveAction {
 
     private final List<IWorkTask> tasks;
-    private final int begin;
-    private final int end;
 
     private final ISourceFile file;
-    private final String fileContent;
+    private final PreProcessingCache cache;
+    private String fileContent;
+    private String fileHash;
 
-    WorkPreProcessFile(List<IWorkTask> tasks, ISourceFile file) {
-        this(tasks, 0, tasks.size(), file, file.getFileContentsAsString());
-    }
+    /**
+     * Tokens of the file for each lexer class, filled as the strategies need them
+     */
+    private final Map<Class<? extends Lexer>, LexedFile> lexed;
+
+    /**
+     * Lines produced by each distinct strategy
+     */
+    private final Map<StrategyKey, LineStore> outputs;
 
-    private WorkPreProcessFile(List<IWorkTask> tasks, int begin, int end, ISourceFile file, String fileContent) {
+    WorkPreProcessFile(List<IWorkTask> tasks, ISourceFile file, PreProcessingCache cache) {
         this.tasks = tasks;
-        this.begin = begin;
-        this.end = end;
 
         this.file = file;
-        this.fileContent = fileContent;
+        this.cache = cache;
+        this.fileContent = null;
+        this.fileHash = null;
+
+        this.lexed = new HashMap<>();
+        this.outputs = new HashMap<>();
     }
 
     @Override
     protected void compute() {
-        try {
-            int size = this.end - this.begin;
-
-            if (size > 1) {
-                int middle = this.begin + (size / 2);
-                WorkPreProcessFile t1 = new WorkPreProcessFile(this.tasks, this.begin, middle, this.file, this.fileContent);
-                t1.fork();
-                WorkPreProcessFile t2 = new WorkPreProcessFile(this.tasks, middle, this.end, this.file, this.fileContent);
-                t2.compute();
-                t1.join();
-            } else {
-                if (this.tasks != null && !this.tasks.isEmpty()) {
-                    this.process(tasks.get(this.begin));
-                } else {
-                    synchronized (ExecutorUtils.logger) {
-                        ExecutorUtils.logger.error("Strategy could not be preprocessed, no work tasks exist");
-                    }
+        if (this.tasks == null || this.tasks.isEmpty()) {
+            ExecutorUtils.logger.error("Strategy could not be preprocessed, no work tasks exist");
+            return;
+        }
+
+        try (PriorityWorkScheduler.LeafPermit permit = PriorityWorkScheduler.enterLeaf()) {
+            for (IWorkTask task : this.tasks) {
+                try {
+                    this.process(task);
+                } catch (Exception e) {
+                    e.printStackTrace();
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
 
-    @SuppressWarnings("Duplicates")
     private void process(IWorkTask task) {
-        Map<String, List<IndexedString>> map = new HashMap<>();
+        if (task.getJobStatus().isCancelled()) {
+            return;
+        }
+
+        ModelDataItem item = new ModelDataItem(this.file);
 
         task.getPreProcessingStrategies().forEach(strategy -> {
-            if (strategy.isAdvanced()) {
-                try {
-                    Class<? extends IAdvancedPreProcessorGroup> groupClass = (Class<? extends IAdvancedPreProcessorGroup>) strategy.getPreProcessorClasses().getFirst();
-                    ITuple<Class<? extends IAdvancedPreProcessor>, Class<? extends Lexer>> t = SherlockRegistry.getAdvancedPostProcessorForLanguage(groupClass, task.getLanguage());
-
-                    assert t != null;
-                    Lexer lexer = t.getValue().getDeclaredConstructor(CharStream.class).newInstance(CharStreams.fromStream(file.getFileContents()));
-                    IAdvancedPreProcessor processor = t.getKey().getConstructor().newInstance();
-                    map.put(strategy.getName(), processor.process(lexer));
-                } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | IOException |
-                         InvocationTargetException e) {
-                    e.printStackTrace();
-                }
-            } else {
-                try {
-                    Class<? extends Lexer> clazz = SherlockRegistry.getLexerForStrategy(strategy, task.getLanguage());
-                    if (clazz != null) {
-                        Lexer lexer = clazz.getDeclaredConstructor(CharStream.class).newInstance(CharStreams.fromString(this.fileContent));
-                        List<? extends Token> tokensMaster = lexer.getAllTokens();
-
-                        List<? extends Token> tokens = new LinkedList<>(tokensMaster);
-                        for (Class<? extends IPreProcessor> processorClass : strategy.getPreProcessorClasses()) {
-                            try {
-                                IGeneralPreProcessor processor = (IGeneralPreProcessor) processorClass.getConstructor().newInstance();
-                                tokens = processor.process(tokens, lexer.getVocabulary(), task.getLanguage());
-                            } catch (InstantiationException | IllegalAccessException e) {
-                                e.printStackTrace();
-                            }
-                        }
-
-                        ITokenStringifier stringifier;
-                        if (strategy.getStringifier() != null) {
-                            stringifier = strategy.getStringifier();
-                        } else if (strategy instanceof GenericGeneralPreProcessingStrategy && ((GenericGeneralPreProcessingStrategy) strategy).isResultTokenised()) {
-                            stringifier = new StandardTokeniser();
-                        } else {
-                            stringifier = new StandardStringifier();
-                        }
-
-                        map.put(strategy.getName(), stringifier.processTokens(tokens, lexer.getVocabulary()));
-                    } else {
-                        synchronized (ExecutorUtils.logger) {
-                            ExecutorUtils.logger.error("Strategy is not valid for the passed language, this should have been caught at startup!");
-                        }
-                    }
-                } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException |
-                         InstantiationException e) {
-                    e.printStackTrace();
-                }
+            LineStore lines = this.preProcess(strategy, task.getLanguage());
+            if (lines != null) {
+                item.addLineStore(strategy.getName(), lines);
             }
             task.getJobStatus().incrementProgress();
         });
 
-        task.addModelDataItem(new ModelDataItem(this.file, map));
+        task.addModelDataItem(item);
+    }
+
+    /**
+     * Fetches the lines of a strategy, from an identical strategy already run on the file, from the cache, or by running it
+     *
+     * @param strategy the strategy
+     * @param language language of the file
+     * @return the lines, null if the strategy could not be run
+     */
+    private LineStore preProcess(PreProcessingStrategy strategy, String language) {
+        StrategyKey key = strategy.isAdvanced() ? this.advancedKey(strategy, language) : this.generalKey(strategy, language);
+        if (key == null) {
+            ExecutorUtils.logger.error("Strategy is not valid for the passed language, this should have been caught at startup!");
+            return null;
+        }
+
+        if (this.outputs.containsKey(key)) {
+            return this.outputs.get(key);
+        }
+
+        PreProcessingCache.Key cacheKey = null;
+        LineStore lines = null;
+        if (this.cache != null) {
+            cacheKey = PreProcessingCache.key(this.getFileHash(), language, PreProcessingCache.hashStrategy(key.lexer, key.preProcessors, key.stringifier, key.tokenised));
+            lines = this.cache.get(cacheKey);
+        }
+
+        if (lines == null) {
+            List<IndexedString> processed = strategy.isAdvanced() ? this.processAdvanced(key) : this.processGeneral(strategy, key, language);
+            lines = processed != null ? LineStore.of(processed) : null;
+            if (lines != null && cacheKey != null) {
+                this.cache.put(cacheKey, lines);
+            }
+        }
+
+        this.outputs.put(key, lines);
+        return lines;
+    }
+
+    @SuppressWarnings("unchecked")
+    private StrategyKey advancedKey(PreProcessingStrategy strategy, String language) {
+        Class<? extends IAdvancedPreProcessorGroup> groupClass = (Class<? extends IAdvancedPreProcessorGroup>) strategy.getPreProcessorClasses().getFirst();
+        ITuple<Class<? extends IAdvancedPreProcessor>, Class<? extends Lexer>> t = SherlockRegistry.getAdvancedPostProcessorForLanguage(groupClass, language);
+        if (t == null) {
+            return null;
+        }
+
+        // advanced preprocessors consume a lexer of their own, so only identical strategies are shared
+        return new StrategyKey(t.getValue(), List.of(t.getKey()), null, false);
+    }
+
+    private StrategyKey generalKey(PreProcessingStrategy strategy, String language) {
+        Class<? extends Lexer> clazz = SherlockRegistry.getLexerForStrategy(strategy, language);
+        if (clazz == null) {
+            return null;
+        }
+
+        boolean tokenised = strategy instanceof GenericGeneralPreProcessingStrategy && ((GenericGeneralPreProcessingStrategy) strategy).isResultTokenised();
+        return new StrategyKey(clazz, strategy.getPreProcessorClasses(), strategy.getStringifier() != null ? strategy.getStringifier().getClass() : null, tokenised);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<IndexedString> processAdvanced(StrategyKey key) {
+        try {
+            Lexer lexer = key.lexer.getDeclaredConstructor(CharStream.class).newInstance(CharStreams.fromString(this.getFileContent()));
+            IAdvancedPreProcessor processor = ((Class<? extends IAdvancedPreProcessor>) key.preProcessors.getFirst()).getConstructor().newInstance();
+            return processor.process(lexer);
+        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private List<IndexedString> processGeneral(PreProcessingStrategy strategy, StrategyKey key, String language) {
+        if (TrimWhitespaceScanner.handles(key.lexer, key.preProcessors, key.stringifier, key.tokenised)) {
+            List<IndexedString> lines = TrimWhitespaceScanner.process(this.getFileContent());
+            if (lines != null) {
+                return lines;
+            }
+        }
+
+        LexedFile source = this.lex(key.lexer);
+        if (source == null) {
+            return null;
+        }
+
+        List<IGeneralPreProcessor> processors = new ArrayList<>();
+        for (Class<? extends IPreProcessor> processorClass : strategy.getPreProcessorClasses()) {
+            try {
+                processors.add((IGeneralPreProcessor) processorClass.getConstructor().newInstance());
+            } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+                e.printStackTrace();
+            }
+        }
+        TokenView tokens = TokenPipeline.run(source.tokens, processors, source.vocabulary, language);
+
+        ITokenStringifier stringifier;
+        if (strategy.getStringifier() != null) {
+            stringifier = strategy.getStringifier();
+        } else if (key.tokenised) {
+            stringifier = new StandardTokeniser();
+        } else {
+            stringifier = new StandardStringifier();
+        }
+
+        return stringifier.processTokens(tokens, source.vocabulary);
+    }
+
+    /**
+     * @return content of the file, read the first time it is needed
+     */
+    private String getFileContent() {
+        if (this.fileContent == null) {
+            this.fileContent = this.file.getFileContentsAsString();
+        }
+
+        return this.fileContent;
+    }
+
+    /**
+     * @return hash of the content of the file, the stored hash if the file has one
+     */
+    private String getFileHash() {
+        if (this.fileHash == null) {
+            this.fileHash = this.file.getHash() != null ? this.file.getHash() : DigestUtils.sha512Hex(this.getFileContent());
+        }
+
+        return this.fileHash;
+    }
+
+    /**
+     * Lexes the file with a lexer class, or fetches its tokens if it has already been lexed with it
+     *
+     * @param clazz the lexer class
+     * @return the tokens, null if the lexer could not be created
+     */
+    private LexedFile lex(Class<? extends Lexer> clazz) {
+        if (this.lexed.containsKey(clazz)) {
+            return this.lexed.get(clazz);
+        }
+
+        LexedFile res = null;
+        try {
+            Lexer lexer = clazz.getDeclaredConstructor(CharStream.class).newInstance(CharStreams.fromString(this.getFileContent()));
+            res = new LexedFile(TokenView.of(lexer.getAllTokens()), lexer.getVocabulary());
+        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException | InstantiationException e) {
+            e.printStackTrace();
+        }
+
+        this.lexed.put(clazz, res);
+        return res;
+    }
+
+    /**
+     * Tokens of the file from one lexer, shared by every strategy using the lexer
+     */
+    private record LexedFile(TokenView tokens, Vocabulary vocabulary) {
+    }
+
+    /**
+     * Everything which determines the output of a strategy, strategies with equal keys give the same lines
+     */
+    private record StrategyKey(Class<? extends Lexer> lexer, List<? extends Class<?>> preProcessors, Class<?> stringifier, boolean tokenised) {
     }
 }
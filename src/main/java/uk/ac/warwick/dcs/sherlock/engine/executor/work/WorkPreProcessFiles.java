@@ -1,46 +1,58 @@
 package uk.ac.warwick.dcs.sherlock.engine.executor.work;
 
 import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.PreProcessingCache;
 
 import java.util.List;
 import java.util.concurrent.RecursiveAction;
 
 /**
- * recursive task to preprocess a list of tasks for a list of files
+ * recursive task to preprocess a list of tasks for a list of files, files are skipped once the job is cancelled
  */
 public class WorkPreProcessFiles extends RecursiveAction {
 
     private final List<IWorkTask> tasks;
 
     private final List<ISourceFile> files;
+    private final PreProcessingCache cache;
     private final int begin;
     private final int end;
 
-    public WorkPreProcessFiles(List<IWorkTask> tasks, List<ISourceFile> files) {
-        this(tasks, files, 0, files.size());
+    /**
+     * @param tasks tasks to preprocess for
+     * @param files files to preprocess
+     * @param cache cache of preprocessed files, null to always preprocess
+     */
+    public WorkPreProcessFiles(List<IWorkTask> tasks, List<ISourceFile> files, PreProcessingCache cache) {
+        this(tasks, files, cache, 0, files.size());
     }
 
-    private WorkPreProcessFiles(List<IWorkTask> tasks, List<ISourceFile> files, int begin, int end) {
+    private WorkPreProcessFiles(List<IWorkTask> tasks, List<ISourceFile> files, PreProcessingCache cache, int begin, int end) {
         this.tasks = tasks;
 
         this.files = files;
+        this.cache = cache;
         this.begin = begin;
         this.end = end;
     }
 
+    private boolean isJobCancelled() {
+        return !this.tasks.isEmpty() && this.tasks.getFirst().getJobStatus().isCancelled();
+    }
+
     @Override
     protected void compute() {
         int size = this.end - this.begin;
 
         if (size > 1) {
             int middle = this.begin + (size / 2);
-            WorkPreProcessFiles t1 = new WorkPreProcessFiles(this.tasks, this.files, this.begin, middle);
+            WorkPreProcessFiles t1 = new WorkPreProcessFiles(this.tasks, this.files, this.cache, this.begin, middle);
             t1.fork();
-            WorkPreProcessFiles t2 = new WorkPreProcessFiles(this.tasks, this.files, middle, this.end);
+            WorkPreProcessFiles t2 = new WorkPreProcessFiles(this.tasks, this.files, this.cache, middle, this.end);
             t2.compute();
             t1.join();
-        } else {
-            WorkPreProcessFile f1 = new WorkPreProcessFile(tasks, this.files.get(this.begin));
+        } else if (!this.isJobCancelled()) {
+            WorkPreProcessFile f1 = new WorkPreProcessFile(tasks, this.files.get(this.begin), this.cache);
             f1.compute();
         }
     }
@@ -0,0 +1,350 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.work;
+
+import uk.ac.warwick.dcs.sherlock.api.component.*;
+import uk.ac.warwick.dcs.sherlock.api.exception.UnknownDetectionTypeException;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectionType;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.ModelTaskProcessedResults;
+import uk.ac.warwick.dcs.sherlock.api.util.ITuple;
+import uk.ac.warwick.dcs.sherlock.api.util.SparseScoreMatrix;
+import uk.ac.warwick.dcs.sherlock.engine.executor.JobStatus;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.ExecutorUtils;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.PriorityWorkScheduler;
+
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Recursive task to score each file of a job, for each task and overall, against the whole file and against every other file.
+ * <br><br>
+ * The code block groups of every task are indexed by file once, up front, so scoring a file only visits the groups containing it. Each leaf writes only to the result objects of its own files, which
+ * must have been created beforehand with {@link IResultJob#addFiles(List)} and {@link IResultFile#addTaskResults(List)}, and to its own rows of the file vs file score matrices. Once the task has
+ * run the caller sets the matrices with {@link IResultJob#setFileScores(List, SparseScoreMatrix, Map)} and writes the results to storage.
+ */
+public class WorkScoreFiles extends RecursiveAction {
+
+    private final JobStatus status;
+    private final ScoreIndex index;
+    private final List<IResultFile> fileResults;
+
+    private final int threshold;
+    private final int begin;
+    private final int end;
+
+    /**
+     * @param jobStatus   status of the job, progress is incremented twice per file per task, and once per file
+     * @param files       the workspace files
+     * @param results     the processed results of each task
+     * @param fileResults the result object for each file, in the same order as the files
+     * @param threshold   maximum number of files to score in a single leaf
+     */
+    public WorkScoreFiles(JobStatus jobStatus, List<ISourceFile> files, List<ITuple<ITask, ModelTaskProcessedResults>> results, List<IResultFile> fileResults, int threshold) {
+        this(jobStatus, new ScoreIndex(files, results), fileResults, Math.max(threshold, 1), 0, files.size());
+    }
+
+    private WorkScoreFiles(JobStatus jobStatus, ScoreIndex index, List<IResultFile> fileResults, int threshold, int begin, int end) {
+        this.status = jobStatus;
+        this.index = index;
+        this.fileResults = fileResults;
+
+        this.threshold = threshold;
+        this.begin = begin;
+        this.end = end;
+    }
+
+    /**
+     * @return the aggregate scores of each file against every other file, indexed by position in the file list
+     */
+    public SparseScoreMatrix getOverallScores() {
+        return this.index.overall.build();
+    }
+
+    /**
+     * @return for each task, the scores of each file against every other file, indexed by position in the file list
+     */
+    public Map<ITask, SparseScoreMatrix> getTaskScores() {
+        Map<ITask, SparseScoreMatrix> res = new HashMap<>();
+        for (int t = 0; t < this.index.tasks.size(); t++) {
+            res.put(this.index.tasks.get(t), this.index.taskScores[t].build());
+        }
+        return res;
+    }
+
+    @Override
+    protected void compute() {
+        int size = this.end - this.begin;
+
+        if (size > this.threshold) {
+            int middle = this.begin + (size / 2);
+            WorkScoreFiles t1 = new WorkScoreFiles(this.status, this.index, this.fileResults, this.threshold, this.begin, middle);
+            t1.fork();
+            WorkScoreFiles t2 = new WorkScoreFiles(this.status, this.index, this.fileResults, this.threshold, middle, this.end);
+            t2.compute();
+            t1.join();
+        } else {
+            RowScratch scratch = new RowScratch(this.index.files.size());
+            for (int f = this.begin; f < this.end; f++) {
+                if (this.status.isCancelled()) {
+                    return;
+                }
+
+                try (PriorityWorkScheduler.LeafPermit permit = PriorityWorkScheduler.enterLeaf()) {
+                    this.scoreFile(f, scratch);
+                } catch (Exception e) {
+                    ExecutorUtils.logger.error("Scorer error: ", e);
+                }
+                this.status.incrementProgress();
+            }
+        }
+    }
+
+    private void scoreFile(int f, RowScratch scratch) {
+        ISourceFile file = this.index.files.get(f);
+        IResultFile fileRes = this.fileResults.get(f);
+        if (fileRes == null) {
+            return;
+        }
+
+        List<IResultTask> taskResults = fileRes.addTaskResults(this.index.tasks);
+        GroupScores overall = new GroupScores();
+
+        for (int t = 0; t < this.index.tasks.size(); t++) {
+            ModelTaskProcessedResults result = this.index.results.get(t);
+            int[] groupIds = this.index.fileGroups[t][f];
+            int fileTotal = result.getFileTotal(file);
+
+            // Construct block scores weighted against the whole file, by default uses file line count, but can be set to custom totals (eg. variable counts)
+            GroupScores groupScores = new GroupScores();
+            float fullSize = 0;
+            for (int g : groupIds) {
+                ICodeBlock b = this.index.groups[t][g].getCodeBlock(file);
+                float size = b.getLineNumbers().stream().mapToInt(y -> y.getValue() - y.getKey() + 1).sum();
+                fullSize += size;
+
+                // a group with an unknown detection type still takes up its share of the file, but has no weighting so adds nothing to the scores
+                if (this.index.types[t][g] != null) {
+                    groupScores.add(this.index.types[t][g], b.getBlockScore() * (size / fileTotal), this.index.groupFiles[t][g]);
+                }
+            }
+
+            // Normalise against full size to counteract overlaps
+            if (fullSize > fileTotal) {
+                groupScores.scale(fileTotal / fullSize);
+            }
+            this.status.incrementProgress();
+
+            IResultTask taskRes = taskResults.get(t);
+            if (taskRes != null) {
+                List<ICodeBlockGroup> containing = new ArrayList<>(groupIds.length);
+                for (int g : groupIds) {
+                    containing.add(this.index.groups[t][g]);
+                }
+                taskRes.addContainingBlock(containing);
+
+                // calculate and store the scores from the group scores, uses weightings
+                taskRes.setTaskScore(this.scoreRow(f, groupScores, this.index.taskScores[t], scratch));
+            }
+            overall.addAll(groupScores);
+
+            this.status.incrementProgress();
+        }
+
+        fileRes.setOverallScore(this.scoreRow(f, overall, this.index.overall, scratch));
+    }
+
+    /**
+     * Scores a file from its weighted group scores, against the whole file and against every other file, using the relative weightings of the detection types present. The scores against other
+     * files are set as the file's row of the matrix, only files sharing a group have a score
+     *
+     * @return the score against the whole file
+     */
+    private float scoreRow(int f, GroupScores groupScores, SparseScoreMatrix.Builder matrix, RowScratch scratch) {
+        // Calculate types and their relative weightings within this list
+        Map<DetectionType, Double> typeWeights = new HashMap<>();
+        for (int i = 0; i < groupScores.size; i++) {
+            typeWeights.putIfAbsent(groupScores.types[i], 0.0);
+        }
+
+        double weightSum = typeWeights.keySet().stream().mapToDouble(DetectionType::getWeighting).sum();
+        typeWeights.keySet().forEach(z -> typeWeights.put(z, z.getWeighting() / weightSum));
+
+        // Score overall, and against each file present in the same groups, from relative weightings
+        double s = 0;
+        for (int i = 0; i < groupScores.size; i++) {
+            double weighted = groupScores.values[i] * typeWeights.get(groupScores.types[i]);
+            s += weighted;
+            for (int other : groupScores.files[i]) {
+                if (other != f) {
+                    scratch.add(other, weighted);
+                }
+            }
+        }
+
+        scratch.writeRow(f, matrix);
+        return Math.min((float) s, 1); // cap to 100%
+    }
+
+    /**
+     * Groups of each task indexed by file, shared read only by all leaves
+     */
+    private static class ScoreIndex {
+
+        final List<ISourceFile> files;
+        final List<ITask> tasks;
+        final List<ModelTaskProcessedResults> results;
+
+        /**
+         * For each task, the groups, their types, null if the type is unknown, and the indexes of the files they contain
+         */
+        final ICodeBlockGroup[][] groups;
+        final DetectionType[][] types;
+        final int[][][] groupFiles;
+
+        /**
+         * For each task and file, the indexes of the groups containing the file, in group order
+         */
+        final int[][][] fileGroups;
+
+        /**
+         * Score matrices filled in by the leaves, one row per file
+         */
+        final SparseScoreMatrix.Builder overall;
+        final SparseScoreMatrix.Builder[] taskScores;
+
+        ScoreIndex(List<ISourceFile> files, List<ITuple<ITask, ModelTaskProcessedResults>> results) {
+            this.files = files;
+            this.tasks = results.stream().map(ITuple::getKey).toList();
+            this.results = results.stream().map(ITuple::getValue).toList();
+
+            Map<Long, Integer> fileIndexes = new HashMap<>();
+            for (int i = 0; i < files.size(); i++) {
+                fileIndexes.put(files.get(i).getPersistentId(), i);
+            }
+
+            int taskCount = results.size();
+            this.groups = new ICodeBlockGroup[taskCount][];
+            this.types = new DetectionType[taskCount][];
+            this.groupFiles = new int[taskCount][][];
+            this.fileGroups = new int[taskCount][][];
+
+            this.overall = SparseScoreMatrix.builder(files.size());
+            this.taskScores = new SparseScoreMatrix.Builder[taskCount];
+
+            for (int t = 0; t < taskCount; t++) {
+                List<ICodeBlockGroup> taskGroups = new ArrayList<>();
+                List<DetectionType> taskTypes = new ArrayList<>();
+                List<int[]> taskGroupFiles = new ArrayList<>();
+                int[] counts = new int[files.size()];
+
+                for (ICodeBlockGroup group : this.results.get(t).getGroups()) {
+                    DetectionType type = null;
+                    try {
+                        type = group.getDetectionType();
+                    } catch (UnknownDetectionTypeException e) {
+                        ExecutorUtils.logger.error("Scorer error, group has an unknown detection type: ", e);
+                    }
+                    int[] present = group.getCodeBlocks().stream().map(b -> fileIndexes.get(b.getFile().getPersistentId())).filter(Objects::nonNull).mapToInt(Integer::intValue).toArray();
+
+                    taskGroups.add(group);
+                    taskTypes.add(type);
+                    taskGroupFiles.add(present);
+                    for (int i : present) {
+                        counts[i]++;
+                    }
+                }
+
+                this.groups[t] = taskGroups.toArray(new ICodeBlockGroup[0]);
+                this.types[t] = taskTypes.toArray(new DetectionType[0]);
+                this.groupFiles[t] = taskGroupFiles.toArray(new int[0][]);
+
+                this.taskScores[t] = SparseScoreMatrix.builder(files.size());
+                this.fileGroups[t] = new int[files.size()][];
+                for (int i = 0; i < files.size(); i++) {
+                    this.fileGroups[t][i] = new int[counts[i]];
+                    counts[i] = 0;
+                }
+                for (int g = 0; g < this.groupFiles[t].length; g++) {
+                    for (int i : this.groupFiles[t][g]) {
+                        this.fileGroups[t][i][counts[i]++] = g;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Per leaf accumulator for the scores of one file against the others, reset after each row is written
+     */
+    private static class RowScratch {
+
+        final double[] scores;
+        final boolean[] present;
+        int[] touched = new int[16];
+        int count = 0;
+
+        RowScratch(int size) {
+            this.scores = new double[size];
+            this.present = new boolean[size];
+        }
+
+        void add(int other, double score) {
+            if (!this.present[other]) {
+                this.present[other] = true;
+                if (this.count == this.touched.length) {
+                    this.touched = Arrays.copyOf(this.touched, this.count * 2);
+                }
+                this.touched[this.count++] = other;
+            }
+            this.scores[other] += score;
+        }
+
+        void writeRow(int row, SparseScoreMatrix.Builder matrix) {
+            Arrays.sort(this.touched, 0, this.count);
+
+            float[] rowScores = new float[this.count];
+            for (int i = 0; i < this.count; i++) {
+                rowScores[i] = Math.min((float) this.scores[this.touched[i]], 1); // cap to 100%
+                this.scores[this.touched[i]] = 0;
+                this.present[this.touched[i]] = false;
+            }
+
+            matrix.setRow(row, this.touched, rowScores, this.count);
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Weighted scores of a list of groups, along with the type and files of each group
+     */
+    private static class GroupScores {
+
+        DetectionType[] types = new DetectionType[8];
+        float[] values = new float[8];
+        int[][] files = new int[8][];
+        int size = 0;
+
+        void add(DetectionType type, float value, int[] groupFiles) {
+            if (this.size == this.values.length) {
+                this.types = Arrays.copyOf(this.types, this.size * 2);
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+                this.files = Arrays.copyOf(this.files, this.size * 2);
+            }
+
+            this.types[this.size] = type;
+            this.values[this.size] = value;
+            this.files[this.size] = groupFiles;
+            this.size++;
+        }
+
+        void addAll(GroupScores other) {
+            for (int i = 0; i < other.size; i++) {
+                this.add(other.types[i], other.values[i], other.files[i]);
+            }
+        }
+
+        void scale(float factor) {
+            for (int i = 0; i < this.size; i++) {
+                this.values[i] *= factor;
+            }
+        }
+    }
+}
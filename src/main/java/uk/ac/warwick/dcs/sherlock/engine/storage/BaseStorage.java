@@ -54,7 +54,8 @@ public class BaseStorage implements IStorageWrapper {
 
         //list = this.database.runQuery("SELECT t from Task t", EntityTask.class).stream().filter(x -> x.getStatus() == WorkStatus.PREPARED).collect(Collectors.toList());
         List<EntityJob> jobs = this.database.runQuery("SELECT j from Job j", EntityJob.class);
-        jobs.stream().filter(j -> !j.getTasks().isEmpty() && j.getStatus() == WorkStatus.ACTIVE).forEach(j -> {
+        // queued jobs are resumed by the executor from their checkpoints, see IExecutor.resumeQueuedJobs
+        jobs.stream().filter(j -> !j.getTasks().isEmpty() && j.getStatus() == WorkStatus.ACTIVE && !j.isQueued()).forEach(j -> {
             if (j.getTasks().stream().anyMatch(i -> i.getStatus() == WorkStatus.PREPARED)) {
                 j.getTasks().stream().filter(i -> i.getStatus() == WorkStatus.PREPARED).forEach(i -> ((EntityTask) i).setStatus(WorkStatus.INTERRUPTED));
                 j.setStatus(WorkStatus.INTERRUPTED);
@@ -141,6 +142,12 @@ public class BaseStorage implements IStorageWrapper {
         return this.getWorkspaces().stream().filter(x -> ids.contains(x.getPersistentId())).collect(Collectors.toList());
     }
 
+    @Override
+    public List<IJob> getQueuedJobs() {
+        List<EntityJob> l = this.database.runQuery("SELECT j FROM Job j WHERE j.queued=true ORDER BY j.id", EntityJob.class);
+        return new LinkedList<>(l);
+    }
+
     @Override
     public List<IWorkspace> getWorkspaces() {
         List<EntityWorkspace> l = this.database.runQuery("SELECT w FROM Workspace w", EntityWorkspace.class);
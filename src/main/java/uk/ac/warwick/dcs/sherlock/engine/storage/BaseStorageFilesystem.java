@@ -53,6 +53,17 @@ public class BaseStorageFilesystem {
         return this.loadStorableStr(file, this.computeFileIdentifier(file));
     }
 
+    /**
+     * Loads one chunk of a task's checkpointed worker results from the filesystem
+     *
+     * @param task  task the checkpoint belongs to
+     * @param chunk the stored chunk
+     * @return content of the chunk, null if it could not be loaded
+     */
+    byte[] loadTaskCheckpoint(EntityTask task, CheckpointChunk chunk) {
+        return this.loadStorable(chunk, this.computeTaskCheckpointIdentifier(task, chunk.index));
+    }
+
     /**
      * Loads a tasks raw results from the filesystem
      *
@@ -103,6 +114,18 @@ public class BaseStorageFilesystem {
         }
     }
 
+    /**
+     * Removes all the checkpointed worker results of a task from the filesystem
+     *
+     * @param task   task to remove the checkpoint of
+     * @param chunks number of chunks stored for the task
+     */
+    void removeTaskCheckpoint(EntityTask task, int chunks) {
+        for (int i = 0; i < chunks; i++) {
+            this.getFileFromIdentifier(this.computeTaskCheckpointIdentifier(task, i)).delete();
+        }
+    }
+
     /**
      * Stores a file on the filesystem
      *
@@ -134,6 +157,19 @@ public class BaseStorageFilesystem {
         }
     }
 
+    /**
+     * Stores one chunk of a task's checkpointed worker results on the filesystem
+     *
+     * @param task    task the checkpoint belongs to
+     * @param index   index of the chunk within the task's checkpoint
+     * @param content content of the chunk
+     * @return the stored chunk, holding what is needed to load it again, or null if it could not be stored
+     */
+    CheckpointChunk storeTaskCheckpoint(EntityTask task, int index, byte[] content) {
+        CheckpointChunk chunk = new CheckpointChunk(index, task.getTimestamp());
+        return this.storeStorable(chunk, this.computeTaskCheckpointIdentifier(task, index), content) ? chunk : null;
+    }
+
     boolean updateFileArchive(EntityFile file, EntityArchive newArchive) {
         String oldIdentifier = this.computeFileIdentifier(file);
         String newIdentifier = this.computeFileIdentifier(file, newArchive);
@@ -170,6 +206,10 @@ public class BaseStorageFilesystem {
         for (EntityTask t : allTasks) {
             String tmp = this.computeLocator(this.computeTaskIdentifier(t));
             filesInStore.remove(tmp);
+
+            for (int i = 0; i < t.getCheckpointChunkCount(); i++) {
+                filesInStore.remove(this.computeLocator(this.computeTaskCheckpointIdentifier(t, i)));
+            }
         }
 
         if (!orphanRecords.isEmpty()) {
@@ -206,6 +246,12 @@ public class BaseStorageFilesystem {
         return DigestUtils.sha512Hex(str.substring(0, 1024));
     }
 
+    private String computeTaskCheckpointIdentifier(EntityTask task, int chunk) {
+        String str = task.getJob().getPersistentId() + "." + task.getPersistentId() + "-" + task.getTimestamp().getTime() + ".checkpoint." + chunk;
+        str = StringUtils.rightPad(str, 1024, str);
+        return DigestUtils.sha512Hex(str.substring(0, 1024));
+    }
+
     private List<String> getAllFiles() {
         String parentDir = SherlockEngine.configuration.getDataPath() + File.separator + "Store";
         List<String> filesInStore;
@@ -347,4 +393,51 @@ public class BaseStorageFilesystem {
 
         Timestamp getTimestamp();
     }
+
+    /**
+     * Stored chunk of a task's checkpointed worker results, the hash and secure param are kept in the task's database record
+     */
+    static class CheckpointChunk implements IStorable {
+
+        private final int index;
+        private final Timestamp timestamp;
+        private String hash;
+        private byte[] secure;
+
+        CheckpointChunk(int index, Timestamp timestamp) {
+            this(index, timestamp, null, null);
+        }
+
+        CheckpointChunk(int index, Timestamp timestamp, String hash, byte[] secure) {
+            this.index = index;
+            this.timestamp = timestamp;
+            this.hash = hash;
+            this.secure = secure;
+        }
+
+        @Override
+        public String getHash() {
+            return this.hash;
+        }
+
+        @Override
+        public void setHash(String hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public byte[] getSecureParam() {
+            return this.secure;
+        }
+
+        @Override
+        public void setSecureParam(byte[] secure) {
+            this.secure = secure;
+        }
+
+        @Override
+        public Timestamp getTimestamp() {
+            return this.timestamp;
+        }
+    }
 }
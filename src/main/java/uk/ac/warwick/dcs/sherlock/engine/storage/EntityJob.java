@@ -31,6 +31,7 @@ public class EntityJob implements IJob, Serializable {
     private EntityWorkspace workspace;
     private Timestamp timestamp;
     private WorkStatus status;
+    private boolean queued;
     @Transient
     private boolean prepared;
     @Transient
@@ -141,6 +142,17 @@ public class EntityJob implements IJob, Serializable {
         return this.workspace;
     }
 
+    @Override
+    public boolean isQueued() {
+        return this.queued;
+    }
+
+    @Override
+    public void setQueued(boolean queued) {
+        this.queued = queued;
+        BaseStorage.instance.database.storeObject(this);
+    }
+
     @Override
     public boolean isPrepared() {
         return this.prepared;
@@ -8,6 +8,7 @@ import uk.ac.warwick.dcs.sherlock.api.component.ITask;
 import javax.persistence.*;
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -68,6 +69,22 @@ public class EntityResultFile implements IResultFile, Serializable {
         return null;
     }
 
+    @Override
+    public List<IResultTask> addTaskResults(List<ITask> tasks) {
+        List<IResultTask> res = new ArrayList<>(tasks.size());
+        for (ITask task : tasks) {
+            if (task instanceof EntityTask) {
+                EntityResultTask t = new EntityResultTask(this, (EntityTask) task);
+                this.taskResults.add(t);
+                res.add(t);
+            } else {
+                res.add(null);
+            }
+        }
+
+        return res;
+    }
+
     @Override
     public ISourceFile getFile() {
         return this.file;
@@ -76,7 +93,12 @@ public class EntityResultFile implements IResultFile, Serializable {
     @Override
     public float getFileScore(ISourceFile file) {
         if (file instanceof EntityFile) {
-            return this.fileScores.getOrDefault(file, 0f);
+            if (this.fileScores.containsKey(file)) {
+                return this.fileScores.get(file);
+            }
+
+            ResultScores scores = this.jobRes.getScores();
+            return scores != null ? scores.getScore(null, this.file.getPersistentId(), file.getPersistentId()) : 0;
         }
 
         return 0;
@@ -84,7 +106,20 @@ public class EntityResultFile implements IResultFile, Serializable {
 
     @Override
     public Map<ISourceFile, Float> getFileScores() {
-        return new HashMap<>(this.fileScores);
+        Map<ISourceFile, Float> res = new HashMap<>();
+
+        ResultScores scores = this.jobRes.getScores();
+        if (scores != null) {
+            scores.getScores(null, this.file.getPersistentId()).forEach((id, score) -> {
+                EntityFile f = this.jobRes.getFile(id);
+                if (f != null) {
+                    res.put(f, score);
+                }
+            });
+        }
+
+        res.putAll(this.fileScores);
+        return res;
     }
 
     @Override
@@ -102,6 +137,10 @@ public class EntityResultFile implements IResultFile, Serializable {
         return new LinkedList<>(this.taskResults);
     }
 
+    EntityResultJob getJobResult() {
+        return this.jobRes;
+    }
+
     void remove() {
         if (this.taskResults != null) {
             for (EntityResultTask t : this.taskResults) {
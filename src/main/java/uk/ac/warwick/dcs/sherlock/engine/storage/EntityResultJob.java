@@ -3,13 +3,14 @@ package uk.ac.warwick.dcs.sherlock.engine.storage;
 import uk.ac.warwick.dcs.sherlock.api.component.IResultFile;
 import uk.ac.warwick.dcs.sherlock.api.component.IResultJob;
 import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.component.ITask;
+import uk.ac.warwick.dcs.sherlock.api.util.SparseScoreMatrix;
 
 import javax.persistence.*;
+import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 
 /**
  * IResultJob object for base storage implementation
@@ -30,6 +31,14 @@ public class EntityResultJob implements IResultJob, Serializable {
     @OneToMany(mappedBy = "jobRes", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<EntityResultFile> fileResults;
 
+    /**
+     * Encoded {@link ResultScores}, null for results stored before scores were held as matrices
+     */
+    private byte[] scoreMatrices;
+
+    private transient volatile ResultScores decodedScores;
+    private transient volatile Map<Long, EntityFile> filesById;
+
     EntityResultJob(EntityJob job) {
         super();
         this.job = job;
@@ -50,6 +59,71 @@ public class EntityResultJob implements IResultJob, Serializable {
         return null;
     }
 
+    @Override
+    public List<IResultFile> addFiles(List<ISourceFile> files) {
+        List<IResultFile> res = new ArrayList<>(files.size());
+        for (ISourceFile file : files) {
+            if (file instanceof EntityFile) {
+                EntityResultFile f = new EntityResultFile(this, (EntityFile) file);
+                this.fileResults.add(f);
+                res.add(f);
+            } else {
+                res.add(null);
+            }
+        }
+
+        return res;
+    }
+
+    @Override
+    public void setFileScores(List<ISourceFile> files, SparseScoreMatrix overall, Map<ITask, SparseScoreMatrix> taskScores) {
+        long[] fileIds = files.stream().mapToLong(ISourceFile::getPersistentId).toArray();
+        Map<Long, SparseScoreMatrix> taskMatrices = new HashMap<>();
+        taskScores.forEach((task, matrix) -> taskMatrices.put(task.getPersistentId(), matrix));
+
+        ResultScores scores = new ResultScores(fileIds, overall, taskMatrices);
+        try {
+            this.scoreMatrices = scores.encode();
+            this.decodedScores = scores;
+        } catch (IOException e) {
+            BaseStorage.logger.error("Could not encode file scores for job result#{}", this.id, e);
+        }
+    }
+
+    /**
+     * @return the file vs file scores, or null if they have not been set
+     */
+    ResultScores getScores() {
+        if (this.decodedScores == null && this.scoreMatrices != null) {
+            try {
+                this.decodedScores = ResultScores.decode(this.scoreMatrices);
+            } catch (IOException e) {
+                BaseStorage.logger.error("Could not decode file scores for job result#{}", this.id, e);
+            }
+        }
+
+        return this.decodedScores;
+    }
+
+    /**
+     * Finds a file of this result set from its id
+     *
+     * @param id persistent id of the file
+     * @return the file, or null if it is not in the result set
+     */
+    EntityFile getFile(long id) {
+        Map<Long, EntityFile> files = this.filesById;
+        if (files == null) {
+            files = new HashMap<>();
+            for (EntityResultFile f : this.fileResults) {
+                files.put(f.getFile().getPersistentId(), (EntityFile) f.getFile());
+            }
+            this.filesById = files;
+        }
+
+        return files.get(id);
+    }
+
     @Override
     public List<IResultFile> getFileResults() {
         return new LinkedList<>(this.fileResults);
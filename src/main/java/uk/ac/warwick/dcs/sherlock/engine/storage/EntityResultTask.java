@@ -72,7 +72,12 @@ public class EntityResultTask implements IResultTask, Serializable {
     @Override
     public float getFileScore(ISourceFile file) {
         if (file instanceof EntityFile) {
-            return this.fileScores.getOrDefault(file, 0f);
+            if (this.fileScores.containsKey(file)) {
+                return this.fileScores.get(file);
+            }
+
+            ResultScores scores = this.fileRes.getJobResult().getScores();
+            return scores != null ? scores.getScore(this.task.getPersistentId(), this.fileRes.getFile().getPersistentId(), file.getPersistentId()) : 0;
         }
 
         return 0;
@@ -80,7 +85,21 @@ public class EntityResultTask implements IResultTask, Serializable {
 
     @Override
     public Map<ISourceFile, Float> getFileScores() {
-        return new HashMap<>(this.fileScores);
+        Map<ISourceFile, Float> res = new HashMap<>();
+
+        EntityResultJob jobRes = this.fileRes.getJobResult();
+        ResultScores scores = jobRes.getScores();
+        if (scores != null) {
+            scores.getScores(this.task.getPersistentId(), this.fileRes.getFile().getPersistentId()).forEach((id, score) -> {
+                EntityFile f = jobRes.getFile(id);
+                if (f != null) {
+                    res.put(f, score);
+                }
+            });
+        }
+
+        res.putAll(this.fileScores);
+        return res;
     }
 
     @Override
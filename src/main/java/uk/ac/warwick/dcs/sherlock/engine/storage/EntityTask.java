@@ -10,15 +10,13 @@ import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
 import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
 import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
 import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
+import uk.ac.warwick.dcs.sherlock.engine.storage.BaseStorageFilesystem.CheckpointChunk;
 import uk.ac.warwick.dcs.sherlock.engine.storage.BaseStorageFilesystem.IStorable;
 
 import javax.persistence.*;
-import java.io.Serial;
-import java.io.Serializable;
+import java.io.*;
 import java.sql.Timestamp;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * ITask object for base storage implementation
@@ -50,6 +48,13 @@ public class EntityTask implements ITask, IStorable, Serializable {
 
     private WorkStatus status;
 
+    // null for tasks completed before the floor was recorded
+    private Integer candidateFloor;
+
+    // checkpointed worker results are stored as files in chunks, this holds the hash and secure param of each chunk, see encodeCheckpoint
+    private String checkpointKey;
+    private byte[] checkpoint;
+
     public EntityTask() {
         super();
     }
@@ -68,6 +73,81 @@ public class EntityTask implements ITask, IStorable, Serializable {
         this.addParams(SherlockRegistry.getPostProcessorAdjustableParametersFromDetector(detector));
     }
 
+    @Override
+    public synchronized void addCheckpoint(String checkpointKey, int[] workerIndexes, List<AbstractModelTaskRawResult> rawResults) {
+        if (!checkpointKey.equals(this.checkpointKey)) {
+            this.clearCheckpoint();
+            this.checkpointKey = checkpointKey;
+        }
+
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(workerIndexes);
+            oos.writeObject(new ArrayList<>(rawResults));
+            oos.close();
+
+            List<CheckpointChunk> chunks = this.decodeCheckpoint();
+            CheckpointChunk chunk = BaseStorage.instance.filesystem.storeTaskCheckpoint(this, chunks.size(), baos.toByteArray());
+            if (chunk != null) {
+                chunks.add(chunk);
+                this.checkpoint = encodeCheckpoint(chunks);
+                BaseStorage.instance.database.storeObject(this);
+            }
+        } catch (IOException e) {
+            logger.error("Could not checkpoint results for task {}", this.id, e);
+        }
+    }
+
+    @Override
+    public synchronized void clearCheckpoint() {
+        int chunks = this.getCheckpointChunkCount();
+        if (chunks > 0) {
+            BaseStorage.instance.filesystem.removeTaskCheckpoint(this, chunks);
+        }
+
+        this.checkpointKey = null;
+        this.checkpoint = null;
+        BaseStorage.instance.database.storeObject(this);
+    }
+
+    @Override
+    public synchronized Map<Integer, AbstractModelTaskRawResult> getCheckpoint(String checkpointKey) {
+        Map<Integer, AbstractModelTaskRawResult> res = new HashMap<>();
+        if (this.checkpoint == null || !checkpointKey.equals(this.checkpointKey)) {
+            return res;
+        }
+
+        for (CheckpointChunk chunk : this.decodeCheckpoint()) {
+            byte[] content = BaseStorage.instance.filesystem.loadTaskCheckpoint(this, chunk);
+            if (content == null) {
+                continue; // the workers of a missing chunk are just run again
+            }
+
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(content))) {
+                int[] indexes = (int[]) in.readObject();
+                List<AbstractModelTaskRawResult> rawResults = (List<AbstractModelTaskRawResult>) in.readObject();
+                for (int i = 0; i < indexes.length; i++) {
+                    res.put(indexes[i], rawResults.get(i));
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                logger.error("Could not load checkpointed results for task {}", this.id, e);
+            }
+        }
+
+        return res;
+    }
+
+    @Override
+    public int getCandidateFloor() {
+        return this.candidateFloor != null ? this.candidateFloor : -1;
+    }
+
+    @Override
+    public void setCandidateFloor(int candidateFloor) {
+        this.candidateFloor = candidateFloor;
+    }
+
     @Override
     public Class<? extends IDetector> getDetector() {
         try {
@@ -171,6 +251,7 @@ public class EntityTask implements ITask, IStorable, Serializable {
     @Override
     public void setComplete() {
         this.status = WorkStatus.COMPLETE;
+        this.clearCheckpoint();
     }
 
     @SuppressWarnings("Duplicates")
@@ -204,10 +285,26 @@ public class EntityTask implements ITask, IStorable, Serializable {
     }
 
     void remove() {
+        BaseStorage.instance.filesystem.removeTaskCheckpoint(this, this.getCheckpointChunkCount());
         BaseStorage.instance.filesystem.removeTaskRawResults(this);
         BaseStorage.instance.database.removeObject(this);
     }
 
+    /**
+     * @return number of stored chunks of checkpointed worker results
+     */
+    int getCheckpointChunkCount() {
+        if (this.checkpoint == null) {
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(this.checkpoint))) {
+            return in.readInt();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
     void setRawResultsNoStore(List<AbstractModelTaskRawResult> rawResults) {
         this.rawResults = rawResults;
     }
@@ -222,6 +319,47 @@ public class EntityTask implements ITask, IStorable, Serializable {
         }
     }
 
+    private static byte[] encodeCheckpoint(List<CheckpointChunk> chunks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(chunks.size());
+            for (CheckpointChunk chunk : chunks) {
+                out.writeUTF(chunk.getHash());
+                out.writeInt(chunk.getSecureParam() != null ? chunk.getSecureParam().length : -1);
+                if (chunk.getSecureParam() != null) {
+                    out.write(chunk.getSecureParam());
+                }
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private List<CheckpointChunk> decodeCheckpoint() {
+        List<CheckpointChunk> chunks = new ArrayList<>();
+        if (this.checkpoint == null) {
+            return chunks;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(this.checkpoint))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String hash = in.readUTF();
+                int secureLength = in.readInt();
+                byte[] secure = null;
+                if (secureLength >= 0) {
+                    secure = new byte[secureLength];
+                    in.readFully(secure);
+                }
+                chunks.add(new CheckpointChunk(i, this.timestamp, hash, secure));
+            }
+        } catch (IOException e) {
+            logger.error("Could not read checkpoint of task {}", this.id, e);
+        }
+
+        return chunks;
+    }
+
     private void deserialize() {
         BaseStorage.instance.filesystem.loadTaskRawResults(this);
     }
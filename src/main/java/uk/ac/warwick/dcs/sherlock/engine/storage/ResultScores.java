@@ -0,0 +1,104 @@
+package uk.ac.warwick.dcs.sherlock.engine.storage;
+
+import uk.ac.warwick.dcs.sherlock.api.util.SparseScoreMatrix;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File vs file scores of a job result, overall and for each task, held as sparse matrices indexed by file and stored by {@link EntityResultJob} as a single blob
+ */
+class ResultScores {
+
+    private final long[] fileIds;
+    private final Map<Long, Integer> fileIndexes;
+    private final SparseScoreMatrix overall;
+    private final Map<Long, SparseScoreMatrix> taskScores;
+
+    ResultScores(long[] fileIds, SparseScoreMatrix overall, Map<Long, SparseScoreMatrix> taskScores) {
+        this.fileIds = fileIds;
+        this.overall = overall;
+        this.taskScores = taskScores;
+
+        this.fileIndexes = new HashMap<>();
+        for (int i = 0; i < fileIds.length; i++) {
+            this.fileIndexes.put(fileIds[i], i);
+        }
+    }
+
+    static ResultScores decode(byte[] blob) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(blob))) {
+            long[] fileIds = new long[in.readInt()];
+            for (int i = 0; i < fileIds.length; i++) {
+                fileIds[i] = in.readLong();
+            }
+
+            SparseScoreMatrix overall = SparseScoreMatrix.read(in);
+
+            int taskCount = in.readInt();
+            Map<Long, SparseScoreMatrix> taskScores = new HashMap<>();
+            for (int i = 0; i < taskCount; i++) {
+                long taskId = in.readLong();
+                taskScores.put(taskId, SparseScoreMatrix.read(in));
+            }
+
+            return new ResultScores(fileIds, overall, taskScores);
+        }
+    }
+
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(this.fileIds.length);
+            for (long id : this.fileIds) {
+                out.writeLong(id);
+            }
+
+            this.overall.write(out);
+
+            out.writeInt(this.taskScores.size());
+            for (Map.Entry<Long, SparseScoreMatrix> e : this.taskScores.entrySet()) {
+                out.writeLong(e.getKey());
+                e.getValue().write(out);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Fetches the score of one file against another
+     *
+     * @param taskId id of the task, or null for the overall score
+     * @param file1  id of the file the score belongs to
+     * @param file2  id of the file the score is against
+     * @return the score, 0 if there is none
+     */
+    float getScore(Long taskId, long file1, long file2) {
+        SparseScoreMatrix matrix = taskId == null ? this.overall : this.taskScores.get(taskId);
+        Integer row = this.fileIndexes.get(file1);
+        Integer column = this.fileIndexes.get(file2);
+
+        return matrix != null && row != null && column != null ? matrix.get(row, column) : 0;
+    }
+
+    /**
+     * Fetches the non-zero scores of a file against all other files
+     *
+     * @param taskId id of the task, or null for the overall scores
+     * @param file   id of the file the scores belong to
+     * @return map of other file ids to scores
+     */
+    Map<Long, Float> getScores(Long taskId, long file) {
+        SparseScoreMatrix matrix = taskId == null ? this.overall : this.taskScores.get(taskId);
+        Integer row = this.fileIndexes.get(file);
+
+        Map<Long, Float> res = new HashMap<>();
+        if (matrix != null && row != null) {
+            matrix.forEachInRow(row, (column, score) -> res.put(this.fileIds[column], score));
+        }
+
+        return res;
+    }
+}
@@ -8,6 +8,7 @@ import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry
 import uk.ac.warwick.dcs.sherlock.module.model.base.detection.ASTDiffDetectorJavaShell
 import uk.ac.warwick.dcs.sherlock.module.model.base.detection.NGramDetector
 import uk.ac.warwick.dcs.sherlock.module.model.base.detection.VariableNameDetector
+import uk.ac.warwick.dcs.sherlock.module.model.base.detection.WinnowingDetector
 import uk.ac.warwick.dcs.sherlock.module.model.base.lang.JavaLexer
 import uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing.ASTDiffPostProcessor
 import uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing.ASTDiffResult
@@ -42,6 +43,8 @@ class ModuleModelBase {
         SherlockRegistry.registerDetector(NGramDetector::class.java)
         SherlockRegistry.registerPostProcessor(NGramPostProcessor::class.java, NGramRawResult::class.java)
 
+        SherlockRegistry.registerDetector(WinnowingDetector::class.java)
+
         SherlockRegistry.registerDetector(ASTDiffDetectorJavaShell::class.java)
         SherlockRegistry.registerPostProcessor(ASTDiffPostProcessor::class.java, ASTDiffResult::class.java)
     }
@@ -7,16 +7,23 @@ import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetector;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetectorWorker;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.PreProcessingStrategy;
-import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
 import uk.ac.warwick.dcs.sherlock.module.model.base.detection.NGramDetector.NGramDetectorWorker;
 import uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing.NGramRawResult;
 import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.TrimWhitespaceOnly;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NGramDetector extends PairwiseDetector<NGramDetectorWorker> {
 
+    /**
+     * Fingerprint indexes shared by every task and re-run in this process, capped at 64MB
+     */
+    private static final NGramFingerprintCache fingerprintCache = new NGramFingerprintCache(64L * 1024 * 1024);
+
     /**
      * The character width of each N-Gram used in the detection.
      * <p>
@@ -43,12 +50,27 @@ public class NGramDetector extends PairwiseDetector<NGramDetectorWorker> {
      */
     @AdjustableParameter(name = "Threshold", defaultValue = 0.8f, minimumBound = 0.0f, maximumBound = 1.0f, step = 0.001f, description = "The threshold on the similarity at which a block of code will be no longer considered similar. This determines where the similarity ends, 1 will give only pure matches, 0 will match anything")
     public float threshold;
+    /**
+     * Selects the engine used to find matches.
+     * <p>
+     * 1 uses the fingerprint engine ({@link NGramFingerprintMatcher}), which hashes N-grams into primitive fingerprints and updates the window similarity incrementally. 0 uses the original string based
+     * engine. Both engines produce identical matches, N-grams sharing a hashed fingerprint are compared by their text, and a pair is run by the string engine if a file has two different N-grams with
+     * the same fingerprint.
+     * </p>
+     */
+    @AdjustableParameter(name = "Fingerprint Engine", defaultValue = 1, minimumBound = 0, maximumBound = 1, step = 1, description = "1 uses the faster fingerprint based engine, 0 uses the original string based engine. Both give identical results.")
+    public int fingerprint_engine;
 
     /**
      * The output object, stores all data to be sent to the postprocessing stage.
      */
     NGramRawResult<NgramMatch> res;
 
+    /**
+     * Fingerprint index of each file in this task, built once and shared read only by every worker which uses the file
+     */
+    private final Map<ModelDataItem, NGramFingerprintIndex> fingerprintIndexes = new ConcurrentHashMap<>();
+
     /**
      * Sets metadata for the detector, along with providing the API with pointers to the Worker and the Preprocessing Strategy
      */
@@ -56,6 +78,23 @@ public class NGramDetector extends PairwiseDetector<NGramDetectorWorker> {
         super("N-Gram Detector", "N-Gram implementation", NGramDetectorWorker.class, PreProcessingStrategy.of("no_whitespace", TrimWhitespaceOnly.class));
     }
 
+    /**
+     * @return the process wide cache of N-gram fingerprint indexes
+     */
+    public static NGramFingerprintCache getFingerprintCache() {
+        return fingerprintCache;
+    }
+
+    /**
+     * Fetches the fingerprint index of a file for this task, building it on first use
+     *
+     * @param item data item for the file
+     * @return the index
+     */
+    NGramFingerprintIndex getFingerprintIndex(ModelDataItem item) {
+        return this.fingerprintIndexes.computeIfAbsent(item, x -> fingerprintCache.get(x, "no_whitespace", ngram_size));
+    }
+
     /**
      * Compare 2 lists of N-grams and return a similarity metric
      * <p>
@@ -132,21 +171,21 @@ public class NGramDetector extends PairwiseDetector<NGramDetectorWorker> {
      * </p>
      *
      * @param storage_list The list the N-grams are going to be stored in
-     * @param file         The list of lines in a file to be converted and stored
+     * @param file         The lines of a file to be converted and stored
      */
-    private void loadNgramList(ArrayList<Ngram> storage_list, ArrayList<IndexedString> file) {
+    private void loadNgramList(ArrayList<Ngram> storage_list, LineStore file) {
         // the N-gram string
         String substr;
         // the new N-gram object
         Ngram ngram = null;
         int line_number = 0;
 
-        // variable to extract the string from the indexed container
+        // variable to extract the string from the line store
         StringBuilder line;
-        // for each line get the indexed container
-        for (IndexedString lineC : file) {
+        // for each line in the store
+        for (int l = 0; l < file.size(); l++) {
             // acquire line
-            line = new StringBuilder(lineC.getValue());
+            line = new StringBuilder(file.getText(l));
             // if line is shorter than the ngram_size pad it with whitespace
             // this should function without issue as an equivalent lines will also be too short and be padded the same
             if (line.length() < ngram_size) {
@@ -154,7 +193,7 @@ public class NGramDetector extends PairwiseDetector<NGramDetectorWorker> {
                 line.append(" ".repeat(Math.max(0, ngram_size - line.length() + 1)));
             }
             // acquire line number
-            line_number = lineC.getKey();
+            line_number = file.getLine(l);
             // for each N-gram in a line
             for (int i = 0; i < line.length() - (ngram_size - 1); i++) {
                 // build an N-gram of ngram_size
@@ -177,19 +216,19 @@ public class NGramDetector extends PairwiseDetector<NGramDetectorWorker> {
      * @param storage_map The hashmap used to store the resulting N-grams
      * @param file        The file data to be deconstucted into and stored as ordered N-grams
      */
-    private void loadNgramMap(HashMap<String, Ngram> storage_map, ArrayList<IndexedString> file) {
+    private void loadNgramMap(HashMap<String, Ngram> storage_map, LineStore file) {
         // the N-gram string
         String substr;
         // the new N-gram object
         Ngram ngram = null;
         int line_number = 0;
 
-        // variable to extract the string from the indexed container
+        // variable to extract the string from the line store
         StringBuilder line;
-        // for each line get the indexed container
-        for (IndexedString lineC : file) {
+        // for each line in the store
+        for (int l = 0; l < file.size(); l++) {
             // acquire line
-            line = new StringBuilder(lineC.getValue());
+            line = new StringBuilder(file.getText(l));
             // if line is shorter than the ngram_size pad it with whitespace
             // this should function without issue as an equivalent lines will also be too short and be padded the same
             if (line.length() < ngram_size) {
@@ -197,7 +236,7 @@ public class NGramDetector extends PairwiseDetector<NGramDetectorWorker> {
                 line.append(" ".repeat(Math.max(0, ngram_size - line.length() + 1)));
             }
             // acquire line number
-            line_number = lineC.getKey();
+            line_number = file.getLine(l);
 
             // for each N-gram in a line
             for (int i = 0; i < line.length() - (ngram_size - 1); i++) {
@@ -346,10 +385,19 @@ public class NGramDetector extends PairwiseDetector<NGramDetectorWorker> {
          */
         @Override
         public void execute() {
+            if (fingerprint_engine != 0) {
+                NGramFingerprintIndex index1 = getFingerprintIndex(this.file1);
+                NGramFingerprintIndex index2 = getFingerprintIndex(this.file2);
+                // a file with two N-grams sharing a fingerprint cannot be matched by fingerprint, the string engine is used instead
+                if (!index1.hasCollisions() && !index2.hasCollisions()) {
+                    this.result = new NGramFingerprintMatcher(index1, index2, minimum_window, threshold, this.file1.getFile(), this.file2.getFile()).run();
+                    return;
+                }
+            }
 
-            // Gets each line as a string in the list, as returned by the specified preprocessor
-            ArrayList<IndexedString> linesF1 = new ArrayList<>(this.file1.getPreProcessedLines("no_whitespace"));
-            ArrayList<IndexedString> linesF2 = new ArrayList<>(this.file2.getPreProcessedLines("no_whitespace"));
+            // Gets the lines of each file, as returned by the specified preprocessor
+            LineStore linesF1 = this.file1.getLineStore("no_whitespace");
+            LineStore linesF2 = this.file2.getLineStore("no_whitespace");
 
             // make raw result output container
             res = new NGramRawResult<>(this.file1.getFile(), this.file2.getFile());
@@ -383,6 +431,11 @@ public class NGramDetector extends PairwiseDetector<NGramDetectorWorker> {
             String ngram_string;
 
             for (int i = 0; i < storage_list.size(); i++) {
+                // stop early if the job has been cancelled, checked periodically to keep it off the hot path
+                if ((i & 1023) == 0) {
+                    checkCancelled();
+                }
+
                 // acquire ngram
                 substrObj = storage_list.get(i);
                 // get N-gram string
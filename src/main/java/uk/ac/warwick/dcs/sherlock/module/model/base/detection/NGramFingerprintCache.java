@@ -0,0 +1,147 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.detection;
+
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process wide cache of {@link NGramFingerprintIndex} instances, shared between all the workers of a task and between tasks or re-runs using the same parameters.
+ * <p>
+ * Indexes are keyed by the file id, the preprocessing strategy name, the N-gram size and a hash of the preprocessed lines, so an index is only reused if it would be rebuilt identically. The cache is
+ * bounded by the estimated heap footprint of the indexes it holds, the least recently used indexes are evicted first.
+ * </p>
+ */
+public class NGramFingerprintCache {
+
+    private final long capacity;
+    private final LinkedHashMap<Key, NGramFingerprintIndex> indexes;
+
+    private long footprint;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates an empty cache
+     *
+     * @param capacity maximum estimated heap footprint of the cached indexes in bytes
+     */
+    public NGramFingerprintCache(long capacity) {
+        this.capacity = capacity;
+        this.indexes = new LinkedHashMap<>(16, 0.75f, true);
+        this.footprint = 0;
+    }
+
+    /**
+     * Hashes the preprocessed lines of a file, including the line numbers as they are part of the index
+     *
+     * @param lines store of the preprocessed lines
+     * @return 64 bit hash of the lines
+     */
+    static long hashLines(LineStore lines) {
+        long hash = 0xCBF29CE484222325L;
+        for (int l = 0; l < lines.size(); l++) {
+            hash = (hash ^ lines.getLine(l)) * 0x100000001B3L;
+            for (int i = 0; i < lines.getLength(l); i++) {
+                hash = (hash ^ lines.charAt(l, i)) * 0x100000001B3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Removes all indexes from the cache
+     */
+    public synchronized void clear() {
+        this.indexes.clear();
+        this.footprint = 0;
+    }
+
+    /**
+     * Fetches the index for the preprocessed lines of a file, building and caching it if it does not exist
+     *
+     * @param item         data item for the file
+     * @param strategyName name of the preprocessing strategy to index
+     * @param ngramSize    the character width of each N-gram
+     * @return the index
+     */
+    public NGramFingerprintIndex get(ModelDataItem item, String strategyName, int ngramSize) {
+        LineStore lines = item.getLineStore(strategyName);
+        Key key = new Key(item.getFile().getPersistentId(), strategyName, ngramSize, hashLines(lines));
+
+        synchronized (this) {
+            NGramFingerprintIndex index = this.indexes.get(key);
+            if (index != null) {
+                this.hits++;
+                return index;
+            }
+            this.misses++;
+        }
+
+        NGramFingerprintIndex index = NGramFingerprintIndex.build(lines, ngramSize);
+        long size = index.getMemoryFootprint();
+        if (size > this.capacity) {
+            return index;
+        }
+
+        synchronized (this) {
+            NGramFingerprintIndex existing = this.indexes.putIfAbsent(key, index);
+            if (existing != null) {
+                return existing;
+            }
+
+            this.footprint += size;
+            Iterator<Map.Entry<Key, NGramFingerprintIndex>> iterator = this.indexes.entrySet().iterator();
+            while (this.footprint > this.capacity && iterator.hasNext()) {
+                this.footprint -= iterator.next().getValue().getMemoryFootprint();
+                iterator.remove();
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * @return maximum estimated heap footprint of the cached indexes in bytes
+     */
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return number of lookups which were served from the cache
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Estimate of the heap used by the cached indexes in bytes
+     *
+     * @return size in bytes
+     */
+    public synchronized long getMemoryFootprint() {
+        return this.footprint;
+    }
+
+    /**
+     * @return number of lookups which had to build a new index
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return number of cached indexes
+     */
+    public synchronized int size() {
+        return this.indexes.size();
+    }
+
+    private record Key(long fileId, String strategyName, int ngramSize, long contentHash) {
+
+    }
+}
@@ -0,0 +1,296 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.detection;
+
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
+import uk.ac.warwick.dcs.sherlock.api.util.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Read only index of the N-grams of a single preprocessed file, used by the fingerprint engine of the {@link NGramDetector}.
+ * <p>
+ * Each N-gram is reduced to a long fingerprint using a rolling hash over the line. N-grams of up to 4 characters are packed exactly into the fingerprint, longer N-grams use a 64 bit polynomial hash.
+ * Every distinct fingerprint is given a dense id, and the positions of each occurrence of an id are stored in file order, mirroring the "N-gram + occurrence" keys of the string based engine.
+ * </p>
+ * <p>
+ * As hashed fingerprints can collide, an index of longer N-grams keeps the lines of the file and the first occurrence of each id, so the text of N-grams sharing a fingerprint can be compared. An
+ * index which found two different N-grams with the same fingerprint in its own file reports it through {@link #hasCollisions()}, and {@link #sameNgram(int, NGramFingerprintIndex, int)} compares
+ * N-grams of two files.
+ * </p>
+ * <p>
+ * Lines are split into N-grams exactly as the string based engine does, lines shorter than the N-gram size are padded with whitespace.
+ * </p>
+ */
+public class NGramFingerprintIndex {
+
+    private static final long BASE = 0x100000001B3L;
+
+    private final int ngramSize;
+    private final int size;
+
+    private final int[] lineNumbers;
+    private final int[] ids;
+
+    private final long[] distinctFingerprints;
+    private final int[] postingOffsets;
+    private final int[] postings;
+    private final LongIntHashMap idMap;
+
+    /**
+     * Lines of the file, and the line index and column of the first occurrence of each id, null if fingerprints are exact
+     */
+    private final LineStore lines;
+    private final int[] firstLines;
+    private final int[] firstColumns;
+    private final boolean collisions;
+
+    private NGramFingerprintIndex(int ngramSize, int[] lineNumbers, int[] ids, long[] distinctFingerprints, int[] postingOffsets, int[] postings, LongIntHashMap idMap, LineStore lines,
+            int[] firstLines, int[] firstColumns, boolean collisions) {
+        this.ngramSize = ngramSize;
+        this.size = lineNumbers.length;
+        this.lineNumbers = lineNumbers;
+        this.ids = ids;
+        this.distinctFingerprints = distinctFingerprints;
+        this.postingOffsets = postingOffsets;
+        this.postings = postings;
+        this.idMap = idMap;
+        this.lines = lines;
+        this.firstLines = firstLines;
+        this.firstColumns = firstColumns;
+        this.collisions = collisions;
+    }
+
+    /**
+     * Builds the index for a file
+     *
+     * @param lines     store of the preprocessed lines of the file
+     * @param ngramSize the character width of each N-gram
+     * @return the index
+     */
+    public static NGramFingerprintIndex build(LineStore lines, int ngramSize) {
+        int count = 0;
+        for (int l = 0; l < lines.size(); l++) {
+            count += paddedLength(lines.getLength(l), ngramSize) - ngramSize + 1;
+        }
+
+        int[] lineNumbers = new int[count];
+        int[] ids = new int[count];
+        long[] distinct = new long[Math.max(16, count / 4)];
+        int[] occurrences = new int[distinct.length];
+        LongIntHashMap idMap = new LongIntHashMap(Math.max(16, count / 2), -1);
+
+        boolean exact = isExact(ngramSize);
+        int[] firstLines = exact ? null : new int[distinct.length];
+        int[] firstColumns = exact ? null : new int[distinct.length];
+        boolean collisions = false;
+
+        long mask = ngramSize >= 4 ? -1L : (1L << (16 * ngramSize)) - 1;
+        long outWeight = 1;
+        for (int i = 1; i < ngramSize; i++) {
+            outWeight *= BASE;
+        }
+
+        int pos = 0;
+        for (int l = 0; l < lines.size(); l++) {
+            int length = lines.getLength(l);
+            int padded = paddedLength(length, ngramSize);
+
+            long fp = 0;
+            for (int j = 0; j < padded; j++) {
+                char in = j < length ? lines.charAt(l, j) : ' ';
+
+                if (ngramSize <= 4) {
+                    fp = ((fp << 16) | in) & mask;
+                } else {
+                    if (j >= ngramSize) {
+                        char out = j - ngramSize < length ? lines.charAt(l, j - ngramSize) : ' ';
+                        fp -= out * outWeight;
+                    }
+                    fp = fp * BASE + in;
+                }
+
+                if (j >= ngramSize - 1) {
+                    int id = idMap.putIfAbsent(fp, idMap.size());
+                    if (id < 0) {
+                        id = idMap.size() - 1;
+                        if (id == distinct.length) {
+                            distinct = Arrays.copyOf(distinct, distinct.length * 2);
+                            occurrences = Arrays.copyOf(occurrences, occurrences.length * 2);
+                            if (!exact) {
+                                firstLines = Arrays.copyOf(firstLines, distinct.length);
+                                firstColumns = Arrays.copyOf(firstColumns, distinct.length);
+                            }
+                        }
+                        distinct[id] = fp;
+                        if (!exact) {
+                            firstLines[id] = l;
+                            firstColumns[id] = j - ngramSize + 1;
+                        }
+                    } else if (!exact && !collisions) {
+                        collisions = !sameText(lines, firstLines[id], firstColumns[id], lines, l, j - ngramSize + 1, ngramSize);
+                    }
+
+                    occurrences[id]++;
+                    lineNumbers[pos] = lines.getLine(l);
+                    ids[pos] = id;
+                    pos++;
+                }
+            }
+        }
+
+        int distinctCount = idMap.size();
+        int[] offsets = new int[distinctCount + 1];
+        for (int i = 0; i < distinctCount; i++) {
+            offsets[i + 1] = offsets[i] + occurrences[i];
+        }
+
+        int[] fill = Arrays.copyOf(offsets, distinctCount);
+        int[] postings = new int[count];
+        for (int i = 0; i < count; i++) {
+            postings[fill[ids[i]]++] = i;
+        }
+
+        if (exact) {
+            return new NGramFingerprintIndex(ngramSize, lineNumbers, ids, Arrays.copyOf(distinct, distinctCount), offsets, postings, idMap, null, null, null, false);
+        }
+        return new NGramFingerprintIndex(ngramSize, lineNumbers, ids, Arrays.copyOf(distinct, distinctCount), offsets, postings, idMap, lines, Arrays.copyOf(firstLines, distinctCount),
+                Arrays.copyOf(firstColumns, distinctCount), collisions);
+    }
+
+    /**
+     * Whether fingerprints of N-grams of a size are the N-grams packed exactly, so equal fingerprints are always equal N-grams
+     */
+    private static boolean isExact(int ngramSize) {
+        return ngramSize <= 4;
+    }
+
+    /**
+     * Compares the text of two N-grams, with the padding used for short lines
+     */
+    private static boolean sameText(LineStore lines1, int line1, int column1, LineStore lines2, int line2, int column2, int ngramSize) {
+        int length1 = lines1.getLength(line1);
+        int length2 = lines2.getLength(line2);
+        for (int k = 0; k < ngramSize; k++) {
+            char c1 = column1 + k < length1 ? lines1.charAt(line1, column1 + k) : ' ';
+            char c2 = column2 + k < length2 ? lines2.charAt(line2, column2 + k) : ' ';
+            if (c1 != c2) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Length of a line once padded for N-gram generation, matches the padding in the string based engine
+     */
+    private static int paddedLength(int length, int ngramSize) {
+        return length < ngramSize ? ngramSize + 1 : length;
+    }
+
+    /**
+     * Finds the id of a fingerprint in this file
+     *
+     * @param fingerprint the fingerprint
+     * @return the id, or -1 if no N-gram in this file has the fingerprint
+     */
+    public int findId(long fingerprint) {
+        return this.idMap.get(fingerprint);
+    }
+
+    /**
+     * Checks whether an N-gram of this file has the same text as an N-gram of another file, always true for fingerprints which are exact
+     *
+     * @param id      the fingerprint id in this file
+     * @param other   index of the other file, with the same N-gram size
+     * @param otherId the fingerprint id in the other file
+     * @return whether the N-grams are equal
+     */
+    public boolean sameNgram(int id, NGramFingerprintIndex other, int otherId) {
+        if (this.lines == null) {
+            return true;
+        }
+        return sameText(this.lines, this.firstLines[id], this.firstColumns[id], other.lines, other.firstLines[otherId], other.firstColumns[otherId], this.ngramSize);
+    }
+
+    /**
+     * @return whether two different N-grams of this file share a fingerprint, in which case the index cannot tell them apart
+     */
+    public boolean hasCollisions() {
+        return this.collisions;
+    }
+
+    /**
+     * @return the number of distinct fingerprints in the file
+     */
+    public int getDistinctCount() {
+        return this.distinctFingerprints.length;
+    }
+
+    /**
+     * @param id the fingerprint id
+     * @return the fingerprint value
+     */
+    public long getDistinctFingerprint(int id) {
+        return this.distinctFingerprints[id];
+    }
+
+    /**
+     * @param position position of the N-gram in the file
+     * @return the fingerprint id of the N-gram
+     */
+    public int getId(int position) {
+        return this.ids[position];
+    }
+
+    /**
+     * @param position position of the N-gram in the file
+     * @return the line the N-gram starts on
+     */
+    public int getLineNumber(int position) {
+        return this.lineNumbers[position];
+    }
+
+    /**
+     * Estimate of the heap used by this index in bytes
+     *
+     * @return size in bytes
+     */
+    public long getMemoryFootprint() {
+        long footprint = 64L + (16L + 4L * this.lineNumbers.length) + (16L + 4L * this.ids.length) + (16L + 8L * this.distinctFingerprints.length) + (16L + 4L * this.postingOffsets.length) + (16L
+                + 4L * this.postings.length) + this.idMap.getMemoryFootprint();
+        if (this.lines != null) {
+            footprint += this.lines.getMemoryFootprint() + 2 * (16L + 4L * this.firstLines.length);
+        }
+        return footprint;
+    }
+
+    /**
+     * @return the character width of each N-gram
+     */
+    public int getNgramSize() {
+        return this.ngramSize;
+    }
+
+    /**
+     * @param id the fingerprint id
+     * @return the number of times the fingerprint occurs in the file
+     */
+    public int getOccurrenceCount(int id) {
+        return this.postingOffsets[id + 1] - this.postingOffsets[id];
+    }
+
+    /**
+     * @param id         the fingerprint id
+     * @param occurrence which occurrence of the fingerprint, in file order, starting at 0
+     * @return position of the N-gram in the file
+     */
+    public int getPosition(int id, int occurrence) {
+        return this.postings[this.postingOffsets[id] + occurrence];
+    }
+
+    /**
+     * @return the number of N-grams in the file
+     */
+    public int size() {
+        return this.size;
+    }
+}
@@ -0,0 +1,202 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.detection;
+
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing.NGramRawResult;
+
+/**
+ * Fingerprint engine for the {@link NGramDetector}, produces the same matches as the string based engine.
+ * <p>
+ * Neither index may have {@link NGramFingerprintIndex#hasCollisions() collisions}, fingerprints found in both files are only matched if the N-grams are equal.
+ * </p>
+ * <p>
+ * Works on two {@link NGramFingerprintIndex} instances. As both windows are always contiguous runs of N-grams they are held as a start position and a length, and the Jaccard similarity of the
+ * windows is updated incrementally from per fingerprint counts as the window grows, instead of being recomputed from the full lists on every step.
+ * </p>
+ */
+class NGramFingerprintMatcher {
+
+    private final NGramFingerprintIndex reference;
+    private final NGramFingerprintIndex check;
+    private final int minimumWindow;
+    private final float threshold;
+    private final ISourceFile file1;
+    private final ISourceFile file2;
+
+    /**
+     * For each check file fingerprint id, the id of the same fingerprint in the reference file, or -1
+     */
+    private final int[] checkToReference;
+
+    /**
+     * Per reference fingerprint id, occurrences in the reference window and the check window
+     */
+    private final int[] referenceCounts;
+    private final int[] checkCounts;
+
+    private int referenceStart;
+    private int checkStart;
+    private int windowLength;
+
+    /**
+     * Window elements in the reference list which have a matching N-gram in the check list
+     */
+    private int same;
+    /**
+     * Window elements in the check list which have no matching N-gram in the reference list
+     */
+    private int dis2;
+
+    private NGramRawResult<NgramMatch> res;
+
+    NGramFingerprintMatcher(NGramFingerprintIndex reference, NGramFingerprintIndex check, int minimumWindow, float threshold, ISourceFile file1, ISourceFile file2) {
+        this.reference = reference;
+        this.check = check;
+        this.minimumWindow = minimumWindow;
+        this.threshold = threshold;
+        this.file1 = file1;
+        this.file2 = file2;
+
+        this.checkToReference = new int[check.getDistinctCount()];
+        for (int i = 0; i < this.checkToReference.length; i++) {
+            int refId = reference.findId(check.getDistinctFingerprint(i));
+            // a fingerprint shared by different N-grams is not a match
+            this.checkToReference[i] = refId >= 0 && reference.sameNgram(refId, check, i) ? refId : -1;
+        }
+
+        this.referenceCounts = new int[reference.getDistinctCount()];
+        this.checkCounts = new int[reference.getDistinctCount()];
+    }
+
+    /**
+     * Runs the detection, follows the control flow of {@link NGramDetector.NGramDetectorWorker#execute()} step for step
+     *
+     * @return the matches found
+     */
+    NGramRawResult<NgramMatch> run() {
+        this.res = new NGramRawResult<>(this.file1, this.file2);
+
+        float lastPeak = 1.0f;
+        float lastVal = 0.0f;
+        float simVal;
+        int sinceLastPeak = 0;
+        int ngramId = 0;
+
+        for (int i = 0; i < this.check.size(); i++) {
+            int refId = this.checkToReference[this.check.getId(i)];
+
+            if ((refId >= 0 && this.reference.getOccurrenceCount(refId) > ngramId) || this.windowLength > 0) {
+                int refPos;
+                if (this.windowLength == 0) {
+                    refPos = this.reference.getPosition(refId, ngramId);
+                    this.referenceStart = refPos;
+                    this.checkStart = i;
+                } else {
+                    refPos = this.referenceStart + this.windowLength;
+                    if (refPos >= this.reference.size()) {
+                        // EOF in reference reached
+                        break;
+                    }
+                }
+
+                this.addReference(this.reference.getId(refPos));
+                this.addCheck(this.checkToReference[this.check.getId(i)]);
+                this.windowLength++;
+
+                sinceLastPeak++;
+                simVal = this.similarity();
+                if (simVal >= lastVal) {
+                    sinceLastPeak = 0;
+                    lastPeak = simVal;
+                }
+                lastVal = simVal;
+
+                if (this.windowLength == this.minimumWindow && simVal < this.threshold) {
+                    // if another case of the starting N-gram exists in the reference file move to that and recheck
+                    if (this.reference.getOccurrenceCount(this.reference.getId(this.referenceStart)) > ngramId + 1) {
+                        i -= this.minimumWindow;
+                        ngramId++;
+                    }
+                    this.resetWindow();
+                    sinceLastPeak = 0;
+                    lastVal = 0.0f;
+                } else if (this.windowLength > this.minimumWindow && simVal < this.threshold) {
+                    this.matchFound(lastPeak, sinceLastPeak);
+                    ngramId = 0;
+                    sinceLastPeak = 0;
+                    lastVal = 0.0f;
+                }
+            }
+        }
+
+        if (this.similarity() > this.threshold && this.windowLength >= this.minimumWindow) {
+            this.matchFound(lastPeak, sinceLastPeak);
+        }
+
+        return this.res;
+    }
+
+    private void addCheck(int refId) {
+        if (refId < 0) {
+            this.dis2++;
+            return;
+        }
+
+        if (this.checkCounts[refId]++ == 0) {
+            this.same += this.referenceCounts[refId];
+        }
+        if (this.referenceCounts[refId] == 0) {
+            this.dis2++;
+        }
+    }
+
+    private void addReference(int refId) {
+        if (this.referenceCounts[refId]++ == 0) {
+            this.dis2 -= this.checkCounts[refId];
+        }
+        if (this.checkCounts[refId] > 0) {
+            this.same++;
+        }
+    }
+
+    /**
+     * Builds the match from the window, retracted back to the last peak
+     */
+    private void matchFound(float lastPeak, int sinceLastPeak) {
+        int length = this.windowLength - sinceLastPeak;
+
+        if (length > 0 && length >= this.minimumWindow) {
+            int refStartLine = this.reference.getLineNumber(this.referenceStart);
+            int refEndLine = this.reference.getLineNumber(this.referenceStart + length - 1);
+            int checkStartLine = this.check.getLineNumber(this.checkStart);
+            int checkEndLine = this.check.getLineNumber(this.checkStart + length - 1);
+
+            NgramMatch temp = new NgramMatch(refStartLine, refEndLine, checkStartLine, checkEndLine, lastPeak, this.file1, this.file2);
+            this.res.put(temp, refStartLine, refEndLine, checkStartLine, checkEndLine);
+        }
+
+        this.resetWindow();
+    }
+
+    private void resetWindow() {
+        for (int k = 0; k < this.windowLength; k++) {
+            this.referenceCounts[this.reference.getId(this.referenceStart + k)] = 0;
+
+            int refId = this.checkToReference[this.check.getId(this.checkStart + k)];
+            if (refId >= 0) {
+                this.checkCounts[refId] = 0;
+            }
+        }
+
+        this.windowLength = 0;
+        this.same = 0;
+        this.dis2 = 0;
+    }
+
+    /**
+     * Jaccard similarity of the current windows, evaluated exactly as {@link NGramDetector#compare(java.util.ArrayList, java.util.ArrayList)}
+     */
+    private float similarity() {
+        int dis1 = this.windowLength - this.same;
+        return (float) this.same / ((float) this.same + (float) dis1 + (float) this.dis2);
+    }
+}
@@ -3,7 +3,7 @@ package uk.ac.warwick.dcs.sherlock.module.model.base.detection;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetectorWorker;
-import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
 import uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing.SimpleObjectEqualityRawResult;
 
 import java.util.LinkedList;
@@ -19,15 +19,25 @@ public class VariableNameDetectorWorker extends PairwiseDetectorWorker<SimpleObj
     public void execute() {
         // This detector finds and matches up variables - it only works on declarations of the variable, not every time the variable is called.
 
-        List<IndexedString> linesF1 = this.file1.getPreProcessedLines("variables");
-        List<IndexedString> linesF2 = this.file2.getPreProcessedLines("variables");
+        LineStore linesF1 = this.file1.getLineStore("variables");
+        LineStore linesF2 = this.file2.getLineStore("variables");
 
         List<Integer> usedIndexesF2 = new LinkedList<>();
 
         SimpleObjectEqualityRawResult<String> res = new SimpleObjectEqualityRawResult<>(this.file1.getFile(), this.file2.getFile(), linesF1.size(), linesF2.size());
 
-        for (IndexedString checkLine : linesF1) {
-            linesF2.stream().filter(x -> x.valueEquals(checkLine)).forEach(x -> res.put(checkLine.getValue(), checkLine.getKey(), x.getKey()));
+        // compare views of the stored lines, so a string is only created for a line which matches
+        for (int i = 0; i < linesF1.size(); i++) {
+            CharSequence checkLine = linesF1.getText(i);
+            String value = null;
+            for (int j = 0; j < linesF2.size(); j++) {
+                if (linesF2.getLength(j) == checkLine.length() && CharSequence.compare(checkLine, linesF2.getText(j)) == 0) {
+                    if (value == null) {
+                        value = linesF1.getString(i);
+                    }
+                    res.put(value, linesF1.getLine(i), linesF2.getLine(j));
+                }
+            }
         }
 
         this.result = res;
@@ -0,0 +1,225 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.detection;
+
+import uk.ac.warwick.dcs.sherlock.api.annotation.AdjustableParameter;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetectorWorker;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.PreProcessingStrategy;
+import uk.ac.warwick.dcs.sherlock.api.util.Winnowing;
+import uk.ac.warwick.dcs.sherlock.module.model.base.detection.WinnowingDetector.WinnowingDetectorWorker;
+import uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing.NGramRawResult;
+import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.TrimWhitespaceOnly;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Detector based on winnowed fingerprints, as used by MOSS.
+ * <p>
+ * Each file is reduced to a small set of fingerprints by {@link Winnowing}, and a pair is compared by intersecting the sorted fingerprint arrays of the two files, so the cost per pair grows with the
+ * number of fingerprints rather than with the product of the file lengths. Matched fingerprints which follow each other in both files are chained into blocks, which are output as {@link NgramMatch}
+ * objects in a {@link NGramRawResult}, so the results are handled by the same postprocessor as the {@link NGramDetector}.
+ * </p>
+ */
+public class WinnowingDetector extends PairwiseDetector<WinnowingDetectorWorker> {
+
+    /**
+     * Matched fingerprints may skip this many fingerprints in either file and still be chained into the same block, allows for small edits inside copied code
+     */
+    private static final int MAX_GAP = 2;
+
+    /**
+     * Fingerprints which pair up more than this many times between two files are ignored, they are repeated boilerplate and would otherwise dominate the comparison
+     */
+    private static final int MAX_PAIRINGS = 256;
+
+    /**
+     * The length in characters of the hashed substrings, whitespace is not counted.
+     * <p>
+     * Copied code shorter than this can never be detected, larger values give fewer false positives.
+     * </p>
+     */
+    @AdjustableParameter(name = "K-gram Size", defaultValue = 12, minimumBound = 3, maximumBound = 50, step = 1, description = "The length in characters of each hashed substring, whitespace is ignored. Smaller is more sensitive.")
+    public int k;
+    /**
+     * The number of consecutive hashes a single fingerprint is selected from.
+     * <p>
+     * Any copied section at least window + k - 1 characters long is guaranteed to be found, larger windows keep fewer fingerprints and so run faster.
+     * </p>
+     */
+    @AdjustableParameter(name = "Window Size", defaultValue = 8, minimumBound = 1, maximumBound = 50, step = 1, description = "The number of consecutive hashes each fingerprint is selected from. Copied code of at least window + k - 1 characters is always found.")
+    public int window;
+    /**
+     * The minimum number of chained fingerprints to report a block as a match.
+     */
+    @AdjustableParameter(name = "Minimum Matches", defaultValue = 3, minimumBound = 1, maximumBound = 20, step = 1, description = "The minimum number of matching fingerprints in a row for a block to be reported.")
+    public int minimum_matches;
+
+    /**
+     * Fingerprints of each file in this task, built once and shared read only by every worker which uses the file
+     */
+    private final Map<ModelDataItem, FileFingerprints> fingerprints = new ConcurrentHashMap<>();
+
+    public WinnowingDetector() {
+        super("Winnowing Detector", "Fingerprint matching using winnowing, as used by MOSS. Faster than the N-Gram Detector on large files", WinnowingDetectorWorker.class,
+                PreProcessingStrategy.of("no_whitespace", TrimWhitespaceOnly.class));
+    }
+
+    /**
+     * Fetches the fingerprints of a file for this task, building them on first use
+     *
+     * @param item data item for the file
+     * @return the fingerprints
+     */
+    FileFingerprints getFingerprints(ModelDataItem item) {
+        return this.fingerprints.computeIfAbsent(item, x -> new FileFingerprints(Winnowing.of(x.getLineStore("no_whitespace"), k, window)));
+    }
+
+    /**
+     * Winnowed fingerprints of a file, along with the fingerprints sorted for intersection
+     */
+    static class FileFingerprints {
+
+        final Winnowing winnowing;
+
+        /**
+         * The fingerprints in ascending order
+         */
+        final long[] sorted;
+        /**
+         * For each entry in sorted, the index of the fingerprint in file order
+         */
+        final int[] order;
+
+        FileFingerprints(Winnowing winnowing) {
+            this.winnowing = winnowing;
+
+            // file order indexes sorted by fingerprint, the sort is stable so ties stay in file order
+            this.order = IntStream.range(0, winnowing.size()).boxed().sorted(Comparator.comparingLong(winnowing::getFingerprint)).mapToInt(Integer::intValue).toArray();
+            this.sorted = Arrays.stream(this.order).mapToLong(winnowing::getFingerprint).toArray();
+        }
+    }
+
+    /**
+     * Compares a pair of files by intersecting their fingerprints
+     */
+    public class WinnowingDetectorWorker extends PairwiseDetectorWorker<NGramRawResult> {
+
+        public WinnowingDetectorWorker(IDetector parent, ModelDataItem file1Data, ModelDataItem file2Data) {
+            super(parent, file1Data, file2Data);
+        }
+
+        @Override
+        public void execute() {
+            FileFingerprints f1 = getFingerprints(this.file1);
+            FileFingerprints f2 = getFingerprints(this.file2);
+
+            NGramRawResult<NgramMatch> res = new NGramRawResult<>(this.file1.getFile(), this.file2.getFile());
+            long[] pairs = this.intersect(f1, f2);
+
+            // chain the matched fingerprint pairs, ordered by position in file 1, into blocks which advance in both files
+            List<int[]> active = new ArrayList<>();
+            for (long pair : pairs) {
+                int i = (int) (pair >>> 32);
+                int j = (int) pair;
+
+                int[] extended = null;
+                for (int r = active.size() - 1; r >= 0; r--) {
+                    int[] run = active.get(r);
+                    if (i - run[2] > MAX_GAP + 1) {
+                        this.emit(res, f1, f2, run);
+                        active.remove(r);
+                    } else if (extended == null && i > run[2] && j > run[3] && j - run[3] <= MAX_GAP + 1) {
+                        extended = run;
+                    }
+                }
+
+                if (extended != null) {
+                    extended[2] = i;
+                    extended[3] = j;
+                    extended[4]++;
+                } else {
+                    active.add(new int[] {i, j, i, j, 1});
+                }
+            }
+
+            for (int[] run : active) {
+                this.emit(res, f1, f2, run);
+            }
+
+            this.result = res;
+        }
+
+        /**
+         * Outputs a chained block if it is long enough, run holds the first and last fingerprint indexes in each file and the number of matched fingerprints
+         */
+        private void emit(NGramRawResult<NgramMatch> res, FileFingerprints f1, FileFingerprints f2, int[] run) {
+            if (run[4] < minimum_matches) {
+                return;
+            }
+
+            int refStart = f1.winnowing.getStartLine(run[0]);
+            int refEnd = f1.winnowing.getEndLine(run[2]);
+            int checkStart = f2.winnowing.getStartLine(run[1]);
+            int checkEnd = f2.winnowing.getEndLine(run[3]);
+            float similarity = (2f * run[4]) / ((run[2] - run[0] + 1) + (run[3] - run[1] + 1));
+
+            res.put(new NgramMatch(refStart, refEnd, checkStart, checkEnd, similarity, this.file1.getFile(), this.file2.getFile()), refStart, refEnd, checkStart, checkEnd);
+        }
+
+        /**
+         * Intersects the sorted fingerprint arrays of both files
+         *
+         * @return every pair of matching fingerprint indexes, packed as (index in file 1 &lt;&lt; 32 | index in file 2), ordered by index in file 1 then file 2
+         */
+        private long[] intersect(FileFingerprints f1, FileFingerprints f2) {
+            long[] pairs = new long[Math.min(f1.sorted.length, f2.sorted.length)];
+            int size = 0;
+
+            int a = 0;
+            int b = 0;
+            while (a < f1.sorted.length && b < f2.sorted.length) {
+                long fa = f1.sorted[a];
+                long fb = f2.sorted[b];
+                if (fa < fb) {
+                    a++;
+                } else if (fa > fb) {
+                    b++;
+                } else {
+                    int aEnd = a;
+                    while (aEnd < f1.sorted.length && f1.sorted[aEnd] == fa) {
+                        aEnd++;
+                    }
+                    int bEnd = b;
+                    while (bEnd < f2.sorted.length && f2.sorted[bEnd] == fa) {
+                        bEnd++;
+                    }
+
+                    if ((long) (aEnd - a) * (bEnd - b) <= MAX_PAIRINGS) {
+                        for (int x = a; x < aEnd; x++) {
+                            for (int y = b; y < bEnd; y++) {
+                                if (size == pairs.length) {
+                                    pairs = Arrays.copyOf(pairs, Math.max(16, size * 2));
+                                }
+                                pairs[size++] = ((long) f1.order[x] << 32) | f2.order[y];
+                            }
+                        }
+                    }
+
+                    a = aEnd;
+                    b = bEnd;
+                }
+            }
+
+            pairs = Arrays.copyOf(pairs, size);
+            Arrays.sort(pairs);
+            return pairs;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing;
 
 import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
 import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPairRawResult;
 import uk.ac.warwick.dcs.sherlock.api.util.PairedTuple;
 import uk.ac.warwick.dcs.sherlock.api.util.SherlockHelper;
 
@@ -14,7 +15,7 @@ import java.util.List;
  *
  * @param <T> N-Gram match object comparing similarity data between 2 code blocks
  */
-public class NGramRawResult<T extends Serializable> extends AbstractModelTaskRawResult {
+public class NGramRawResult<T extends Serializable> extends AbstractModelTaskRawResult implements IPairRawResult {
 
     /**
      * The ID number of the first file in the compared pair.
@@ -74,6 +75,25 @@ public class NGramRawResult<T extends Serializable> extends AbstractModelTaskRaw
         return SherlockHelper.getSourceFile(file2id);
     }
 
+    @Override
+    public long getFile1Id() {
+        return this.file1id;
+    }
+
+    @Override
+    public long getFile2Id() {
+        return this.file2id;
+    }
+
+    @Override
+    public NGramRawResult<T> withFiles(ISourceFile file1, ISourceFile file2) {
+        NGramRawResult<T> copy = new NGramRawResult<>(file1, file2);
+        copy.objects.addAll(this.objects);
+        copy.locations.addAll(this.locations);
+        copy.size = this.size;
+        return copy;
+    }
+
     /**
      * Getter for the block location indexes in the order: File1 start, File1 end, File2 start, File2 end.
      *
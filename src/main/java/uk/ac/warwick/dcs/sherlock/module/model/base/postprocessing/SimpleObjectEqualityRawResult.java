@@ -2,6 +2,7 @@ package uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing;
 
 import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
 import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPairRawResult;
 import uk.ac.warwick.dcs.sherlock.api.util.PairedTuple;
 import uk.ac.warwick.dcs.sherlock.api.util.SherlockHelper;
 
@@ -9,7 +10,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
-public class SimpleObjectEqualityRawResult<T extends Serializable> extends AbstractModelTaskRawResult {
+public class SimpleObjectEqualityRawResult<T extends Serializable> extends AbstractModelTaskRawResult implements IPairRawResult {
 
     private final long file1id;
     private final long file2id;
@@ -39,6 +40,11 @@ public class SimpleObjectEqualityRawResult<T extends Serializable> extends Abstr
         return SherlockHelper.getSourceFile(file1id);
     }
 
+    @Override
+    public long getFile1Id() {
+        return this.file1id;
+    }
+
     public int getFile1NumObjects() {
         return file1NumObjs;
     }
@@ -47,6 +53,11 @@ public class SimpleObjectEqualityRawResult<T extends Serializable> extends Abstr
         return SherlockHelper.getSourceFile(file2id);
     }
 
+    @Override
+    public long getFile2Id() {
+        return this.file2id;
+    }
+
     public int getFile2NumObjects() {
         return file2NumObjs;
     }
@@ -91,6 +102,15 @@ public class SimpleObjectEqualityRawResult<T extends Serializable> extends Abstr
         this.size++;
     }
 
+    @Override
+    public SimpleObjectEqualityRawResult<T> withFiles(ISourceFile file1, ISourceFile file2) {
+        SimpleObjectEqualityRawResult<T> copy = new SimpleObjectEqualityRawResult<>(file1, file2, this.file1NumObjs, this.file2NumObjs);
+        copy.objects.addAll(this.objects);
+        copy.locations.addAll(this.locations);
+        copy.size = this.size;
+        return copy;
+    }
+
     @Override
     public boolean testType(AbstractModelTaskRawResult baseline) {
         if (baseline instanceof SimpleObjectEqualityRawResult bl) {
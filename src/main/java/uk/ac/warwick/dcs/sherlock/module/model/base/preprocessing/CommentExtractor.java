@@ -1,15 +1,11 @@
 package uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing;
 
-import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.Vocabulary;
-import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.IGeneralPreProcessor;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.IFusablePreProcessor;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.ILexerSpecification;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenView;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-
-public class CommentExtractor implements IGeneralPreProcessor {
+public class CommentExtractor implements IFusablePreProcessor {
 
     @Override
     public ILexerSpecification getLexerSpecification() {
@@ -17,27 +13,17 @@ public class CommentExtractor implements IGeneralPreProcessor {
     }
 
     /**
-     * Extracts the comments from a source file
+     * Extracts the comments from a source file, keeps only comment tokens
      *
-     * @param tokens list of tokens to process
+     * @param tokens view holding the token
+     * @param index  index of the token in the view
+     * @param text   text of the token
      * @param vocab  Lexer vocabulary
      * @param lang   language of source file being processed
-     * @return stream of tokens containing comments
+     * @return {@code text} if the token is kept, null if it is dropped
      */
     @Override
-    public List<? extends Token> process(List<? extends Token> tokens, Vocabulary vocab, String lang) {
-        //Parallel version: return tokens.parallelStream().filter(t -> StandardLexerSpecification.channels.values()[t.getChannel()] == StandardLexerSpecification.channels.COMMENT).collect(Collectors.toList());
-
-        List<Token> result = new ArrayList<>();
-
-        for (Token t : tokens) {
-
-            if (Objects.requireNonNull(StandardLexerSpecification.channels.values()[t.getChannel()]) == StandardLexerSpecification.channels.COMMENT) {
-                result.add(t);
-            }
-        }
-
-        return result;
+    public String processToken(TokenView tokens, int index, String text, Vocabulary vocab, String lang) {
+        return StandardLexerSpecification.channels.of(tokens.getChannel(index)) == StandardLexerSpecification.channels.COMMENT ? text : null;
     }
-
 }
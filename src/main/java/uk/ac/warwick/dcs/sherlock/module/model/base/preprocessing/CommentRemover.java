@@ -1,14 +1,11 @@
 package uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing;
 
-import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.Vocabulary;
-import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.IGeneralPreProcessor;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.IFusablePreProcessor;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.ILexerSpecification;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenView;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public class CommentRemover implements IGeneralPreProcessor {
+public class CommentRemover implements IFusablePreProcessor {
 
     @Override
     public ILexerSpecification getLexerSpecification() {
@@ -16,28 +13,20 @@ public class CommentRemover implements IGeneralPreProcessor {
     }
 
     /**
-     * Preprocessor to remove comments and trim whitespace from source
+     * Preprocessor to remove comments and trim whitespace from source, keeps every token which is not a comment
      *
-     * @param tokens List of tokens to process
+     * @param tokens view holding the token
+     * @param index  index of the token in the view
+     * @param text   text of the token
      * @param vocab  Lexer vocabulary
      * @param lang   language of source file being processed
-     * @return stream of tokens containing comments
+     * @return {@code text} if the token is kept, null if it is dropped
      */
     @Override
-    public List<? extends Token> process(List<? extends Token> tokens, Vocabulary vocab, String lang) {
-        List<Token> result = new ArrayList<>();
-
-        for (Token t : tokens) {
-
-            switch (StandardLexerSpecification.channels.values()[t.getChannel()]) {
-                case DEFAULT, LONG_WHITESPACE, WHITESPACE:
-                    result.add(t);
-                    break;
-                default:
-                    break;
-            }
-        }
-
-        return result;
+    public String processToken(TokenView tokens, int index, String text, Vocabulary vocab, String lang) {
+        return switch (StandardLexerSpecification.channels.of(tokens.getChannel(index))) {
+            case DEFAULT, LONG_WHITESPACE, WHITESPACE -> text;
+            default -> null;
+        };
     }
 }
@@ -17,6 +17,20 @@ public class StandardLexerSpecification implements ILexerSpecification {
     /**
      * reference enum
      */
-    public enum channels {DEFAULT, HIDDEN, WHITESPACE, LONG_WHITESPACE, COMMENT}
+    public enum channels {
+        DEFAULT, HIDDEN, WHITESPACE, LONG_WHITESPACE, COMMENT;
+
+        private static final channels[] VALUES = values();
+
+        /**
+         * Looks up the channel of a token, without copying the array of values as {@link #values()} does
+         *
+         * @param channel channel number of the token
+         * @return the channel
+         */
+        public static channels of(int channel) {
+            return VALUES[channel];
+        }
+    }
 
 }
@@ -3,6 +3,7 @@ package uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.Vocabulary;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.ITokenStringifier;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenView;
 import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
 
 import java.util.LinkedList;
@@ -20,12 +21,25 @@ public class StandardStringifier implements ITokenStringifier {
      * @return new lineCount
      */
     public static int checkLineFinished(List<IndexedString> output, StringBuilder active, int lineCount, Token t) {
-        if (t.getLine() > lineCount) {
+        return checkLineFinished(output, active, lineCount, t.getLine());
+    }
+
+    /**
+     * Method to check if a line has been finished, if it has it adds the line to the output and moves onto the next
+     *
+     * @param output    list of output strings
+     * @param active    current string
+     * @param lineCount current lineCount
+     * @param line      line of the next token
+     * @return new lineCount
+     */
+    public static int checkLineFinished(List<IndexedString> output, StringBuilder active, int lineCount, int line) {
+        if (line > lineCount) {
             if (!active.isEmpty()) {
                 output.add(IndexedString.of(lineCount, active.toString()));
             }
             active.setLength(0);
-            lineCount = t.getLine();
+            lineCount = line;
         }
 
         return lineCount;
@@ -41,7 +55,20 @@ public class StandardStringifier implements ITokenStringifier {
      * @return new lineCount
      */
     public static int preserveCommentLines(List<IndexedString> output, StringBuilder active, int lineCount, Token t) {
-        String[] splitComment = t.getText().split("\\r?\\n|\\r");
+        return preserveCommentLines(output, active, lineCount, t.getText());
+    }
+
+    /**
+     * Method to split a comment out into its component lines if it spans more than one line to preserve the sourcefile line structure
+     *
+     * @param output    list of output strings
+     * @param active    current string
+     * @param lineCount current lineCount
+     * @param comment   text of the comment
+     * @return new lineCount
+     */
+    public static int preserveCommentLines(List<IndexedString> output, StringBuilder active, int lineCount, String comment) {
+        String[] splitComment = comment.split("\\r?\\n|\\r");
 
         for (int i = 0; i < splitComment.length; i++) {
             if (i != 0) {
@@ -63,21 +90,33 @@ public class StandardStringifier implements ITokenStringifier {
      */
     @Override
     public List<IndexedString> processTokens(List<? extends Token> tokens, Vocabulary vocab) {
+        return this.processTokens(TokenView.of(tokens), vocab);
+    }
+
+    /**
+     * Stringifies a file in the form of a view of tokens
+     *
+     * @param tokens the file as a view of tokens
+     * @param vocab  the lexer vocab
+     * @return indexed lines of the file, stringified
+     */
+    @Override
+    public List<IndexedString> processTokens(TokenView tokens, Vocabulary vocab) {
         List<IndexedString> output = new LinkedList<>();
         StringBuilder active = new StringBuilder(); //use string builder for much faster concatenation
         int lineCount = 1;
 
-        for (Token t : tokens) {
-            lineCount = checkLineFinished(output, active, lineCount, t);
+        for (int i = 0; i < tokens.size(); i++) {
+            lineCount = checkLineFinished(output, active, lineCount, tokens.getLine(i));
 
-            switch (StandardLexerSpecification.channels.values()[t.getChannel()]) {
+            switch (StandardLexerSpecification.channels.of(tokens.getChannel(i))) {
                 case COMMENT:
-                    lineCount = preserveCommentLines(output, active, lineCount, t);
+                    lineCount = preserveCommentLines(output, active, lineCount, tokens.getText(i));
                     break;
                 case DEFAULT:
                 case WHITESPACE:
                 case LONG_WHITESPACE:
-                    active.append(t.getText());
+                    active.append(tokens.getText(i));
                     break;
                 default:
                     break;
@@ -3,6 +3,7 @@ package uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.Vocabulary;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.ITokenStringifier;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenView;
 import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
 
 import java.util.LinkedList;
@@ -11,7 +12,22 @@ import java.util.List;
 public class StandardTokeniser implements ITokenStringifier {
 
     public static int preserveCommentLines(List<IndexedString> output, StringBuilder active, int lineCount, Token t, Vocabulary vocab) {
-        String[] splitComment = t.getText().split("\\r?\\n|\\r");
+        return preserveCommentLines(output, active, lineCount, t.getText(), t.getType(), vocab);
+    }
+
+    /**
+     * Method to keep the lines a comment spans in the output, the comment is replaced with its token name on its last line
+     *
+     * @param output    list of output strings
+     * @param active    current string
+     * @param lineCount current lineCount
+     * @param comment   text of the comment
+     * @param type      token type of the comment
+     * @param vocab     the lexer vocab
+     * @return new lineCount
+     */
+    public static int preserveCommentLines(List<IndexedString> output, StringBuilder active, int lineCount, String comment, int type, Vocabulary vocab) {
+        String[] splitComment = comment.split("\\r?\\n|\\r");
 
         for (int i = 0; i < splitComment.length; i++) {
             if (i != 0) {
@@ -20,7 +36,7 @@ public class StandardTokeniser implements ITokenStringifier {
                 lineCount++;
             }
         }
-        active.append(vocab.getSymbolicName(t.getType()));
+        active.append(vocab.getSymbolicName(type));
         return lineCount;
     }
 
@@ -33,19 +49,31 @@ public class StandardTokeniser implements ITokenStringifier {
      */
     @Override
     public List<IndexedString> processTokens(List<? extends Token> tokens, Vocabulary vocab) {
+        return this.processTokens(TokenView.of(tokens), vocab);
+    }
+
+    /**
+     * Tokenises a file in the form of a view of tokens
+     *
+     * @param tokens the file as a view of tokens
+     * @param vocab  the lexer vocab
+     * @return indexed lines of the file, tokenised
+     */
+    @Override
+    public List<IndexedString> processTokens(TokenView tokens, Vocabulary vocab) {
         List<IndexedString> output = new LinkedList<>();
         StringBuilder active = new StringBuilder(); //use string builder for much faster concatenation
         int lineCount = 1;
 
-        for (Token t : tokens) {
-            lineCount = StandardStringifier.checkLineFinished(output, active, lineCount, t);
+        for (int i = 0; i < tokens.size(); i++) {
+            lineCount = StandardStringifier.checkLineFinished(output, active, lineCount, tokens.getLine(i));
 
-            switch (StandardLexerSpecification.channels.values()[t.getChannel()]) {
+            switch (StandardLexerSpecification.channels.of(tokens.getChannel(i))) {
                 case DEFAULT:
-                    active.append(vocab.getSymbolicName(t.getType())).append(" ");
+                    active.append(vocab.getSymbolicName(tokens.getType(i))).append(" ");
                     break;
                 case COMMENT:
-                    lineCount = preserveCommentLines(output, active, lineCount, t, vocab);
+                    lineCount = preserveCommentLines(output, active, lineCount, tokens.getText(i), tokens.getType(i), vocab);
                     break;
                 default:
                     break;
@@ -1,15 +1,11 @@
 package uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing;
 
-import org.antlr.v4.runtime.CommonToken;
-import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.Vocabulary;
-import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.IGeneralPreProcessor;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.IFusablePreProcessor;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.ILexerSpecification;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenView;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public class TrimWhitespaceOnly implements IGeneralPreProcessor {
+public class TrimWhitespaceOnly implements IFusablePreProcessor {
 
     @Override
     public ILexerSpecification getLexerSpecification() {
@@ -17,33 +13,21 @@ public class TrimWhitespaceOnly implements IGeneralPreProcessor {
     }
 
     /**
-     * Removes the excess whitespace from a sourcefile
+     * Removes the excess whitespace from a sourcefile, long whitespace is replaced with a single space
      *
-     * @param tokens List of tokens to process
+     * @param tokens view holding the token
+     * @param index  index of the token in the view
+     * @param text   text of the token
      * @param vocab  Lexer vocabulary
      * @param lang   language of source file being processed
-     * @return stream of tokens containing comments
+     * @return {@code text} if the token is kept, a single space for long whitespace, null if it is dropped
      */
     @Override
-    public List<? extends Token> process(List<? extends Token> tokens, Vocabulary vocab, String lang) {
-        List<Token> result = new ArrayList<>();
-
-        for (Token t : tokens) {
-
-            switch (StandardLexerSpecification.channels.values()[t.getChannel()]) {
-                case COMMENT, WHITESPACE, DEFAULT:
-                    result.add(t);
-                    break;
-                case LONG_WHITESPACE:
-                    CommonToken temp = new CommonToken(t);
-                    temp.setText(" ");
-                    result.add(temp);
-                    break;
-                default:
-                    break;
-            }
-        }
-
-        return result;
+    public String processToken(TokenView tokens, int index, String text, Vocabulary vocab, String lang) {
+        return switch (StandardLexerSpecification.channels.of(tokens.getChannel(index))) {
+            case COMMENT, WHITESPACE, DEFAULT -> text;
+            case LONG_WHITESPACE -> " ";
+            default -> null;
+        };
     }
 }
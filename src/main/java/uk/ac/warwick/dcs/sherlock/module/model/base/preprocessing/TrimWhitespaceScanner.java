@@ -0,0 +1,322 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing;
+
+import org.antlr.v4.runtime.Lexer;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.module.model.base.lang.JavaLexer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lexer free implementation of a strategy containing only {@link TrimWhitespaceOnly}, stringified by the {@link StandardStringifier}, for Java source.
+ * <br><br>
+ * The scanner walks the characters of the file once, finding the comments, literals and whitespace {@link JavaLexer} would, and builds exactly the lines the lexer, preprocessor and stringifier
+ * would. Runs of spaces within a line become a single space, tabs are dropped, whitespace around line breaks is dropped, and comments keep the source line structure. Tokens other than comments,
+ * literals and whitespace are copied as they are, as the stringifier only joins their text.
+ * <br><br>
+ * Where the lexer would recover from an error, such as an unterminated literal or a character it does not recognise, the scanner gives up and the caller falls back to the
+ * lexer.
+ */
+public final class TrimWhitespaceScanner {
+
+    /**
+     * Whether each ASCII character starts a token, outside comments and literals, which is not whitespace
+     */
+    private static final boolean[] tokenChars = new boolean[128];
+
+    static {
+        for (char c : "!$%&()*+,-./:;<=>?@[]^_{|}~".toCharArray()) {
+            tokenChars[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            tokenChars[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            tokenChars[c] = true;
+            tokenChars[Character.toUpperCase(c)] = true;
+        }
+    }
+
+    private TrimWhitespaceScanner() {
+    }
+
+    /**
+     * Checks whether the scanner can stand in for a strategy
+     *
+     * @param lexer         the strategy's lexer
+     * @param preProcessors the strategy's preprocessors
+     * @param stringifier   the strategy's stringifier, null for the standard stringifiers
+     * @param tokenised     whether the strategy is tokenised
+     * @return whether the scanner gives the same lines as the strategy
+     */
+    public static boolean handles(Class<? extends Lexer> lexer, List<? extends Class<?>> preProcessors, Class<?> stringifier, boolean tokenised) {
+        return lexer == JavaLexer.class && preProcessors.size() == 1 && preProcessors.getFirst() == TrimWhitespaceOnly.class && stringifier == null && !tokenised;
+    }
+
+    /**
+     * Builds the lines of a Java source file with whitespace trimmed
+     *
+     * @param source content of the file
+     * @return indexed lines of the file, null if the file needs the lexer
+     */
+    public static List<IndexedString> process(String source) {
+        List<IndexedString> output = new ArrayList<>();
+        StringBuilder active = new StringBuilder();
+        int lineCount = 1;
+        int line = 1;
+
+        int n = source.length();
+        int i = 0;
+        while (i < n) {
+            char c = source.charAt(i);
+            int end;
+
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                end = skipBlanks(source, i);
+                if (end < n && isLineBreak(source.charAt(end))) {
+                    // whitespace around line breaks is skipped by the lexer
+                    while (end < n && isLineBreak(source.charAt(end))) {
+                        if (source.charAt(end) == '\n') {
+                            line++;
+                        }
+                        end++;
+                    }
+                    i = skipBlanks(source, end);
+                } else if (c == ' ') {
+                    lineCount = StandardStringifier.checkLineFinished(output, active, lineCount, line);
+                    active.append(' ');
+                    while (i < n && source.charAt(i) == ' ') {
+                        i++;
+                    }
+                } else {
+                    while (i < n && source.charAt(i) == '\t') {
+                        i++;
+                    }
+                }
+                continue;
+            }
+
+            if (c == '/' && i + 1 < n && source.charAt(i + 1) == '/') {
+                end = i + 2;
+                while (end < n && !isLineBreak(source.charAt(end))) {
+                    end++;
+                }
+
+                // a line comment has no line breaks, so it is only trimmed
+                int trimmed = end;
+                while (trimmed > i && source.charAt(trimmed - 1) <= ' ') {
+                    trimmed--;
+                }
+                lineCount = StandardStringifier.checkLineFinished(output, active, lineCount, line);
+                active.append(source, i, trimmed);
+                i = end;
+                continue;
+            }
+
+            if (c == '/' && i + 1 < n && source.charAt(i + 1) == '*') {
+                end = source.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return null;
+                }
+                end += 2;
+
+                lineCount = StandardStringifier.checkLineFinished(output, active, lineCount, line);
+                lineCount = StandardStringifier.preserveCommentLines(output, active, lineCount, source.substring(i, end));
+                line += countLines(source, i, end);
+                i = end;
+                continue;
+            }
+
+            if (c == '"') {
+                end = source.startsWith("\"\"\"", i) ? matchTextBlock(source, i) : -1;
+                if (end < 0) {
+                    end = matchString(source, i);
+                }
+            } else if (c == '\'') {
+                end = matchChar(source, i);
+            } else {
+                end = matchTokens(source, i);
+            }
+
+            if (end < 0) {
+                return null;
+            }
+
+            // only text blocks span lines, they are appended whole as the stringifier does
+            lineCount = StandardStringifier.checkLineFinished(output, active, lineCount, line);
+            active.append(source, i, end);
+            line += countLines(source, i, end);
+            i = end;
+        }
+
+        if (!active.isEmpty()) {
+            output.add(IndexedString.of(lineCount, active.toString()));
+        }
+
+        return output;
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\r' || c == '\n';
+    }
+
+    private static int skipBlanks(String source, int i) {
+        while (i < source.length() && (source.charAt(i) == ' ' || source.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int countLines(String source, int begin, int end) {
+        int count = 0;
+        for (int i = begin; i < end; i++) {
+            if (source.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Matches a run of tokens which are not comments, literals or whitespace
+     *
+     * @return end of the run, -1 if it holds a character the lexer does not recognise
+     */
+    private static int matchTokens(String source, int i) {
+        int n = source.length();
+        while (i < n) {
+            char c = source.charAt(i);
+            if (c < 128) {
+                if (c == '/' && i + 1 < n && (source.charAt(i + 1) == '/' || source.charAt(i + 1) == '*')) {
+                    return i;
+                }
+                if (!tokenChars[c]) {
+                    // whitespace and literals end the run, anything else is an error
+                    return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '"' || c == '\'' ? i : -1;
+                }
+                i++;
+            } else if (Character.isHighSurrogate(c)) {
+                // a high surrogate on its own is not a letter
+                if (i + 1 >= n || !Character.isLowSurrogate(source.charAt(i + 1))) {
+                    return -1;
+                }
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Matches a text block starting at a triple quote, ended by the first triple quote after its opening line
+     *
+     * @return end of the text block, -1 if it is not one
+     */
+    private static int matchTextBlock(String source, int i) {
+        int start = skipBlanks(source, i + 3);
+        if (start >= source.length() || !isLineBreak(source.charAt(start))) {
+            return -1;
+        }
+
+        int end = source.indexOf("\"\"\"", start + 1);
+        return end < 0 ? -1 : end + 3;
+    }
+
+    /**
+     * Matches a string literal, the lexer reads {@code """} which does not open a text block as an empty string first
+     *
+     * @return end of the string, -1 if it is not terminated on its line or holds an invalid escape
+     */
+    private static int matchString(String source, int i) {
+        int n = source.length();
+        int k = i + 1;
+        while (k < n) {
+            char c = source.charAt(k);
+            if (c == '"') {
+                return k + 1;
+            } else if (isLineBreak(c)) {
+                return -1;
+            } else if (c == '\\') {
+                k = matchEscape(source, k);
+                if (k < 0) {
+                    return -1;
+                }
+            } else {
+                k++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Matches a character literal
+     *
+     * @return end of the literal, -1 if it is not a single character or escape followed by a quote
+     */
+    private static int matchChar(String source, int i) {
+        int n = source.length();
+        int k = i + 1;
+        if (k >= n) {
+            return -1;
+        }
+
+        char c = source.charAt(k);
+        if (c == '\\') {
+            k = matchEscape(source, k);
+            if (k < 0) {
+                return -1;
+            }
+        } else if (c == '\'' || isLineBreak(c)) {
+            return -1;
+        } else {
+            k += Character.charCount(source.codePointAt(k));
+        }
+
+        return k < n && source.charAt(k) == '\'' ? k + 1 : -1;
+    }
+
+    /**
+     * Matches an escape sequence, octal escapes take up to three digits, only three if the first is at most 3
+     *
+     * @return end of the escape, -1 if it is not one or is a unicode escape of a backslash, which the lexer may read as the start of another escape
+     */
+    private static int matchEscape(String source, int k) {
+        int n = source.length();
+        if (k + 1 >= n) {
+            return -1;
+        }
+
+        char c = source.charAt(k + 1);
+        if ("btnfr\"'\\".indexOf(c) >= 0) {
+            return k + 2;
+        }
+
+        if (c >= '0' && c <= '7') {
+            int end = k + 2;
+            int max = c <= '3' ? 2 : 1;
+            for (int d = 0; d < max && end < n && source.charAt(end) >= '0' && source.charAt(end) <= '7'; d++) {
+                end++;
+            }
+            return end;
+        }
+
+        if (c == 'u') {
+            int end = k + 1;
+            while (end < n && source.charAt(end) == 'u') {
+                end++;
+            }
+            if (end + 4 > n || (end == k + 2 && source.startsWith("005c", end))) {
+                return -1;
+            }
+            for (int d = end; d < end + 4; d++) {
+                if ("0123456789abcdefABCDEF".indexOf(source.charAt(d)) < 0) {
+                    return -1;
+                }
+            }
+            return end + 4;
+        }
+
+        return -1;
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.stereotype.Controller
 import org.springframework.ui.Model
 import org.springframework.web.bind.annotation.*
 import uk.ac.warwick.dcs.sherlock.api.component.IJob
+import uk.ac.warwick.dcs.sherlock.api.executor.ProvisionalMatch
 import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine
 import uk.ac.warwick.dcs.sherlock.module.web.data.repositories.WorkspaceRepository
 import uk.ac.warwick.dcs.sherlock.module.web.data.results.JobResultsData
@@ -43,10 +44,12 @@ class ResultsController {
             model.addAttribute("finished", true)
             model.addAttribute("status_message", "Finished")
             model.addAttribute("status_progress", 100)
+            model.addAttribute("provisional", emptyList<ProvisionalMatch>())
         } else {
             model.addAttribute("finished", (status.message == "Finished"))
             model.addAttribute("status_message", status.message)
             model.addAttribute("status_progress", status.progressInt)
+            model.addAttribute("provisional", status.getProvisionalMatches(PROVISIONAL_LIMIT))
         }
 
         return "dashboard/workspaces/results/view"
@@ -318,4 +321,11 @@ class ResultsController {
         model.addAttribute("results", wrapper)
         return wrapper
     }
+
+    companion object {
+        /**
+         * The number of provisional matches shown while a job is running
+         */
+        private const val PROVISIONAL_LIMIT = 20
+    }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import org.springframework.validation.BindingResult
 import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.ModelAttribute
 import org.springframework.web.bind.annotation.PostMapping
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine
 import uk.ac.warwick.dcs.sherlock.module.web.configuration.SecurityConfig.Companion.generateRandomPassword
 import uk.ac.warwick.dcs.sherlock.module.web.data.models.db.Account
 import uk.ac.warwick.dcs.sherlock.module.web.data.models.db.Role
@@ -35,10 +36,14 @@ class AdminController {
     /**
      * Handles all requests to the admin page
      *
+     * @param model holder for model attributes
+     *
      * @return the path to the admin page
      */
     @GetMapping("/admin")
-    fun indexGet(): String {
+    fun indexGet(model: Model): String {
+        model.addAttribute("pairCache", SherlockEngine.executor.pairCacheStats)
+        model.addAttribute("preProcessingCache", SherlockEngine.executor.preProcessingCacheStats)
         return "settings/admin/index"
     }
 
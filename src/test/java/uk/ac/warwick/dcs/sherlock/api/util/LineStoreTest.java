@@ -0,0 +1,58 @@
+package uk.ac.warwick.dcs.sherlock.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineStoreTest {
+
+    private static List<String> strings(List<IndexedString> lines) {
+        List<String> res = new ArrayList<>();
+        for (IndexedString line : lines) {
+            res.add(line.getKey() + ":" + line.getValue());
+        }
+        return res;
+    }
+
+    @Test
+    void storesLines() {
+        List<IndexedString> lines = List.of(IndexedString.of(1, "int x = 0;"), IndexedString.of(3, ""), IndexedString.of(4, "x++;"));
+        LineStore store = LineStore.of(lines);
+
+        assertEquals(3, store.size());
+        assertEquals(14, store.getTextLength());
+        assertEquals(3, store.getLine(1));
+        assertEquals(0, store.getLength(1));
+        assertEquals("x++;", store.getString(2));
+        assertEquals('+', store.charAt(2, 1));
+        assertEquals(strings(lines), strings(store.asList()));
+        assertThrows(UnsupportedOperationException.class, () -> store.asList().add(IndexedString.of(5, "")));
+    }
+
+    @Test
+    void viewsShareTheBuffer() {
+        LineStore store = new LineStore.Builder().add(7, "return a + b;").add(8, new StringBuilder("}")).build();
+
+        CharSequence text = store.getText(0);
+        assertEquals(13, text.length());
+        assertEquals("a + b", text.subSequence(7, 12).toString());
+        assertEquals(0, CharSequence.compare("return a + b;", text));
+        assertThrows(IndexOutOfBoundsException.class, () -> text.charAt(13));
+        assertEquals("}", store.getText(1).toString());
+    }
+
+    @Test
+    void storesCharactersOutsideLatin1() {
+        List<IndexedString> lines = List.of(IndexedString.of(1, "caf\u00e9"), IndexedString.of(2, "\uD83D\uDE00 x"));
+        LineStore store = LineStore.of(lines);
+
+        assertEquals(strings(lines), strings(store.asList()));
+        assertEquals('\uDE00', store.getText(1).charAt(1));
+        assertTrue(LineStore.of(lines.subList(0, 1)).getMemoryFootprint() < store.getMemoryFootprint());
+        assertTrue(LineStore.of(new LinkedList<>()).isEmpty());
+    }
+}
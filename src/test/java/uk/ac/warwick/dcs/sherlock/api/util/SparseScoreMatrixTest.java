@@ -0,0 +1,53 @@
+package uk.ac.warwick.dcs.sherlock.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseScoreMatrixTest {
+
+    private static SparseScoreMatrix sample() {
+        return SparseScoreMatrix.builder(4).setRow(0, new int[] {1, 3}, new float[] {0.5f, 0.25f}, 2).setRow(2, new int[] {0, 1, 3}, new float[] {0.1f, 0f, 1f}, 3).build();
+    }
+
+    @Test
+    void storesOnlyNonZeroScores() {
+        SparseScoreMatrix matrix = sample();
+
+        assertAll(() -> assertEquals(4, matrix.getNonZeroCount()), () -> assertEquals(0.5f, matrix.get(0, 1)), () -> assertEquals(0.25f, matrix.get(0, 3)), () -> assertEquals(0f, matrix.get(0, 2)),
+                () -> assertEquals(0f, matrix.get(1, 0)), () -> assertEquals(0f, matrix.get(2, 1)), () -> assertEquals(1f, matrix.get(2, 3)), () -> assertEquals(0f, matrix.get(7, 0)));
+    }
+
+    @Test
+    void forEachInRowIsInColumnOrder() {
+        List<Integer> columns = new ArrayList<>();
+        sample().forEachInRow(2, (column, score) -> columns.add(column));
+
+        assertEquals(List.of(0, 3), columns);
+    }
+
+    @Test
+    void rejectsUnsortedColumns() {
+        assertThrows(IllegalArgumentException.class, () -> SparseScoreMatrix.builder(3).setRow(0, new int[] {2, 1}, new float[] {1f, 1f}, 2));
+    }
+
+    @Test
+    void writeAndReadRoundTrip() throws IOException {
+        SparseScoreMatrix matrix = sample();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        matrix.write(new DataOutputStream(bytes));
+        SparseScoreMatrix read = SparseScoreMatrix.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(matrix.getNonZeroCount(), read.getNonZeroCount());
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                assertEquals(matrix.get(row, column), read.get(row, column));
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package uk.ac.warwick.dcs.sherlock.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WinnowingTest {
+
+    private static boolean sharesFingerprint(Winnowing a, Winnowing b) {
+        long[] distinct = b.getDistinctFingerprints();
+        for (long fingerprint : a.getDistinctFingerprints()) {
+            if (Arrays.binarySearch(distinct, fingerprint) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    void ignoresWhitespace() {
+        Winnowing a = Winnowing.of(List.of(IndexedString.of(1, "for (int i = 0; i < n; i++) {")), 5, 4);
+        Winnowing b = Winnowing.of(List.of(IndexedString.of(1, "for(int i=0;"), IndexedString.of(2, "  i<n;i++){")), 5, 4);
+
+        assertArrayEquals(a.getDistinctFingerprints(), b.getDistinctFingerprints());
+    }
+
+    @Test
+    void sharedSubstringGivesSharedFingerprint() {
+        String shared = "total+=values[index]*weight;";
+        Winnowing a = Winnowing.of(List.of(IndexedString.of(1, "intx=1;"), IndexedString.of(2, shared)), 5, 4);
+        Winnowing b = Winnowing.of(List.of(IndexedString.of(7, shared), IndexedString.of(8, "returny;")), 5, 4);
+
+        assertTrue(sharesFingerprint(a, b));
+    }
+
+    @Test
+    void recordsLinesOfSelectedSubstrings() {
+        Winnowing w = Winnowing.of(List.of(IndexedString.of(3, "abc"), IndexedString.of(4, "defgh")), 4, 1);
+
+        assertAll(() -> assertEquals(5, w.size()), () -> assertEquals(3, w.getStartLine(0)), () -> assertEquals(4, w.getEndLine(0)), () -> assertEquals(4, w.getStartLine(4)));
+    }
+
+    @Test
+    void shortInputHasNoFingerprints() {
+        assertEquals(0, Winnowing.of(List.of(IndexedString.of(1, "ab c")), 5, 4).size());
+    }
+}
@@ -0,0 +1,418 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.annotation.AdjustableParameterObj;
+import uk.ac.warwick.dcs.sherlock.api.component.*;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
+import uk.ac.warwick.dcs.sherlock.api.util.Side;
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.IPriorityWorkSchedulerWrapper;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.Priority;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.PriorityWorkTask;
+import uk.ac.warwick.dcs.sherlock.engine.executor.pool.PoolExecutorJob;
+import uk.ac.warwick.dcs.sherlock.engine.executor.work.WorkDetect;
+import uk.ac.warwick.dcs.sherlock.engine.executor.work.WorkPreProcessFiles;
+import uk.ac.warwick.dcs.sherlock.module.model.base.detection.NGramDetector;
+import uk.ac.warwick.dcs.sherlock.module.model.base.lang.JavaLexer;
+import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.TrimWhitespaceOnly;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSourceFile;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobCancellationTest {
+
+    private static final String SOURCE = "public class A {\n    int sum(int[] values) {\n        int total = 0;\n        for (int v : values) {\n            total += v;\n        }\n        return total;\n    }\n}\n";
+
+    @BeforeEach
+    void setUp() {
+        new SherlockEngine(Side.CLIENT);
+        SherlockRegistry.registerLanguage("Java", JavaLexer.class);
+        SherlockRegistry.registerGeneralPreProcessor(TrimWhitespaceOnly.class);
+        SherlockRegistry.registerDetector(NGramDetector.class);
+
+        SherlockEngine.configuration.setMaxConcurrentJobs(1);
+        SherlockEngine.configuration.setFastLaneFileLimit(0);
+        SherlockEngine.configuration.setPairResultCacheSize(0);
+        SherlockEngine.configuration.setPreProcessingCacheSize(0);
+        SherlockEngine.configuration.setProvisionalResultBatchSize(0);
+        SherlockEngine.configuration.setRemoteWorkers(0);
+    }
+
+    @Test
+    void cancelsQueuedJob() throws InterruptedException {
+        BaseExecutor executor = new BaseExecutor();
+        try {
+            Job running = new Job(1);
+            running.hold = new CountDownLatch(1);
+            Job queued = new Job(2);
+
+            assertTrue(executor.submitJob(running));
+            assertTrue(running.started.await(10, TimeUnit.SECONDS));
+            assertTrue(executor.submitJob(queued));
+
+            assertTrue(executor.cancelJob(queued));
+            assertFalse(executor.cancelJob(queued));
+            assertTrue(((JobStatus) executor.getJobStatus(queued)).isCancelled());
+            assertFalse(queued.isQueued());
+
+            // the running job stops at the end of preprocessing
+            assertTrue(executor.cancelJob(running));
+            running.hold.countDown();
+            assertTrue(running.finished.await(10, TimeUnit.SECONDS));
+
+            // the queued job was never started
+            assertEquals(List.of(WorkStatus.CANCELLED), queued.history);
+            assertEquals(0, queued.results.get());
+            assertEquals(0, queued.task.completed.get());
+
+            assertEquals(WorkStatus.CANCELLED, running.getStatus());
+            assertEquals(0, running.results.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void cancelsJobWhilePreProcessing() {
+        Job job = new Job(1);
+        Scheduler scheduler = this.run(job, WorkPreProcessFiles.class);
+
+        assertEquals(List.of(WorkPreProcessFiles.class), scheduler.invoked);
+        assertEquals(List.of(WorkStatus.ACTIVE, WorkStatus.CANCELLED), job.history);
+        assertEquals(0, job.results.get());
+        assertEquals(0, job.task.completed.get());
+        assertTrue(job.task.cleared.get() > 0);
+    }
+
+    @Test
+    void cancelsJobWhileDetecting() {
+        Job job = new Job(1);
+        Scheduler scheduler = this.run(job, WorkDetect.class);
+
+        assertEquals(List.of(WorkPreProcessFiles.class, WorkDetect.class), scheduler.invoked);
+        assertEquals(List.of(WorkStatus.ACTIVE, WorkStatus.CANCELLED), job.history);
+        assertEquals(0, job.results.get());
+        assertEquals(0, job.task.completed.get());
+        assertNull(job.task.getRawResults());
+        assertTrue(job.task.checkpoint.isEmpty());
+    }
+
+    /**
+     * Runs a job, cancelling it once a piece of its work has run
+     */
+    private Scheduler run(Job job, Class<?> cancelAfter) {
+        JobStatus status = new JobStatus(0, Priority.DEFAULT);
+        Scheduler scheduler = new Scheduler(status, cancelAfter);
+
+        status.startJob();
+        try {
+            new PoolExecutorJob(scheduler, job, status).run();
+        } finally {
+            status.finishJob();
+            scheduler.pool.shutdown();
+        }
+
+        assertTrue(status.isCancelled());
+        return scheduler;
+    }
+
+    /**
+     * Runs work on its own pool, cancelling the job after a given type of work
+     */
+    private static class Scheduler implements IPriorityWorkSchedulerWrapper {
+
+        private final ForkJoinPool pool = new ForkJoinPool(2);
+        private final List<Class<?>> invoked = new CopyOnWriteArrayList<>();
+        private final JobStatus status;
+        private final Class<?> cancelAfter;
+
+        private Scheduler(JobStatus status, Class<?> cancelAfter) {
+            this.status = status;
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void invokeWork(ForkJoinTask topAction, Priority priority) {
+            this.invoked.add(topAction.getClass());
+            this.pool.invoke(topAction);
+
+            if (this.cancelAfter.isInstance(topAction)) {
+                this.status.cancelJob();
+            }
+        }
+
+        @Override
+        public void submitWork(PriorityWorkTask task) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Job implements IJob {
+
+        private final long id;
+        private final List<WorkStatus> history = new CopyOnWriteArrayList<>();
+        private final AtomicInteger results = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final Task task = new Task(this);
+        private final Workspace workspace = new Workspace();
+        private CountDownLatch hold;
+        private volatile WorkStatus status = WorkStatus.PREPARED;
+        private volatile boolean queued;
+
+        private Job(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean addDetector(Class<? extends IDetector> det) {
+            return false;
+        }
+
+        @Override
+        public IResultJob createNewResult() {
+            this.results.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public long[] getFiles() {
+            return this.workspace.files.stream().mapToLong(ISourceFile::getPersistentId).toArray();
+        }
+
+        @Override
+        public IResultJob getLatestResult() {
+            return null;
+        }
+
+        @Override
+        public long getPersistentId() {
+            return this.id;
+        }
+
+        @Override
+        public WorkStatus getStatus() {
+            return this.status;
+        }
+
+        @Override
+        public void setStatus(WorkStatus status) {
+            this.status = status;
+            this.history.add(status);
+
+            if (status == WorkStatus.ACTIVE) {
+                this.started.countDown();
+                if (this.hold != null) {
+                    try {
+                        this.hold.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } else if (status == WorkStatus.CANCELLED || status == WorkStatus.COMPLETE || status == WorkStatus.INTERRUPTED) {
+                this.finished.countDown();
+            }
+        }
+
+        @Override
+        public List<ITask> getTasks() {
+            return List.of(this.task);
+        }
+
+        @Override
+        public LocalDateTime getTimestamp() {
+            return null;
+        }
+
+        @Override
+        public IWorkspace getWorkspace() {
+            return this.workspace;
+        }
+
+        @Override
+        public boolean isQueued() {
+            return this.queued;
+        }
+
+        @Override
+        public void setQueued(boolean queued) {
+            this.queued = queued;
+        }
+
+        @Override
+        public boolean isPrepared() {
+            return true;
+        }
+
+        @Override
+        public boolean prepare() {
+            return true;
+        }
+
+        @Override
+        public boolean removeDetector(Class<? extends IDetector> det) {
+            return false;
+        }
+
+        @Override
+        public void remove() {
+        }
+    }
+
+    private static class Workspace implements IWorkspace {
+
+        private final List<ISourceFile> files = List.of(new TestSourceFile(1, SOURCE), new TestSourceFile(2, SOURCE.replace("total", "sum")));
+
+        @Override
+        public IJob createJob() {
+            return null;
+        }
+
+        @Override
+        public List<ISourceFile> getFiles() {
+            return this.files;
+        }
+
+        @Override
+        public List<ISubmission> getSubmissions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<IJob> getJobs() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String getLanguage() {
+            return "Java";
+        }
+
+        @Override
+        public void setLanguage(String lang) {
+        }
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public void setName(String name) {
+        }
+
+        @Override
+        public long getPersistentId() {
+            return 0;
+        }
+
+        @Override
+        public void remove() {
+        }
+    }
+
+    private static class Task implements ITask {
+
+        private final IJob job;
+        private final Map<Integer, AbstractModelTaskRawResult> checkpoint = new ConcurrentHashMap<>();
+        private final AtomicInteger cleared = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private volatile List<AbstractModelTaskRawResult> rawResults;
+        private volatile int candidateFloor = -1;
+
+        private Task(IJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public void addCheckpoint(String checkpointKey, int[] workerIndexes, List<AbstractModelTaskRawResult> rawResults) {
+            for (int i = 0; i < workerIndexes.length; i++) {
+                this.checkpoint.put(workerIndexes[i], rawResults.get(i));
+            }
+        }
+
+        @Override
+        public void clearCheckpoint() {
+            this.checkpoint.clear();
+            this.cleared.incrementAndGet();
+        }
+
+        @Override
+        public Map<Integer, AbstractModelTaskRawResult> getCheckpoint(String checkpointKey) {
+            return new HashMap<>();
+        }
+
+        @Override
+        public int getCandidateFloor() {
+            return this.candidateFloor;
+        }
+
+        @Override
+        public void setCandidateFloor(int candidateFloor) {
+            this.candidateFloor = candidateFloor;
+        }
+
+        @Override
+        public Class<? extends IDetector> getDetector() {
+            return NGramDetector.class;
+        }
+
+        @Override
+        public IJob getJob() {
+            return this.job;
+        }
+
+        @Override
+        public Map<String, Float> getParameterMapping() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public long getPersistentId() {
+            return 0;
+        }
+
+        @Override
+        public List<AbstractModelTaskRawResult> getRawResults() {
+            return this.rawResults;
+        }
+
+        @Override
+        public void setRawResults(List<AbstractModelTaskRawResult> rawResults) {
+            this.rawResults = rawResults;
+        }
+
+        @Override
+        public WorkStatus getStatus() {
+            return this.completed.get() > 0 ? WorkStatus.COMPLETE : WorkStatus.PREPARED;
+        }
+
+        @Override
+        public boolean hasResults() {
+            return this.rawResults != null;
+        }
+
+        @Override
+        public boolean resetParameter(AdjustableParameterObj paramObj) {
+            return false;
+        }
+
+        @Override
+        public void setComplete() {
+            this.completed.incrementAndGet();
+        }
+
+        @Override
+        public boolean setParameter(AdjustableParameterObj paramObj, float value) {
+            return false;
+        }
+    }
+}
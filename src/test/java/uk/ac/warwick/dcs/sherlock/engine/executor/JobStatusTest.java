@@ -0,0 +1,55 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.Priority;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobStatusTest {
+
+    @Test
+    void progressMovesToStepCap() {
+        JobStatus status = new JobStatus(0, Priority.DEFAULT);
+        status.startJob();
+        status.nextStep(); // pre-processing, capped at 0.06
+        status.calculateProgressIncrement(4);
+
+        status.incrementProgress();
+        status.incrementProgress();
+        assertEquals(0.03f, status.getProgress(), 1e-6);
+
+        status.incrementProgress();
+        status.incrementProgress();
+        status.incrementProgress(); // extra units do not pass the cap
+        assertEquals(0.06f, status.getProgress(), 1e-6);
+        assertEquals(6, status.getProgressInt());
+
+        status.finishJob();
+        assertEquals(1f, status.getProgress());
+    }
+
+    @Test
+    void countsIncrementsFromManyThreads() throws InterruptedException {
+        JobStatus status = new JobStatus(0, Priority.DEFAULT);
+        status.startJob();
+        status.setStep(4);
+        status.calculateProgressIncrement(80000);
+
+        ExecutorService exServ = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            exServ.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    status.incrementProgress();
+                }
+            });
+        }
+        exServ.shutdown();
+        assertTrue(exServ.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0.7f, status.getProgress(), 1e-6);
+    }
+}
@@ -0,0 +1,70 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectorWorker;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IPairWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.module.model.base.detection.NGramDetector;
+import uk.ac.warwick.dcs.sherlock.module.model.base.detection.WinnowingDetector;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSourceFile;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutorUtilsTest {
+
+    private static final List<ModelDataItem> FILES = List.of(new ModelDataItem(new TestSourceFile(1, "a")), new ModelDataItem(new TestSourceFile(2, "b")),
+            new ModelDataItem(new TestSourceFile(3, "c")));
+
+    private static IPairWorkerSource<DetectorWorker<?>> pairs(int[][] pairs) {
+        return new IPairWorkerSource<>() {
+            @Override
+            public ModelDataItem getFile1Data(int index) {
+                return FILES.get(pairs[index][0]);
+            }
+
+            @Override
+            public ModelDataItem getFile2Data(int index) {
+                return FILES.get(pairs[index][1]);
+            }
+
+            @Override
+            public int size() {
+                return pairs.length;
+            }
+
+            @Override
+            public DetectorWorker<?> create(int index) {
+                return null;
+            }
+        };
+    }
+
+    private static String key(int candidateFloor, IWorkerSource<?> workers, List<ModelDataItem> files) {
+        return ExecutorUtils.checkpointKey(NGramDetector.class, Collections.emptyMap(), candidateFloor, workers, files);
+    }
+
+    @Test
+    void checkpointKeyMatchesOnlyTheSameWorkers() {
+        int[][] all = {{0, 1}, {0, 2}, {1, 2}};
+        String key = key(0, pairs(all), FILES);
+
+        assertEquals(key, key(0, pairs(new int[][] {{0, 1}, {0, 2}, {1, 2}}), FILES));
+        // the same number of workers, comparing different pairs or the same pairs in another order
+        assertNotEquals(key, key(0, pairs(new int[][] {{0, 1}, {0, 2}, {0, 2}}), FILES));
+        assertNotEquals(key, key(0, pairs(new int[][] {{0, 2}, {0, 1}, {1, 2}}), FILES));
+        assertNotEquals(key, key(4, pairs(all), FILES));
+        assertNotEquals(key, ExecutorUtils.checkpointKey(WinnowingDetector.class, Collections.emptyMap(), 0, pairs(all), FILES));
+    }
+
+    @Test
+    void checkpointKeyOfOtherWorkersCoversTheFiles() {
+        IWorkerSource<DetectorWorker<?>> workers = IWorkerSource.of(Collections.nCopies(3, null));
+
+        assertEquals(key(0, workers, FILES), key(0, workers, List.copyOf(FILES)));
+        assertNotEquals(key(0, workers, FILES), key(0, workers, List.of(FILES.get(0), FILES.get(2), FILES.get(1))));
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobMemoryEstimatorTest {
+
+    @Test
+    void estimateGrowsWithEachPart() {
+        long base = JobMemoryEstimator.estimate(0, 0, 0, 0, 1);
+        assertEquals(JobMemoryEstimator.BASE_BYTES, base);
+
+        long small = JobMemoryEstimator.estimate(1000, 2, 100, 100, 4);
+        assertEquals(base + 1000 * 2 * JobMemoryEstimator.PREPROCESSED_BYTES_PER_SOURCE_BYTE + 100 * JobMemoryEstimator.BYTES_PER_PAIR
+                + 4 * 100 * 2 * JobMemoryEstimator.WORKER_BYTES_PER_SOURCE_BYTE, small);
+
+        assertTrue(JobMemoryEstimator.estimate(2000, 2, 100, 100, 4) > small);
+        assertTrue(JobMemoryEstimator.estimate(1000, 3, 100, 100, 4) > small);
+        assertTrue(JobMemoryEstimator.estimate(1000, 2, 200, 100, 4) > small);
+        assertTrue(JobMemoryEstimator.estimate(1000, 2, 100, 100, 8) > small);
+    }
+
+    @Test
+    void preprocessedLinesFitEstimate() {
+        String source = "package test;\n\n/**\n * Sums values\n */\npublic class Sum {\n    private int total = 0; // running total\n\n    public int add(int[] values) {\n"
+                + "        for (int i = 0; i < values.length; i++) {\n            total += values[i];\n        }\n        System.out.println(\"total: \" + total);\n        return total;\n    }\n}\n";
+
+        for (String text : new String[] {source, source.replace("total", "gesamtsumme \u03a3")}) {
+            String[] lines = text.split("\n");
+            LineStore.Builder builder = new LineStore.Builder();
+            for (int i = 0; i < lines.length; i++) {
+                if (!lines[i].isBlank()) {
+                    builder.add(i + 1, lines[i].trim());
+                }
+            }
+
+            long sourceBytes = text.getBytes(StandardCharsets.UTF_8).length;
+            assertTrue(builder.build().getMemoryFootprint() <= sourceBytes * JobMemoryEstimator.PREPROCESSED_BYTES_PER_SOURCE_BYTE);
+        }
+    }
+
+    @Test
+    void estimateDoesNotOverflowForLargeJobs() {
+        // 5000 files of 20KB compared pairwise is ~12.5 million pairs
+        assertTrue(JobMemoryEstimator.estimate(5000L * 20000, 4, 12_497_500L, 20000, 64) > 0);
+    }
+}
@@ -0,0 +1,149 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPairRawResult;
+import uk.ac.warwick.dcs.sherlock.module.model.base.detection.NGramDetector;
+import uk.ac.warwick.dcs.sherlock.module.model.base.detection.VariableNameDetector;
+import uk.ac.warwick.dcs.sherlock.module.model.base.detection.VariableNameDetectorWorker;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PairResultCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static PairResultCache.Key key(int n) {
+        return PairResultCache.key(new byte[] {1}, new byte[] {(byte) n}, new byte[] {2});
+    }
+
+    @Test
+    void filesWithSameContentsShareKeys() {
+        List<String> strategies = List.of("lines");
+        byte[] a = PairResultCache.hashFile(TestUtils.makeModelDataItem(1, "lines", "x", "y"), strategies);
+        assertArrayEquals(a, PairResultCache.hashFile(TestUtils.makeModelDataItem(2, "lines", "x", "y"), strategies));
+        assertFalse(Arrays.equals(a, PairResultCache.hashFile(TestUtils.makeModelDataItem(3, "lines", "x", "z"), strategies)));
+
+        byte[] b = PairResultCache.hashFile(TestUtils.makeModelDataItem(4, "lines", "z"), strategies);
+        assertEquals(PairResultCache.key(new byte[] {1}, a, b).name(), PairResultCache.key(new byte[] {1}, a.clone(), b.clone()).name());
+        assertNotEquals(PairResultCache.key(new byte[] {1}, a, b).name(), PairResultCache.key(new byte[] {1}, b, a).name());
+        assertNotEquals(PairResultCache.key(new byte[] {1}, a, b).name(), PairResultCache.key(new byte[] {2}, a, b).name());
+    }
+
+    @Test
+    void findsDetectorWorkerClass() {
+        assertEquals(NGramDetector.NGramDetectorWorker.class, PairResultCache.workerClass(NGramDetector.class));
+        assertEquals(VariableNameDetectorWorker.class, PairResultCache.workerClass(VariableNameDetector.class));
+        assertNull(PairResultCache.workerClass(Object.class));
+    }
+
+    @Test
+    void storesResultsEncrypted() throws IOException {
+        PairResultCache cache = new PairResultCache(this.dir, 1024 * 1024, true);
+        assertNull(cache.get(key(1)));
+
+        assertTrue(cache.put(key(1), new PairResult(1, 2, 7)));
+        assertTrue(cache.put(key(2), null));
+
+        PairResultCache.Hit hit = cache.get(key(1));
+        assertNotNull(hit);
+        assertEquals(7, ((PairResult) hit.result()).matches);
+        assertNotNull(cache.get(key(2)));
+        assertNull(cache.get(key(2)).result());
+
+        // a key with the same name and a different secret cannot read the result
+        assertNull(cache.get(new PairResultCache.Key(key(1).name(), new byte[32])));
+
+        assertEquals(3, cache.getStats().getHits());
+        assertEquals(2, cache.getStats().getMisses());
+        assertEquals(1, cache.getStats().getEntryCount());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws IOException {
+        // room for two empty results
+        PairResultCache cache = new PairResultCache(this.dir, 2 * PairResultCache.ENTRY_OVERHEAD, false);
+        cache.put(key(1), null);
+        cache.put(key(2), null);
+        assertNotNull(cache.get(key(1)));
+
+        cache.put(key(3), null);
+        assertNotNull(cache.get(key(1)));
+        assertNull(cache.get(key(2)));
+        assertNotNull(cache.get(key(3)));
+        assertEquals(1, cache.getStats().getEvictions());
+
+        // the results are picked up again by the next session
+        PairResultCache reopened = new PairResultCache(this.dir, 2 * PairResultCache.ENTRY_OVERHEAD, false);
+        assertEquals(2, reopened.getStats().getEntryCount());
+        assertNotNull(reopened.get(key(3)));
+    }
+
+    @Test
+    void doesNotStoreResultsWithoutPairs() throws IOException {
+        PairResultCache cache = new PairResultCache(this.dir, 1024 * 1024, false);
+        AbstractModelTaskRawResult unknown = new UnknownResult();
+        assertFalse(cache.put(key(1), unknown));
+        assertNull(cache.get(key(1)));
+    }
+
+    private static class PairResult extends AbstractModelTaskRawResult implements IPairRawResult {
+
+        final long file1;
+        final long file2;
+        final int matches;
+
+        PairResult(long file1, long file2, int matches) {
+            this.file1 = file1;
+            this.file2 = file2;
+            this.matches = matches;
+        }
+
+        @Override
+        public long getFile1Id() {
+            return this.file1;
+        }
+
+        @Override
+        public long getFile2Id() {
+            return this.file2;
+        }
+
+        @Override
+        public PairResult withFiles(ISourceFile file1, ISourceFile file2) {
+            return new PairResult(file1.getPersistentId(), file2.getPersistentId(), this.matches);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.matches == 0;
+        }
+
+        @Override
+        public boolean testType(AbstractModelTaskRawResult baseline) {
+            return baseline instanceof PairResult;
+        }
+    }
+
+    private static class UnknownResult extends AbstractModelTaskRawResult {
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public boolean testType(AbstractModelTaskRawResult baseline) {
+            return true;
+        }
+    }
+}
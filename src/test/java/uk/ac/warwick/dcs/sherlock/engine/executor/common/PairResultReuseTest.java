@@ -0,0 +1,130 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectorWorker;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IPairWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPairRawResult;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSourceFile;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PairResultReuseTest {
+
+    /**
+     * Every pair of files 1 to count, in order
+     */
+    private static IPairWorkerSource<DetectorWorker> allPairs(int count) {
+        List<ModelDataItem[]> pairs = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            for (int j = i + 1; j <= count; j++) {
+                pairs.add(new ModelDataItem[] {new ModelDataItem(new TestSourceFile(i, "")), new ModelDataItem(new TestSourceFile(j, ""))});
+            }
+        }
+
+        return new IPairWorkerSource<>() {
+            @Override
+            public int size() {
+                return pairs.size();
+            }
+
+            @Override
+            public DetectorWorker create(int index) {
+                return null;
+            }
+
+            @Override
+            public ModelDataItem getFile1Data(int index) {
+                return pairs.get(index)[0];
+            }
+
+            @Override
+            public ModelDataItem getFile2Data(int index) {
+                return pairs.get(index)[1];
+            }
+        };
+    }
+
+    @Test
+    void reusesOnlyPairsOfPreviousFiles() {
+        // files 1 to 3 were in the previous job, which found something for 1-3 only, 4 is new
+        IPairWorkerSource<DetectorWorker> workers = allPairs(4);
+        PairResult found = new PairResult(3, 1);
+        Map<Integer, AbstractModelTaskRawResult> reused = PairResultReuse.match(workers, new long[] {3, 1, 2}, List.of(found));
+
+        // pairs are 1-2, 1-3, 1-4, 2-3, 2-4, 3-4
+        assertEquals(Set.of(0, 1, 3), reused.keySet());
+        assertNull(reused.get(0));
+        assertSame(found, reused.get(1));
+        assertNull(reused.get(3));
+    }
+
+    @Test
+    void reusesNothingForResultsWithoutPairs() {
+        AbstractModelTaskRawResult unknown = new AbstractModelTaskRawResult() {
+            @Override
+            public boolean isEmpty() {
+                return false;
+            }
+
+            @Override
+            public boolean testType(AbstractModelTaskRawResult baseline) {
+                return true;
+            }
+        };
+
+        assertTrue(PairResultReuse.match(allPairs(3), new long[] {1, 2, 3}, List.of(unknown)).isEmpty());
+        assertEquals(3, PairResultReuse.match(allPairs(3), new long[] {1, 2, 3}, null).size());
+    }
+
+    @Test
+    void reusesOnlyTasksWhichComparedTheSamePairs() {
+        // a task which compared every pair can be reused whatever the floor, a pruned task only with the same floor
+        assertTrue(PairResultReuse.comparedSamePairs(0, 0));
+        assertTrue(PairResultReuse.comparedSamePairs(0, 3));
+        assertTrue(PairResultReuse.comparedSamePairs(3, 3));
+        assertFalse(PairResultReuse.comparedSamePairs(3, 0));
+        assertFalse(PairResultReuse.comparedSamePairs(3, 5));
+        assertFalse(PairResultReuse.comparedSamePairs(-1, 0));
+    }
+
+    private static class PairResult extends AbstractModelTaskRawResult implements IPairRawResult {
+
+        private final long file1;
+        private final long file2;
+
+        PairResult(long file1, long file2) {
+            this.file1 = file1;
+            this.file2 = file2;
+        }
+
+        @Override
+        public long getFile1Id() {
+            return this.file1;
+        }
+
+        @Override
+        public long getFile2Id() {
+            return this.file2;
+        }
+
+        @Override
+        public PairResult withFiles(ISourceFile file1, ISourceFile file2) {
+            return new PairResult(file1.getPersistentId(), file2.getPersistentId());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public boolean testType(AbstractModelTaskRawResult baseline) {
+            return baseline instanceof PairResult;
+        }
+    }
+}
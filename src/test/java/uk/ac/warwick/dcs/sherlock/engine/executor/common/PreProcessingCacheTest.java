@@ -0,0 +1,73 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
+import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.CommentExtractor;
+import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.CommentRemover;
+import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.StandardTokeniser;
+import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.TrimWhitespaceOnly;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreProcessingCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static final byte[] STRATEGY = PreProcessingCache.hashStrategy(Object.class, List.of(CommentRemover.class, TrimWhitespaceOnly.class), null, false);
+
+    @Test
+    void strategiesWithDifferentChainsHaveDifferentKeys() {
+        assertArrayEquals(STRATEGY, PreProcessingCache.hashStrategy(Object.class, List.of(CommentRemover.class, TrimWhitespaceOnly.class), null, false));
+        assertFalse(Arrays.equals(STRATEGY, PreProcessingCache.hashStrategy(Object.class, List.of(TrimWhitespaceOnly.class, CommentRemover.class), null, false)));
+        assertFalse(Arrays.equals(STRATEGY, PreProcessingCache.hashStrategy(Object.class, List.of(CommentExtractor.class), null, false)));
+        assertFalse(Arrays.equals(STRATEGY, PreProcessingCache.hashStrategy(Object.class, List.of(CommentRemover.class, TrimWhitespaceOnly.class), null, true)));
+        assertFalse(Arrays.equals(STRATEGY, PreProcessingCache.hashStrategy(Object.class, List.of(CommentRemover.class, TrimWhitespaceOnly.class), StandardTokeniser.class, false)));
+
+        assertEquals(PreProcessingCache.key("abc", "Java", STRATEGY).name(), PreProcessingCache.key("abc", "Java", STRATEGY.clone()).name());
+        assertNotEquals(PreProcessingCache.key("abc", "Java", STRATEGY).name(), PreProcessingCache.key("abd", "Java", STRATEGY).name());
+        assertNotEquals(PreProcessingCache.key("abc", "Java", STRATEGY).name(), PreProcessingCache.key("abc", "Python", STRATEGY).name());
+    }
+
+    @Test
+    void storesLinesEncrypted() throws IOException {
+        PreProcessingCache cache = new PreProcessingCache(this.dir, 1024 * 1024, true);
+        PreProcessingCache.Key key = PreProcessingCache.key("abc", "Java", STRATEGY);
+        assertNull(cache.get(key));
+
+        List<IndexedString> lines = List.of(IndexedString.of(1, "int x = 0;"), IndexedString.of(3, "// caf\u00e9 \uD83D\uDE00"), IndexedString.of(4, ""));
+        assertTrue(cache.put(key, LineStore.of(lines)));
+        assertTrue(cache.put(PreProcessingCache.key("abd", "Java", STRATEGY), LineStore.empty()));
+
+        LineStore cached = cache.get(key);
+        assertNotNull(cached);
+        assertEquals(toStrings(lines), toStrings(cached.asList()));
+        assertTrue(cache.get(PreProcessingCache.key("abd", "Java", STRATEGY)).isEmpty());
+
+        // a key with the same name and a different secret cannot read the lines
+        assertNull(cache.get(new PreProcessingCache.Key(key.name(), new byte[32])));
+
+        assertEquals(2, cache.getStats().getHits());
+        assertEquals(2, cache.getStats().getMisses());
+        assertEquals(1, cache.getStats().getEntryCount());
+
+        // the lines are picked up again by the next session
+        assertEquals(1, new PreProcessingCache(this.dir, 1024 * 1024, true).getStats().getEntryCount());
+    }
+
+    private static List<String> toStrings(List<IndexedString> lines) {
+        List<String> res = new ArrayList<>();
+        for (IndexedString line : lines) {
+            res.add(line.getKey() + ":" + line.getValue());
+        }
+        return res;
+    }
+}
@@ -0,0 +1,137 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.executor.ExecutorStats;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriorityWorkSchedulerTest {
+
+    @Test
+    void higherLeavesTakePermitsBeforeQueuedLowerLeaves() throws InterruptedException {
+        PriorityWorkScheduler scheduler = new PriorityWorkScheduler(2, false, "Test-Worker", 1);
+        try {
+            List<Priority> order = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch holding = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+
+            // the first two low leaves hold every permit until released, the other four queue behind them
+            PriorityWorkTask low = new PriorityWorkTask(new Leaves(6, Priority.LOW, order, null, () -> {
+                holding.countDown();
+                await(release);
+            }), Priority.LOW);
+            PriorityWorkTask lowQueued = new PriorityWorkTask(new Leaves(1, Priority.LOW, order, null, () -> {
+            }), Priority.LOW);
+            scheduler.scheduleJob(low);
+            scheduler.scheduleJob(lowQueued);
+            assertTrue(holding.await(10, TimeUnit.SECONDS));
+
+            // the high leaves keep their permits until both have one, so the order is not changed by a leaf being descheduled before it records itself
+            List<Thread> highThreads = new CopyOnWriteArrayList<>();
+            CountDownLatch highHolding = new CountDownLatch(2);
+            PriorityWorkTask high = new PriorityWorkTask(new Leaves(2, Priority.HIGH, order, highThreads, () -> {
+                highHolding.countDown();
+                await(highHolding);
+            }), Priority.HIGH);
+            scheduler.scheduleJob(high);
+            awaitWaiting(highThreads, 2);
+
+            Thread.sleep(200); // the queued low action waits at least this long for the level's slot
+            release.countDown();
+            join(low);
+            join(high);
+            join(lowQueued);
+
+            assertEquals(List.of(Priority.LOW, Priority.LOW, Priority.HIGH, Priority.HIGH, Priority.LOW, Priority.LOW, Priority.LOW, Priority.LOW, Priority.LOW), order);
+
+            ExecutorStats stats = scheduler.getStats();
+            assertEquals(2, stats.getParallelism());
+            assertEquals(List.of("HIGH", "MEDIUM", "LOW", "DEFAULT"), new ArrayList<>(stats.getLevelPoolSizes().keySet()));
+            assertTrue(stats.getLevelPoolSizes().values().stream().allMatch(x -> x <= 2));
+            assertEquals(0, stats.getLevelPoolSizes().get("MEDIUM"));
+            assertEquals(stats.getLevelPoolSizes().values().stream().mapToInt(Integer::intValue).sum(), stats.getPoolSize());
+            assertEquals(List.of("HIGH", "MEDIUM", "LOW", "DEFAULT"), new ArrayList<>(stats.getMaxQueueLatency().keySet()));
+            assertTrue(stats.getMaxQueueLatency().get("LOW").compareTo(Duration.ofMillis(200)) >= 0);
+            assertTrue(stats.getMeanQueueLatency().get("LOW").compareTo(Duration.ofMillis(100)) >= 0);
+            assertTrue(stats.getMaxQueueLatency().get("HIGH").compareTo(Duration.ofMillis(200)) < 0);
+            assertEquals(Duration.ZERO, stats.getMeanQueueLatency().get("MEDIUM"));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until the given number of leaves are blocked waiting for a permit
+     */
+    private static void awaitWaiting(List<Thread> threads, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (threads.size() < count || threads.stream().anyMatch(t -> t.getState() != Thread.State.WAITING)) {
+            assertTrue(System.nanoTime() < deadline, "leaves did not wait for a permit");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void join(PriorityWorkTask task) throws InterruptedException {
+        synchronized (task) {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!task.isDone()) {
+                assertTrue(System.currentTimeMillis() < deadline, "work did not finish");
+                task.wait(100);
+            }
+        }
+    }
+
+    /**
+     * Forks a number of leaves, each records its priority once it holds a permit then does its work
+     */
+    private static class Leaves extends RecursiveAction {
+
+        private final int count;
+        private final Priority priority;
+        private final List<Priority> order;
+        private final List<Thread> threads;
+        private final Runnable work;
+
+        Leaves(int count, Priority priority, List<Priority> order, List<Thread> threads, Runnable work) {
+            this.count = count;
+            this.priority = priority;
+            this.order = order;
+            this.threads = threads;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.count > 1) {
+                invokeAll(new Leaves(this.count / 2, this.priority, this.order, this.threads, this.work),
+                        new Leaves(this.count - this.count / 2, this.priority, this.order, this.threads, this.work));
+                return;
+            }
+
+            if (this.threads != null) {
+                this.threads.add(Thread.currentThread());
+            }
+            try (PriorityWorkScheduler.LeafPermit permit = PriorityWorkScheduler.enterLeaf()) {
+                this.order.add(this.priority);
+                this.work.run();
+            }
+        }
+    }
+}
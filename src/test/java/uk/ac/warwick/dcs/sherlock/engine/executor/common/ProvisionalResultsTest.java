@@ -0,0 +1,326 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.common;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.annotation.AdjustableParameterObj;
+import uk.ac.warwick.dcs.sherlock.api.component.*;
+import uk.ac.warwick.dcs.sherlock.api.executor.ProvisionalMatch;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectionType;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.IPostProcessor;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.ModelTaskProcessedResults;
+import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
+import uk.ac.warwick.dcs.sherlock.api.util.ITuple;
+import uk.ac.warwick.dcs.sherlock.api.util.Side;
+import uk.ac.warwick.dcs.sherlock.api.util.Tuple;
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSourceFile;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSubmission;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProvisionalResultsTest {
+
+    private static final List<Integer> batches = new CopyOnWriteArrayList<>();
+
+    // files 1 and 4 are four lines long and in the same submission, files 2 and 3 are two lines long
+    private final ISourceFile file1 = new TestSourceFile(1, "a\nb\nc\nd");
+    private final ISourceFile file2 = new TestSourceFile(2, "a\nb");
+    private final ISourceFile file3 = new TestSourceFile(3, "c\nd");
+    private final ISourceFile file4 = new TestSourceFile(4, "a\nb\nc\nd") {
+        @Override
+        public ISubmission getSubmission() {
+            return new TestSubmission(ProvisionalResultsTest.this.file1);
+        }
+    };
+    private final Task task = new Task();
+
+    @BeforeEach
+    void setUp() {
+        new SherlockEngine(Side.CLIENT);
+        SherlockRegistry.registerPostProcessor(MatchPostProcessor.class, Match.class);
+        batches.clear();
+    }
+
+    @Test
+    void processesFullBatches() {
+        ProvisionalResults results = new ProvisionalResults(List.of(this.file1, this.file2, this.file3), 2);
+
+        results.addAll(this.task, List.of(new Match(this.file1, this.file2, 1, 1)));
+        assertTrue(results.getTopMatches(10).isEmpty());
+
+        // null and empty results do not count towards a batch
+        results.addAll(this.task, Arrays.asList(null, new Match(this.file1, this.file3, 0, 0)));
+        assertTrue(results.getTopMatches(10).isEmpty());
+
+        results.addAll(this.task, List.of(new Match(this.file1, this.file3, 4, 2)));
+        assertEquals(List.of(2), batches);
+        assertEquals(List.of("1-2 100", "1-3 50"), matches(results.getTopMatches(10)));
+        assertEquals(List.of("1-2 100"), matches(results.getTopMatches(1)));
+    }
+
+    @Test
+    void flushesWaitingResults() {
+        ProvisionalResults results = new ProvisionalResults(List.of(this.file1, this.file2, this.file3), 10);
+        Task other = new Task();
+
+        results.addAll(this.task, List.of(new Match(this.file2, this.file3, 2, 2)));
+        results.addAll(other, List.of(new Match(this.file1, this.file2, 1, 1)));
+        assertTrue(results.getTopMatches(10).isEmpty());
+
+        results.flush(this.task);
+        assertEquals(List.of(1), batches);
+        assertEquals(List.of("2-3 50"), matches(results.getTopMatches(10)));
+
+        // nothing is left for the task, the other task's results are still waiting
+        results.flush(this.task);
+        assertEquals(List.of(1), batches);
+        results.flush(other);
+        assertEquals(List.of(1, 1), batches);
+        assertEquals(List.of("1-2 100", "2-3 50"), matches(results.getTopMatches(10)));
+    }
+
+    @Test
+    void keepsBestScoreOfSubmissionPair() {
+        ProvisionalResults results = new ProvisionalResults(List.of(this.file1, this.file2, this.file3, this.file4), 1);
+
+        // a quarter of file 1 and half of file 3, the pair takes the larger share
+        results.addAll(this.task, List.of(new Match(this.file1, this.file3, 4, 2)));
+        assertEquals(List.of("1-3 50"), matches(results.getTopMatches(10)));
+
+        // file 4 is in file 1's submission, so scores the same submission pair
+        results.addAll(this.task, List.of(new Match(this.file4, this.file3, 1, 1)));
+        assertEquals(List.of("1-3 100"), matches(results.getTopMatches(10)));
+
+        results.addAll(this.task, List.of(new Match(this.file3, this.file1, 2, 4)));
+        assertEquals(List.of("1-3 100"), matches(results.getTopMatches(10)));
+    }
+
+    @Test
+    void ignoresPairsInSameSubmission() {
+        ProvisionalResults results = new ProvisionalResults(List.of(this.file1, this.file2, this.file4), 1);
+
+        results.addAll(this.task, List.of(new Match(this.file1, this.file4, 1, 4)));
+        assertTrue(results.getTopMatches(10).isEmpty());
+
+        results.addAll(this.task, List.of(new Match(this.file4, this.file2, 1, 1)));
+        assertEquals(List.of("1-2 100"), matches(results.getTopMatches(10)));
+    }
+
+    private static List<String> matches(List<ProvisionalMatch> matches) {
+        return matches.stream().map(x -> x.getSubmission1Id() + "-" + x.getSubmission2Id() + " " + x.getScorePercent()).toList();
+    }
+
+    /**
+     * Raw result of a pair of files sharing a block of lines, the block starts on the given line of each file and covers the rest of the shorter file
+     */
+    public static class Match extends AbstractModelTaskRawResult {
+
+        private final ISourceFile file1;
+        private final ISourceFile file2;
+        private final int start1;
+        private final int start2;
+
+        Match(ISourceFile file1, ISourceFile file2, int start1, int start2) {
+            this.file1 = file1;
+            this.file2 = file2;
+            this.start1 = start1;
+            this.start2 = start2;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.start1 == 0;
+        }
+
+        @Override
+        public boolean testType(AbstractModelTaskRawResult baseline) {
+            return baseline instanceof Match;
+        }
+    }
+
+    /**
+     * Groups each match's block, noting the size of each batch it is given
+     */
+    public static class MatchPostProcessor implements IPostProcessor<Match> {
+
+        @Override
+        public ModelTaskProcessedResults processResults(List<ISourceFile> files, List<Match> rawResults) {
+            batches.add(rawResults.size());
+
+            List<ICodeBlockGroup> groups = new ArrayList<>();
+            for (Match match : rawResults) {
+                int length = Math.min(match.file1.getTotalLineCount() - match.start1, match.file2.getTotalLineCount() - match.start2) + 1;
+                Group group = new Group();
+                group.addCodeBlock(match.file1, 1, new Tuple<>(match.start1, match.start1 + length - 1));
+                group.addCodeBlock(match.file2, 1, new Tuple<>(match.start2, match.start2 + length - 1));
+                groups.add(group);
+            }
+
+            return new ModelTaskProcessedResults() {
+                @Override
+                public List<ICodeBlockGroup> getGroups() {
+                    return groups;
+                }
+            };
+        }
+    }
+
+    private record Block(ISourceFile file, float score, List<ITuple<Integer, Integer>> lines) implements ICodeBlock {
+
+        @Override
+        public float getBlockScore() {
+            return this.score;
+        }
+
+        @Override
+        public ISourceFile getFile() {
+            return this.file;
+        }
+
+        @Override
+        public List<ITuple<Integer, Integer>> getLineNumbers() {
+            return this.lines;
+        }
+    }
+
+    private static class Group implements ICodeBlockGroup {
+
+        private final List<Block> blocks = new ArrayList<>();
+
+        @Override
+        public void addCodeBlock(ISourceFile file, float score, ITuple<Integer, Integer> line) {
+            this.addCodeBlock(file, score, List.of(line));
+        }
+
+        @Override
+        public void addCodeBlock(ISourceFile file, float score, List<ITuple<Integer, Integer>> lines) {
+            this.blocks.add(new Block(file, score, lines));
+        }
+
+        @Override
+        public boolean filePresent(ISourceFile file) {
+            return this.getCodeBlock(file) != null;
+        }
+
+        @Override
+        public boolean submissionIdPresent(long submissionId) {
+            return false;
+        }
+
+        @Override
+        public ICodeBlock getCodeBlock(ISourceFile file) {
+            return this.blocks.stream().filter(b -> b.file == file).findFirst().orElse(null);
+        }
+
+        @Override
+        public List<? extends ICodeBlock> getCodeBlocks() {
+            return this.blocks;
+        }
+
+        @Override
+        public String getComment() {
+            return null;
+        }
+
+        @Override
+        public void setComment(String comment) {
+        }
+
+        @Override
+        public DetectionType getDetectionType() {
+            return null;
+        }
+
+        @Override
+        public void setDetectionType(String detectionType) {
+        }
+
+        @Override
+        public boolean isPopulated() {
+            return this.blocks.size() > 1;
+        }
+    }
+
+    private static class Task implements ITask {
+
+        @Override
+        public void addCheckpoint(String checkpointKey, int[] workerIndexes, List<AbstractModelTaskRawResult> rawResults) {
+        }
+
+        @Override
+        public void clearCheckpoint() {
+        }
+
+        @Override
+        public Map<Integer, AbstractModelTaskRawResult> getCheckpoint(String checkpointKey) {
+            return new HashMap<>();
+        }
+
+        @Override
+        public int getCandidateFloor() {
+            return 0;
+        }
+
+        @Override
+        public void setCandidateFloor(int candidateFloor) {
+        }
+
+        @Override
+        public Class<? extends IDetector> getDetector() {
+            return null;
+        }
+
+        @Override
+        public IJob getJob() {
+            return null;
+        }
+
+        @Override
+        public Map<String, Float> getParameterMapping() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public long getPersistentId() {
+            return 0;
+        }
+
+        @Override
+        public List<AbstractModelTaskRawResult> getRawResults() {
+            return null;
+        }
+
+        @Override
+        public void setRawResults(List<AbstractModelTaskRawResult> rawResults) {
+        }
+
+        @Override
+        public WorkStatus getStatus() {
+            return WorkStatus.ACTIVE;
+        }
+
+        @Override
+        public boolean hasResults() {
+            return false;
+        }
+
+        @Override
+        public boolean resetParameter(AdjustableParameterObj paramObj) {
+            return false;
+        }
+
+        @Override
+        public void setComplete() {
+        }
+
+        @Override
+        public boolean setParameter(AdjustableParameterObj paramObj, float value) {
+            return false;
+        }
+    }
+}
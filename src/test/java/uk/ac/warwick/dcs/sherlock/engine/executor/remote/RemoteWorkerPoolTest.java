@@ -0,0 +1,186 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.remote;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IPairWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.PairwiseDetectorWorker;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.PreProcessingStrategy;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.engine.executor.JobStatus;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.Priority;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSourceFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemoteWorkerPoolTest {
+
+    private static final String STRATEGY = "lines";
+
+    private RemoteWorkerPool pool;
+    private List<ModelDataItem> items;
+    private PairSource source;
+
+    /**
+     * Marker file which makes the worker process running pair 0 exit, the processes look for it next to their parent's pid
+     */
+    private static Path crashMarker(long pid) {
+        return Path.of(System.getProperty("java.io.tmpdir"), "sherlock-remote-crash-" + pid);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.pool = new RemoteWorkerPool(2, 64, "");
+        this.items = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            List<IndexedString> lines = new ArrayList<>();
+            for (int l = 0; l < 10; l++) {
+                lines.add(IndexedString.of(l + 1, "line " + (l % (i + 2))));
+            }
+
+            ModelDataItem item = new ModelDataItem(new TestSourceFile(i + 1, ""));
+            item.addPreProcessedLines(STRATEGY, lines);
+            this.items.add(item);
+        }
+        this.source = new PairSource(this.items);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        this.pool.close();
+        Files.deleteIfExists(crashMarker(ProcessHandle.current().pid()));
+    }
+
+    private List<AbstractModelTaskRawResult> run() throws IOException {
+        return this.pool.run(new JobStatus(0, Priority.DEFAULT), null, null, Collections.emptyMap(), this.source, SharedLineDetector.class, List.of(STRATEGY), Collections.emptyMap());
+    }
+
+    private void assertMatchesLocal(List<AbstractModelTaskRawResult> results) {
+        assertEquals(this.source.size(), results.size());
+        for (int i = 0; i < this.source.size(); i++) {
+            SharedLineDetector.Worker local = this.source.create(i);
+            local.execute();
+
+            SharedLineResult remote = (SharedLineResult) results.get(i);
+            assertEquals(local.getRawResult().shared, remote.shared);
+            assertSame(this.source.getFile1Data(i).getFile(), remote.file1);
+        }
+    }
+
+    @Test
+    void runsPairsInWorkerProcesses() throws IOException {
+        assertMatchesLocal(this.run());
+        assertEquals(2, this.pool.getConnectionCount());
+
+        // the processes are reused, and drop the first run's files, for the next run
+        assertMatchesLocal(this.run());
+    }
+
+    @Test
+    void reassignsPartitionOfFailedProcess() throws IOException {
+        Files.createFile(crashMarker(ProcessHandle.current().pid()));
+
+        assertMatchesLocal(this.run());
+        assertFalse(Files.exists(crashMarker(ProcessHandle.current().pid())));
+        assertEquals(2, this.pool.getConnectionCount());
+    }
+
+    public static class SharedLineDetector extends PairwiseDetector<SharedLineDetector.Worker> {
+
+        public SharedLineDetector() {
+            super("Shared Lines", Worker.class, PreProcessingStrategy.of(STRATEGY));
+        }
+
+        public static class Worker extends PairwiseDetectorWorker<SharedLineResult> {
+
+            public Worker(IDetector parent, ModelDataItem file1Data, ModelDataItem file2Data) {
+                super(parent, file1Data, file2Data);
+            }
+
+            @Override
+            public void execute() {
+                ProcessHandle parent = ProcessHandle.current().parent().orElse(null);
+                try {
+                    if (parent != null && this.file1.getFile().getPersistentId() == 1 && this.file2.getFile().getPersistentId() == 2
+                            && Files.deleteIfExists(crashMarker(parent.pid()))) {
+                        Runtime.getRuntime().halt(1);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+
+                Set<String> lines1 = new HashSet<>();
+                this.file1.getPreProcessedLines(STRATEGY).forEach(x -> lines1.add(x.getValue()));
+                this.result = new SharedLineResult(this.file1.getFile(), (int) this.file2.getPreProcessedLines(STRATEGY).stream().filter(x -> lines1.contains(x.getValue())).count());
+            }
+        }
+    }
+
+    public static class SharedLineResult extends AbstractModelTaskRawResult {
+
+        final ISourceFile file1;
+        final int shared;
+
+        SharedLineResult(ISourceFile file1, int shared) {
+            this.file1 = file1;
+            this.shared = shared;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public boolean testType(AbstractModelTaskRawResult baseline) {
+            return baseline instanceof SharedLineResult;
+        }
+    }
+
+    /**
+     * Every pair of the items, in order
+     */
+    private static class PairSource implements IPairWorkerSource<SharedLineDetector.Worker> {
+
+        private final SharedLineDetector detector = new SharedLineDetector();
+        private final List<ModelDataItem[]> pairs = new ArrayList<>();
+
+        PairSource(List<ModelDataItem> items) {
+            for (int i = 0; i < items.size(); i++) {
+                for (int j = i + 1; j < items.size(); j++) {
+                    this.pairs.add(new ModelDataItem[] {items.get(i), items.get(j)});
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return this.pairs.size();
+        }
+
+        @Override
+        public SharedLineDetector.Worker create(int index) {
+            return this.detector.getAbstractPairwiseDetectorWorker(this.getFile1Data(index), this.getFile2Data(index));
+        }
+
+        @Override
+        public ModelDataItem getFile1Data(int index) {
+            return this.pairs.get(index)[0];
+        }
+
+        @Override
+        public ModelDataItem getFile2Data(int index) {
+            return this.pairs.get(index)[1];
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.work;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.annotation.AdjustableParameterObj;
+import uk.ac.warwick.dcs.sherlock.api.component.IJob;
+import uk.ac.warwick.dcs.sherlock.api.component.ITask;
+import uk.ac.warwick.dcs.sherlock.api.component.WorkStatus;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectorWorker;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IWorkerSource;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.engine.Configuration;
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
+import uk.ac.warwick.dcs.sherlock.engine.executor.JobStatus;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.Priority;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkDetectTest {
+
+    @Test
+    void planChunksBalancesCostLongestFirst() {
+        long[] costs = {1, 10, 1, 1, 7, 3, 1, 1, 1};
+        int[][] chunks = WorkDetect.planChunks(costs, 2);
+
+        assertEquals(2, chunks.length);
+        assertEquals(1, chunks[0][0]); // most expensive worker starts first
+        assertEquals(4, chunks[1][0]);
+
+        long[] load = Arrays.stream(chunks).mapToLong(c -> Arrays.stream(c).mapToLong(i -> costs[i]).sum()).toArray();
+        assertEquals(13, load[0]);
+        assertEquals(13, load[1]);
+
+        for (int[] chunk : chunks) {
+            for (int i = 1; i < chunk.length; i++) {
+                assertTrue(costs[chunk[i - 1]] >= costs[chunk[i]]);
+            }
+        }
+    }
+
+    @Test
+    void planChunksCoversEveryWorkerOnce() {
+        long[] costs = {5, 0, 2, 2};
+        int[][] chunks = WorkDetect.planChunks(costs, 16);
+
+        assertEquals(4, chunks.length);
+        assertArrayEquals(new int[] {0, 1, 2, 3}, Arrays.stream(chunks).flatMapToInt(Arrays::stream).sorted().toArray());
+        assertEquals(0, WorkDetect.planChunks(new long[0], 4).length);
+    }
+
+    @Test
+    void resumedRunMatchesCleanRun() {
+        if (SherlockEngine.configuration == null) {
+            SherlockEngine.configuration = new Configuration();
+        }
+        int interval = SherlockEngine.configuration.getCheckpointInterval();
+        SherlockEngine.configuration.setCheckpointInterval(1);
+
+        try {
+            List<Integer> clean = values(run(new JobStatus(0, Priority.DEFAULT), new Workers(40, -1), null, null));
+
+            // the job is cancelled part way through the run, as it is when the engine shuts down
+            JobStatus interrupted = new JobStatus(1, Priority.DEFAULT);
+            CheckpointTask task = new CheckpointTask();
+            Workers first = new Workers(40, 20);
+            first.status = interrupted;
+            run(interrupted, first, task, "key");
+            assertTrue(interrupted.isCancelled());
+            assertFalse(task.getCheckpoint("key").isEmpty());
+            assertTrue(task.getCheckpoint("key").size() < 40);
+
+            // only the workers missing from the checkpoint are run again
+            Set<Integer> saved = task.getCheckpoint("key").keySet();
+            Workers resumed = new Workers(40, -1);
+            assertEquals(clean, values(run(new JobStatus(2, Priority.DEFAULT), resumed, task, "key")));
+            assertEquals(IntStream.range(0, 40).filter(i -> !saved.contains(i) && i % 7 != 3).count(), resumed.executed.get());
+
+            // a checkpoint stored for other workers is not reused
+            Workers changed = new Workers(40, -1);
+            assertEquals(clean, values(run(new JobStatus(3, Priority.DEFAULT), changed, task, "other")));
+            assertEquals(IntStream.range(0, 40).filter(i -> i % 7 != 3).count(), changed.executed.get());
+        } finally {
+            SherlockEngine.configuration.setCheckpointInterval(interval);
+        }
+    }
+
+    @Test
+    void completedWorkersAreNotRunOrCheckpointed() {
+        List<Integer> clean = values(run(new JobStatus(0, Priority.DEFAULT), new Workers(10, -1), null, null));
+
+        Map<Integer, AbstractModelTaskRawResult> completed = new HashMap<>();
+        completed.put(0, new ValueResult(0));
+        completed.put(4, new ValueResult(4 * 31 % 17));
+        completed.put(3, null);
+
+        CheckpointTask task = new CheckpointTask();
+        Workers workers = new Workers(10, -1);
+        assertEquals(clean, values(run(new JobStatus(1, Priority.DEFAULT), workers, task, "key", completed)));
+        assertEquals(7, workers.executed.get());
+        assertEquals(Set.of(1, 2, 5, 6, 7, 8, 9), task.getCheckpoint("key").keySet());
+    }
+
+    private static List<AbstractModelTaskRawResult> run(JobStatus status, IWorkerSource<?> workers, ITask task, String key) {
+        return run(status, workers, task, key, Collections.emptyMap());
+    }
+
+    private static List<AbstractModelTaskRawResult> run(JobStatus status, IWorkerSource<?> workers, ITask task, String key, Map<Integer, AbstractModelTaskRawResult> completed) {
+        WorkDetect detect = new WorkDetect(status, workers, task, key, completed);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            return pool.invoke(detect);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<Integer> values(List<AbstractModelTaskRawResult> results) {
+        return results.stream().map(x -> x == null ? null : ((ValueResult) x).value).collect(Collectors.toList());
+    }
+
+    /**
+     * Result holding a single value
+     */
+    private static class ValueResult extends AbstractModelTaskRawResult {
+
+        final int value;
+
+        ValueResult(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public boolean testType(AbstractModelTaskRawResult baseline) {
+            return baseline instanceof ValueResult;
+        }
+    }
+
+    /**
+     * Workers whose result is derived from their index, the worker at cancelAt cancels the job once it has run
+     */
+    private static class Workers implements IWorkerSource<DetectorWorker<ValueResult>> {
+
+        final int size;
+        final int cancelAt;
+        final AtomicInteger executed = new AtomicInteger();
+        JobStatus status;
+
+        Workers(int size, int cancelAt) {
+            this.size = size;
+            this.cancelAt = cancelAt;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public DetectorWorker<ValueResult> create(int index) {
+            // every seventh worker gives no result, as a worker which could not be built
+            if (index % 7 == 3) {
+                return null;
+            }
+
+            return new DetectorWorker<>((IDetector) null) {
+                private ValueResult result;
+
+                @Override
+                public void execute() {
+                    executed.incrementAndGet();
+                    this.result = new ValueResult(index * 31 % 17);
+                    if (index == cancelAt) {
+                        status.cancelJob();
+                    }
+                }
+
+                @Override
+                public ValueResult getRawResult() {
+                    return this.result;
+                }
+            };
+        }
+    }
+
+    /**
+     * Task which keeps its checkpoint in memory, under the key it was stored with
+     */
+    private static class CheckpointTask implements ITask {
+
+        private final Map<Integer, AbstractModelTaskRawResult> checkpoint = new HashMap<>();
+        private String checkpointKey;
+
+        @Override
+        public synchronized void addCheckpoint(String checkpointKey, int[] workerIndexes, List<AbstractModelTaskRawResult> rawResults) {
+            if (!checkpointKey.equals(this.checkpointKey)) {
+                this.clearCheckpoint();
+                this.checkpointKey = checkpointKey;
+            }
+
+            for (int i = 0; i < workerIndexes.length; i++) {
+                this.checkpoint.put(workerIndexes[i], rawResults.get(i));
+            }
+        }
+
+        @Override
+        public synchronized void clearCheckpoint() {
+            this.checkpoint.clear();
+            this.checkpointKey = null;
+        }
+
+        @Override
+        public synchronized Map<Integer, AbstractModelTaskRawResult> getCheckpoint(String checkpointKey) {
+            return checkpointKey.equals(this.checkpointKey) ? new HashMap<>(this.checkpoint) : new HashMap<>();
+        }
+
+        @Override
+        public int getCandidateFloor() {
+            return 0;
+        }
+
+        @Override
+        public void setCandidateFloor(int candidateFloor) {
+        }
+
+        @Override
+        public Class<? extends IDetector> getDetector() {
+            return null;
+        }
+
+        @Override
+        public IJob getJob() {
+            return null;
+        }
+
+        @Override
+        public Map<String, Float> getParameterMapping() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public long getPersistentId() {
+            return 0;
+        }
+
+        @Override
+        public List<AbstractModelTaskRawResult> getRawResults() {
+            return null;
+        }
+
+        @Override
+        public void setRawResults(List<AbstractModelTaskRawResult> rawResults) {
+        }
+
+        @Override
+        public WorkStatus getStatus() {
+            return WorkStatus.ACTIVE;
+        }
+
+        @Override
+        public boolean hasResults() {
+            return false;
+        }
+
+        @Override
+        public boolean resetParameter(AdjustableParameterObj paramObj) {
+            return false;
+        }
+
+        @Override
+        public void setComplete() {
+        }
+
+        @Override
+        public boolean setParameter(AdjustableParameterObj paramObj, float value) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.work;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.*;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.PreProcessingStrategy.GenericGeneralPreProcessingStrategy;
+import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
+import uk.ac.warwick.dcs.sherlock.api.util.ITuple;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.api.util.Side;
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
+import uk.ac.warwick.dcs.sherlock.engine.executor.JobStatus;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.Priority;
+import uk.ac.warwick.dcs.sherlock.module.model.base.lang.JavaLexer;
+import uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing.*;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSourceFile;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkPreProcessFileTest {
+
+    private static final String SOURCE = "package test;\n\n/**\n * Sums values\n */\npublic class Sum {\n    private int total = 0; // running total\n\n    public int add(int[] values) {\n"
+            + "        /* every value */\n        for (int i = 0; i < values.length; i++) {\n            total  +=  values[i];\n        }\n        String  message = \"total: \" + total;\n"
+            + "        System.out.println(message);\n        return total;\n    }\n}\n";
+
+    @BeforeEach
+    void setUp() {
+        new SherlockEngine(Side.CLIENT);
+        SherlockRegistry.registerLanguage("Java", JavaLexer.class);
+        SherlockRegistry.registerGeneralPreProcessor(TrimWhitespaceOnly.class);
+        SherlockRegistry.registerGeneralPreProcessor(CommentExtractor.class);
+        SherlockRegistry.registerGeneralPreProcessor(CommentRemover.class);
+        SherlockRegistry.registerAdvancedPreProcessorGroup(VariableExtractor.class);
+        SherlockRegistry.registerAdvancedPreProcessorImplementation(VariableExtractor.class.getName(), VariableExtractorJava.class);
+    }
+
+    @Test
+    void overlappingStrategiesMatchLexingEachStrategy() {
+        Task first = new Task(PreProcessingStrategy.of("no_whitespace", TrimWhitespaceOnly.class), PreProcessingStrategy.of("comments", CommentExtractor.class),
+                PreProcessingStrategy.of("variables", VariableExtractor.class));
+        Task second = new Task(PreProcessingStrategy.of("trimmed", TrimWhitespaceOnly.class), PreProcessingStrategy.of("tokens", true, CommentRemover.class, TrimWhitespaceOnly.class),
+                PreProcessingStrategy.of("no_comments", CommentRemover.class, TrimWhitespaceOnly.class), PreProcessingStrategy.of("variables", VariableExtractor.class));
+
+        ISourceFile file = new TestSourceFile(1, SOURCE);
+        new WorkPreProcessFile(List.of(first, second), file, null).compute();
+
+        for (Task task : List.of(first, second)) {
+            assertEquals(1, task.items.size());
+            ModelDataItem item = task.items.getFirst();
+            for (PreProcessingStrategy strategy : task.strategies) {
+                List<IndexedString> expected = lexStrategy(strategy, SOURCE);
+                assertFalse(expected.isEmpty(), strategy.getName());
+                assertEquals(lines(expected), lines(item.getLineStore(strategy.getName()).asList()), strategy.getName());
+            }
+        }
+
+        // identical strategies are run once, whatever they are named
+        assertSame(first.items.getFirst().getLineStore("no_whitespace"), second.items.getFirst().getLineStore("trimmed"));
+        assertSame(first.items.getFirst().getLineStore("variables"), second.items.getFirst().getLineStore("variables"));
+        assertNotSame(second.items.getFirst().getLineStore("tokens"), second.items.getFirst().getLineStore("no_comments"));
+    }
+
+    private static List<String> lines(List<IndexedString> lines) {
+        List<String> res = new ArrayList<>();
+        for (IndexedString line : lines) {
+            res.add(line.getKey() + ":" + line.getValue());
+        }
+        return res;
+    }
+
+    /**
+     * Runs a strategy on its own, lexing the source for it, as each strategy of each task was before the lexed tokens were shared
+     */
+    @SuppressWarnings("unchecked")
+    private static List<IndexedString> lexStrategy(PreProcessingStrategy strategy, String source) {
+        try {
+            if (strategy.isAdvanced()) {
+                ITuple<Class<? extends IAdvancedPreProcessor>, Class<? extends Lexer>> t =
+                        SherlockRegistry.getAdvancedPostProcessorForLanguage((Class<? extends IAdvancedPreProcessorGroup>) strategy.getPreProcessorClasses().getFirst(), "Java");
+                Lexer lexer = t.getValue().getDeclaredConstructor(CharStream.class).newInstance(CharStreams.fromString(source));
+                return t.getKey().getConstructor().newInstance().process(lexer);
+            }
+
+            Lexer lexer = SherlockRegistry.getLexerForStrategy(strategy, "Java").getDeclaredConstructor(CharStream.class).newInstance(CharStreams.fromString(source));
+            List<? extends Token> tokens = new LinkedList<>(lexer.getAllTokens());
+            for (Class<? extends IPreProcessor> processorClass : strategy.getPreProcessorClasses()) {
+                tokens = ((IGeneralPreProcessor) processorClass.getConstructor().newInstance()).process(tokens, lexer.getVocabulary(), "Java");
+            }
+
+            ITokenStringifier stringifier = ((GenericGeneralPreProcessingStrategy) strategy).isResultTokenised() ? new StandardTokeniser() : new StandardStringifier();
+            return stringifier.processTokens(tokens, lexer.getVocabulary());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Task implements IWorkTask {
+
+        private final List<PreProcessingStrategy> strategies;
+        private final List<ModelDataItem> items = new ArrayList<>();
+        private final JobStatus status = new JobStatus(0, Priority.DEFAULT);
+
+        Task(PreProcessingStrategy... strategies) {
+            this.strategies = List.of(strategies);
+        }
+
+        @Override
+        public void addModelDataItem(ModelDataItem item) {
+            this.items.add(item);
+        }
+
+        @Override
+        public Class<? extends IDetector> getDetector() {
+            return null;
+        }
+
+        @Override
+        public String getLanguage() {
+            return "Java";
+        }
+
+        @Override
+        public List<PreProcessingStrategy> getPreProcessingStrategies() {
+            return this.strategies;
+        }
+
+        @Override
+        public JobStatus getJobStatus() {
+            return this.status;
+        }
+    }
+}
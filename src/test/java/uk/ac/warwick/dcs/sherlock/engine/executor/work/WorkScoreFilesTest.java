@@ -0,0 +1,507 @@
+package uk.ac.warwick.dcs.sherlock.engine.executor.work;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.annotation.AdjustableParameterObj;
+import uk.ac.warwick.dcs.sherlock.api.component.*;
+import uk.ac.warwick.dcs.sherlock.api.exception.UnknownDetectionTypeException;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.DetectionType;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.ModelTaskProcessedResults;
+import uk.ac.warwick.dcs.sherlock.api.util.ITuple;
+import uk.ac.warwick.dcs.sherlock.api.util.SparseScoreMatrix;
+import uk.ac.warwick.dcs.sherlock.api.util.Tuple;
+import uk.ac.warwick.dcs.sherlock.engine.executor.JobStatus;
+import uk.ac.warwick.dcs.sherlock.engine.executor.common.Priority;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSourceFile;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkScoreFilesTest {
+
+    private static final DetectionType[] TYPES =
+            {new DetectionType("A", "A", "", 1.0), new DetectionType("B", "B", "", 0.5), new DetectionType("C", "C", "", 2.0), new DetectionType("D", "D", "", 1.5)};
+
+    @Test
+    void matchesNestedLoopScorer() {
+        for (long seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            List<ISourceFile> files = files(random, 40);
+            List<ITuple<ITask, ModelTaskProcessedResults>> results = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                results.add(new Tuple<>(new Task(), results(random, files, t == 2)));
+            }
+
+            List<ResultFile> expected = files.stream().map(ResultFile::new).toList();
+            for (ResultFile fileRes : expected) {
+                scoreNested(fileRes, files, results);
+            }
+
+            List<ResultFile> actual = files.stream().map(ResultFile::new).collect(Collectors.toList());
+            WorkScoreFiles score = run(files, results, actual);
+
+            for (int f = 0; f < files.size(); f++) {
+                ResultFile exp = expected.get(f);
+                ResultFile act = actual.get(f);
+                assertEquals(exp.overallScore, act.overallScore, 1e-5, "overall score of file " + f);
+                assertScores(exp.fileScores, score.getOverallScores(), f, files);
+
+                for (int t = 0; t < results.size(); t++) {
+                    ResultTask expTask = exp.taskResults.get(t);
+                    ResultTask actTask = act.taskResults.get(t);
+                    assertSame(expTask.task, actTask.task);
+                    assertEquals(expTask.taskScore, actTask.taskScore, 1e-5, "task score of file " + f);
+                    assertEquals(expTask.containing, actTask.containing);
+                    assertScores(expTask.fileScores, score.getTaskScores().get(expTask.task), f, files);
+                }
+            }
+        }
+    }
+
+    @Test
+    void unknownDetectionTypeTakesUpFileWithoutScoring() {
+        List<ISourceFile> files = List.of(new TestSourceFile(1, "a\nb\nc\nd"), new TestSourceFile(2, "a\nb\nc\nd"));
+        ModelTaskProcessedResults result = new ModelTaskProcessedResults();
+        Group known = new Group(TYPES[0]).add(files.get(0), 1, 1, 4).add(files.get(1), 1, 1, 4);
+        Group unknown = new Group(null).add(files.get(0), 1, 1, 4).add(files.get(1), 1, 1, 2);
+        result.getGroups().add(known);
+        result.getGroups().add(unknown);
+
+        Task task = new Task();
+        List<ResultFile> fileResults = files.stream().map(ResultFile::new).collect(Collectors.toList());
+        WorkScoreFiles score = run(files, List.of(new Tuple<>(task, result)), fileResults);
+
+        // both groups cover all of file 1, so the known group's score is halved, file 2 is over covered by half
+        assertEquals(List.of(known, unknown), fileResults.get(0).taskResults.getFirst().containing);
+        assertEquals(0.5f, fileResults.get(0).taskResults.getFirst().taskScore, 1e-6);
+        assertEquals(0.5f, fileResults.get(0).overallScore, 1e-6);
+        assertEquals(0.5f, score.getTaskScores().get(task).get(0, 1), 1e-6);
+        assertEquals(4f / 6, fileResults.get(1).taskResults.getFirst().taskScore, 1e-6);
+        assertEquals(4f / 6, score.getOverallScores().get(1, 0), 1e-6);
+    }
+
+    private static WorkScoreFiles run(List<ISourceFile> files, List<ITuple<ITask, ModelTaskProcessedResults>> results, List<? extends IResultFile> fileResults) {
+        JobStatus status = new JobStatus(0, Priority.DEFAULT);
+        status.startJob();
+        WorkScoreFiles score = new WorkScoreFiles(status, files, results, new ArrayList<>(fileResults), 3);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            pool.invoke(score);
+        } finally {
+            pool.shutdown();
+        }
+        return score;
+    }
+
+    private static void assertScores(Map<ISourceFile, Float> expected, SparseScoreMatrix actual, int row, List<ISourceFile> files) {
+        for (int c = 0; c < files.size(); c++) {
+            if (c != row) {
+                assertEquals(expected.get(files.get(c)), actual.get(row, c), 1e-5, "score of file " + row + " against " + c);
+            }
+        }
+    }
+
+    private static List<ISourceFile> files(Random random, int count) {
+        List<ISourceFile> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(new TestSourceFile(100 + i, "x\n".repeat(5 + random.nextInt(60))));
+        }
+        return files;
+    }
+
+    /**
+     * Generates groups of 2 to 4 files, with blocks of one or two line ranges which may run past the end of the file, so some files are over covered
+     */
+    private static ModelTaskProcessedResults results(Random random, List<ISourceFile> files, boolean customTotals) {
+        ModelTaskProcessedResults result = new ModelTaskProcessedResults();
+        for (int g = 0; g < 60; g++) {
+            Group group = new Group(TYPES[random.nextInt(TYPES.length)]);
+            List<ISourceFile> shuffled = new ArrayList<>(files);
+            Collections.shuffle(shuffled, random);
+            for (ISourceFile file : shuffled.subList(0, 2 + random.nextInt(3))) {
+                int start = 1 + random.nextInt(30);
+                group.add(file, random.nextFloat(), start, start + random.nextInt(20));
+                if (random.nextBoolean()) {
+                    start += 25;
+                    group.getCodeBlock(file).getLineNumbers().add(new Tuple<>(start, start + random.nextInt(10)));
+                }
+            }
+            result.getGroups().add(group);
+        }
+
+        if (customTotals) {
+            Map<ISourceFile, Integer> totals = new HashMap<>();
+            files.forEach(f -> totals.put(f, 10 + random.nextInt(100)));
+            result.setFileTotals(totals);
+        }
+        return result;
+    }
+
+    /**
+     * The scorer used before {@link WorkScoreFiles}, which filters every group for every file
+     */
+    private static void scoreNested(ResultFile fileRes, List<ISourceFile> files, List<ITuple<ITask, ModelTaskProcessedResults>> results) {
+        ISourceFile file = fileRes.file;
+        List<ITuple<ICodeBlockGroup, Float>> overallGroupScores = new LinkedList<>();
+
+        for (ITuple<ITask, ModelTaskProcessedResults> t : results) {
+            List<ICodeBlockGroup> groupsContainingFile = t.getValue().getGroups(file);
+            int fileTotal = t.getValue().getFileTotal(file);
+
+            AtomicReference<Float> fullSize = new AtomicReference<>((float) 0);
+            List<ITuple<ICodeBlockGroup, Float>> groupScores = groupsContainingFile.stream().map(x -> {
+                ICodeBlock b = x.getCodeBlock(file);
+                float size = b.getLineNumbers().stream().mapToInt(y -> y.getValue() - y.getKey() + 1).sum();
+                fullSize.updateAndGet(v -> v + size);
+                return (ITuple<ICodeBlockGroup, Float>) new Tuple<>(x, b.getBlockScore() * (size / fileTotal));
+            }).collect(Collectors.toList());
+
+            if (fullSize.get() > fileTotal) {
+                float factor = fullSize.get() / fileTotal;
+                groupScores.forEach(x -> x.setValue(x.getValue() / factor));
+            }
+
+            IResultTask taskRes = fileRes.addTaskResult(t.getKey());
+            taskRes.addContainingBlock(groupsContainingFile);
+            taskRes.setTaskScore(scoreNested(file, files, groupScores, taskRes::addFileScore));
+            overallGroupScores.addAll(groupScores);
+        }
+
+        fileRes.setOverallScore(scoreNested(file, files, overallGroupScores, fileRes::addFileScore));
+    }
+
+    private static float scoreNested(ISourceFile file, List<ISourceFile> files, List<ITuple<ICodeBlockGroup, Float>> groupScores, FileScoreSetter perFile) {
+        Map<DetectionType, Double> typeWeights = new HashMap<>();
+        for (ITuple<ICodeBlockGroup, Float> g : groupScores) {
+            typeWeights.putIfAbsent(type(g.getKey()), 0.0);
+        }
+
+        double weightSum = typeWeights.keySet().stream().mapToDouble(DetectionType::getWeighting).sum();
+        typeWeights.keySet().forEach(z -> typeWeights.put(z, z.getWeighting() / weightSum));
+
+        float s = (float) groupScores.stream().mapToDouble(x -> x.getValue() * typeWeights.get(type(x.getKey()))).sum();
+
+        for (ISourceFile fileComp : files) {
+            if (!fileComp.equals(file)) {
+                float c = (float) groupScores.stream().filter(g -> g.getKey().filePresent(fileComp)).mapToDouble(x -> x.getValue() * typeWeights.get(type(x.getKey()))).sum();
+                perFile.set(fileComp, c > 1 ? 1 : c);
+            }
+        }
+
+        return s > 1 ? 1 : s;
+    }
+
+    private static DetectionType type(ICodeBlockGroup group) {
+        try {
+            return group.getDetectionType();
+        } catch (UnknownDetectionTypeException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface FileScoreSetter {
+
+        void set(ISourceFile file, float score);
+    }
+
+    private static class Block implements ICodeBlock {
+
+        private final ISourceFile file;
+        private final float score;
+        private final List<ITuple<Integer, Integer>> lines = new ArrayList<>();
+
+        Block(ISourceFile file, float score) {
+            this.file = file;
+            this.score = score;
+        }
+
+        @Override
+        public float getBlockScore() {
+            return this.score;
+        }
+
+        @Override
+        public ISourceFile getFile() {
+            return this.file;
+        }
+
+        @Override
+        public List<ITuple<Integer, Integer>> getLineNumbers() {
+            return this.lines;
+        }
+    }
+
+    private static class Group implements ICodeBlockGroup {
+
+        private final DetectionType type;
+        private final List<Block> blocks = new ArrayList<>();
+
+        Group(DetectionType type) {
+            this.type = type;
+        }
+
+        Group add(ISourceFile file, float score, int start, int end) {
+            this.addCodeBlock(file, score, new Tuple<>(start, end));
+            return this;
+        }
+
+        @Override
+        public void addCodeBlock(ISourceFile file, float score, ITuple<Integer, Integer> line) {
+            this.addCodeBlock(file, score, List.of(line));
+        }
+
+        @Override
+        public void addCodeBlock(ISourceFile file, float score, List<ITuple<Integer, Integer>> lines) {
+            Block block = new Block(file, score);
+            block.lines.addAll(lines);
+            this.blocks.add(block);
+        }
+
+        @Override
+        public boolean filePresent(ISourceFile file) {
+            return this.getCodeBlock(file) != null;
+        }
+
+        @Override
+        public boolean submissionIdPresent(long submissionId) {
+            return false;
+        }
+
+        @Override
+        public ICodeBlock getCodeBlock(ISourceFile file) {
+            return this.blocks.stream().filter(b -> b.file.getPersistentId() == file.getPersistentId()).findFirst().orElse(null);
+        }
+
+        @Override
+        public List<? extends ICodeBlock> getCodeBlocks() {
+            return this.blocks;
+        }
+
+        @Override
+        public String getComment() {
+            return null;
+        }
+
+        @Override
+        public void setComment(String comment) {
+        }
+
+        @Override
+        public DetectionType getDetectionType() throws UnknownDetectionTypeException {
+            if (this.type == null) {
+                throw new UnknownDetectionTypeException("unknown");
+            }
+            return this.type;
+        }
+
+        @Override
+        public void setDetectionType(String detectionTypeIdentifier) {
+        }
+
+        @Override
+        public boolean isPopulated() {
+            return !this.blocks.isEmpty();
+        }
+    }
+
+    private static class ResultFile implements IResultFile {
+
+        private final ISourceFile file;
+        private final List<ResultTask> taskResults = new ArrayList<>();
+        private final Map<ISourceFile, Float> fileScores = new HashMap<>();
+        private float overallScore;
+
+        ResultFile(ISourceFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public void addFileScore(ISourceFile file, float score) {
+            this.fileScores.put(file, score);
+        }
+
+        @Override
+        public IResultTask addTaskResult(ITask task) {
+            ResultTask res = new ResultTask(task);
+            this.taskResults.add(res);
+            return res;
+        }
+
+        @Override
+        public List<IResultTask> addTaskResults(List<ITask> tasks) {
+            tasks.forEach(this::addTaskResult);
+            return new ArrayList<>(this.taskResults);
+        }
+
+        @Override
+        public ISourceFile getFile() {
+            return this.file;
+        }
+
+        @Override
+        public float getFileScore(ISourceFile file) {
+            return this.fileScores.getOrDefault(file, 0f);
+        }
+
+        @Override
+        public Map<ISourceFile, Float> getFileScores() {
+            return this.fileScores;
+        }
+
+        @Override
+        public float getOverallScore() {
+            return this.overallScore;
+        }
+
+        @Override
+        public void setOverallScore(float score) {
+            this.overallScore = score;
+        }
+
+        @Override
+        public List<IResultTask> getTaskResults() {
+            return new ArrayList<>(this.taskResults);
+        }
+    }
+
+    private static class ResultTask implements IResultTask {
+
+        private final ITask task;
+        private final List<ICodeBlockGroup> containing = new ArrayList<>();
+        private final Map<ISourceFile, Float> fileScores = new HashMap<>();
+        private float taskScore;
+
+        ResultTask(ITask task) {
+            this.task = task;
+        }
+
+        @Override
+        public void addContainingBlock(ICodeBlockGroup blockGroup) {
+            this.containing.add(blockGroup);
+        }
+
+        @Override
+        public void addContainingBlock(Collection<ICodeBlockGroup> blockGroups) {
+            this.containing.addAll(blockGroups);
+        }
+
+        @Override
+        public void addFileScore(ISourceFile file, float score) {
+            this.fileScores.put(file, score);
+        }
+
+        @Override
+        public List<ICodeBlockGroup> getContainingBlocks() {
+            return this.containing;
+        }
+
+        @Override
+        public float getFileScore(ISourceFile file) {
+            return this.fileScores.getOrDefault(file, 0f);
+        }
+
+        @Override
+        public Map<ISourceFile, Float> getFileScores() {
+            return this.fileScores;
+        }
+
+        @Override
+        public ITask getTask() {
+            return this.task;
+        }
+
+        @Override
+        public float getTaskScore() {
+            return this.taskScore;
+        }
+
+        @Override
+        public void setTaskScore(float score) {
+            this.taskScore = score;
+        }
+    }
+
+    private static class Task implements ITask {
+
+        @Override
+        public void addCheckpoint(String checkpointKey, int[] workerIndexes, List<AbstractModelTaskRawResult> rawResults) {
+        }
+
+        @Override
+        public void clearCheckpoint() {
+        }
+
+        @Override
+        public Map<Integer, AbstractModelTaskRawResult> getCheckpoint(String checkpointKey) {
+            return new HashMap<>();
+        }
+
+        @Override
+        public int getCandidateFloor() {
+            return 0;
+        }
+
+        @Override
+        public void setCandidateFloor(int candidateFloor) {
+        }
+
+        @Override
+        public Class<? extends IDetector> getDetector() {
+            return null;
+        }
+
+        @Override
+        public IJob getJob() {
+            return null;
+        }
+
+        @Override
+        public Map<String, Float> getParameterMapping() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public long getPersistentId() {
+            return 0;
+        }
+
+        @Override
+        public List<AbstractModelTaskRawResult> getRawResults() {
+            return null;
+        }
+
+        @Override
+        public void setRawResults(List<AbstractModelTaskRawResult> rawResults) {
+        }
+
+        @Override
+        public WorkStatus getStatus() {
+            return WorkStatus.COMPLETE;
+        }
+
+        @Override
+        public boolean hasResults() {
+            return true;
+        }
+
+        @Override
+        public boolean resetParameter(AdjustableParameterObj paramObj) {
+            return false;
+        }
+
+        @Override
+        public void setComplete() {
+        }
+
+        @Override
+        public boolean setParameter(AdjustableParameterObj paramObj, float value) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package uk.ac.warwick.dcs.sherlock.engine.storage.base;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.component.ITask;
+import uk.ac.warwick.dcs.sherlock.api.model.postprocessing.AbstractModelTaskRawResult;
+import uk.ac.warwick.dcs.sherlock.api.registry.SherlockRegistry;
+import uk.ac.warwick.dcs.sherlock.api.util.Side;
+import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
+import uk.ac.warwick.dcs.sherlock.engine.storage.BaseStorage;
+import uk.ac.warwick.dcs.sherlock.engine.storage.EntityJob;
+import uk.ac.warwick.dcs.sherlock.engine.storage.EntityWorkspace;
+import uk.ac.warwick.dcs.sherlock.module.model.base.detection.NGramDetector;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityTaskTest {
+    SherlockEngine se;
+    BaseStorage bs;
+    EntityWorkspace ws;
+    ITask task;
+
+    @BeforeEach
+    void setUp() {
+        se = new SherlockEngine(Side.CLIENT);
+        SherlockRegistry.registerDetector(NGramDetector.class);
+        bs = new BaseStorage();
+        ws = (EntityWorkspace) bs.createWorkspace("test", "Java");
+
+        EntityJob ej = (EntityJob) ws.createJob();
+        ej.addDetector(NGramDetector.class);
+        ej.prepare();
+        task = ej.getTasks().getFirst();
+    }
+
+    @AfterEach
+    void tearDown() {
+        task.clearCheckpoint();
+        bs.getDatabase().removeObject(ws);
+    }
+
+    @Test
+    void checkpointIsReusedOnlyWithTheSameKey() {
+        task.addCheckpoint("a", new int[] {0, 2}, Arrays.asList(new ValueResult(5), null));
+        task.addCheckpoint("a", new int[] {1}, Arrays.asList(new ValueResult(7)));
+
+        Map<Integer, AbstractModelTaskRawResult> checkpoint = task.getCheckpoint("a");
+        assertEquals(3, checkpoint.size());
+        assertEquals(7, ((ValueResult) checkpoint.get(1)).value);
+        assertNull(checkpoint.get(2));
+        assertTrue(task.getCheckpoint("b").isEmpty());
+
+        // results for other workers replace the stored checkpoint
+        task.addCheckpoint("b", new int[] {0}, Arrays.asList(new ValueResult(1)));
+        assertTrue(task.getCheckpoint("a").isEmpty());
+        assertEquals(1, task.getCheckpoint("b").size());
+
+        task.clearCheckpoint();
+        assertTrue(task.getCheckpoint("b").isEmpty());
+    }
+
+    static class ValueResult extends AbstractModelTaskRawResult {
+
+        final int value;
+
+        ValueResult(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public boolean testType(AbstractModelTaskRawResult baseline) {
+            return baseline instanceof ValueResult;
+        }
+    }
+}
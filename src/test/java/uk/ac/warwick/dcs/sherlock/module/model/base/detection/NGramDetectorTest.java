@@ -5,9 +5,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import uk.ac.warwick.dcs.sherlock.api.model.detection.IDetector;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.PreProcessingStrategy;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.api.util.LineStore;
+import uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing.NGramRawResult;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestSourceFile;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -47,4 +54,100 @@ class NGramDetectorTest {
         List<PreProcessingStrategy> listOfPreProcessors = detector.getPreProcessors();
         assertAll(() -> assertEquals(1, listOfPreProcessors.size()), () -> assertEquals("no_whitespace", listOfPreProcessors.get(0).getName()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void fingerprintEngineMatchesStringEngine() {
+        Random random = new Random(42);
+        int matched = 0;
+
+        for (int run = 0; run < 200; run++) {
+            List<IndexedString> shared = randomLines(random, 20);
+            List<IndexedString> lines1 = new ArrayList<>(randomLines(random, 10));
+            List<IndexedString> lines2 = new ArrayList<>(randomLines(random, 5));
+            lines1.addAll(shared);
+            lines2.addAll(shared.subList(0, 12));
+            lines2.addAll(randomLines(random, 8));
+            lines2.addAll(shared.subList(5, 20));
+
+            for (int ngramSize : new int[] {1, 2, 4, 5, 7, 12, 30}) {
+                String stringEngine = runEngine(0, ngramSize, reindex(lines1), reindex(lines2));
+                String fingerprintEngine = runEngine(1, ngramSize, reindex(lines1), reindex(lines2));
+                assertEquals(stringEngine, fingerprintEngine, "Engines differ on run " + run + " with N-gram size " + ngramSize);
+                matched += stringEngine.isEmpty() ? 0 : 1;
+            }
+        }
+
+        assertTrue(matched > 0, "No matches were found, the comparison is not meaningful");
+    }
+
+    @Test
+    void fingerprintCollisionsAreNotMatched() {
+        // a Thue-Morse string and its complement have the same polynomial hash modulo 2^64 for any odd base once 2048 characters long
+        StringBuilder thueMorse = new StringBuilder();
+        StringBuilder complement = new StringBuilder();
+        for (int i = 0; i < 2048; i++) {
+            int bit = Integer.bitCount(i) % 2;
+            thueMorse.append((char) ('a' + bit));
+            complement.append((char) ('b' - bit));
+        }
+
+        LineStore lines1 = LineStore.of(List.of(IndexedString.of(1, thueMorse.toString())));
+        LineStore lines2 = LineStore.of(List.of(IndexedString.of(1, complement.toString())));
+        NGramFingerprintIndex index1 = NGramFingerprintIndex.build(lines1, 2048);
+        NGramFingerprintIndex index2 = NGramFingerprintIndex.build(lines2, 2048);
+        assertEquals(index1.getDistinctFingerprint(0), index2.getDistinctFingerprint(0), "The strings no longer collide, the test is not meaningful");
+
+        assertFalse(index1.hasCollisions());
+        assertFalse(index1.sameNgram(0, index2, 0));
+        assertTrue(index1.sameNgram(0, NGramFingerprintIndex.build(lines1, 2048), 0));
+        assertTrue(NGramFingerprintIndex.build(LineStore.of(List.of(IndexedString.of(1, thueMorse.toString()), IndexedString.of(2, complement.toString()))), 2048).hasCollisions());
+
+        String expected = runEngine(0, 2048, List.of(IndexedString.of(1, thueMorse.toString())), List.of(IndexedString.of(1, complement.toString())));
+        assertEquals(expected, runEngine(1, 2048, List.of(IndexedString.of(1, thueMorse.toString())), List.of(IndexedString.of(1, complement.toString()))));
+    }
+
+    private static List<IndexedString> randomLines(Random random, int count) {
+        String[] pieces = {"int i = 0;", "i++;", "for (;;) {", "}", "return x;", "a = b + c;", "x", "if (a == b) {", "foo(bar);", "  "};
+        List<IndexedString> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder line = new StringBuilder();
+            int parts = random.nextInt(3);
+            for (int j = 0; j <= parts; j++) {
+                line.append(pieces[random.nextInt(pieces.length)]);
+            }
+            lines.add(IndexedString.of(0, line.toString()));
+        }
+        return lines;
+    }
+
+    private static List<IndexedString> reindex(List<IndexedString> lines) {
+        List<IndexedString> out = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            out.add(IndexedString.of(i + 1, lines.get(i).getValue()));
+        }
+        return out;
+    }
+
+    private static String runEngine(int engine, int ngramSize, List<IndexedString> lines1, List<IndexedString> lines2) {
+        NGramDetector detector = new NGramDetector();
+        detector.ngram_size = ngramSize;
+        detector.minimum_window = 5;
+        detector.threshold = 0.8f;
+        detector.fingerprint_engine = engine;
+
+        ModelDataItem item1 = new ModelDataItem(new TestSourceFile(1, ""));
+        item1.addPreProcessedLines("no_whitespace", lines1);
+        ModelDataItem item2 = new ModelDataItem(new TestSourceFile(2, ""));
+        item2.addPreProcessedLines("no_whitespace", lines2);
+
+        NGramDetector.NGramDetectorWorker worker = detector.getAbstractPairwiseDetectorWorker(item1, item2);
+        worker.execute();
+
+        NGramRawResult<NgramMatch> result = worker.getRawResult();
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < result.getSize(); i++) {
+            out.append(result.getLocations().get(i)).append(' ').append(result.getObjects().get(i).similarity).append('\n');
+        }
+        return out.toString();
+    }
+}
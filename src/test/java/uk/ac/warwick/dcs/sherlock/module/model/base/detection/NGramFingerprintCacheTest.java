@@ -0,0 +1,43 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.detection;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NGramFingerprintCacheTest {
+
+    @Test
+    void reusesIndexForSameKey() {
+        NGramFingerprintCache cache = new NGramFingerprintCache(1024 * 1024);
+        NGramFingerprintIndex first = cache.get(TestUtils.makeModelDataItem(1, "no_whitespace", "int a = 0;", "a++;"), "no_whitespace", 4);
+        NGramFingerprintIndex second = cache.get(TestUtils.makeModelDataItem(1, "no_whitespace", "int a = 0;", "a++;"), "no_whitespace", 4);
+
+        assertAll(() -> assertSame(first, second), () -> assertEquals(1, cache.getHits()), () -> assertEquals(1, cache.getMisses()),
+                () -> assertEquals(first.getMemoryFootprint(), cache.getMemoryFootprint()));
+    }
+
+    @Test
+    void rebuildsIndexWhenKeyChanges() {
+        NGramFingerprintCache cache = new NGramFingerprintCache(1024 * 1024);
+        NGramFingerprintIndex base = cache.get(TestUtils.makeModelDataItem(1, "no_whitespace", "int a = 0;"), "no_whitespace", 4);
+
+        assertAll(() -> assertNotSame(base, cache.get(TestUtils.makeModelDataItem(1, "no_whitespace", "int b = 0;"), "no_whitespace", 4)),
+                () -> assertNotSame(base, cache.get(TestUtils.makeModelDataItem(2, "no_whitespace", "int a = 0;"), "no_whitespace", 4)),
+                () -> assertNotSame(base, cache.get(TestUtils.makeModelDataItem(1, "no_whitespace", "int a = 0;"), "no_whitespace", 5)), () -> assertEquals(4, cache.size()));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        long single = NGramFingerprintIndex.build(TestUtils.makeModelDataItem(1, "no_whitespace", "int a = 0;").getLineStore("no_whitespace"), 4).getMemoryFootprint();
+        NGramFingerprintCache cache = new NGramFingerprintCache(single * 2);
+
+        NGramFingerprintIndex first = cache.get(TestUtils.makeModelDataItem(1, "no_whitespace", "int a = 0;"), "no_whitespace", 4);
+        cache.get(TestUtils.makeModelDataItem(2, "no_whitespace", "int a = 0;"), "no_whitespace", 4);
+        cache.get(TestUtils.makeModelDataItem(1, "no_whitespace", "int a = 0;"), "no_whitespace", 4);
+        cache.get(TestUtils.makeModelDataItem(3, "no_whitespace", "int a = 0;"), "no_whitespace", 4);
+
+        assertAll(() -> assertEquals(2, cache.size()), () -> assertTrue(cache.getMemoryFootprint() <= cache.getCapacity()),
+                () -> assertSame(first, cache.get(TestUtils.makeModelDataItem(1, "no_whitespace", "int a = 0;"), "no_whitespace", 4)));
+    }
+}
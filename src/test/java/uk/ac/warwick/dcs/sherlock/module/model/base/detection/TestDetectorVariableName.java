@@ -5,6 +5,8 @@ import org.junit.jupiter.api.Test;
 import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.PreProcessingStrategy;
 import uk.ac.warwick.dcs.sherlock.api.util.Side;
 import uk.ac.warwick.dcs.sherlock.engine.SherlockEngine;
+import uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing.SimpleObjectEqualityRawResult;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestUtils;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.List;
@@ -19,6 +21,18 @@ class TestDetectorVariableName {
 		assertNotNull(t.getAbstractPairwiseDetectorWorker(null, null));
 	}
 
+	@Test
+	void workerMatchesEqualDeclarations() {
+		VariableNameDetectorWorker worker = new VariableNameDetector().getAbstractPairwiseDetectorWorker(
+				TestUtils.makeModelDataItem(1, "variables", "int count", "String name", "int total", "String name"),
+				TestUtils.makeModelDataItem(2, "variables", "String name", "int totals", "int count"));
+		worker.execute();
+
+		SimpleObjectEqualityRawResult<String> result = worker.getRawResult();
+		assertAll(() -> assertEquals(List.of("int count", "String name", "String name"), result.getObjects()), () -> assertEquals(3, result.getLocation(0).getPoint2().getKey()),
+				() -> assertEquals(4, result.getLocation(2).getPoint1().getKey()), () -> assertEquals(4, result.getFile1NumObjects()));
+	}
+
 	@Test
 	void getDisplayName() {
 		VariableNameDetector t = new VariableNameDetector();
@@ -0,0 +1,56 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.detection;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.util.PairedTuple;
+import uk.ac.warwick.dcs.sherlock.module.model.base.postprocessing.NGramRawResult;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WinnowingDetectorTest {
+
+    private static final String[] COPIED = {"int total = 0;", "for (int i = 0; i < values.length; i++) {", "total += values[i] * weights[i];", "}", "return total / values.length;"};
+
+    private static NGramRawResult<NgramMatch> run(ModelDataItem item1, ModelDataItem item2) {
+        WinnowingDetector detector = new WinnowingDetector();
+        detector.k = 8;
+        detector.window = 4;
+        detector.minimum_matches = 3;
+
+        WinnowingDetector.WinnowingDetectorWorker worker = detector.getAbstractPairwiseDetectorWorker(item1, item2);
+        worker.execute();
+        return worker.getRawResult();
+    }
+
+    @Test
+    void getDisplayName() {
+        assertEquals("Winnowing Detector", new WinnowingDetector().getDisplayName());
+    }
+
+    @Test
+    void findsCopiedBlock() {
+        List<String> lines1 = new ArrayList<>(List.of("public class A {", "String name = \"a\";"));
+        lines1.addAll(List.of(COPIED));
+        List<String> lines2 = new ArrayList<>(List.of("class Other {", "double unrelatedField;", "void nothing() {}", "char c = 'x';"));
+        lines2.addAll(List.of(COPIED));
+
+        NGramRawResult<NgramMatch> result = run(TestUtils.makeModelDataItem(1, "no_whitespace", lines1.toArray(String[]::new)), TestUtils.makeModelDataItem(2, "no_whitespace", lines2.toArray(String[]::new)));
+
+        assertFalse(result.isEmpty());
+        PairedTuple<Integer, Integer, Integer, Integer> location = result.getLocations().getFirst();
+        assertAll(() -> assertTrue(location.getPoint1().getKey() >= 2), () -> assertTrue(location.getPoint1().getValue() <= 7), () -> assertTrue(location.getPoint2().getKey() >= 4),
+                () -> assertTrue(location.getPoint2().getValue() <= 9));
+    }
+
+    @Test
+    void unrelatedFilesHaveNoMatches() {
+        NGramRawResult<NgramMatch> result = run(TestUtils.makeModelDataItem(1, "no_whitespace", "public class A {", "String name = \"a\";", "}"),
+                TestUtils.makeModelDataItem(2, "no_whitespace", "double unrelatedField;", "void nothing() {}"));
+
+        assertTrue(result.isEmpty());
+    }
+}
@@ -0,0 +1,106 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.Vocabulary;
+import org.junit.jupiter.api.Test;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.IGeneralPreProcessor;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.ILexerSpecification;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenPipeline;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenView;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestUtils;
+import uk.ac.warwick.dcs.sherlock.module.model.base.utils.TestUtils.TokenUtil;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenPipelineTest {
+
+	private static final int WHITESPACE = StandardLexerSpecification.channels.WHITESPACE.ordinal();
+	private static final int LONG_WHITESPACE = StandardLexerSpecification.channels.LONG_WHITESPACE.ordinal();
+	private static final int COMMENT = StandardLexerSpecification.channels.COMMENT.ordinal();
+
+	private static List<Token> tokens() {
+		return TestUtils.generateTokensFromUtils(List.of(
+				new TokenUtil("int", 0, 1), new TokenUtil("    ", LONG_WHITESPACE, 1), new TokenUtil("x", 0, 1), new TokenUtil(";", 0, 1), new TokenUtil(" ", WHITESPACE, 1),
+				new TokenUtil("// one", COMMENT, 1), new TokenUtil("x", 0, 2), new TokenUtil("/* two\nlines */", COMMENT, 2), new TokenUtil("++", 0, 3)));
+	}
+
+	private static List<String> texts(List<? extends Token> tokens) {
+		List<String> ls = new ArrayList<>();
+		for (Token t : tokens) {
+			ls.add(t.getText());
+		}
+		return ls;
+	}
+
+	private static List<String> texts(TokenView tokens) {
+		List<String> ls = new ArrayList<>();
+		for (int i = 0; i < tokens.size(); i++) {
+			ls.add(tokens.getText(i));
+		}
+		return ls;
+	}
+
+	private static List<String> lines(List<IndexedString> lines) {
+		List<String> ls = new ArrayList<>();
+		for (IndexedString line : lines) {
+			ls.add(line.getKey() + ":" + line.getValue());
+		}
+		return ls;
+	}
+
+	@Test
+	void fusedMatchesSequential() {
+		List<IGeneralPreProcessor> processors = List.of(new TrimWhitespaceOnly(), new CommentRemover());
+
+		List<? extends Token> sequential = tokens();
+		for (IGeneralPreProcessor processor : processors) {
+			sequential = processor.process(sequential, null, "Java");
+		}
+
+		TokenView fused = TokenPipeline.run(TokenView.of(tokens()), processors, null, "Java");
+		assertEquals(List.of("int", " ", "x", ";", " ", "x", "++"), texts(fused));
+		assertEquals(texts(sequential), texts(fused));
+		assertEquals(lines(new StandardStringifier().processTokens(sequential, null)), lines(new StandardStringifier().processTokens(fused, null)));
+	}
+
+	@Test
+	void adaptsGeneralPreProcessors() {
+		// drops the first token of each line, which depends on the tokens before it so cannot be fused
+		IGeneralPreProcessor firstOfLine = new IGeneralPreProcessor() {
+			@Override
+			public ILexerSpecification getLexerSpecification() {
+				return new StandardLexerSpecification();
+			}
+
+			@Override
+			public List<? extends Token> process(List<? extends Token> tokens, Vocabulary vocab, String lang) {
+				List<Token> result = new ArrayList<>();
+				int line = 0;
+				for (Token t : tokens) {
+					if (t.getLine() == line) {
+						result.add(t);
+					}
+					line = t.getLine();
+				}
+				return result;
+			}
+		};
+
+		TokenView view = TokenPipeline.run(TokenView.of(tokens()), List.of(new CommentRemover(), firstOfLine, new TrimWhitespaceOnly()), null, "Java");
+		assertEquals(List.of(" ", "x", ";", " "), texts(view));
+		assertEquals(1, view.getLine(3));
+	}
+
+	@Test
+	void sharesUnchangedTokens() {
+		TokenView view = TokenView.of(tokens());
+		assertSame(view, TokenPipeline.run(view, List.of(), null, "Java"));
+		TokenView code = TokenPipeline.run(view, List.of(new CommentRemover()), null, "Java");
+		assertSame(code, TokenPipeline.run(code, List.of(new CommentRemover()), null, "Java"));
+		assertNotSame(view, TokenPipeline.run(view, List.of(new TrimWhitespaceOnly()), null, "Java"));
+		assertEquals(List.of("// one", "/* two\nlines */"), texts(TokenPipeline.run(view, List.of(new CommentExtractor()), null, "Java")));
+	}
+}
@@ -0,0 +1,64 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.preprocessing;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Lexer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenPipeline;
+import uk.ac.warwick.dcs.sherlock.api.model.preprocessing.TokenView;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
+import uk.ac.warwick.dcs.sherlock.module.model.base.lang.JavaLexer;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrimWhitespaceScannerTest {
+
+	private static List<String> lines(List<IndexedString> lines) {
+		List<String> ls = new ArrayList<>();
+		for (IndexedString line : lines) {
+			ls.add(line.getKey() + ":" + line.getValue());
+		}
+		return ls;
+	}
+
+	private static List<IndexedString> lexed(String source) {
+		Lexer lexer = new JavaLexer(CharStreams.fromString(source));
+		lexer.removeErrorListeners();
+		TokenView tokens = TokenPipeline.run(TokenView.of(lexer.getAllTokens()), List.of(new TrimWhitespaceOnly()), lexer.getVocabulary(), "Java");
+		return new StandardStringifier().processTokens(tokens, lexer.getVocabulary());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"",
+			"public class A {\n\tint  x =\t1;   \n\n    // comment  \n\tvoid f() { }\n}\n",
+			"int a; /* one\n   two  */ int b;\r\nint c;\r\rint d;",
+			"/**\n * doc\n */\n\n\n  class B {}",
+			"String s = \"a  \\\" /* b */ // c\";\tchar c = '\\'';  char d = '\\377'; char e = '\\u0041';",
+			"String t = \"\"\"  \n    text   block /* x */\n  \\n \"\"\";\nint after;",
+			"String e = \"\"\"\"; x\u00e9 = '\ud83d\ude00';",
+			"a/=b/c;x>>>=1;// end",
+	})
+	void matchesLexer(String source) {
+		List<IndexedString> lines = TrimWhitespaceScanner.process(source);
+		assertNotNull(lines);
+		assertEquals(lines(lexed(source)), lines(lines));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"int a; /* unterminated", "String s = \"open\nint b;", "char c = 'ab';", "#define X", "String u = \"\\u005c\";", "x\ud83d = 1;"})
+	void fallsBackOnLexerErrors(String source) {
+		assertNull(TrimWhitespaceScanner.process(source));
+	}
+
+	@Test
+	void handlesOnlyTrimWhitespace() {
+		assertTrue(TrimWhitespaceScanner.handles(JavaLexer.class, List.of(TrimWhitespaceOnly.class), null, false));
+		assertFalse(TrimWhitespaceScanner.handles(JavaLexer.class, List.of(TrimWhitespaceOnly.class), null, true));
+		assertFalse(TrimWhitespaceScanner.handles(JavaLexer.class, List.of(TrimWhitespaceOnly.class), StandardTokeniser.class, false));
+		assertFalse(TrimWhitespaceScanner.handles(JavaLexer.class, List.of(TrimWhitespaceOnly.class, CommentRemover.class), null, false));
+	}
+}
@@ -0,0 +1,98 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.utils;
+
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.component.ISubmission;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In memory source file, allows detectors to be run without the storage layer
+ */
+public class TestSourceFile implements ISourceFile {
+
+	private final long id;
+	private final String contents;
+
+	public TestSourceFile(long id, String contents) {
+		this.id = id;
+		this.contents = contents;
+	}
+
+	@Override
+	public boolean equals(ISourceFile file) {
+		return file.getPersistentId() == this.id;
+	}
+
+	@Override
+	public InputStream getFileContents() {
+		return new ByteArrayInputStream(this.contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public String getFileContentsAsString() {
+		return this.contents;
+	}
+
+	@Override
+	public List<String> getFileContentsAsStringList() {
+		return Arrays.asList(this.contents.split("\n"));
+	}
+
+	@Override
+	public String getFileIdentifier() {
+		return "test-" + this.id;
+	}
+
+	@Override
+	public String getFileDisplayName() {
+		return "test" + this.id + ".java";
+	}
+
+	@Override
+	public String getFileDisplayPath() {
+		return this.getFileDisplayName();
+	}
+
+	@Override
+	public long getPersistentId() {
+		return this.id;
+	}
+
+	@Override
+	public long getArchiveId() {
+		return this.id;
+	}
+
+	@Override
+	public ISubmission getSubmission() {
+		return new TestSubmission(this);
+	}
+
+	@Override
+	public void remove() {
+	}
+
+	@Override
+	public int getNonEmptyLineCount() {
+		return (int) this.getFileContentsAsStringList().stream().filter(x -> !x.isBlank()).count();
+	}
+
+	@Override
+	public int getTotalLineCount() {
+		return this.getFileContentsAsStringList().size();
+	}
+
+	@Override
+	public long getFileSize() {
+		return this.contents.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	@Override
+	public String getDisplayFileSize(boolean si) {
+		return this.getFileSize() + " B";
+	}
+}
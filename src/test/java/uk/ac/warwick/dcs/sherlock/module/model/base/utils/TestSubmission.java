@@ -0,0 +1,78 @@
+package uk.ac.warwick.dcs.sherlock.module.model.base.utils;
+
+import uk.ac.warwick.dcs.sherlock.api.component.ISourceFile;
+import uk.ac.warwick.dcs.sherlock.api.component.ISubmission;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In memory submission holding a single file, so pairwise detectors compare every pair of {@link TestSourceFile}s
+ */
+public class TestSubmission implements ISubmission {
+
+	private final ISourceFile file;
+
+	public TestSubmission(ISourceFile file) {
+		this.file = file;
+	}
+
+	@Override
+	public int compareTo(ISubmission o) {
+		return Long.compare(this.getId(), o.getId());
+	}
+
+	@Override
+	public boolean equals(ISubmission o) {
+		return o.getId() == this.getId();
+	}
+
+	@Override
+	public List<ISourceFile> getAllFiles() {
+		return List.of(this.file);
+	}
+
+	@Override
+	public List<ISubmission> getContainedDirectories() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<ISourceFile> getContainedFiles() {
+		return List.of(this.file);
+	}
+
+	@Override
+	public int getFileCount() {
+		return 1;
+	}
+
+	@Override
+	public long getId() {
+		return this.file.getPersistentId();
+	}
+
+	@Override
+	public String getName() {
+		return this.file.getFileDisplayName();
+	}
+
+	@Override
+	public ISubmission getParent() {
+		return null;
+	}
+
+	@Override
+	public int getTotalFileCount() {
+		return 1;
+	}
+
+	@Override
+	public boolean hasParent() {
+		return false;
+	}
+
+	@Override
+	public void remove() {
+	}
+}
@@ -1,6 +1,8 @@
 package uk.ac.warwick.dcs.sherlock.module.model.base.utils;
 
 import org.antlr.v4.runtime.*;
+import uk.ac.warwick.dcs.sherlock.api.model.detection.ModelDataItem;
+import uk.ac.warwick.dcs.sherlock.api.util.IndexedString;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -21,6 +23,25 @@ public class TestUtils {
 		return tokenList;
 	}
 
+	/**
+	 * Builds the data item of an in memory file, holding the given lines as the preprocessed lines of one strategy
+	 *
+	 * @param id       persistent id of the file
+	 * @param strategy name of the preprocessing strategy
+	 * @param lines    the lines, numbered from 1
+	 * @return the data item
+	 */
+	public static ModelDataItem makeModelDataItem(long id, String strategy, String... lines) {
+		List<IndexedString> indexed = new ArrayList<>();
+		for (int i = 0; i < lines.length; i++) {
+			indexed.add(IndexedString.of(i + 1, lines[i]));
+		}
+
+		ModelDataItem item = new ModelDataItem(new TestSourceFile(id, String.join("\n", lines)));
+		item.addPreProcessedLines(strategy, indexed);
+		return item;
+	}
+
 	public static File makeFileWithContents(String parentFolder, String filename, String contents) throws Exception {
 		File file = new File(parentFolder, filename);
 		try {